@@ -1,8 +1,8 @@
 package edu.berkeley.cs186.database;
 
+import edu.berkeley.cs186.database.cli.StatementCache;
 import edu.berkeley.cs186.database.cli.parser.ASTExecutableStatement;
 import edu.berkeley.cs186.database.cli.parser.ParseException;
-import edu.berkeley.cs186.database.cli.parser.RookieParser;
 import edu.berkeley.cs186.database.cli.visitor.ExecutableStatementVisitor;
 import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.Pair;
@@ -12,13 +12,17 @@ import edu.berkeley.cs186.database.concurrency.*;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
+import edu.berkeley.cs186.database.index.BPlusTreeException;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.MappedDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.EvictionPolicy;
+import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.query.SelectOperator;
 import edu.berkeley.cs186.database.query.SequentialScanOperator;
 import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.query.expr.Expression;
@@ -37,6 +41,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
@@ -105,8 +110,21 @@ public class Database implements AutoCloseable {
     private int numMemoryPages;
     // active transactions
     private Phaser activeTransactions = new Phaser(0);
+    // background deadlock detector, or null if deadlocks are not detected
+    private DeadlockDetector deadlockDetector;
+    // page locks (count, and fraction of the table's pages) a transaction may hold on
+    // a table before being escalated to a table lock, shared by every table's context
+    private final EscalationThreshold pageLockEscalation = new EscalationThreshold();
+    // previous versions of records for read-only transactions, or null if snapshot
+    // reads are disabled
+    private volatile VersionStore versionStore;
     // Statistics about the contents of the database.
     private Map<String, TableStats> stats = new ConcurrentHashMap<>();
+    // parsed statements, plans and prepared statements of execute(String)
+    private final StatementCache statementCache = new StatementCache(StatementCache.DEFAULT_CAPACITY);
+
+    // partition number -> free space map of the table in the partition
+    private final Map<Integer, FreeSpaceMap> freeSpaceMaps = new ConcurrentHashMap<>();
 
     // Names of tables loaded for demo
     private ArrayList<String> demoTables = new ArrayList<>();
@@ -164,7 +182,7 @@ public class Database implements AutoCloseable {
     }
 
     /**
-     * Creates a new database.
+     * Creates a new database with file channel based disk I/O (DiskSpaceManagerImpl).
      *
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory in the buffer cache
@@ -174,6 +192,57 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, false);
+    }
+
+    /**
+     * Creates a new database with an on-heap buffer cache.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMemoryMappedIO flag to use memory mapped disk I/O (MappedDiskSpaceManager)
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, boolean useMemoryMappedIO) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, useMemoryMappedIO, false);
+    }
+
+    /**
+     * Creates a new database with single threaded redo during restart recovery.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMemoryMappedIO flag to use memory mapped disk I/O (MappedDiskSpaceManager)
+     * @param useOffHeapBuffers flag to allocate the buffer cache in direct (off-heap) memory
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, boolean useMemoryMappedIO,
+                    boolean useOffHeapBuffers) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, useMemoryMappedIO,
+             useOffHeapBuffers, false);
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param useMemoryMappedIO flag to use memory mapped disk I/O (MappedDiskSpaceManager)
+     * @param useOffHeapBuffers flag to allocate the buffer cache in direct (off-heap) memory
+     * @param useParallelRedo flag to redo page changes with one thread per core during restart
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, boolean useMemoryMappedIO,
+                    boolean useOffHeapBuffers, boolean useParallelRedo) {
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
@@ -181,14 +250,19 @@ public class Database implements AutoCloseable {
         this.lockManager = lockManager;
 
         if (useRecoveryManager) {
-            recoveryManager = new ARIESRecoveryManager(this::beginRecoveryTransaction);
+            int redoThreads = useParallelRedo ? Runtime.getRuntime().availableProcessors() : 1;
+            recoveryManager = new ARIESRecoveryManager(this::beginRecoveryTransaction, redoThreads);
         } else {
             recoveryManager = new DummyRecoveryManager();
         }
 
-        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        if (useMemoryMappedIO) {
+            diskSpaceManager = new MappedDiskSpaceManager(fileDir, recoveryManager);
+        } else {
+            diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        }
         bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
-                                              policy);
+                                              policy, useOffHeapBuffers);
 
         // create log partition
         if (!initialized) diskSpaceManager.allocPart(0);
@@ -289,6 +363,8 @@ public class Database implements AutoCloseable {
         // wait for all transactions to terminate
         this.waitAllTransactions();
 
+        this.setDeadlockDetection(0, TimeUnit.MILLISECONDS, null);
+
         dropDemoTables();
 
         this.bufferManager.evictAll();
@@ -314,6 +390,18 @@ public class Database implements AutoCloseable {
         return bufferManager;
     }
 
+    public RecoveryManager getRecoveryManager() {
+        return recoveryManager;
+    }
+
+    /**
+     * @return the cache of parsed statements, plans and prepared statements used
+     * by Transaction.execute
+     */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
     public int getWorkMem() {
         // cap work memory at number of memory pages -- this is likely to cause out of memory
         // errors if actually set this high
@@ -324,6 +412,72 @@ public class Database implements AutoCloseable {
         this.workMem = workMem;
     }
 
+    /**
+     * Sets when a transaction's page locks on a table are escalated to a single
+     * table lock: once it would hold more than `maxPageLocks` page locks on the
+     * table, or locks on more than `maxPageLockFraction` of the table's pages.
+     *
+     * @param maxPageLocks max number of page locks per table, or 0 for no limit
+     * @param maxPageLockFraction max fraction of a table's pages locked, or 0 for no limit
+     */
+    public void setLockEscalation(int maxPageLocks, double maxPageLockFraction) {
+        pageLockEscalation.set(maxPageLocks, maxPageLockFraction);
+    }
+
+    /**
+     * Enables or disables snapshot reads (multi-version concurrency control). While
+     * enabled, the previous versions of records changed by transactions are kept,
+     * and transactions started with beginReadOnlyTransaction read a snapshot of the
+     * database without taking any locks, so they neither block nor are blocked by
+     * writers. Should only be changed while no transactions are running.
+     */
+    public synchronized void setSnapshotReads(boolean enabled) {
+        if (enabled && this.versionStore == null) {
+            this.versionStore = new VersionStore();
+        } else if (!enabled) {
+            this.versionStore = null;
+        }
+    }
+
+    /**
+     * @return store of previous versions of records, or null if snapshot reads are
+     * disabled
+     */
+    public VersionStore getVersionStore() {
+        return versionStore;
+    }
+
+    /**
+     * Starts or stops looking for deadlocks between transactions in the background.
+     * Every `interval`, one transaction on each deadlock found is chosen by `policy`
+     * and rolled back; the operation it was waiting in throws DeadlockException.
+     * Rolling back requires the recovery manager: without it, the victim only
+     * releases its locks.
+     *
+     * @param interval time between searches for deadlocks, or 0 to stop
+     * @param unit unit of interval
+     * @param policy how to choose the transaction to abort on each deadlock
+     */
+    public synchronized void setDeadlockDetection(long interval, TimeUnit unit,
+                                                  DeadlockDetector.VictimPolicy policy) {
+        if (this.deadlockDetector != null) {
+            this.deadlockDetector.stop();
+            this.deadlockDetector = null;
+        }
+        if (interval > 0) {
+            this.deadlockDetector = new DeadlockDetector(lockManager, policy,
+                    recoveryManager::getLogBytesWritten);
+            this.deadlockDetector.start(interval, unit);
+        }
+    }
+
+    /**
+     * @return the background deadlock detector, or null if deadlocks are not detected
+     */
+    public synchronized DeadlockDetector getDeadlockDetector() {
+        return this.deadlockDetector;
+    }
+
     /**
      * @return Schema for _metadata.tables with fields:
      *   | field name   | field type
@@ -450,8 +604,10 @@ public class Database implements AutoCloseable {
         String tableName = normalize(metadata.tableName);
         LockContext tableContext = getTableContext(tableName);
         long page0 = DiskSpaceManager.getVirtualPageNum(metadata.partNum, 0);
-        PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext);
-        return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats);
+        FreeSpaceMap freeSpaceMap = freeSpaceMaps.computeIfAbsent(metadata.partNum, p -> new FreeSpaceMap());
+        PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext,
+                                             freeSpaceMap);
+        return new Table(metadata.tableName, metadata.schema, pd, tableContext, stats, versionStore);
     }
 
     /**
@@ -526,6 +682,26 @@ public class Database implements AutoCloseable {
         return result;
     }
 
+    /**
+     * Adds `entries` to `tree`. An empty tree is built bottom up from the sorted
+     * entries with BPlusTree::bulkLoad; otherwise the entries are inserted one by one.
+     */
+    private void loadIndex(BPlusTree tree, List<Pair<DataBox, RecordId>> entries) {
+        if (tree.scanAll().hasNext()) {
+            for (Pair<DataBox, RecordId> entry : entries) {
+                tree.put(entry.getFirst(), entry.getSecond());
+            }
+            return;
+        }
+        entries.sort((a, b) -> a.getFirst().compareTo(b.getFirst()));
+        for (int i = 1; i < entries.size(); ++i) {
+            if (entries.get(i).getFirst().equals(entries.get(i - 1).getFirst())) {
+                throw new BPlusTreeException("You inserted a duplicate key!");
+            }
+        }
+        tree.bulkLoad(entries.iterator(), 1.0f);
+    }
+
     // btree metadata -> btree object
     private BPlusTree indexFromMetadata(BPlusTreeMetadata metadata) {
         String tableName = normalize(metadata.getTableName());
@@ -546,7 +722,8 @@ public class Database implements AutoCloseable {
 
     // get the lock context for database/tableName
     private LockContext getTableContext(String tableName) {
-        return lockManager.databaseContext().childContext(normalize(tableName));
+        return lockManager.databaseContext().childContext(normalize(tableName),
+                ctx -> ctx.setAutoEscalation(pageLockEscalation));
     }
 
     // get the lock context for _metadata.tables/tableName
@@ -573,7 +750,26 @@ public class Database implements AutoCloseable {
      * @return the new Transaction
      */
     public synchronized Transaction beginTransaction() {
-        TransactionImpl t = new TransactionImpl(this.numTransactions, false);
+        return beginTransaction(null);
+    }
+
+    /**
+     * Start a new read-only transaction, which reads a snapshot of the database
+     * as of when it started, without taking locks. Snapshot reads must be enabled
+     * (see setSnapshotReads). The transaction may only modify its own temporary
+     * tables, and does not use indices (which only have the latest versions).
+     *
+     * @return the new Transaction
+     */
+    public synchronized Transaction beginReadOnlyTransaction() {
+        if (versionStore == null) {
+            throw new IllegalStateException("snapshot reads are not enabled");
+        }
+        return beginTransaction(versionStore.beginSnapshot());
+    }
+
+    private Transaction beginTransaction(VersionStore.Snapshot snapshot) {
+        TransactionImpl t = new TransactionImpl(this.numTransactions, false, snapshot);
         activeTransactions.register();
         if (activeTransactions.isTerminated()) {
             activeTransactions = new Phaser(1);
@@ -593,7 +789,7 @@ public class Database implements AutoCloseable {
     private synchronized Transaction beginRecoveryTransaction(Long transactionNum) {
         this.numTransactions = Math.max(this.numTransactions, transactionNum + 1);
 
-        TransactionImpl t = new TransactionImpl(transactionNum, true);
+        TransactionImpl t = new TransactionImpl(transactionNum, true, null);
         activeTransactions.register();
         if (activeTransactions.isTerminated()) {
             activeTransactions = new Phaser(1);
@@ -603,18 +799,26 @@ public class Database implements AutoCloseable {
     }
 
     private class TransactionContextImpl extends TransactionContext {
+        TransactionImpl transaction;
         long transNum;
         Map<String, String> aliases;
         Map<String, Table> tempTables;
         long tempTableCounter;
         boolean recoveryTransaction;
-
-        private TransactionContextImpl(long tNum, boolean recoveryTransaction) {
+        // snapshot read by this (read-only) transaction, or null
+        VersionStore.Snapshot snapshot;
+        // whether this transaction created or dropped a table or index
+        boolean schemaChanged;
+
+        private TransactionContextImpl(TransactionImpl transaction, long tNum, boolean recoveryTransaction,
+                                       VersionStore.Snapshot snapshot) {
+            this.transaction = transaction;
             this.transNum = tNum;
             this.aliases = new HashMap<>();
             this.tempTables = new HashMap<>();
             this.tempTableCounter = 0;
             this.recoveryTransaction = recoveryTransaction;
+            this.snapshot = snapshot;
         }
 
         @Override
@@ -622,6 +826,19 @@ public class Database implements AutoCloseable {
             return transNum;
         }
 
+        @Override
+        public VersionStore.Snapshot getSnapshot() {
+            return snapshot;
+        }
+
+        // Throws if this transaction is read-only, unless `tableName` is one of its
+        // temporary tables (null for changes not to a table).
+        void checkWritable(String tableName) {
+            if (snapshot == null) return;
+            if (tableName != null && tempTables.containsKey(aliases.getOrDefault(tableName, tableName))) return;
+            throw new DatabaseException("transaction " + transNum + " is read-only");
+        }
+
         @Override
         public int getWorkMemSize() {
             return Database.this.getWorkMem();
@@ -664,12 +881,15 @@ public class Database implements AutoCloseable {
 
         @Override
         public boolean indexExists(String tableName, String columnName) {
+            // indices only have the latest versions of records
+            if (snapshot != null) return false;
             if (aliases.containsKey(tableName)) tableName = aliases.get(tableName);
             return getColumnIndexMetadata(tableName, columnName) != null;
         }
 
         @Override
         public void updateIndexMetadata(BPlusTreeMetadata metadata) {
+            checkWritable(null);
             Record updated = metadata.toRecord();
             String tableName = normalize(metadata.getTableName());
             String columnName = normalize(metadata.getColName());
@@ -698,7 +918,7 @@ public class Database implements AutoCloseable {
             LockUtil.ensureSufficientLockHeld(getTableContext(tableName), LockType.S);
             Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tableName, columnName);
 
-            if (pair != null) {
+            if (pair != null && snapshot == null) {
                 BPlusTree tree = indexFromMetadata(pair.getSecond());
                 return tab.recordIterator(tree.scanAll());
             } else {
@@ -713,6 +933,10 @@ public class Database implements AutoCloseable {
 
         @Override
         public Iterator<Record> sortedScanFrom(String tableName, String columnName, DataBox startValue) {
+            if (snapshot != null) {
+                return scanWhere(new SortOperator(this, new SequentialScanOperator(this, tableName), columnName),
+                                 columnName, PredicateOperator.GREATER_THAN_EQUALS, startValue);
+            }
             Table tab = getTable(tableName);
             tableName = tab.getName();
             BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
@@ -724,6 +948,10 @@ public class Database implements AutoCloseable {
 
         @Override
         public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) {
+            if (snapshot != null) {
+                return scanWhere(new SequentialScanOperator(this, tableName), columnName,
+                                 PredicateOperator.EQUALS, key);
+            }
             Table tab = getTable(tableName);
             tableName = tab.getName();
             BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
@@ -737,13 +965,23 @@ public class Database implements AutoCloseable {
 
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
+            if (snapshot != null) {
+                return lookupKey(tableName, columnName, key).hasNext();
+            }
             tableName = aliases.getOrDefault(tableName, tableName);
             BPlusTree tree = indexFromMetadata(getColumnIndexMetadata(tableName, columnName).getSecond());
             return tree.get(key).isPresent();
         }
 
+        // Filters `source` with a select, for snapshot reads that would otherwise use an index.
+        private Iterator<Record> scanWhere(QueryOperator source, String columnName,
+                                           PredicateOperator operator, DataBox value) {
+            return new SelectOperator(source, columnName, operator, value).iterator();
+        }
+
         @Override
         public RecordId addRecord(String tableName, Record record) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             if (tab == null) {
@@ -762,8 +1000,43 @@ public class Database implements AutoCloseable {
             return rid;
         }
 
+        @Override
+        public int bulkLoad(String tableName, Iterator<Record> records) {
+            checkWritable(tableName);
+            Table tab = getTable(tableName);
+            if (tab == null) {
+                throw new DatabaseException("table `" + tableName + "` does not exist!");
+            }
+            tableName = tab.getName();
+            List<String> colNames = tab.getSchema().getFieldNames();
+            List<BPlusTree> trees = new ArrayList<>();
+            List<Integer> columns = new ArrayList<>();
+            List<List<Pair<DataBox, RecordId>>> entries = new ArrayList<>();
+            for (Pair<RecordId, BPlusTreeMetadata> p: getTableIndicesMetadata(tableName)) {
+                BPlusTree tree = indexFromMetadata(p.getSecond());
+                trees.add(tree);
+                columns.add(colNames.indexOf(tree.getMetadata().getColName()));
+                entries.add(new ArrayList<>());
+            }
+
+            // collect the index entries as the pages are filled, rather than
+            // reading every record back afterwards
+            int numRecords = tab.bulkLoad(records, (record, rid) -> {
+                for (int i = 0; i < trees.size(); ++i) {
+                    entries.get(i).add(new Pair<>(record.getValue(columns.get(i)), rid));
+                }
+            });
+            for (int i = 0; i < trees.size(); ++i) {
+                loadIndex(trees.get(i), entries.get(i));
+            }
+            // refresh histograms once, instead of after every record
+            tab.buildStatistics(10);
+            return numRecords;
+        }
+
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Schema s = tab.getSchema();
@@ -786,6 +1059,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public RecordId updateRecord(String tableName, RecordId rid, Record updated) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Schema s = tab.getSchema();
@@ -809,6 +1083,7 @@ public class Database implements AutoCloseable {
         public void updateRecordWhere(String tableName, String targetColumnName,
                                       UnaryOperator<DataBox> targetValue,
                                       String predColumnName, PredicateOperator predOperator, DataBox predValue) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -831,6 +1106,7 @@ public class Database implements AutoCloseable {
         }
 
         public void updateRecordWhere(String tableName, String targetColumnName, Function<Record, DataBox> targetValue, Function<Record, DataBox> condition) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -852,6 +1128,7 @@ public class Database implements AutoCloseable {
         @Deprecated
         public void deleteRecordWhere(String tableName, String predColumnName,
                                       PredicateOperator predOperator, DataBox predValue) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -871,6 +1148,7 @@ public class Database implements AutoCloseable {
         }
 
         public void deleteRecordWhere(String tableName, Function<Record, DataBox> condition) {
+            checkWritable(tableName);
             Table tab = getTable(tableName);
             tableName = tab.getName();
             Iterator<RecordId> recordIds = tab.ridIterator();
@@ -933,7 +1211,9 @@ public class Database implements AutoCloseable {
             try {
                 // TODO(proj4_part2)
                 //bottom-up release, top-down acquire
-                TransactionContext transactionContext=TransactionContext.getTransaction();
+                // not the thread's transaction: restart recovery ends transactions from
+                // the log without setting them on the thread
+                TransactionContext transactionContext=this;
                 List<Lock> lockList=lockManager.getLocks(transactionContext);
 
                 for(int i=lockList.size()-1;i>=0;i--){
@@ -953,6 +1233,16 @@ public class Database implements AutoCloseable {
             }
         }
 
+        @Override
+        public void deadlockAbort() {
+            if (recoveryManager instanceof DummyRecoveryManager) {
+                // no recovery manager to undo changes with, but the locks still have to go
+                transaction.cleanup();
+            } else {
+                transaction.rollback();
+            }
+        }
+
         @Override
         public String toString() {
             return "Transaction Context for Transaction " + transNum;
@@ -987,24 +1277,24 @@ public class Database implements AutoCloseable {
     private class TransactionImpl extends Transaction {
         private long transNum;
         private boolean recoveryTransaction;
-        private TransactionContext transactionContext;
+        private TransactionContextImpl transactionContext;
 
-        private TransactionImpl(long transNum, boolean recovery) {
+        private TransactionImpl(long transNum, boolean recovery, VersionStore.Snapshot snapshot) {
             this.transNum = transNum;
             this.recoveryTransaction = recovery;
-            this.transactionContext = new TransactionContextImpl(transNum, recovery);
+            this.transactionContext = new TransactionContextImpl(this, transNum, recovery, snapshot);
         }
 
         @Override
         public Optional<QueryPlan> execute(String statement) {
-            RookieParser parser = new RookieParser(new ByteArrayInputStream(statement.getBytes()));
+            String key = StatementCache.normalize(statement);
             ASTExecutableStatement stmt;
             try {
-                stmt = parser.executable_stmt();
+                stmt = statementCache.parse(key, statement);
             } catch (ParseException p) {
                 throw new DatabaseException(p.getMessage());
             }
-            ExecutableStatementVisitor visitor = new ExecutableStatementVisitor();
+            ExecutableStatementVisitor visitor = new ExecutableStatementVisitor(statementCache, key);
             stmt.jjtAccept(visitor, null);
             Optional<QueryPlan> qp = visitor.execute(this, System.out);
             return qp;
@@ -1014,6 +1304,10 @@ public class Database implements AutoCloseable {
         protected void startCommit() {
             transactionContext.deleteAllTempTables();
             recoveryManager.commit(transNum);
+            VersionStore versions = versionStore;
+            if (versions != null) {
+                versions.commit(transNum);
+            }
             this.cleanup();
         }
 
@@ -1033,6 +1327,23 @@ public class Database implements AutoCloseable {
                 recoveryManager.end(transNum);
             }
 
+            // the transaction has been rolled back by now if it did not commit, so any
+            // versions it saved are dropped (before its locks are released)
+            VersionStore versions = versionStore;
+            if (versions != null) {
+                if (transactionContext.snapshot != null) {
+                    versions.endSnapshot(transactionContext.snapshot);
+                } else {
+                    versions.abort(transNum);
+                }
+            }
+
+            // plans cached since the schema change are made for the schema as seen by
+            // this transaction, which other transactions only see if it committed
+            if (transactionContext.schemaChanged) {
+                statementCache.invalidatePlans();
+            }
+
             transactionContext.close();
             activeTransactions.arriveAndDeregister();
         }
@@ -1042,8 +1353,15 @@ public class Database implements AutoCloseable {
             return transNum;
         }
 
+        // drops the cached plans, now and again when this transaction ends (see cleanup)
+        private void schemaChanged() {
+            transactionContext.schemaChanged = true;
+            statementCache.invalidatePlans();
+        }
+
         @Override
         public void createTable(Schema s, String tableName) {
+            transactionContext.checkWritable(null);
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1059,14 +1377,17 @@ public class Database implements AutoCloseable {
             TableMetadata metadata = new TableMetadata(tableName);
             metadata.partNum = diskSpaceManager.allocPart();
             metadata.pageNum = diskSpaceManager.allocPage(metadata.partNum);
+            freeSpaceMaps.remove(metadata.partNum);
             metadata.schema = s;
             synchronized (tableMetadata) {
                 tableMetadata.addRecord(metadata.toRecord());
             }
+            schemaChanged();
         }
 
         @Override
         public void dropTable(String tableName) {
+            transactionContext.checkWritable(null);
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1089,10 +1410,13 @@ public class Database implements AutoCloseable {
                 metadata = new TableMetadata(tableMetadata.deleteRecord(rid));
             }
             bufferManager.freePart(metadata.partNum);
+            freeSpaceMaps.remove(metadata.partNum);
+            schemaChanged();
         }
 
         @Override
         public void dropAllTables() {
+            transactionContext.checkWritable(null);
             // For something as drastic as dropping all tables we'll want
             // to get an exclusive lock on the entire database.
             LockUtil.ensureSufficientLockHeld(lockManager.databaseContext(), LockType.X);
@@ -1103,6 +1427,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void createIndex(String tableName, String columnName, boolean bulkLoad) {
+            transactionContext.checkWritable(null);
             if (tableName.contains(".") || tableName.contains(" ") || tableName.length() == 0) {
                 throw new IllegalArgumentException("name of new table may not contain '.' or ' ', or be the empty string");
             }
@@ -1139,14 +1464,19 @@ public class Database implements AutoCloseable {
             synchronized (indexMetadata) {
                 indexMetadata.addRecord(indexEntry);
             }
+            schemaChanged();
             BPlusTreeMetadata metadata = new BPlusTreeMetadata(indexEntry);
             BPlusTree tree = indexFromMetadata(metadata);
 
             // load data into index
+            Table table = tableFromMetadata(tableMetadata);
             if (bulkLoad) {
-                throw new UnsupportedOperationException("not implemented");
+                List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+                for (RecordId rid : (Iterable<RecordId>) table::ridIterator) {
+                    entries.add(new Pair<>(table.getRecord(rid).getValue(columnIndex), rid));
+                }
+                loadIndex(tree, entries);
             } else {
-                Table table = tableFromMetadata(tableMetadata);
                 for (RecordId rid : (Iterable<RecordId>) table::ridIterator) {
                     Record record = table.getRecord(rid);
                     tree.put(record.getValue(columnIndex), rid);
@@ -1156,6 +1486,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropIndex(String tableName, String columnName) {
+            transactionContext.checkWritable(null);
             // We need exclusive write access on an index to drop it.
             LockUtil.ensureSufficientLockHeld(getColumnIndexMetadataContext(tableName, columnName), LockType.X);
             Pair<RecordId, BPlusTreeMetadata> pair = getColumnIndexMetadata(tableName, columnName);
@@ -1164,6 +1495,7 @@ public class Database implements AutoCloseable {
             }
             indexMetadata.deleteRecord(pair.getFirst());
             bufferManager.freePart(pair.getSecond().getPartNum());
+            schemaChanged();
         }
 
         @Override
@@ -1181,6 +1513,11 @@ public class Database implements AutoCloseable {
             transactionContext.addRecord(tableName, values);
         }
 
+        @Override
+        public int bulkLoad(String tableName, Iterator<Record> records) {
+            return transactionContext.bulkLoad(tableName, records);
+        }
+
         @Override
         public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {
             update(tableName, targetColumnName, targetValue, null, null, null);
@@ -1282,18 +1619,6 @@ public class Database implements AutoCloseable {
                 Type fieldType = Type.fromString(parts[1]);
                 schema.add(fieldName, fieldType);
             }
-            List<Record> rows = new ArrayList<>();
-            String row = buffered.readLine();
-            while (row != null) {
-                String[] values = row.split(",");
-                List<DataBox> parsed = new ArrayList<>();
-                assert values.length == schema.size();
-                for (int i = 0; i < values.length; i++) {
-                    parsed.add(DataBox.fromString(schema.getFieldType(i), values[i]));
-                }
-                rows.add(new Record(parsed));
-                row = buffered.readLine();
-            }
 
             try(Transaction t = beginTransaction()) {
                 t.createTable(schema, name);
@@ -1302,21 +1627,11 @@ public class Database implements AutoCloseable {
                 throw e;
             }
 
-            // store table stats before inserting rows
-            Pair<RecordId, TableMetadata> pair = this.getTableMetadata(name);
-            if (pair == null) {
-                throw new DatabaseException("Table `" + name + "` does not exist!");
-            }
-            Table tb = tableFromMetadata(pair.getSecond());
-
-            try (Transaction t = beginTransaction()) {
-                for (Record r : rows) {
-                    t.insert(name, r);
-                }
+            // bulk load also refreshes the histograms, so that query cost estimation works
+            try (Transaction t = beginTransaction();
+                 CSVRecordIterator rows = new CSVRecordIterator(buffered, schema)) {
+                t.bulkLoad(name, rows);
             }
-
-            // refresh histograms so that query cost estimation works
-            tb.buildStatistics(10);
             return false;
     }
 }
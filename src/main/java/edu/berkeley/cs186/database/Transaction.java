@@ -4,9 +4,13 @@ import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.BoolDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.CSVRecordIterator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
@@ -205,6 +209,33 @@ public abstract class Transaction implements AutoCloseable {
      */
     public abstract void insert(String tableName, Record record);
 
+    /**
+     * Inserts many rows into a table at once. Pages are filled directly rather than
+     * record by record, indices are built after the records are added (bottom up, if
+     * they are empty), and the statistics of the table are refreshed once at the end.
+     *
+     * @param tableName name of table to insert into
+     * @param records the records to be inserted
+     * @return number of records inserted
+     */
+    public abstract int bulkLoad(String tableName, Iterator<Record> records);
+
+    /**
+     * Bulk loads the rows of a CSV file into a table. Equivalent to
+     *      COPY tableName FROM 'fileName'
+     * Values are separated by commas, in the order of the columns of the table. A
+     * first line naming the columns of the table is skipped.
+     *
+     * @param tableName name of table to insert into
+     * @param fileName path of the CSV file
+     * @return number of records inserted
+     */
+    public int copyFrom(String tableName, String fileName) throws IOException {
+        try (CSVRecordIterator records = new CSVRecordIterator(new File(fileName), getSchema(tableName))) {
+            return bulkLoad(tableName, records);
+        }
+    }
+
     /**
      * Updates rows in a table. Equivalent to
      *      UPDATE tableName SET targetColumnName = targetValue(targetColumnName)
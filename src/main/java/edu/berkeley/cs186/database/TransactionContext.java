@@ -8,6 +8,7 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.VersionStore;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
@@ -161,6 +162,13 @@ public abstract class TransactionContext implements AutoCloseable {
     // Record Operations ///////////////////////////////////////////////////////
     public abstract RecordId addRecord(String tableName, Record record);
 
+    /**
+     * Adds all of `records` to `tableName` with Table::bulkLoad, then adds them to the
+     * indices of the table, and refreshes its statistics once.
+     * @return number of records added
+     */
+    public abstract int bulkLoad(String tableName, Iterator<Record> records);
+
     public abstract RecordId deleteRecord(String tableName, RecordId rid);
 
     public abstract void deleteRecordWhere(String tableName, String predColumnName, PredicateOperator predOperator,
@@ -270,6 +278,23 @@ public abstract class TransactionContext implements AutoCloseable {
         }
     }
 
+    /**
+     * Called on the transaction's own thread when the transaction was chosen as the
+     * victim of a deadlock while waiting for a lock, right before the lock manager
+     * throws DeadlockException. Does nothing by default; transactions of a Database
+     * roll themselves back, releasing their locks.
+     */
+    public void deadlockAbort() {}
+
+    /**
+     * @return the snapshot of the database that this transaction reads without
+     * taking locks, or null if the transaction reads the latest versions of records
+     * under locks (see VersionStore)
+     */
+    public VersionStore.Snapshot getSnapshot() {
+        return null;
+    }
+
     /**
      * @return if the transaction is blocked
      */
@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.cli;
 
+import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -104,6 +105,9 @@ public class PrettyPrinter {
     }
 
     public static DataBox parseLiteral(String literal) {
+        if (literal.equals("?")) {
+            throw new DatabaseException("parameters (?) can only be used in prepared statements");
+        }
         String literalLower = literal.toLowerCase();
         if(literal.charAt(0) == '\'') {
             String unescaped = literal.substring(1, literal.length() - 1);
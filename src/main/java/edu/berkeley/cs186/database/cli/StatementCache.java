@@ -0,0 +1,219 @@
+package edu.berkeley.cs186.database.cli;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.cli.parser.*;
+import edu.berkeley.cs186.database.cli.visitor.ExecutableStatementVisitor;
+import edu.berkeley.cs186.database.query.PlanCache;
+
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+/**
+ * Caches what can be reused between executions of the same SQL statement: a
+ * least recently used cache of parsed statements, and a PlanCache of the plans
+ * of SELECT statements, both keyed by the normalized text of the statement
+ * (see normalize). Also keeps the statements prepared with PREPARE, so that
+ * EXECUTE can bind their ? parameters without parsing them again.
+ *
+ * The parsed statements are shared by every transaction executing them, and
+ * must not be modified, other than to bind the parameters of prepared
+ * statements (see bind).
+ */
+public class StatementCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    // normalized statement -> parsed statement, least recently used first
+    private final LinkedHashMap<String, ASTExecutableStatement> statements;
+    // name -> prepared statement
+    private final Map<String, PreparedStatement> prepared = new HashMap<>();
+    private final PlanCache plans;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * A statement prepared with PREPARE name AS statement.
+     */
+    private static class PreparedStatement {
+        private Node statement;
+        // key of the PREPARE statement in the plan cache, or null if its plans
+        // aren't cached
+        private String planKey;
+        // the ? literals of the statement, in order
+        private List<ASTLiteral> parameters = new ArrayList<>();
+
+        private PreparedStatement(Node statement, String planKey) {
+            this.statement = statement;
+            this.planKey = planKey;
+            findParameters(statement, this.parameters);
+        }
+
+        private static void findParameters(Node node, List<ASTLiteral> parameters) {
+            if (node instanceof ASTLiteral && "?".equals(((ASTLiteral) node).jjtGetValue())) {
+                parameters.add((ASTLiteral) node);
+            }
+            for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+                findParameters(node.jjtGetChild(i), parameters);
+            }
+        }
+    }
+
+    /**
+     * @param capacity the maximum number of parsed statements and of plans to
+     *                 keep
+     */
+    public StatementCache(int capacity) {
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<String, ASTExecutableStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ASTExecutableStatement> eldest) {
+                return size() > StatementCache.this.capacity;
+            }
+        };
+        this.plans = new PlanCache(capacity);
+    }
+
+    /**
+     * Normalizes a statement for use as a cache key: runs of whitespace are
+     * collapsed into a single space, and leading and trailing whitespace and
+     * semicolons are dropped, except in string literals and quoted
+     * identifiers. Case is kept, as names of tables are case sensitive.
+     */
+    public static String normalize(String statement) {
+        StringBuilder result = new StringBuilder(statement.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < statement.length(); i++) {
+            char c = statement.charAt(i);
+            if (quote != 0) {
+                // doubled quotes are escaped quotes, which end the quoted
+                // text and start it again
+                if (c == quote) quote = 0;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '[') {
+                quote = ']';
+            }
+            if (space && result.length() > 0) result.append(' ');
+            space = false;
+            result.append(c);
+        }
+        int end = result.length();
+        while (end > 0 && (result.charAt(end - 1) == ';' || result.charAt(end - 1) == ' ')) end--;
+        result.setLength(end);
+        return result.toString();
+    }
+
+    /**
+     * Parses a statement, or returns the parsed statement cached under its
+     * normalized text.
+     *
+     * @param key the normalized text of statement
+     */
+    public ASTExecutableStatement parse(String key, String statement) throws ParseException {
+        synchronized (this) {
+            ASTExecutableStatement stmt = this.statements.get(key);
+            if (stmt != null) {
+                hits++;
+                return stmt;
+            }
+            misses++;
+        }
+        RookieParser parser = new RookieParser(new ByteArrayInputStream(statement.getBytes()));
+        ASTExecutableStatement stmt = parser.executable_stmt();
+        synchronized (this) {
+            this.statements.put(key, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * Prepares statement under name, replacing any statement prepared under
+     * the same name.
+     *
+     * @param planKey the key to cache the plans of statement under, or null to
+     *                not cache them
+     */
+    public synchronized void prepare(String name, Node statement, String planKey) {
+        this.prepared.put(name.toLowerCase(), new PreparedStatement(statement, planKey));
+    }
+
+    /**
+     * Binds the parameters of the statement prepared under name to arguments,
+     * and visits it. The values of the parameters are read while the statement
+     * is visited, so executions of the same prepared statement only hold its
+     * lock while they are being bound.
+     *
+     * @param arguments literals to bind the ? parameters to, in order
+     * @return the visitor of the bound statement, ready to execute
+     */
+    public ExecutableStatementVisitor bind(String name, List<String> arguments) {
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = this.prepared.get(name.toLowerCase());
+        }
+        if (statement == null) {
+            throw new DatabaseException("no prepared statement named `" + name + "`");
+        }
+        if (arguments.size() != statement.parameters.size()) {
+            throw new DatabaseException("prepared statement `" + name + "` takes " +
+                    statement.parameters.size() + " parameters, got " + arguments.size());
+        }
+        ExecutableStatementVisitor visitor = new ExecutableStatementVisitor(this, statement.planKey);
+        // the same statement is prepared again under the same name when the
+        // same PREPARE is executed again, so lock the statement itself
+        synchronized (statement.statement) {
+            try {
+                for (int i = 0; i < arguments.size(); i++) {
+                    statement.parameters.get(i).jjtSetValue(arguments.get(i));
+                }
+                statement.statement.jjtAccept(visitor, null);
+            } finally {
+                for (ASTLiteral parameter: statement.parameters) {
+                    parameter.jjtSetValue("?");
+                }
+            }
+        }
+        return visitor;
+    }
+
+    /**
+     * @return the cache of the plans of SELECT statements
+     */
+    public PlanCache getPlanCache() {
+        return this.plans;
+    }
+
+    /**
+     * Drops the cached plans, which may no longer be valid after a change to
+     * the schema or indices of the database. Parsed statements only depend on
+     * the text of the statement, and are kept.
+     */
+    public void invalidatePlans() {
+        this.plans.invalidate();
+    }
+
+    /**
+     * @return the number of parsed statements in the cache
+     */
+    public synchronized int size() {
+        return this.statements.size();
+    }
+
+    /**
+     * @return the number of statements found parsed in the cache
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of statements that had to be parsed
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+}
@@ -0,0 +1,19 @@
+/* Generated By:JJTree: Do not edit this line. ASTCopyStatement.java Version 7.0 */
+/* JavaCCOptions:MULTI=true,NODE_USES_PARSER=false,VISITOR=true,TRACK_TOKENS=false,NODE_PREFIX=AST,NODE_EXTENDS=,NODE_FACTORY=,SUPPORT_CLASS_VISIBILITY_PUBLIC=true */
+package edu.berkeley.cs186.database.cli.parser;
+
+public
+class ASTCopyStatement extends SimpleNode {
+  public ASTCopyStatement(int id) {
+    super(id);
+  }
+
+  public ASTCopyStatement(RookieParser p, int id) {
+    super(p, id);
+  }
+
+  /** Accept the visitor. **/
+  public void jjtAccept(RookieParserVisitor visitor, Object data) {
+    visitor.visit(this, data);
+  }
+}
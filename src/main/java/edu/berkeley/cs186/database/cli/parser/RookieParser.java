@@ -5,6 +5,19 @@ package edu.berkeley.cs186.database.cli.parser;
 @SuppressWarnings("all")
 public class RookieParser/*@bgen(jjtree)*/implements RookieParserTreeConstants, RookieParserConstants {/*@bgen(jjtree)*/
   protected JJTRookieParserState jjtree = new JJTRookieParserState();
+    // COPY is not a reserved word, but an identifier starting a statement
+    private boolean isCopy() {
+        return getToken(1).kind == IDENTIFIER && getToken(1).image.equalsIgnoreCase("copy");
+    }
+
+    // Neither are PREPARE and EXECUTE
+    private boolean isPrepare() {
+        return getToken(1).kind == IDENTIFIER && getToken(1).image.equalsIgnoreCase("prepare");
+    }
+
+    private boolean isExecute() {
+        return getToken(1).kind == IDENTIFIER && getToken(1).image.equalsIgnoreCase("execute");
+    }
 
   final public ASTSQLStatementList sql_stmt_list() throws ParseException {/*@bgen(jjtree) SQLStatementList */
   ASTSQLStatementList jjtn000 = new ASTSQLStatementList(JJTSQLSTATEMENTLIST);
@@ -54,7 +67,8 @@ public class RookieParser/*@bgen(jjtree)*/implements RookieParserTreeConstants,
         case K_SAVEPOINT:
         case K_ROLLBACK:
         case K_RELEASE:
-        case K_EXPLAIN:{
+        case K_EXPLAIN:
+        case IDENTIFIER:{
           ;
           break;
           }
@@ -168,8 +182,16 @@ if (jjtc000) {
               }
             default:
               jj_la1[6] = jj_gen;
-              jj_consume_token(-1);
-              throw new ParseException();
+              if (isCopy()) {
+                copy_stmt();
+              } else if (isPrepare()) {
+                prepare_stmt();
+              } else if (isExecute()) {
+                execute_stmt();
+              } else {
+                jj_consume_token(-1);
+                throw new ParseException();
+              }
             }
           }
         }
@@ -243,8 +265,16 @@ if (jjtc000) {
                 }
               default:
                 jj_la1[9] = jj_gen;
-                jj_consume_token(-1);
-                throw new ParseException();
+                if (isCopy()) {
+                  copy_stmt();
+                } else if (isPrepare()) {
+                  prepare_stmt();
+                } else if (isExecute()) {
+                  execute_stmt();
+                } else {
+                  jj_consume_token(-1);
+                  throw new ParseException();
+                }
               }
             }
           }
@@ -1248,7 +1278,8 @@ if (jjtc000) {
           case K_NOT:
           case NUMERIC_LITERAL:
           case STRING_LITERAL:
-          case IDENTIFIER:{
+          case IDENTIFIER:
+          case PARAM:{
             expression();
             switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
             case K_AS:{
@@ -1490,7 +1521,8 @@ if (jjtc000) {
       case FALSE:
       case TRUE:
       case NUMERIC_LITERAL:
-      case STRING_LITERAL:{
+      case STRING_LITERAL:
+      case PARAM:{
         literal();
         comparison_operator();
         column_name();
@@ -1618,6 +1650,10 @@ if (jjtc000) {
         t = jj_consume_token(FALSE);
         break;
         }
+      case PARAM:{
+        t = jj_consume_token(PARAM);
+        break;
+        }
       default:
         jj_la1[51] = jj_gen;
         jj_consume_token(-1);
@@ -2134,7 +2170,8 @@ if (jjtc000) {
       case K_NOT:
       case NUMERIC_LITERAL:
       case STRING_LITERAL:
-      case IDENTIFIER:{
+      case IDENTIFIER:
+      case PARAM:{
         switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
         case STAR:{
           t = jj_consume_token(STAR);
@@ -2150,7 +2187,8 @@ jjtn000.value = t.image;
         case K_NOT:
         case NUMERIC_LITERAL:
         case STRING_LITERAL:
-        case IDENTIFIER:{
+        case IDENTIFIER:
+        case PARAM:{
           expression();
           label_19:
           while (true) {
@@ -2253,6 +2291,141 @@ if (jjtc000) {
     }
 }
 
+  final public void copy_stmt() throws ParseException {/*@bgen(jjtree) CopyStatement */
+  ASTCopyStatement jjtn000 = new ASTCopyStatement(JJTCOPYSTATEMENT);
+  boolean jjtc000 = true;
+  jjtree.openNodeScope(jjtn000);
+    try {
+      jj_consume_token(IDENTIFIER);
+      identifier();
+      jj_consume_token(K_FROM);
+      literal();
+    } catch (Throwable jjte000) {
+if (jjtc000) {
+        jjtree.clearNodeScope(jjtn000);
+        jjtc000 = false;
+      } else {
+        jjtree.popNode();
+      }
+      if (jjte000 instanceof RuntimeException) {
+        {if (true) throw (RuntimeException)jjte000;}
+      }
+      if (jjte000 instanceof ParseException) {
+        {if (true) throw (ParseException)jjte000;}
+      }
+      {if (true) throw (Error)jjte000;}
+    } finally {
+if (jjtc000) {
+        jjtree.closeNodeScope(jjtn000, true);
+      }
+    }
+}
+
+  final public void prepare_stmt() throws ParseException {/*@bgen(jjtree) PrepareStatement */
+  ASTPrepareStatement jjtn000 = new ASTPrepareStatement(JJTPREPARESTATEMENT);
+  boolean jjtc000 = true;
+  jjtree.openNodeScope(jjtn000);
+    try {
+      jj_consume_token(IDENTIFIER);
+      identifier();
+      jj_consume_token(K_AS);
+      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+      case K_WITH:
+      case K_SELECT:{
+        select_stmt();
+        break;
+        }
+      case K_INSERT:{
+        insert_stmt();
+        break;
+        }
+      case K_DELETE:{
+        delete_stmt();
+        break;
+        }
+      case K_UPDATE:{
+        update_stmt();
+        break;
+        }
+      default:
+        jj_la1[65] = jj_gen;
+        jj_consume_token(-1);
+        throw new ParseException();
+      }
+    } catch (Throwable jjte000) {
+if (jjtc000) {
+        jjtree.clearNodeScope(jjtn000);
+        jjtc000 = false;
+      } else {
+        jjtree.popNode();
+      }
+      if (jjte000 instanceof RuntimeException) {
+        {if (true) throw (RuntimeException)jjte000;}
+      }
+      if (jjte000 instanceof ParseException) {
+        {if (true) throw (ParseException)jjte000;}
+      }
+      {if (true) throw (Error)jjte000;}
+    } finally {
+if (jjtc000) {
+        jjtree.closeNodeScope(jjtn000, true);
+      }
+    }
+}
+
+  final public void execute_stmt() throws ParseException {/*@bgen(jjtree) ExecuteStatement */
+  ASTExecuteStatement jjtn000 = new ASTExecuteStatement(JJTEXECUTESTATEMENT);
+  boolean jjtc000 = true;
+  jjtree.openNodeScope(jjtn000);
+    try {
+      jj_consume_token(IDENTIFIER);
+      identifier();
+      switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+      case OPEN_PAR:{
+        jj_consume_token(OPEN_PAR);
+        literal();
+        label_20:
+        while (true) {
+          switch ((jj_ntk==-1)?jj_ntk_f():jj_ntk) {
+          case COMMA:{
+            ;
+            break;
+            }
+          default:
+            jj_la1[66] = jj_gen;
+            break label_20;
+          }
+          jj_consume_token(COMMA);
+          literal();
+        }
+        jj_consume_token(CLOSE_PAR);
+        break;
+        }
+      default:
+        jj_la1[67] = jj_gen;
+        ;
+      }
+    } catch (Throwable jjte000) {
+if (jjtc000) {
+        jjtree.clearNodeScope(jjtn000);
+        jjtc000 = false;
+      } else {
+        jjtree.popNode();
+      }
+      if (jjte000 instanceof RuntimeException) {
+        {if (true) throw (RuntimeException)jjte000;}
+      }
+      if (jjte000 instanceof ParseException) {
+        {if (true) throw (ParseException)jjte000;}
+      }
+      {if (true) throw (Error)jjte000;}
+    } finally {
+if (jjtc000) {
+        jjtree.closeNodeScope(jjtn000, true);
+      }
+    }
+}
+
   private boolean jj_2_1(int xla)
  {
     jj_la = xla; jj_lastpos = jj_scanpos = token;
@@ -2537,7 +2710,9 @@ if (jjtc000) {
     jj_scanpos = xsp;
     if (!jj_scan_token(24)) return false;
     jj_scanpos = xsp;
-    if (jj_scan_token(23)) return true;
+    if (!jj_scan_token(23)) return false;
+    jj_scanpos = xsp;
+    if (jj_scan_token(71)) return true;
     return false;
   }
 
@@ -2609,7 +2784,7 @@ if (jjtc000) {
   private Token jj_scanpos, jj_lastpos;
   private int jj_la;
   private int jj_gen;
-  final private int[] jj_la1 = new int[65];
+  final private int[] jj_la1 = new int[68];
   static private int[] jj_la1_0;
   static private int[] jj_la1_1;
   static private int[] jj_la1_2;
@@ -2619,13 +2794,13 @@ if (jjtc000) {
 	   jj_la1_init_2();
 	}
 	private static void jj_la1_init_0() {
-	   jj_la1_0 = new int[] {0x20,0x20,0xd0000000,0x20,0x10000000,0x0,0xc0000000,0x10000000,0x0,0xc0000000,0x20,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x200,0x0,0x200,0x10000000,0x0,0x0,0x200,0x0,0x0,0x0,0x200,0x80,0x200,0x20000080,0x80,0x200,0x0,0x0,0x180000,0x20000000,0x400,0x3806080,0x400,0x400,0x40,0x400,0x0,0x40,0x20000000,0x1806000,0x6000,0x6000,0x1806000,0x7f8000,0x4000000,0x8000000,0x2000000,0x1c00,0x6000,0x8000000,0x4000000,0x2000000,0x200,0x3806480,0x3806480,0x6080,};
+	   jj_la1_0 = new int[] {0x20,0x20,0xd0000000,0x20,0x10000000,0x0,0xc0000000,0x10000000,0x0,0xc0000000,0x20,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x200,0x0,0x200,0x10000000,0x0,0x0,0x200,0x0,0x0,0x0,0x200,0x80,0x200,0x20000080,0x80,0x200,0x0,0x0,0x180000,0x20000000,0x400,0x3806080,0x400,0x400,0x40,0x400,0x0,0x40,0x20000000,0x1806000,0x6000,0x6000,0x1806000,0x7f8000,0x4000000,0x8000000,0x2000000,0x1c00,0x6000,0x8000000,0x4000000,0x2000000,0x200,0x3806480,0x3806480,0x6080,0xd0000000,0x200,0x80,};
 	}
 	private static void jj_la1_init_1() {
-	   jj_la1_1 = new int[] {0x0,0x0,0x1b71800a,0x0,0x8,0x8000,0x1b710002,0x8,0x8000,0x1b610002,0x0,0x1000000,0x800000,0x1000000,0x4000000,0x800000,0x600000,0x800000,0x0,0x0,0x100,0x0,0x0,0x200,0x100,0x0,0x1000,0x0,0x4000,0x0,0x0,0x0,0x0,0x0,0x0,0x60,0x20,0x0,0x0,0x0,0x800,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x400,0x800,0x0,0x0,0x400,0x200,0x800,0x0,0x800,0x800,0x0,};
+	   jj_la1_1 = new int[] {0x0,0x0,0x1b71800a,0x0,0x8,0x8000,0x1b710002,0x8,0x8000,0x1b610002,0x0,0x1000000,0x800000,0x1000000,0x4000000,0x800000,0x600000,0x800000,0x0,0x0,0x100,0x0,0x0,0x200,0x100,0x0,0x1000,0x0,0x4000,0x0,0x0,0x0,0x0,0x0,0x0,0x60,0x20,0x0,0x0,0x0,0x800,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x200,0x400,0x800,0x0,0x0,0x400,0x200,0x800,0x0,0x800,0x800,0x0,0xa,0x0,0x0,};
 	}
 	private static void jj_la1_init_2() {
-	   jj_la1_2 = new int[] {0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x62,0x40,0x40,0x0,0x0,0x40,0x0,0x0,0x62,0x0,0x0,0x22,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x62,0x62,0x0,};
+	   jj_la1_2 = new int[] {0x0,0x0,0x40,0x0,0x0,0x0,0x40,0x0,0x0,0x40,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x1,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0xe2,0x40,0x40,0x0,0x0,0x40,0x0,0x0,0xe2,0x0,0x0,0xa2,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0x0,0xe2,0xe2,0x0,0x0,0x0,0x0,};
 	}
   final private JJCalls[] jj_2_rtns = new JJCalls[12];
   private boolean jj_rescan = false;
@@ -2642,7 +2817,7 @@ if (jjtc000) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 68; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2658,7 +2833,7 @@ if (jjtc000) {
 	 jj_ntk = -1;
 	 jjtree.reset();
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 68; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2669,7 +2844,7 @@ if (jjtc000) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 68; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2689,7 +2864,7 @@ if (jjtc000) {
 	 jj_ntk = -1;
 	 jjtree.reset();
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 68; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2699,7 +2874,7 @@ if (jjtc000) {
 	 token = new Token();
 	 jj_ntk = -1;
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 68; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2710,7 +2885,7 @@ if (jjtc000) {
 	 jj_ntk = -1;
 	 jjtree.reset();
 	 jj_gen = 0;
-	 for (int i = 0; i < 65; i++) jj_la1[i] = -1;
+	 for (int i = 0; i < 68; i++) jj_la1[i] = -1;
 	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();
   }
 
@@ -2840,12 +3015,12 @@ if (jjtc000) {
   /** Generate ParseException. */
   public ParseException generateParseException() {
 	 jj_expentries.clear();
-	 boolean[] la1tokens = new boolean[71];
+	 boolean[] la1tokens = new boolean[72];
 	 if (jj_kind >= 0) {
 	   la1tokens[jj_kind] = true;
 	   jj_kind = -1;
 	 }
-	 for (int i = 0; i < 65; i++) {
+	 for (int i = 0; i < 68; i++) {
 	   if (jj_la1[i] == jj_gen) {
 		 for (int j = 0; j < 32; j++) {
 		   if ((jj_la1_0[i] & (1<<j)) != 0) {
@@ -2860,7 +3035,7 @@ if (jjtc000) {
 		 }
 	   }
 	 }
-	 for (int i = 0; i < 71; i++) {
+	 for (int i = 0; i < 72; i++) {
 	   if (la1tokens[i]) {
 		 jj_expentry = new int[1];
 		 jj_expentry[0] = i;
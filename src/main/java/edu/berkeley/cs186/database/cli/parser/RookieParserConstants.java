@@ -140,6 +140,8 @@ public interface RookieParserConstants {
   int STRING_LITERAL = 69;
   /** RegularExpression Id. */
   int IDENTIFIER = 70;
+  /** RegularExpression Id. */
+  int PARAM = 71;
 
   /** Lexical state. */
   int DEFAULT = 0;
@@ -217,6 +219,7 @@ public interface RookieParserConstants {
     "<SIGN>",
     "<STRING_LITERAL>",
     "<IDENTIFIER>",
+    "\"?\"",
   };
 
 }
@@ -153,5 +153,14 @@ public class RookieParserDefaultVisitor implements RookieParserVisitor{
   public void visit(ASTPrimaryExpression node, Object data){
     defaultVisit(node, data);
   }
+  public void visit(ASTCopyStatement node, Object data){
+    defaultVisit(node, data);
+  }
+  public void visit(ASTPrepareStatement node, Object data){
+    defaultVisit(node, data);
+  }
+  public void visit(ASTExecuteStatement node, Object data){
+    defaultVisit(node, data);
+  }
 }
 /* JavaCC - OriginalChecksum=bfc1abc56c56149d14ed9654715639ba (do not edit this line) */
@@ -161,6 +161,8 @@ private int jjMoveStringLiteralDfa0_0(){
       case 62:
          jjmatchedKind = 17;
          return jjMoveStringLiteralDfa1_0(0x40000L, 0x0L);
+      case 63:
+         return jjStopAtPos(0, 71);
       case 65:
       case 97:
          return jjMoveStringLiteralDfa1_0(0x8000020020000000L, 0x0L);
@@ -977,7 +979,7 @@ public static final String[] jjstrLiteralImages = {
 "\74\76", null, null, "\41", "\46\46", "\174\174", null, null, null, null, null, null, 
 null, null, null, null, null, null, null, null, null, null, null, null, null, null, 
 null, null, null, null, null, null, null, null, null, null, null, null, null, null, 
-null, null, null, null, null, null, null, null, null, };
+null, null, null, null, null, null, null, null, null, "\77", };
 protected Token jjFillToken()
 {
    final Token t;
@@ -1193,10 +1195,10 @@ public static final String[] lexStateNames = {
 public static final int[] jjnewLexState = {
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
    -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
-   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
+   -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 
 };
 static final long[] jjtoToken = {
-   0xffffffffffffffe1L, 0x67L, 
+   0xffffffffffffffe1L, 0xe7L, 
 };
 static final long[] jjtoSkip = {
    0x1eL, 0x0L, 
@@ -52,6 +52,9 @@ public interface RookieParserTreeConstants
   public int JJTMULTIPLICATIVEEXPRESSION = 46;
   public int JJTFUNCTIONCALLEXPRESSION = 47;
   public int JJTPRIMARYEXPRESSION = 48;
+  public int JJTCOPYSTATEMENT = 49;
+  public int JJTPREPARESTATEMENT = 50;
+  public int JJTEXECUTESTATEMENT = 51;
 
   public String[] jjtNodeName = {
     "SQLStatementList",
@@ -103,6 +106,9 @@ public interface RookieParserTreeConstants
     "MultiplicativeExpression",
     "FunctionCallExpression",
     "PrimaryExpression",
+    "CopyStatement",
+    "PrepareStatement",
+    "ExecuteStatement",
   };
 }
 /* JavaCC - OriginalChecksum=7454a2bc0c1d9ffa919482951677c36d (do not edit this line) */
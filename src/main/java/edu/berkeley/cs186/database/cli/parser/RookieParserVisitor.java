@@ -52,5 +52,8 @@ public interface RookieParserVisitor
   public void visit(ASTMultiplicativeExpression node, Object data);
   public void visit(ASTFunctionCallExpression node, Object data);
   public void visit(ASTPrimaryExpression node, Object data);
+  public void visit(ASTCopyStatement node, Object data);
+  public void visit(ASTPrepareStatement node, Object data);
+  public void visit(ASTExecuteStatement node, Object data);
 }
 /* JavaCC - OriginalChecksum=b2a80acec93a79482d81c9c81b82256e (do not edit this line) */
@@ -0,0 +1,39 @@
+package edu.berkeley.cs186.database.cli.visitor;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.cli.PrettyPrinter;
+import edu.berkeley.cs186.database.cli.parser.ASTIdentifier;
+import edu.berkeley.cs186.database.cli.parser.ASTLiteral;
+
+import java.io.PrintStream;
+
+class CopyStatementVisitor extends StatementVisitor {
+    public String tableName;
+    public String fileName;
+
+    @Override
+    public void visit(ASTIdentifier node, Object data) {
+        this.tableName = (String) node.jjtGetValue();
+    }
+
+    @Override
+    public void visit(ASTLiteral node, Object data) {
+        this.fileName = PrettyPrinter.parseLiteral((String) node.jjtGetValue()).getString();
+    }
+
+    @Override
+    public void execute(Transaction transaction, PrintStream out) {
+        try {
+            int numRecords = transaction.copyFrom(tableName, fileName);
+            out.println("COPY " + numRecords);
+        } catch (Exception e) {
+            out.println(e.getMessage());
+            out.println("Failed to execute COPY.");
+        }
+    }
+
+    @Override
+    public StatementType getType() {
+        return StatementType.COPY;
+    }
+}
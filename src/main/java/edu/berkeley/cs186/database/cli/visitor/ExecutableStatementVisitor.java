@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.cli.visitor;
 
 import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.cli.StatementCache;
 import edu.berkeley.cs186.database.cli.parser.*;
 import edu.berkeley.cs186.database.query.QueryPlan;
 
@@ -9,6 +10,25 @@ import java.util.Optional;
 
 public class ExecutableStatementVisitor extends RookieParserDefaultVisitor {
     StatementVisitor visitor = null;
+    // prepared statements and cached plans, or null if PREPARE and EXECUTE
+    // aren't supported
+    private StatementCache cache;
+    // key of the statement in the plan cache, or null to not cache its plan
+    private String planKey;
+
+    public ExecutableStatementVisitor() {
+        this(null, null);
+    }
+
+    /**
+     * @param cache cache of prepared statements and plans
+     * @param planKey key to cache the plan of a SELECT statement under, or
+     *                null to not cache it
+     */
+    public ExecutableStatementVisitor(StatementCache cache, String planKey) {
+        this.cache = cache;
+        this.planKey = planKey;
+    }
 
     public Optional<QueryPlan> execute(Transaction transaction, PrintStream out) {
         Optional<QueryPlan> qp = visitor.getQueryPlan(transaction);
@@ -58,7 +78,9 @@ public class ExecutableStatementVisitor extends RookieParserDefaultVisitor {
      */
     @Override
     public void visit(ASTSelectStatement node, Object data) {
-        this.visitor = new SelectStatementVisitor();
+        SelectStatementVisitor visitor = new SelectStatementVisitor();
+        if (this.planKey != null) visitor.setPlanCache(cache.getPlanCache(), planKey);
+        this.visitor = visitor;
         node.childrenAccept(visitor, null);
     }
 
@@ -107,6 +129,15 @@ public class ExecutableStatementVisitor extends RookieParserDefaultVisitor {
         node.childrenAccept(visitor, null);
     }
 
+    /**
+     * COPY
+     */
+    @Override
+    public void visit(ASTCopyStatement node, Object data) {
+        this.visitor = new CopyStatementVisitor();
+        node.childrenAccept(visitor, null);
+    }
+
     /**
      * DELETE
      */
@@ -133,4 +164,27 @@ public class ExecutableStatementVisitor extends RookieParserDefaultVisitor {
         this.visitor = new ExplainStatementVisitor();
         node.childrenAccept(visitor, null);
     }
+
+    /**
+     * PREPARE
+     */
+    @Override
+    public void visit(ASTPrepareStatement node, Object data) {
+        this.visitor = new PrepareStatementVisitor(getCache(), planKey);
+        node.childrenAccept(visitor, null);
+    }
+
+    /**
+     * EXECUTE
+     */
+    @Override
+    public void visit(ASTExecuteStatement node, Object data) {
+        this.visitor = new ExecuteStatementVisitor(getCache());
+        node.childrenAccept(visitor, null);
+    }
+
+    private StatementCache getCache() {
+        if (cache == null) throw new UnsupportedOperationException("Prepared statements are not supported here.");
+        return cache;
+    }
 }
@@ -0,0 +1,56 @@
+package edu.berkeley.cs186.database.cli.visitor;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.cli.StatementCache;
+import edu.berkeley.cs186.database.cli.parser.ASTIdentifier;
+import edu.berkeley.cs186.database.cli.parser.ASTLiteral;
+import edu.berkeley.cs186.database.query.QueryPlan;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+class ExecuteStatementVisitor extends StatementVisitor {
+    public String name;
+    public List<String> arguments = new ArrayList<>();
+    private StatementCache cache;
+    // the prepared statement with its parameters bound, once it is executed
+    private ExecutableStatementVisitor statement;
+
+    ExecuteStatementVisitor(StatementCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void visit(ASTIdentifier node, Object data) {
+        this.name = (String) node.jjtGetValue();
+    }
+
+    @Override
+    public void visit(ASTLiteral node, Object data) {
+        this.arguments.add((String) node.jjtGetValue());
+    }
+
+    private StatementVisitor bind() {
+        if (this.statement == null) {
+            this.statement = cache.bind(name, arguments);
+        }
+        return this.statement.visitor;
+    }
+
+    @Override
+    public Optional<QueryPlan> getQueryPlan(Transaction transaction) {
+        return bind().getQueryPlan(transaction);
+    }
+
+    @Override
+    public void execute(Transaction transaction, PrintStream out) {
+        bind().execute(transaction, out);
+    }
+
+    @Override
+    public StatementType getType() {
+        return StatementType.EXECUTE;
+    }
+}
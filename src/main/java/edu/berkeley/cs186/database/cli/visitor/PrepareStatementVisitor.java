@@ -0,0 +1,55 @@
+package edu.berkeley.cs186.database.cli.visitor;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.cli.StatementCache;
+import edu.berkeley.cs186.database.cli.parser.*;
+
+import java.io.PrintStream;
+
+class PrepareStatementVisitor extends StatementVisitor {
+    public String name;
+    public Node statement;
+    private StatementCache cache;
+    private String planKey;
+
+    PrepareStatementVisitor(StatementCache cache, String planKey) {
+        this.cache = cache;
+        this.planKey = planKey;
+    }
+
+    @Override
+    public void visit(ASTIdentifier node, Object data) {
+        this.name = (String) node.jjtGetValue();
+    }
+
+    @Override
+    public void visit(ASTSelectStatement node, Object data) {
+        this.statement = node;
+    }
+
+    @Override
+    public void visit(ASTInsertStatement node, Object data) {
+        this.statement = node;
+    }
+
+    @Override
+    public void visit(ASTDeleteStatement node, Object data) {
+        this.statement = node;
+    }
+
+    @Override
+    public void visit(ASTUpdateStatement node, Object data) {
+        this.statement = node;
+    }
+
+    @Override
+    public void execute(Transaction transaction, PrintStream out) {
+        cache.prepare(name, statement, planKey);
+        out.println("PREPARE");
+    }
+
+    @Override
+    public StatementType getType() {
+        return StatementType.PREPARE;
+    }
+}
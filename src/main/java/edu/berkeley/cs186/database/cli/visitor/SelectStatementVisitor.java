@@ -6,6 +6,7 @@ import edu.berkeley.cs186.database.cli.parser.*;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.PlanCache;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.query.expr.ExpressionVisitor;
@@ -35,6 +36,9 @@ class SelectStatementVisitor extends StatementVisitor {
     String orderColumnName;
     int limit = -1;
     int offset = 0;
+    // cache to plan the query with, or null, and the key of the query in it
+    PlanCache planCache;
+    String planKey;
 
     @Override
     public void execute(Transaction transaction, PrintStream out) {
@@ -123,6 +127,7 @@ class SelectStatementVisitor extends StatementVisitor {
             query.sort(orderColumnName);
         }
         query.limit(limit, offset);
+        if (planCache != null) query.setPlanCache(planCache, planKey);
         for (CommonTableExpressionVisitor visitor: this.withExpressions) {
             visitor.populateTable(transaction);
         }
@@ -133,6 +138,11 @@ class SelectStatementVisitor extends StatementVisitor {
         this.contextAliases = context;
     }
 
+    public void setPlanCache(PlanCache cache, String key) {
+        this.planCache = cache;
+        this.planKey = key;
+    }
+
     @Override
     public void visit(ASTColumnName node, Object data) {
         this.groupByColumns.add((String) node.jjtGetValue());
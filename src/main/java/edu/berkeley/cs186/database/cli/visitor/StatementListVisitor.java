@@ -197,6 +197,16 @@ public class StatementListVisitor extends RookieParserDefaultVisitor {
         this.statementVisitors.add(visitor);
     }
 
+    /**
+     * COPY
+     */
+    @Override
+    public void visit(ASTCopyStatement node, Object data) {
+        CopyStatementVisitor visitor = new CopyStatementVisitor();
+        node.childrenAccept(visitor, null);
+        this.statementVisitors.add(visitor);
+    }
+
     /**
      * DELETE
      */
@@ -226,4 +236,24 @@ public class StatementListVisitor extends RookieParserDefaultVisitor {
         node.childrenAccept(visitor, null);
         this.statementVisitors.add(visitor);
     }
+
+    /**
+     * PREPARE
+     */
+    @Override
+    public void visit(ASTPrepareStatement node, Object data) {
+        PrepareStatementVisitor visitor = new PrepareStatementVisitor(database.getStatementCache(), null);
+        node.childrenAccept(visitor, null);
+        this.statementVisitors.add(visitor);
+    }
+
+    /**
+     * EXECUTE
+     */
+    @Override
+    public void visit(ASTExecuteStatement node, Object data) {
+        ExecuteStatementVisitor visitor = new ExecuteStatementVisitor(database.getStatementCache());
+        node.childrenAccept(visitor, null);
+        this.statementVisitors.add(visitor);
+    }
 }
@@ -7,6 +7,7 @@ enum StatementType{
     DROP_INDEX,
     SELECT,
     INSERT,
+    COPY,
     DELETE,
     UPDATE,
     BEGIN,
@@ -14,5 +15,7 @@ enum StatementType{
     ROLLBACK,
     SAVEPOINT,
     RELEASE_SAVEPOINT,
-    EXPLAIN
+    EXPLAIN,
+    PREPARE,
+    EXECUTE
 }
\ No newline at end of file
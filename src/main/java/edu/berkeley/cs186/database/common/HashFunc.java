@@ -27,7 +27,7 @@ public class HashFunc {
         int start = 0;
         for (DataBox d: record.getValues()) {
             byte[] curr = d.hashBytes();
-            System.arraycopy(bytes, start, curr, 0, curr.length);
+            System.arraycopy(curr, 0, bytes, start, curr.length);
             start += curr.length;
         }
         return hashBytes(bytes, pass);
@@ -0,0 +1,210 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Finds and breaks deadlocks between transactions waiting for locks in a
+ * LockManager, either periodically in the background (start/stop) or on demand
+ * (detect).
+ *
+ * Each pass takes a snapshot of the waits-for graph from the lock manager and
+ * searches it for cycles. For every cycle, one transaction on it is chosen as the
+ * victim by the victim policy, and its pending request is taken off its queue; the
+ * victim's thread then aborts the transaction (see TransactionContext#deadlockAbort)
+ * and throws DeadlockException, and its locks are released. The victim is removed
+ * from the graph before searching for the next cycle, so a victim on several cycles
+ * breaks all of them.
+ */
+public class DeadlockDetector {
+    /**
+     * How the victim of a deadlock is chosen among the transactions on the cycle.
+     * Ties are broken in favor of aborting the youngest transaction.
+     */
+    public enum VictimPolicy {
+        // Abort the transaction that started last (has the highest transaction number).
+        YOUNGEST,
+        // Abort the transaction holding the fewest locks.
+        FEWEST_LOCKS,
+        // Abort the transaction that has logged the fewest bytes of page changes, which
+        // is the cheapest to roll back.
+        LEAST_LOG_WRITTEN
+    }
+
+    private final LockManager lockManager;
+    private final VictimPolicy victimPolicy;
+    // Bytes of page changes logged by a transaction, for LEAST_LOG_WRITTEN.
+    private final LongUnaryOperator logBytesWritten;
+
+    // Background detection thread, or null if detection only runs when requested.
+    private ScheduledExecutorService detector;
+
+    private final LongAdder numCycles = new LongAdder();
+    private final LongAdder numPasses = new LongAdder();
+
+    public DeadlockDetector(LockManager lockManager, VictimPolicy victimPolicy) {
+        this(lockManager, victimPolicy, transNum -> 0L);
+    }
+
+    /**
+     * @param lockManager lock manager to detect deadlocks in
+     * @param victimPolicy how to choose which transaction on a cycle to abort
+     * @param logBytesWritten returns the number of bytes of page changes a transaction
+     *                        has logged, used by the LEAST_LOG_WRITTEN policy
+     */
+    public DeadlockDetector(LockManager lockManager, VictimPolicy victimPolicy,
+                            LongUnaryOperator logBytesWritten) {
+        this.lockManager = lockManager;
+        this.victimPolicy = victimPolicy;
+        this.logBytesWritten = logBytesWritten;
+    }
+
+    /**
+     * Starts looking for deadlocks in the background every `interval`. Does nothing
+     * if already started.
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("invalid deadlock detection interval");
+        }
+        if (this.detector != null) {
+            return;
+        }
+        this.detector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "deadlock-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        this.detector.scheduleWithFixedDelay(() -> {
+            try {
+                this.detect();
+            } catch (RuntimeException e) {
+                // try again next time
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops looking for deadlocks in the background (if started), waiting for the
+     * current pass to finish.
+     */
+    public synchronized void stop() {
+        if (this.detector == null) {
+            return;
+        }
+        this.detector.shutdown();
+        try {
+            this.detector.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.detector = null;
+    }
+
+    /**
+     * Looks for deadlocks once, and aborts a victim on each one found.
+     * @return transaction numbers of the victims
+     */
+    public List<Long> detect() {
+        numPasses.increment();
+        Map<Long, Set<Long>> graph = lockManager.getWaitsForGraph();
+        List<Long> victims = new ArrayList<>();
+        List<Long> cycle;
+        while ((cycle = findCycle(graph)) != null) {
+            numCycles.increment();
+            long victim = chooseVictim(cycle);
+            // the victim keeps waiting for its lock until it is taken off the queue, so
+            // this only fails if it was already aborted by a concurrent pass
+            if (lockManager.abortWaitingRequest(victim)) {
+                victims.add(victim);
+            }
+            graph.remove(victim);
+        }
+        return victims;
+    }
+
+    /**
+     * @return number of deadlocks (cycles in the waits-for graph) found
+     */
+    public long getNumCycles() {
+        return numCycles.sum();
+    }
+
+    /**
+     * @return number of times the waits-for graph was searched for deadlocks
+     */
+    public long getNumPasses() {
+        return numPasses.sum();
+    }
+
+    /**
+     * @return transactions on some cycle in `graph`, in order, or null if there is
+     * no cycle. Edges to transactions that are not in the graph (not waiting) are
+     * ignored.
+     */
+    static List<Long> findCycle(Map<Long, Set<Long>> graph) {
+        Set<Long> done = new HashSet<>();
+        for (Long start : graph.keySet()) {
+            if (done.contains(start)) {
+                continue;
+            }
+            // iterative depth-first search; path holds the transactions on the current path,
+            // and iterators the edges left to follow from each of them
+            List<Long> path = new ArrayList<>();
+            Map<Long, Integer> onPath = new HashMap<>();
+            Deque<Iterator<Long>> iterators = new ArrayDeque<>();
+            path.add(start);
+            onPath.put(start, 0);
+            iterators.push(graph.get(start).iterator());
+            while (!iterators.isEmpty()) {
+                Iterator<Long> edges = iterators.peek();
+                if (!edges.hasNext()) {
+                    iterators.pop();
+                    Long finished = path.remove(path.size() - 1);
+                    onPath.remove(finished);
+                    done.add(finished);
+                    continue;
+                }
+                Long next = edges.next();
+                if (onPath.containsKey(next)) {
+                    return new ArrayList<>(path.subList(onPath.get(next), path.size()));
+                }
+                if (done.contains(next) || !graph.containsKey(next)) {
+                    continue;
+                }
+                onPath.put(next, path.size());
+                path.add(next);
+                iterators.push(graph.get(next).iterator());
+            }
+        }
+        return null;
+    }
+
+    private long chooseVictim(List<Long> cycle) {
+        long victim = -1;
+        long victimCost = Long.MAX_VALUE;
+        for (long transNum : cycle) {
+            long cost;
+            switch (victimPolicy) {
+            case FEWEST_LOCKS:
+                cost = lockManager.getNumLocks(transNum);
+                break;
+            case LEAST_LOG_WRITTEN:
+                cost = logBytesWritten.applyAsLong(transNum);
+                break;
+            default:
+                cost = 0;
+                break;
+            }
+            if (cost < victimCost || (cost == victimCost && transNum > victim)) {
+                victim = transNum;
+                victimCost = cost;
+            }
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,13 @@
+package edu.berkeley.cs186.database.concurrency;
+
+/**
+ * Thrown on the thread of a transaction waiting for a lock when the transaction
+ * was chosen as the victim of a deadlock. The transaction has been aborted by
+ * the time this is thrown.
+ */
+@SuppressWarnings("serial")
+public class DeadlockException extends RuntimeException {
+    DeadlockException(String message) {
+        super(message);
+    }
+}
@@ -12,7 +12,11 @@ import java.util.List;
  * and later projects to be completed without needing to complete Project 4.
  */
 public class DummyLockManager extends LockManager {
-    public DummyLockManager() { }
+    // A dummy lock manager never locks anything, and dummy contexts create one
+    // per page fetched, so its lock table only has a single shard.
+    public DummyLockManager() {
+        super(1);
+    }
 
     @Override
     public LockContext context(String name) {
@@ -0,0 +1,57 @@
+package edu.berkeley.cs186.database.concurrency;
+
+/**
+ * When a transaction's locks on the descendants of a LockContext are escalated
+ * to a single lock on the context (see LockContext#setAutoEscalation): once it
+ * would hold more than maxChildLocks locks on descendants, or locks on more than
+ * maxChildFraction of the context's children. Either limit is off when 0.
+ *
+ * A threshold can be shared by several contexts (e.g. every table of a
+ * database), in which case changing it applies to all of them at once.
+ */
+public class EscalationThreshold {
+    private volatile int maxChildLocks;
+    private volatile double maxChildFraction;
+
+    /**
+     * Creates a threshold that never escalates.
+     */
+    public EscalationThreshold() {
+        this(0, 0);
+    }
+
+    public EscalationThreshold(int maxChildLocks, double maxChildFraction) {
+        set(maxChildLocks, maxChildFraction);
+    }
+
+    /**
+     * @param maxChildLocks max number of locks on descendants, or 0 for no limit
+     * @param maxChildFraction max fraction of the children locked, or 0 for no limit
+     */
+    public void set(int maxChildLocks, double maxChildFraction) {
+        if (maxChildLocks < 0 || maxChildFraction < 0) {
+            throw new IllegalArgumentException("invalid escalation threshold");
+        }
+        this.maxChildLocks = maxChildLocks;
+        this.maxChildFraction = maxChildFraction;
+    }
+
+    public int getMaxChildLocks() {
+        return maxChildLocks;
+    }
+
+    public double getMaxChildFraction() {
+        return maxChildFraction;
+    }
+
+    /**
+     * @return whether holding `numLocks` locks on descendants of a context with
+     * `capacity` children (0 if unknown) is past this threshold
+     */
+    boolean isExceeded(int numLocks, int capacity) {
+        int maxLocks = this.maxChildLocks;
+        if (maxLocks > 0 && numLocks > maxLocks) return true;
+        double maxFraction = this.maxChildFraction;
+        return maxFraction > 0 && capacity > 0 && numLocks > maxFraction * capacity;
+    }
+}
@@ -7,6 +7,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * LockContext wraps around LockManager to provide the hierarchical structure
@@ -41,6 +43,13 @@ public class LockContext {
     // Whether or not any new child LockContexts should be marked readonly.
     protected boolean childLocksDisabled;
 
+    // Number of children of this context (e.g. data pages of a table), or 0 if unknown.
+    protected final AtomicInteger capacity = new AtomicInteger();
+
+    // LockUtil escalates a transaction to a lock on this context instead of letting it go
+    // past this threshold of locks on descendants.
+    protected volatile EscalationThreshold escalationThreshold = new EscalationThreshold();
+
     public LockContext(LockManager lockman, LockContext parent, String name) {
         this(lockman, parent, name, false);
     }
@@ -351,6 +360,19 @@ public class LockContext {
         return child;
     }
 
+    /**
+     * Gets the context for the child with name `name`, calling `init` on it
+     * if this call creates it.
+     */
+    public synchronized LockContext childContext(String name, Consumer<LockContext> init) {
+        LockContext child = this.children.get(name);
+        if (child == null) {
+            child = childContext(name);
+            init.accept(child);
+        }
+        return child;
+    }
+
     /**
      * Gets the context for the child with name `name`.
      */
@@ -358,6 +380,61 @@ public class LockContext {
         return childContext(Long.toString(name));
     }
 
+    /**
+     * Sets the number of children of this context, which escalation by fraction is based on.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity.set(capacity);
+    }
+
+    /**
+     * Adds `delta` to the number of children of this context, e.g. when a data
+     * page is allocated or freed.
+     */
+    public void adjustCapacity(int delta) {
+        this.capacity.addAndGet(delta);
+    }
+
+    /**
+     * Gets the number of children of this context, or 0 if unknown.
+     */
+    public int capacity() {
+        return this.capacity.get();
+    }
+
+    /**
+     * Sets when LockUtil escalates a transaction's locks on descendants of this
+     * context to a single lock on this context: once acquiring another lock would
+     * leave the transaction with more than `maxChildLocks` locks on descendants,
+     * or with locks on more than `maxChildFraction` of the children.
+     *
+     * @param maxChildLocks max number of locks on descendants, or 0 for no limit
+     * @param maxChildFraction max fraction of the children locked, or 0 for no limit
+     */
+    public void setAutoEscalation(int maxChildLocks, double maxChildFraction) {
+        setAutoEscalation(new EscalationThreshold(maxChildLocks, maxChildFraction));
+    }
+
+    /**
+     * Escalates locks on descendants of this context past `threshold`, which is
+     * read on every check: later changes to it apply to this context too.
+     */
+    public void setAutoEscalation(EscalationThreshold threshold) {
+        this.escalationThreshold = threshold;
+    }
+
+    /**
+     * Returns whether `transaction` should be escalated to a lock on this context
+     * instead of acquiring one more lock on a descendant. A transaction holding no
+     * locks on descendants yet is never escalated.
+     */
+    public boolean shouldEscalate(TransactionContext transaction) {
+        if (this.readonly) return false;
+        int numLocks = getNumChildren(transaction) + 1;
+        if (numLocks <= 1) return false;
+        return this.escalationThreshold.isExceeded(numLocks, this.capacity.get());
+    }
+
     /**
      * Gets the number of locks held on children a single transaction.
      */
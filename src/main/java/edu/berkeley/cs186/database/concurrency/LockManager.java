@@ -3,6 +3,10 @@ package edu.berkeley.cs186.database.concurrency;
 import edu.berkeley.cs186.database.TransactionContext;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * LockManager maintains the bookkeeping for what transactions have what locks
@@ -29,16 +33,42 @@ import java.util.*;
  *    queue: S(A) X(A) S(A)
  * only the first request should be removed from the queue when the queue is
  * processed.
+ *
+ * The lock table is split into shards by the hash of the resource name, and each
+ * shard has its own latch, so that transactions locking resources in different
+ * shards do not wait on each other. An operation on one resource only latches the
+ * shard of that resource; operations on several resources (acquireAndRelease) latch
+ * all of their shards in increasing shard order, so latching cannot deadlock.
+ * Entries with no locks and no waiting requests are removed from the table.
+ *
+ * Transactions wait for locks indefinitely; deadlocks are resolved by a
+ * DeadlockDetector, which uses getWaitsForGraph and abortWaitingRequest.
  */
 public class LockManager {
+    // Default number of shards of the lock table.
+    public static final int DEFAULT_NUM_SHARDS = 64;
+
     // transactionLocks is a mapping from transaction number to a list of lock
-    // objects held by that transaction.
-    private Map<Long, List<Lock>> transactionLocks = new HashMap<>();
+    // objects held by that transaction. Lists are only read or modified inside
+    // compute calls on their key, since locks of a transaction may be granted
+    // from any shard.
+    private Map<Long, List<Lock>> transactionLocks = new ConcurrentHashMap<>();
 
-    // resourceEntries is a mapping from resource names to a ResourceEntry
+    // Shards of the lock table.
+    private Shard[] shards;
+
+    // Number of requests that had to wait, and total time spent waiting by them.
+    private final LongAdder numBlocked = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+    // A shard of the lock table: a mapping from resource names to a ResourceEntry
     // object, which contains a list of Locks on the object, as well as a
-    // queue for requests on that resource.
-    private Map<ResourceName, ResourceEntry> resourceEntries = new HashMap<>();
+    // queue for requests on that resource. Entries are only accessed with the
+    // shard's latch held.
+    private class Shard {
+        final ReentrantLock latch = new ReentrantLock();
+        final Map<ResourceName, ResourceEntry> resourceEntries = new HashMap<>();
+    }
 
     // A ResourceEntry contains the list of locks on a resource, as well as
     // the queue for requests for locks on the resource.
@@ -74,18 +104,24 @@ public class LockManager {
         public void grantOrUpdateLock(Lock lock) {
             // TODO(proj4_part1): implement
             for(Lock l:locks){
-                if(l.transactionNum==lock.transactionNum) {
+                if(l.transactionNum.equals(lock.transactionNum)) {
                     if(LockType.substitutable(lock.lockType,l.lockType)){
-                        transactionLocks.get(l.transactionNum).remove(l);
-                        l.lockType=lock.lockType;
-                        transactionLocks.get(l.transactionNum).add(l);
+                        transactionLocks.computeIfPresent(l.transactionNum, (k, lockList) -> {
+                            lockList.remove(l);
+                            l.lockType=lock.lockType;
+                            lockList.add(l);
+                            return lockList;
+                        });
                     }
                     return;
                 }
             }
             locks.add(lock);
-            transactionLocks.putIfAbsent(lock.transactionNum, new ArrayList<>());
-            transactionLocks.get(lock.transactionNum).add(lock);
+            transactionLocks.compute(lock.transactionNum, (k, lockList) -> {
+                if(lockList==null) lockList=new ArrayList<>();
+                lockList.add(lock);
+                return lockList;
+            });
         }
 
         /**
@@ -95,10 +131,10 @@ public class LockManager {
         public void releaseLock(Lock lock) {
             // TODO(proj4_part1): implement
             locks.remove(lock);
-            List<Lock> lockList = transactionLocks.get(lock.transactionNum);
-            lockList.remove(lock);
-            if(lockList.isEmpty()) transactionLocks.remove(lock.transactionNum);
-            else transactionLocks.put(lock.transactionNum, lockList);
+            transactionLocks.computeIfPresent(lock.transactionNum, (k, lockList) -> {
+                lockList.remove(lock);
+                return lockList.isEmpty() ? null : lockList;
+            });
             processQueue();
         }
 
@@ -118,18 +154,21 @@ public class LockManager {
          * granted, the transaction that made the request can be unblocked.
          */
         private void processQueue() {
-            Iterator<LockRequest> requests = waitingQueue.iterator();
             // TODO(proj4_part1): implement
-            while(requests.hasNext()){
-                LockRequest request = requests.next();
+            while(!waitingQueue.isEmpty()){
+                LockRequest request = waitingQueue.peekFirst();
                 Lock lock = request.lock;
                 if(!checkCompatible(lock.lockType,lock.transactionNum)) return;
                 grantOrUpdateLock(lock);
-                waitingQueue.remove(request);
+                waitingQueue.pollFirst();
                 request.transaction.unblock();
             }
         }
 
+        boolean isEmpty() {
+            return locks.isEmpty() && waitingQueue.isEmpty();
+        }
+
         /**
          * Gets the type of lock `transaction` has on this resource.
          */
@@ -149,15 +188,100 @@ public class LockManager {
     }
 
     // You should not modify or use this directly.
-    private Map<String, LockContext> contexts = new HashMap<>();
+    private Map<String, LockContext> contexts = new ConcurrentHashMap<>();
+
+    public LockManager() {
+        this(DEFAULT_NUM_SHARDS);
+    }
+
+    /**
+     * @param numShards number of shards to split the lock table into
+     */
+    public LockManager(int numShards) {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("need at least one shard");
+        }
+        this.shards = new Shard[numShards];
+        for (int i = 0; i < numShards; ++i) {
+            this.shards[i] = new Shard();
+        }
+    }
+
+    private int shardIndex(ResourceName name) {
+        int h = name.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    private Shard shardOf(ResourceName name) {
+        return shards[shardIndex(name)];
+    }
+
+    /**
+     * Latches the shards of all of `names`, in increasing shard order.
+     * @return the latched shards, to pass to unlatch
+     */
+    private Shard[] latch(Collection<ResourceName> names) {
+        SortedSet<Integer> indices = new TreeSet<>();
+        for (ResourceName name : names) {
+            indices.add(shardIndex(name));
+        }
+        Shard[] latched = new Shard[indices.size()];
+        int i = 0;
+        for (int index : indices) {
+            latched[i] = shards[index];
+            latched[i++].latch.lock();
+        }
+        return latched;
+    }
+
+    /**
+     * Latches every shard, in increasing shard order.
+     * @return the latched shards, to pass to unlatch
+     */
+    private Shard[] latchAll() {
+        for (Shard shard : shards) {
+            shard.latch.lock();
+        }
+        return shards;
+    }
+
+    private static void unlatch(Shard[] latched) {
+        for (int i = latched.length - 1; i >= 0; --i) {
+            latched[i].latch.unlock();
+        }
+    }
 
     /**
      * Helper method to fetch the resourceEntry corresponding to `name`.
      * Inserts a new (empty) resourceEntry into the map if no entry exists yet.
+     * Assumes that the shard of `name` is latched.
      */
     private ResourceEntry getResourceEntry(ResourceName name) {
-        resourceEntries.putIfAbsent(name, new ResourceEntry());
-        return resourceEntries.get(name);
+        return shardOf(name).resourceEntries.computeIfAbsent(name, k -> new ResourceEntry());
+    }
+
+    /**
+     * Removes the entry for `name` if it holds no locks or requests. Assumes that
+     * the shard of `name` is latched.
+     */
+    private void removeIfEmpty(ResourceName name) {
+        Map<ResourceName, ResourceEntry> entries = shardOf(name).resourceEntries;
+        ResourceEntry entry = entries.get(name);
+        if (entry != null && entry.isEmpty()) {
+            entries.remove(name);
+        }
+    }
+
+    /**
+     * Returns a copy of the list of locks held by transaction `transNum`.
+     */
+    private List<Lock> copyTransactionLocks(long transNum) {
+        List<Lock> copy = new ArrayList<>();
+        transactionLocks.computeIfPresent(transNum, (k, lockList) -> {
+            copy.addAll(lockList);
+            return lockList;
+        });
+        return copy;
     }
 
     /**
@@ -190,8 +314,11 @@ public class LockManager {
         // You may modify any part of this method. You are not required to keep
         // all your code within the given synchronized block and are allowed to
         // move the synchronized block elsewhere if you wish.
-        boolean shouldBlock = false;
-        synchronized (this) {
+        LockRequest request = null;
+        List<ResourceName> names = new ArrayList<>(releaseNames);
+        names.add(name);
+        Shard[] latched = latch(names);
+        try {
             Lock lock = new Lock(name,lockType,transaction.getTransNum());
             if(getLocks(transaction).contains(lock) && !releaseNames.contains(name))
                 throw new DuplicateLockRequestException("Duplicate Lock Request!");
@@ -210,18 +337,22 @@ public class LockManager {
                     //资源名字不相等这个判断很关键，要不然有一个test一直过不了，
                     //是因为updated lock被当成old lock（因为有一样的name但其实lock type不一样）被移除掉了
                     //这块儿的逻辑很晕，可能还有不少bug
-                    if(!rName.equals(name))
-                        resourceEntries.get(rName).releaseLock(resourceNameLockHashMap.get(rName));
+                    if(!rName.equals(name)) {
+                        getResourceEntry(rName).releaseLock(resourceNameLockHashMap.get(rName));
+                        removeIfEmpty(rName);
+                    }
                 }
             }
             else{
                 transaction.prepareBlock();
-                shouldBlock=true;
-                resourceEntry.addToQueue(new LockRequest(transaction,lock),true);
+                request = new LockRequest(transaction,lock);
+                resourceEntry.addToQueue(request,true);
             }
+        } finally {
+            unlatch(latched);
         }
-        if (shouldBlock) {
-            transaction.block();
+        if (request != null) {
+            waitForGrant(transaction, request);
         }
     }
 
@@ -242,8 +373,10 @@ public class LockManager {
         // You may modify any part of this method. You are not required to keep all your
         // code within the given synchronized block and are allowed to move the
         // synchronized block elsewhere if you wish.
-        boolean shouldBlock = false;
-        synchronized (this) {
+        LockRequest request = null;
+        Shard shard = shardOf(name);
+        shard.latch.lock();
+        try {
             Lock lock = new Lock(name,lockType,transaction.getTransNum());
             if(getLocks(transaction).contains(lock))
                 throw new DuplicateLockRequestException("Duplicate Lock Request!");
@@ -252,13 +385,15 @@ public class LockManager {
             boolean compatible = resourceEntry.checkCompatible(lockType, transaction.getTransNum());
             if(!compatible || !resourceEntry.waitingQueue.isEmpty()){
                 transaction.prepareBlock();
-                shouldBlock=true;
-                resourceEntry.addToQueue(new LockRequest(transaction,lock),false);
+                request = new LockRequest(transaction,lock);
+                resourceEntry.addToQueue(request,false);
             }
             else resourceEntry.grantOrUpdateLock(lock);
+        } finally {
+            shard.latch.unlock();
         }
-        if (shouldBlock) {
-            transaction.block();
+        if (request != null) {
+            waitForGrant(transaction, request);
         }
     }
 
@@ -276,8 +411,9 @@ public class LockManager {
             throws NoLockHeldException {
         // TODO(proj4_part1): implement
         // You may modify any part of this method.
-        synchronized (this) {
-            ResourceEntry resourceEntry = getResourceEntry(name);
+        Shard shard = shardOf(name);
+        shard.latch.lock();
+        try {
             Lock releaseLock = null;
             for(Lock l: getLocks(transaction)) {
                 if(l.name.equals(name)) {
@@ -286,7 +422,10 @@ public class LockManager {
                 }
             }
             if(releaseLock==null) throw new NoLockHeldException("Transaction doesn't hold lock of this resource!");
-            resourceEntry.releaseLock(releaseLock);
+            getResourceEntry(name).releaseLock(releaseLock);
+            removeIfEmpty(name);
+        } finally {
+            shard.latch.unlock();
         }
     }
 
@@ -316,8 +455,10 @@ public class LockManager {
             throws DuplicateLockRequestException, NoLockHeldException, InvalidLockException {
         // TODO(proj4_part1): implement
         // You may modify any part of this method.
-        boolean shouldBlock = false;
-        synchronized (this) {
+        LockRequest request = null;
+        Shard shard = shardOf(name);
+        shard.latch.lock();
+        try {
             if(getLockType(transaction,name).equals(newLockType))
                 throw new DuplicateLockRequestException("Duplicate Lock Request!");
 
@@ -334,57 +475,206 @@ public class LockManager {
             Lock loc = new Lock(name,newLockType, transaction.getTransNum());
             if(!compatible){
                 transaction.prepareBlock();
-                shouldBlock=true;
-                resourceEntry.addToQueue(new LockRequest(transaction,loc),true);
+                request = new LockRequest(transaction,loc);
+                resourceEntry.addToQueue(request,true);
             }
             else resourceEntry.grantOrUpdateLock(loc);
+        } finally {
+            shard.latch.unlock();
         }
-        if (shouldBlock) {
-            transaction.block();
+        if (request != null) {
+            waitForGrant(transaction, request);
         }
     }
 
+    /**
+     * Blocks `transaction` until `request` is granted, or until it is taken off
+     * its queue because the transaction was chosen as a deadlock victim. The
+     * transaction must have called prepareBlock.
+     *
+     * @throws DeadlockException if the transaction was chosen as a deadlock victim
+     */
+    private void waitForGrant(TransactionContext transaction, LockRequest request) {
+        long start = System.nanoTime();
+        transaction.block();
+        numBlocked.increment();
+        blockedNanos.add(System.nanoTime() - start);
+        if (request.aborted) {
+            transaction.deadlockAbort();
+            throw new DeadlockException("transaction " + transaction.getTransNum() +
+                                        " aborted to resolve a deadlock while waiting for " + request.lock);
+        }
+    }
+
+    /**
+     * Builds the waits-for graph of the transactions currently waiting for locks.
+     * A waiting transaction waits for every other transaction that holds a lock
+     * incompatible with the one it requested, and for every other transaction
+     * with a request ahead of its own in the queue (the queue is granted in
+     * order). The graph is built with every shard latched, so it is a consistent
+     * snapshot: a cycle in it is a deadlock.
+     *
+     * @return mapping from each waiting transaction to the transactions it waits for
+     */
+    Map<Long, Set<Long>> getWaitsForGraph() {
+        Map<Long, Set<Long>> graph = new HashMap<>();
+        Shard[] latched = latchAll();
+        try {
+            for (Shard shard : shards) {
+                for (ResourceEntry entry : shard.resourceEntries.values()) {
+                    Set<Long> ahead = new LinkedHashSet<>();
+                    for (LockRequest request : entry.waitingQueue) {
+                        long transNum = request.lock.transactionNum;
+                        Set<Long> waitsFor = graph.computeIfAbsent(transNum, k -> new HashSet<>());
+                        for (Lock lock : entry.locks) {
+                            if (lock.transactionNum != transNum &&
+                                    !LockType.compatible(request.lock.lockType, lock.lockType)) {
+                                waitsFor.add(lock.transactionNum);
+                            }
+                        }
+                        for (long other : ahead) {
+                            if (other != transNum) {
+                                waitsFor.add(other);
+                            }
+                        }
+                        ahead.add(transNum);
+                    }
+                }
+            }
+        } finally {
+            unlatch(latched);
+        }
+        return graph;
+    }
+
+    /**
+     * Takes the request that transaction `transNum` is waiting on off its queue
+     * without granting it, and unblocks the transaction, which then throws
+     * DeadlockException from the call that requested the lock. Requests queued
+     * behind it are granted if they now can be.
+     *
+     * @return whether the transaction was waiting for a lock
+     */
+    boolean abortWaitingRequest(long transNum) {
+        Shard[] latched = latchAll();
+        try {
+            for (Shard shard : shards) {
+                for (Map.Entry<ResourceName, ResourceEntry> e : shard.resourceEntries.entrySet()) {
+                    ResourceEntry entry = e.getValue();
+                    for (LockRequest request : entry.waitingQueue) {
+                        if (request.lock.transactionNum != transNum) {
+                            continue;
+                        }
+                        entry.waitingQueue.remove(request);
+                        request.aborted = true;
+                        request.transaction.unblock();
+                        entry.processQueue();
+                        removeIfEmpty(e.getKey());
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            unlatch(latched);
+        }
+    }
+
+    /**
+     * @return number of lock requests that had to wait, because they could not be granted immediately
+     */
+    public long getNumBlocked() {
+        return numBlocked.sum();
+    }
+
+    /**
+     * @return total time spent waiting by lock requests that could not be granted immediately
+     */
+    public long getBlockedTime(TimeUnit unit) {
+        return unit.convert(blockedNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return number of locks held by transaction `transNum`
+     */
+    int getNumLocks(long transNum) {
+        int[] numLocks = new int[1];
+        transactionLocks.computeIfPresent(transNum, (k, lockList) -> {
+            numLocks[0] = lockList.size();
+            return lockList;
+        });
+        return numLocks[0];
+    }
+
     /**
      * Return the type of lock `transaction` has on `name` or NL if no lock is
      * held.
      */
-    public synchronized LockType getLockType(TransactionContext transaction, ResourceName name) {
+    public LockType getLockType(TransactionContext transaction, ResourceName name) {
         // TODO(proj4_part1): implement
-        ResourceEntry resourceEntry = getResourceEntry(name);
-        return resourceEntry.getTransactionLockType(transaction.getTransNum());
+        Shard shard = shardOf(name);
+        shard.latch.lock();
+        try {
+            ResourceEntry resourceEntry = shard.resourceEntries.get(name);
+            if (resourceEntry == null) {
+                return LockType.NL;
+            }
+            return resourceEntry.getTransactionLockType(transaction.getTransNum());
+        } finally {
+            shard.latch.unlock();
+        }
     }
 
     /**
      * Returns the list of locks held on `name`, in order of acquisition.
      */
-    public synchronized List<Lock> getLocks(ResourceName name) {
-        return new ArrayList<>(resourceEntries.getOrDefault(name, new ResourceEntry()).locks);
+    public List<Lock> getLocks(ResourceName name) {
+        Shard shard = shardOf(name);
+        shard.latch.lock();
+        try {
+            ResourceEntry resourceEntry = shard.resourceEntries.get(name);
+            return resourceEntry == null ? new ArrayList<>() : new ArrayList<>(resourceEntry.locks);
+        } finally {
+            shard.latch.unlock();
+        }
     }
 
     /**
      * Returns the list of locks held by `transaction`, in order of acquisition.
      */
-    public synchronized List<Lock> getLocks(TransactionContext transaction) {
-        return new ArrayList<>(transactionLocks.getOrDefault(transaction.getTransNum(),
-                Collections.emptyList()));
+    public List<Lock> getLocks(TransactionContext transaction) {
+        return copyTransactionLocks(transaction.getTransNum());
+    }
+
+    /**
+     * @return number of resources with locks held or requested, i.e. the size of the lock table
+     */
+    public int getNumResourceEntries() {
+        int numEntries = 0;
+        for (Shard shard : shards) {
+            shard.latch.lock();
+            try {
+                numEntries += shard.resourceEntries.size();
+            } finally {
+                shard.latch.unlock();
+            }
+        }
+        return numEntries;
     }
 
     /**
      * Creates a lock context. See comments at the top of this file and the top
      * of LockContext.java for more information.
      */
-    public synchronized LockContext context(String name) {
-        if (!contexts.containsKey(name)) {
-            contexts.put(name, new LockContext(this, null, name));
-        }
-        return contexts.get(name);
+    public LockContext context(String name) {
+        return contexts.computeIfAbsent(name, k -> new LockContext(this, null, k));
     }
 
     /**
      * Create a lock context for the database. See comments at the top of this
      * file and the top of LockContext.java for more information.
      */
-    public synchronized LockContext databaseContext() {
+    public LockContext databaseContext() {
         return context("database");
     }
 }
@@ -15,6 +15,9 @@ class LockRequest {
     TransactionContext transaction;
     Lock lock;
     List<Lock> releasedLocks;
+    // Set when the request is taken off the queue without being granted, because its
+    // transaction was chosen as the victim of a deadlock.
+    volatile boolean aborted = false;
 
     // Lock request for `lock`, that is not releasing anything.
     LockRequest(TransactionContext transaction, Lock lock) {
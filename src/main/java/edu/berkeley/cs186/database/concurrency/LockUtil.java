@@ -27,6 +27,11 @@ public class LockUtil {
      *
      * You may find it useful to create a helper method that ensures you have
      * the appropriate locks on all ancestors.
+     *
+     * If acquiring a lock on `lockContext` would take the transaction past the
+     * escalation threshold of the parent context (see
+     * LockContext#setAutoEscalation), the parent is escalated instead, and then
+     * given a lock sufficient for `requestType`.
      */
     public static void ensureSufficientLockHeld(LockContext lockContext, LockType requestType) {
         // requestType must be S, X, or NL
@@ -35,6 +40,8 @@ public class LockUtil {
         // Do nothing if the transaction or lockContext is null
         TransactionContext transaction = TransactionContext.getTransaction();
         if (transaction == null || lockContext == null) return;
+        // Transactions reading a snapshot never lock
+        if (transaction.getSnapshot() != null) return;
 
         // You may find these variables useful
         LockContext parentContext = lockContext.parentContext();
@@ -43,6 +50,12 @@ public class LockUtil {
 
         // TODO(proj4_part2): implement
         if(LockType.substitutable(effectiveLockType,requestType)||requestType.equals(LockType.NL)) return;
+        if(parentContext!=null && parentContext.shouldEscalate(transaction)){
+            // lock the whole parent (e.g. table) instead of one more of its children (e.g. pages)
+            parentContext.escalate(transaction);
+            ensureSufficientLockHeld(parentContext,requestType);
+            return;
+        }
         if(requestType.equals(LockType.S)){
             ensureAncestor(transaction,lockContext,LockType.IS,true);
             if(effectiveLockType.equals(LockType.IX)) lockContext.promote(transaction,LockType.SIX);
@@ -51,9 +64,11 @@ public class LockUtil {
         }
         else{
             ensureAncestor(transaction,lockContext,LockType.IX,false);
-            if(effectiveLockType.equals(LockType.NL)) lockContext.acquire(transaction,LockType.X);
-            else if(effectiveLockType.equals(LockType.S)) lockContext.promote(transaction,LockType.X);
-            else if(effectiveLockType.equals(LockType.IS)) {
+            // an S lock inherited from an ancestor (e.g. from scanning the table) is not held
+            // on this context, so it is acquired rather than promoted
+            if(explicitLockType.equals(LockType.NL)) lockContext.acquire(transaction,LockType.X);
+            else if(explicitLockType.equals(LockType.S)) lockContext.promote(transaction,LockType.X);
+            else if(explicitLockType.equals(LockType.IS)) {
                 lockContext.escalate(transaction);
                 lockContext.promote(transaction,LockType.X);
             }
@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
+
 public interface DiskSpaceManager extends AutoCloseable {
     short PAGE_SIZE = 4096; // size of a page in bytes
     long INVALID_PAGE_NUM = -1L; // a page number that is always invalid
@@ -65,6 +67,41 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Reads a page into the remaining bytes of a buffer, which may be a direct buffer.
+     * The position of buf is not changed. The default implementation copies through
+     * a temporary byte array.
+     *
+     * @param page number of page to be read
+     * @param buf byte buffer with exactly a page worth of bytes remaining
+     */
+    default void readPage(long page, ByteBuffer buf) {
+        byte[] bytes = new byte[PAGE_SIZE];
+        readPage(page, bytes);
+        buf.duplicate().put(bytes);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer, which may be a direct buffer, to a page.
+     * The position of buf is not changed. The default implementation copies through
+     * a temporary byte array.
+     *
+     * @param page number of page to be written
+     * @param buf byte buffer with exactly a page worth of bytes remaining
+     */
+    default void writePage(long page, ByteBuffer buf) {
+        byte[] bytes = new byte[PAGE_SIZE];
+        buf.duplicate().get(bytes);
+        writePage(page, bytes);
+    }
+
+    /**
+     * Forces all writes to data partitions to disk. Writes to the log partition are
+     * always forced before writePage returns, but writes to any other partition may
+     * only be in the OS cache until this is called (or the disk space manager is closed).
+     */
+    void sync();
+
     /**
      * Checks if a page is allocated
      *
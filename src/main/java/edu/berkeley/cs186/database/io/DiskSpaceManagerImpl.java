@@ -5,7 +5,10 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,6 +47,11 @@ import java.util.concurrent.locks.ReentrantLock;
  * - the second header page follows
  * - the next 32K pages are data pages managed by the second header page
  * - etc.
+ *
+ * Only writes to the log partition are forced to disk as they happen. Writes to other
+ * partitions are forced in batches by sync() (done at checkpoints) and on close: WAL already
+ * guarantees that their changes can be redone, so evicting a dirty data page does not need
+ * to wait on an fsync.
  */
 public class DiskSpaceManagerImpl implements DiskSpaceManager {
     static final int MAX_HEADER_PAGES = PAGE_SIZE / 2; // 2 bytes per header page
@@ -98,7 +106,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 int fileNum = Integer.parseInt(f.getName());
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = newPartitionHandle(fileNum, recoveryManager);
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -108,6 +116,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
 
     @Override
     public void close() {
+        this.sync();
         for (Map.Entry<Integer, PartitionHandle> part : this.partInfo.entrySet()) {
             try {
                 part.getValue().close();
@@ -137,7 +146,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
+            pi = newPartitionHandle(partNum, recoveryManager);
             this.partInfo.put(partNum, pi);
 
             pi.partitionLock.lock();
@@ -208,7 +217,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             int pageNum = pi.allocPage();
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            pi.writePage(pageNum, ByteBuffer.wrap(new byte[PAGE_SIZE]));
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -234,7 +243,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             pi.allocPage(headerIndex, pageIndex);
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            pi.writePage(pageNum, ByteBuffer.wrap(new byte[PAGE_SIZE]));
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -269,6 +278,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("readPage expects a page-sized buffer");
         }
+        this.readPage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void readPage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
         this.managerLock.lock();
@@ -280,7 +297,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
-            pi.readPage(pageNum, buf);
+            pi.readPage(pageNum, buf.duplicate());
         } catch (IOException e) {
             throw new PageException("could not read partition " + partNum + ": " + e.getMessage());
         } finally {
@@ -293,6 +310,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("writePage expects a page-sized buffer");
         }
+        this.writePage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void writePage(long page, ByteBuffer buf) {
+        if (buf.remaining() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
         this.managerLock.lock();
@@ -304,7 +329,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
             this.managerLock.unlock();
         }
         try {
-            pi.writePage(pageNum, buf);
+            pi.writePage(pageNum, buf.duplicate());
         } catch (IOException e) {
             throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
         } finally {
@@ -312,6 +337,43 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public void sync() {
+        List<PartitionHandle> parts;
+        this.managerLock.lock();
+        try {
+            parts = new ArrayList<>(this.partInfo.values());
+        } finally {
+            this.managerLock.unlock();
+        }
+        for (PartitionHandle pi : parts) {
+            pi.partitionLock.lock();
+            try {
+                pi.sync();
+            } catch (IOException e) {
+                throw new PageException("could not sync partition: " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return total number of times partitions were forced to disk
+     */
+    long getNumSyncs() {
+        this.managerLock.lock();
+        try {
+            long numSyncs = 0;
+            for (PartitionHandle pi : this.partInfo.values()) {
+                numSyncs += pi.getNumSyncs();
+            }
+            return numSyncs;
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
@@ -331,6 +393,17 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    /**
+     * Creates the handle used to access the OS file of a partition. Called from
+     * the constructor as well, so implementations must not depend on subclass state.
+     * @param partNum partition number
+     * @param recoveryManager recovery manager
+     * @return partition handle (not yet opened)
+     */
+    PartitionHandle newPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new PartitionHandle(partNum, recoveryManager);
+    }
+
     // Gets PartInfo, throws exception if not found.
     private PartitionHandle getPartInfo(int partNum) {
         PartitionHandle pi = this.partInfo.get(partNum);
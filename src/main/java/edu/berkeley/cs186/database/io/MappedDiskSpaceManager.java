@@ -0,0 +1,29 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * A disk space manager that uses the same on-disk layout as DiskSpaceManagerImpl,
+ * but memory maps partition files to read and write data pages, which avoids a
+ * system call (and a copy into a temporary buffer) per page for read-heavy workloads.
+ * See MappedPartitionHandle for details.
+ *
+ * Partition files written by one implementation can be opened by the other, although
+ * files written by this one are grown in whole mapped segments.
+ */
+public class MappedDiskSpaceManager extends DiskSpaceManagerImpl {
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager) {
+        super(dbDir, recoveryManager);
+    }
+
+    @Override
+    PartitionHandle newPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        return new MappedPartitionHandle(partNum, recoveryManager);
+    }
+}
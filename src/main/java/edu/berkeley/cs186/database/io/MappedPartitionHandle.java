@@ -0,0 +1,97 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
+
+/**
+ * Partition handle that serves data page reads and writes from memory mappings of
+ * the OS file instead of read/write system calls. The file is mapped in fixed-size
+ * segments, which are mapped lazily the first time a page inside of them is accessed
+ * (mapping a segment past the end of the file grows the file to cover it).
+ *
+ * Master and header pages are still read and written through the file channel.
+ */
+class MappedPartitionHandle extends PartitionHandle {
+    // Size of each mapped segment of the OS file, in bytes. Must be a multiple of the page size.
+    static final long SEGMENT_SIZE = 1024L * PAGE_SIZE;
+
+    // Mapped segments, indexed by offset / SEGMENT_SIZE; null if not mapped yet.
+    private List<MappedByteBuffer> segments;
+
+    // Segments with writes that have not been forced to disk yet.
+    private BitSet dirtySegments;
+
+    MappedPartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        super(partNum, recoveryManager);
+        this.segments = new ArrayList<>();
+        this.dirtySegments = new BitSet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            // the mappings themselves are released once the buffers are garbage collected
+            this.segments.clear();
+            this.dirtySegments.clear();
+            super.close();
+        } finally {
+            this.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    void readDataPage(int pageNum, ByteBuffer buf) throws IOException {
+        long offset = PartitionHandle.dataPageOffset(pageNum);
+        ByteBuffer b = this.getSegment(offset).duplicate();
+        b.position((int) (offset % SEGMENT_SIZE));
+        b.limit(b.position() + PAGE_SIZE);
+        buf.put(b);
+    }
+
+    @Override
+    void writeDataPage(int pageNum, ByteBuffer buf) throws IOException {
+        long offset = PartitionHandle.dataPageOffset(pageNum);
+        ByteBuffer b = this.getSegment(offset).duplicate();
+        b.position((int) (offset % SEGMENT_SIZE));
+        b.put(buf);
+        this.dirtySegments.set((int) (offset / SEGMENT_SIZE));
+    }
+
+    @Override
+    void force() throws IOException {
+        for (int i = dirtySegments.nextSetBit(0); i >= 0; i = dirtySegments.nextSetBit(i + 1)) {
+            this.segments.get(i).force();
+        }
+        this.dirtySegments.clear();
+        super.force();
+    }
+
+    /**
+     * Gets the segment containing the given offset of the OS file, mapping it if necessary.
+     * Assumes that the partition lock is held.
+     * @param offset offset in the OS file
+     * @return mapped segment
+     */
+    private MappedByteBuffer getSegment(long offset) throws IOException {
+        int index = (int) (offset / SEGMENT_SIZE);
+        while (this.segments.size() <= index) {
+            this.segments.add(null);
+        }
+        MappedByteBuffer segment = this.segments.get(index);
+        if (segment == null) {
+            segment = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, index * SEGMENT_SIZE, SEGMENT_SIZE);
+            this.segments.set(index, segment);
+        }
+        return segment;
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.io;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.IOException;
@@ -23,7 +24,7 @@ class PartitionHandle implements AutoCloseable {
 
     // Underlying OS file/file channel.
     private RandomAccessFile file;
-    private FileChannel fileChannel;
+    FileChannel fileChannel;
 
     // Contents of the master page of this partition
     // Ideally would be an unsigned short array but Java doesn't have unsigned types
@@ -38,12 +39,23 @@ class PartitionHandle implements AutoCloseable {
     // Partition number
     private int partNum;
 
+    // Whether every data page write is forced to disk before returning. Only the
+    // log partition needs this; writes to other partitions are forced by sync().
+    private boolean strictSync;
+
+    // Whether there are writes to the file that have not been forced to disk yet.
+    private boolean unsynced;
+
+    // Number of times the file was forced to disk.
+    private long numSyncs;
+
     PartitionHandle(int partNum, RecoveryManager recoveryManager) {
         this.masterPage = new int[MAX_HEADER_PAGES];
         this.headerPages = new byte[MAX_HEADER_PAGES][];
         this.partitionLock = new ReentrantLock();
         this.recoveryManager = recoveryManager;
         this.partNum = partNum;
+        this.strictSync = partNum == LogManager.LOG_PARTITION;
     }
 
     /**
@@ -91,6 +103,32 @@ class PartitionHandle implements AutoCloseable {
         }
     }
 
+    /**
+     * Forces all writes made to the partition since the last sync to disk. Assumes
+     * that the partition lock is held.
+     */
+    void sync() throws IOException {
+        if (this.unsynced) {
+            this.force();
+            this.unsynced = false;
+            ++this.numSyncs;
+        }
+    }
+
+    /**
+     * Forces the OS file to disk.
+     */
+    void force() throws IOException {
+        this.fileChannel.force(false);
+    }
+
+    /**
+     * @return number of times the partition has been forced to disk
+     */
+    long getNumSyncs() {
+        return this.numSyncs;
+    }
+
     /**
      * Writes the master page to disk.
      */
@@ -101,6 +139,7 @@ class PartitionHandle implements AutoCloseable {
         }
         b.position(0);
         this.fileChannel.write(b, PartitionHandle.masterPageOffset());
+        this.unsynced = true;
     }
 
     /**
@@ -110,6 +149,7 @@ class PartitionHandle implements AutoCloseable {
     private void writeHeaderPage(int headerIndex) throws IOException {
         ByteBuffer b = ByteBuffer.wrap(this.headerPages[headerIndex]);
         this.fileChannel.write(b, PartitionHandle.headerPageOffset(headerIndex));
+        this.unsynced = true;
     }
 
     /**
@@ -203,9 +243,10 @@ class PartitionHandle implements AutoCloseable {
 
         TransactionContext transaction = TransactionContext.getTransaction();
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
-        if (transaction != null) {
+        // log pages are freed by log truncation, which must not write to the log itself
+        if (transaction != null && partNum != LogManager.LOG_PARTITION) {
             byte[] contents = new byte[PAGE_SIZE];
-            readPage(pageNum, contents);
+            readPage(pageNum, ByteBuffer.wrap(contents));
             int halfway = BufferManager.RESERVED_SPACE + BufferManager.EFFECTIVE_PAGE_SIZE / 2;
             recoveryManager.logPageWrite(
                     transaction.getTransNum(),
@@ -233,33 +274,54 @@ class PartitionHandle implements AutoCloseable {
     /**
      * Reads in a data page. Assumes that the partition lock is held.
      * @param pageNum data page number to read in
-     * @param buf output buffer to be filled with page - assumed to be page size
+     * @param buf output buffer to be filled with page - assumed to have page size bytes remaining
      */
-    void readPage(int pageNum, byte[] buf) throws IOException {
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.read(b, PartitionHandle.dataPageOffset(pageNum));
+        this.readDataPage(pageNum, buf);
+    }
+
+    /**
+     * Reads the contents of a data page from the OS file.
+     * @param pageNum data page number to read in
+     * @param buf output buffer to be filled with page - assumed to have page size bytes remaining
+     */
+    void readDataPage(int pageNum, ByteBuffer buf) throws IOException {
+        this.fileChannel.read(buf, PartitionHandle.dataPageOffset(pageNum));
     }
 
     /**
-     * Writes to a data page. Assumes that the partition lock is held.
+     * Writes to a data page. Assumes that the partition lock is held. Writes to the
+     * log partition are forced to disk immediately; writes to other partitions are
+     * only guaranteed to be on disk after the next sync().
      * @param pageNum data page number to write to
-     * @param buf input buffer with new contents of page - assumed to be page size
+     * @param buf input buffer with new contents of page - assumed to have page size bytes remaining
      */
-    void writePage(int pageNum, byte[] buf) throws IOException {
+    void writePage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.write(b, PartitionHandle.dataPageOffset(pageNum));
-        this.fileChannel.force(false);
+        this.writeDataPage(pageNum, buf);
+        this.unsynced = true;
+        if (this.strictSync) {
+            this.sync();
+        }
 
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         recoveryManager.diskIOHook(vpn);
     }
 
+    /**
+     * Writes the contents of a data page to the OS file.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page - assumed to have page size bytes remaining
+     */
+    void writeDataPage(int pageNum, ByteBuffer buf) throws IOException {
+        this.fileChannel.write(buf, PartitionHandle.dataPageOffset(pageNum));
+    }
+
     /**
      * Checks if page number is for an unallocated data page
      * @param pageNum data page number
@@ -322,7 +384,7 @@ class PartitionHandle implements AutoCloseable {
      * @param pageNum data page number
      * @return offset in OS file for data page
      */
-    private static long dataPageOffset(int pageNum) {
+    static long dataPageOffset(int pageNum) {
         // Consider the layout if we had 4 data pages per header:
         // Offset (in pages):  0  1  2  3  4  5  6  7  8  9 10
         // Page Type:         [M][H][D][D][D][D][H][D][D][D][D]
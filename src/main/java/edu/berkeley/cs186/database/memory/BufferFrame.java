@@ -5,7 +5,8 @@ package edu.berkeley.cs186.database.memory;
  */
 abstract class BufferFrame {
     Object tag = null;
-    private int pinCount = 0;
+    // Only modified with the frame latched, but read without it (e.g. by eviction policies)
+    private volatile int pinCount = 0;
 
     /**
      * Pin buffer frame; cannot be evicted while pinned. A "hit" happens when the
@@ -63,6 +64,32 @@ abstract class BufferFrame {
      */
     abstract void writeBytes(short position, short num, byte[] buf);
 
+    /**
+     * Write to the buffer frame without logging the write, and mark frame as dirtied.
+     * @param position position in buffer frame to start writing
+     * @param num number of bytes to write
+     * @param buf input buffer
+     */
+    abstract void applyBytes(short position, short num, byte[] buf);
+
+    /**
+     * Insert a record into a heap page, and mark frame as dirtied: sets bit entryNum of
+     * the bitmap at bitmapOffset, and writes the record at offset.
+     * @param bitmapOffset position in buffer frame of the bitmap of used slots
+     * @param entryNum slot of the record
+     * @param offset position in buffer frame of the record
+     * @param record bytes of the record
+     */
+    abstract void insertRecord(short bitmapOffset, short entryNum, short offset, byte[] record);
+
+    /**
+     * Delete a record from a heap page, and mark frame as dirtied: clears bit entryNum
+     * of the bitmap at bitmapOffset.
+     * @param bitmapOffset position in buffer frame of the bitmap of used slots
+     * @param entryNum slot of the record
+     */
+    abstract void deleteRecord(short bitmapOffset, short entryNum);
+
     /**
      * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
      * Frame is pinned on return.
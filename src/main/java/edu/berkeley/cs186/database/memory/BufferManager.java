@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.memory;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
@@ -10,15 +11,37 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
- * Data is stored in page-sized byte arrays, and returned in a Frame object specific
+ * Data is stored in page-sized byte buffers, and returned in a Frame object specific
  * to the page loaded (evicting and loading a new page into the frame will result in
- * a new Frame object, with the same underlying byte array), with old Frame objects
- * backed by the same byte array marked as invalid.
+ * a new Frame object, with the same underlying byte buffer), with old Frame objects
+ * backed by the same byte buffer marked as invalid.
+ *
+ * Lookups of pages that are already loaded go through a concurrent page table and only
+ * latch the frame being pinned; the manager lock is only taken to load a page on a miss
+ * (choosing and evicting a frame for it), and to free pages and partitions.
+ *
+ * Dirty pages are normally written back when their frame is evicted; a background page
+ * cleaner (see setPageCleaner) can write them back ahead of time instead, so that
+ * evictions rarely have to wait on a write (and a log flush).
+ *
+ * Scans can have upcoming pages read ahead of time by background threads (see prefetch),
+ * when read-ahead is enabled with setReadAhead.
+ *
+ * The byte buffers are either heap byte arrays, or page-sized slices of a few large
+ * direct (off-heap) regions, in which case the size of the buffer pool does not count
+ * towards the Java heap, and pages are read and written by the disk space manager
+ * straight out of the frames.
  */
 public class BufferManager implements AutoCloseable {
     // We reserve 36 bytes on each page for bookkeeping for recovery
@@ -29,18 +52,30 @@ public class BufferManager implements AutoCloseable {
     // Effective page size available to users of buffer manager.
     public static final short EFFECTIVE_PAGE_SIZE = (short) (DiskSpaceManager.PAGE_SIZE - RESERVED_SPACE);
 
+    // Maximum number of pages in a single direct region (a ByteBuffer is limited to 2GB).
+    static final int MAX_PAGES_PER_REGION = Integer.MAX_VALUE / DiskSpaceManager.PAGE_SIZE;
+
     // Buffer frames
     private Frame[] frames;
 
+    // Whether the frames are backed by direct (off-heap) memory
+    private boolean offHeap;
+
     // Reference to the disk space manager underneath this buffer manager instance.
     private DiskSpaceManager diskSpaceManager;
 
-    // Map of page number to frame index
-    private Map<Long, Integer> pageToFrame;
+    // Map of page number to the frame the page is loaded in. Read without the manager
+    // lock; only modified while holding it.
+    private Map<Long, Frame> pageToFrame;
 
-    // Lock on buffer manager
+    // Lock on buffer manager, held while loading pages into frames and freeing pages
     private ReentrantLock managerLock;
 
+    // Map of page number to the frame the page was just evicted from, while the frame
+    // is being flushed (outside of the manager lock). Loading the page again waits for
+    // the flush, so that it does not read a stale copy from disk.
+    private Map<Long, Frame> evictingPages;
+
     // Eviction policy
     private EvictionPolicy evictionPolicy;
 
@@ -50,25 +85,59 @@ public class BufferManager implements AutoCloseable {
     // Recovery manager
     private RecoveryManager recoveryManager;
 
-    // Count of number of I/Os
-    private long numIOs = 0;
+    // Count of number of I/Os, incremented from concurrent fetches and evictions
+    private final LongAdder numIOs = new LongAdder();
+
+    // Number of background threads used to read pages ahead.
+    static final int PREFETCH_THREADS = 2;
+
+    // Number of pages that scans should read ahead (0 if read-ahead is disabled).
+    private volatile int readAheadPages = 0;
+
+    // Background threads reading pages ahead; created when read-ahead is first enabled.
+    private ExecutorService prefetchExecutor;
+
+    // Page numbers of pages queued or being read by the prefetch threads.
+    private Set<Long> prefetchingPages;
+
+    // Number of pages read ahead, read ahead pages that were later fetched, and read
+    // ahead pages that were evicted or freed without ever being fetched.
+    private LongAdder numPrefetches = new LongAdder();
+    private LongAdder numPrefetchHits = new LongAdder();
+    private LongAdder numPrefetchesWasted = new LongAdder();
+
+    // Background thread writing back dirty pages; null if the page cleaner is not running.
+    private ScheduledExecutorService pageCleaner;
+
+    // Fraction of the frames that the page cleaner tries to keep clean (free or not dirty).
+    private volatile double targetCleanRatio;
+
+    // Frame index the page cleaner resumes looking for dirty frames at.
+    private int cleanerArm = 0;
+
+    // Number of pages written back by the page cleaner.
+    private LongAdder numCleanerWrites = new LongAdder();
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
-     * underlying byte array. Free frames use the index field to create a (singly) linked
+     * underlying byte buffer. Free frames use the index field to create a (singly) linked
      * list between free frames.
      */
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
-        byte[] contents;
+        // Page-sized buffer for the page; only accessed with absolute offsets or through
+        // duplicates, so that the position of the buffer is always 0.
+        ByteBuffer contents;
         private int index;
         private long pageNum;
         private boolean dirty;
-        private ReentrantLock frameLock;
+        private final ReentrantLock frameLock;
         private boolean logPage;
+        // Whether the page was read ahead and has not been fetched since.
+        private boolean prefetched;
 
-        Frame(byte[] contents, int nextFree) {
+        Frame(ByteBuffer contents, int nextFree) {
             this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
         }
 
@@ -76,7 +145,7 @@ public class BufferManager implements AutoCloseable {
             this(frame.contents, frame.index, frame.pageNum);
         }
 
-        Frame(byte[] contents, int index, long pageNum) {
+        Frame(ByteBuffer contents, int index, long pageNum) {
             this.contents = contents;
             this.index = index;
             this.pageNum = pageNum;
@@ -101,6 +170,22 @@ public class BufferManager implements AutoCloseable {
             super.pin();
         }
 
+        /**
+         * Pins the buffer frame if it is valid and holds the given page.
+         *
+         * @param pageNum page number expected in the frame
+         * @return whether the frame was pinned
+         */
+        private boolean pinIfLoaded(long pageNum) {
+            this.frameLock.lock();
+            if (!this.isValid() || this.pageNum != pageNum) {
+                this.frameLock.unlock();
+                return false;
+            }
+            super.pin();
+            return true;
+        }
+
         /**
          * Unpin buffer frame.
          */
@@ -131,6 +216,7 @@ public class BufferManager implements AutoCloseable {
         private void invalidate() {
             if (this.isValid()) {
                 this.flush();
+                this.discardPrefetch();
             }
             this.index = INVALID_INDEX;
             this.contents = null;
@@ -143,11 +229,22 @@ public class BufferManager implements AutoCloseable {
             if (isFreed()) {
                 throw new IllegalStateException("cannot free free frame");
             }
+            this.discardPrefetch();
             int nextFreeIndex = firstFreeIndex;
             firstFreeIndex = this.index;
             this.index = ~nextFreeIndex;
         }
 
+        /**
+         * Counts the page as wasted read-ahead if it was read ahead and never fetched.
+         */
+        private void discardPrefetch() {
+            if (this.prefetched) {
+                this.prefetched = false;
+                numPrefetchesWasted.increment();
+            }
+        }
+
         private void setUsed() {
             if (!isFreed()) {
                 throw new IllegalStateException("cannot unfree used frame");
@@ -204,7 +301,9 @@ public class BufferManager implements AutoCloseable {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
+                ByteBuffer b = this.contents.duplicate();
+                b.position(position + dataOffset());
+                b.get(buf, 0, num);
                 BufferManager.this.evictionPolicy.hit(this);
             } finally {
                 this.unpin();
@@ -226,19 +325,81 @@ public class BufferManager implements AutoCloseable {
                 }
                 int offset = position + dataOffset();
                 TransactionContext transaction = TransactionContext.getTransaction();
+                ByteBuffer b = this.contents.duplicate();
+                b.position(offset);
                 if (transaction != null && !logPage) {
-                    List<Pair<Integer, Integer>> changedRanges = getChangedBytes(offset, num, buf);
+                    byte[] current = new byte[num];
+                    b.duplicate().get(current);
+                    List<Pair<Integer, Integer>> changedRanges = getChangedBytes(current, num, buf);
+                    // writes to a page the transaction allocated are never undone, so the
+                    // bytes before the write need not be logged
+                    boolean newPage = !changedRanges.isEmpty() &&
+                                      recoveryManager.isNewPage(transaction.getTransNum(), pageNum);
                     for (Pair<Integer, Integer> range : changedRanges) {
                         int start = range.getFirst();
                         int len = range.getSecond();
-                        byte[] before = Arrays.copyOfRange(contents, start + offset, start + offset + len);
                         byte[] after = Arrays.copyOfRange(buf, start, start + len);
-                        long pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, (short) (start + position), before,
-                                       after);
+                        long pageLSN;
+                        if (newPage) {
+                            pageLSN = recoveryManager.logPageImage(transaction.getTransNum(), pageNum,
+                                                                   (short) (start + position), after);
+                        } else {
+                            byte[] before = Arrays.copyOfRange(current, start, start + len);
+                            pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, (short) (start + position), before,
+                                      after);
+                        }
                         this.setPageLSN(pageLSN);
                     }
                 }
-                System.arraycopy(buf, 0, this.contents, offset, num);
+                b.put(buf, 0, num);
+                this.dirty = true;
+                BufferManager.this.evictionPolicy.hit(this);
+            } finally {
+                this.unpin();
+            }
+        }
+
+        @Override
+        void applyBytes(short position, short num, byte[] buf) {
+            this.pin();
+            try {
+                if (!this.isValid()) {
+                    throw new IllegalStateException("writing to invalid buffer frame");
+                }
+                ByteBuffer b = this.contents.duplicate();
+                b.position(position + dataOffset());
+                b.put(buf, 0, num);
+                this.dirty = true;
+                BufferManager.this.evictionPolicy.hit(this);
+            } finally {
+                this.unpin();
+            }
+        }
+
+        @Override
+        void insertRecord(short bitmapOffset, short entryNum, short offset, byte[] record) {
+            this.pin();
+            try {
+                if (!this.isValid()) {
+                    throw new IllegalStateException("writing to invalid buffer frame");
+                }
+                ByteBuffer b = this.contents.duplicate();
+                b.position(offset + dataOffset());
+                TransactionContext transaction = TransactionContext.getTransaction();
+                if (transaction != null && !logPage) {
+                    // the slot may hold a record deleted earlier by the same transaction,
+                    // which undoing the insert has to put back
+                    byte[] before = new byte[record.length];
+                    b.duplicate().get(before);
+                    boolean zero = true;
+                    for (byte x : before) {
+                        zero &= x == 0;
+                    }
+                    this.setPageLSN(recoveryManager.logRecordInsert(transaction.getTransNum(), pageNum,
+                                    bitmapOffset, entryNum, offset, zero ? new byte[0] : before, record));
+                }
+                setBit(bitmapOffset, entryNum, Bits.Bit.ONE);
+                b.put(record);
                 this.dirty = true;
                 BufferManager.this.evictionPolicy.hit(this);
             } finally {
@@ -246,6 +407,34 @@ public class BufferManager implements AutoCloseable {
             }
         }
 
+        @Override
+        void deleteRecord(short bitmapOffset, short entryNum) {
+            this.pin();
+            try {
+                if (!this.isValid()) {
+                    throw new IllegalStateException("writing to invalid buffer frame");
+                }
+                setBit(bitmapOffset, entryNum, Bits.Bit.ZERO);
+                TransactionContext transaction = TransactionContext.getTransaction();
+                if (transaction != null && !logPage) {
+                    this.setPageLSN(recoveryManager.logRecordDelete(transaction.getTransNum(), pageNum,
+                                    bitmapOffset, entryNum));
+                }
+                this.dirty = true;
+                BufferManager.this.evictionPolicy.hit(this);
+            } finally {
+                this.unpin();
+            }
+        }
+
+        // Sets bit entryNum of the bitmap at bitmapOffset, without logging.
+        private void setBit(short bitmapOffset, short entryNum, Bits.Bit bit) {
+            int index = dataOffset() + bitmapOffset + entryNum / 8;
+            byte[] b = new byte[] {this.contents.get(index)};
+            Bits.setBit(b, entryNum % 8, bit);
+            this.contents.put(index, b[0]);
+        }
+
         /**
          * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
          * Page is pinned on return.
@@ -278,7 +467,7 @@ public class BufferManager implements AutoCloseable {
 
         @Override
         long getPageLSN() {
-            return ByteBuffer.wrap(this.contents).getLong(8);
+            return this.contents.getLong(8);
         }
 
         @Override
@@ -293,21 +482,23 @@ public class BufferManager implements AutoCloseable {
         }
 
         /**
-         * Generates (offset, length) pairs for where buf differs from contents. Merges nearby
-         * pairs (where nearby is defined as pairs that have fewer than BufferManager.RESERVED_SPACE
-         * bytes of unmodified data between them).
+         * Generates (offset, length) pairs for where buf differs from current (the bytes currently
+         * in the frame). Merges nearby pairs (where nearby is defined as pairs that have fewer than
+         * BufferManager.RESERVED_SPACE bytes of unmodified data between them).
          */
-        private List<Pair<Integer, Integer>> getChangedBytes(int offset, int num, byte[] buf) {
+        private List<Pair<Integer, Integer>> getChangedBytes(byte[] current, int num, byte[] buf) {
             List<Pair<Integer, Integer>> ranges = new ArrayList<>();
             int maxRange = EFFECTIVE_PAGE_SIZE / 2;
             int startIndex = -1;
             int skip = -1;
             for (int i = 0; i < num; ++i) {
                 if (startIndex >= 0 && maxRange == i - startIndex) {
-                    ranges.add(new Pair<>(startIndex, maxRange));
+                    // cut the range, and start the next one at this byte if it changed
+                    ranges.add(new Pair<>(startIndex, maxRange - skip));
                     startIndex = -1;
                     skip = -1;
-                } else if (buf[i] == contents[offset + i] && startIndex >= 0) {
+                }
+                if (buf[i] == current[i] && startIndex >= 0) {
                     if (skip > BufferManager.RESERVED_SPACE) {
                         ranges.add(new Pair<>(startIndex, i - startIndex - skip));
                         startIndex = -1;
@@ -315,7 +506,7 @@ public class BufferManager implements AutoCloseable {
                     } else {
                         ++skip;
                     }
-                } else if (buf[i] != contents[offset + i]) {
+                } else if (buf[i] != current[i]) {
                     if (startIndex < 0) {
                         startIndex = i;
                     }
@@ -329,7 +520,7 @@ public class BufferManager implements AutoCloseable {
         }
 
         void setPageLSN(long pageLSN) {
-            ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
+            this.contents.putLong(8, pageLSN);
         }
 
         private short dataOffset() {
@@ -350,20 +541,293 @@ public class BufferManager implements AutoCloseable {
      */
     public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
                          int bufferSize, EvictionPolicy evictionPolicy) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, false);
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether to back the frames with direct (off-heap) memory
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap) {
         this.frames = new Frame[bufferSize];
+        ByteBuffer[] buffers = offHeap ? allocateDirect(bufferSize) : allocateHeap(bufferSize);
         for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
+            this.frames[i] = new Frame(buffers[i], i + 1);
         }
+        this.offHeap = offHeap;
         this.firstFreeIndex = 0;
         this.diskSpaceManager = diskSpaceManager;
-        this.pageToFrame = new HashMap<>();
+        this.pageToFrame = new ConcurrentHashMap<>();
+        this.evictingPages = new ConcurrentHashMap<>();
         this.managerLock = new ReentrantLock();
         this.evictionPolicy = evictionPolicy;
         this.recoveryManager = recoveryManager;
     }
 
+    /**
+     * Allocates a page-sized heap buffer for each frame.
+     */
+    private static ByteBuffer[] allocateHeap(int bufferSize) {
+        ByteBuffer[] buffers = new ByteBuffer[bufferSize];
+        for (int i = 0; i < bufferSize; ++i) {
+            buffers[i] = ByteBuffer.wrap(new byte[DiskSpaceManager.PAGE_SIZE]);
+        }
+        return buffers;
+    }
+
+    /**
+     * Allocates the buffer pool as direct regions of up to MAX_PAGES_PER_REGION pages,
+     * and slices them into a page-sized buffer for each frame.
+     */
+    private static ByteBuffer[] allocateDirect(int bufferSize) {
+        ByteBuffer[] buffers = new ByteBuffer[bufferSize];
+        ByteBuffer region = null;
+        for (int i = 0; i < bufferSize; ++i) {
+            int pageInRegion = i % MAX_PAGES_PER_REGION;
+            if (pageInRegion == 0) {
+                int regionPages = Math.min(MAX_PAGES_PER_REGION, bufferSize - i);
+                region = ByteBuffer.allocateDirect(regionPages * DiskSpaceManager.PAGE_SIZE);
+            }
+            region.limit((pageInRegion + 1) * DiskSpaceManager.PAGE_SIZE);
+            region.position(pageInRegion * DiskSpaceManager.PAGE_SIZE);
+            buffers[i] = region.slice();
+        }
+        return buffers;
+    }
+
+    /**
+     * @return the disk space manager that pages are read from and written to
+     */
+    public DiskSpaceManager getDiskSpaceManager() {
+        return diskSpaceManager;
+    }
+
+    /**
+     * Writes a page straight to disk, without loading it into a frame. The page must not
+     * be loaded (or be fetched until this returns), since its frame would not see the write.
+     * Does not lock any frames, so may be called while a page is being evicted.
+     * @param pageNum page number
+     * @param contents contents of the page (PAGE_SIZE bytes)
+     */
+    public void writePageDirect(long pageNum, byte[] contents) {
+        diskSpaceManager.writePage(pageNum, contents);
+        incrementIOs();
+    }
+
+    /**
+     * @return whether the frames of this buffer manager are backed by direct (off-heap) memory
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Sets the number of pages that scans read ahead (see prefetch). Pages are read
+     * ahead by background threads into frames picked like for any other page (free
+     * frames first, otherwise the frame chosen by the eviction policy).
+     *
+     * @param numPages number of pages to read ahead, or 0 to disable read-ahead
+     */
+    public synchronized void setReadAhead(int numPages) {
+        if (numPages < 0) {
+            throw new IllegalArgumentException("read-ahead must be non-negative");
+        }
+        if (numPages > 0 && this.prefetchExecutor == null) {
+            this.prefetchingPages = ConcurrentHashMap.newKeySet();
+            this.prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS, r -> {
+                Thread t = new Thread(r, "buffer-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        this.readAheadPages = numPages;
+    }
+
+    /**
+     * @return number of pages that scans read ahead, 0 if read-ahead is disabled
+     */
+    public int getReadAhead() {
+        return this.readAheadPages;
+    }
+
+    /**
+     * Asynchronously loads a page that is expected to be fetched soon (e.g. the next
+     * page of a sequential scan), if read-ahead is enabled and the page is not already
+     * loaded. The page is not pinned; a later fetch of the page counts as a prefetch hit,
+     * and evicting or freeing it before then counts as a wasted prefetch.
+     *
+     * @param pageNum page number of page to read ahead
+     */
+    public void prefetch(long pageNum) {
+        if (this.readAheadPages == 0 || this.pageToFrame.containsKey(pageNum)) {
+            return;
+        }
+        if (!this.prefetchingPages.add(pageNum)) {
+            return;
+        }
+        this.prefetchExecutor.execute(() -> {
+            try {
+                Frame frame = null;
+                while (frame == null && !this.pageToFrame.containsKey(pageNum)) {
+                    frame = this.loadPageFrame(pageNum);
+                }
+                if (frame != null) {
+                    frame.prefetched = true;
+                    frame.unpin();
+                    this.numPrefetches.increment();
+                }
+            } catch (PageException | IllegalStateException e) {
+                // page was freed, or every frame is pinned: skip reading it ahead
+            } finally {
+                this.prefetchingPages.remove(pageNum);
+            }
+        });
+    }
+
+    /**
+     * @return number of pages read ahead
+     */
+    public long getNumPrefetches() {
+        return this.numPrefetches.sum();
+    }
+
+    /**
+     * @return number of pages read ahead that were fetched before being evicted
+     */
+    public long getNumPrefetchHits() {
+        return this.numPrefetchHits.sum();
+    }
+
+    /**
+     * @return number of pages read ahead that were evicted or freed without being fetched
+     */
+    public long getNumPrefetchesWasted() {
+        return this.numPrefetchesWasted.sum();
+    }
+
+    /**
+     * Starts, reconfigures, or stops the background page cleaner. Every interval, the
+     * page cleaner writes back unpinned dirty pages (other than log pages) until at
+     * least targetCleanRatio of the frames are clean. Writes go through the same path
+     * as writes on eviction, so the log is flushed up to the pageLSN first.
+     *
+     * @param targetCleanRatio fraction of frames to keep clean, or 0 to stop the page cleaner
+     * @param interval time between rounds of cleaning
+     * @param unit unit of interval
+     */
+    public synchronized void setPageCleaner(double targetCleanRatio, long interval, TimeUnit unit) {
+        if (targetCleanRatio < 0 || targetCleanRatio > 1) {
+            throw new IllegalArgumentException("target clean ratio must be between 0 and 1");
+        }
+        this.stopPageCleaner();
+        this.targetCleanRatio = targetCleanRatio;
+        if (targetCleanRatio == 0) {
+            return;
+        }
+        this.pageCleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "buffer-page-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pageCleaner.scheduleWithFixedDelay(() -> {
+            try {
+                this.cleanPages(this.targetCleanRatio);
+            } catch (RuntimeException e) {
+                // try again next round (e.g. a page was freed while being written)
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops the page cleaner (if running), waiting for the current round to finish.
+     */
+    private synchronized void stopPageCleaner() {
+        if (this.pageCleaner == null) {
+            return;
+        }
+        this.pageCleaner.shutdown();
+        try {
+            this.pageCleaner.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.pageCleaner = null;
+    }
+
+    /**
+     * Runs a round of the page cleaner: writes back unpinned dirty pages, starting
+     * where the last round left off, until at least targetCleanRatio of the frames
+     * are clean or every frame has been looked at.
+     *
+     * @param targetCleanRatio fraction of frames to keep clean
+     * @return number of pages written back
+     */
+    int cleanPages(double targetCleanRatio) {
+        Frame[] frames;
+        this.managerLock.lock();
+        try {
+            frames = this.frames.clone();
+        } finally {
+            this.managerLock.unlock();
+        }
+        int maxDirty = frames.length - (int) Math.ceil(targetCleanRatio * frames.length);
+        int numDirty = 0;
+        for (Frame frame : frames) {
+            if (frame.isValid() && frame.dirty) {
+                ++numDirty;
+            }
+        }
+        int numWrites = 0;
+        for (int i = 0; i < frames.length && numDirty - numWrites > maxDirty; ++i) {
+            Frame frame = frames[this.cleanerArm];
+            this.cleanerArm = (this.cleanerArm + 1) % frames.length;
+            if (frame.logPage || !frame.dirty) {
+                continue;
+            }
+            // a frame's lock is held for as long as it is pinned; skip pinned frames
+            if (!frame.frameLock.tryLock()) {
+                continue;
+            }
+            try {
+                if (frame.isValid() && frame.dirty && !frame.isPinned()) {
+                    frame.flush();
+                    ++numWrites;
+                }
+            } finally {
+                frame.frameLock.unlock();
+            }
+        }
+        this.numCleanerWrites.add(numWrites);
+        return numWrites;
+    }
+
+    /**
+     * @return number of pages written back by the page cleaner
+     */
+    public long getNumCleanerWrites() {
+        return this.numCleanerWrites.sum();
+    }
+
     @Override
     public void close() {
+        this.stopPageCleaner();
+        synchronized (this) {
+            if (this.prefetchExecutor != null) {
+                this.prefetchExecutor.shutdown();
+                try {
+                    this.prefetchExecutor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                this.prefetchExecutor = null;
+                this.readAheadPages = 0;
+            }
+        }
         this.managerLock.lock();
         try {
             for (Frame frame : this.frames) {
@@ -395,36 +859,73 @@ public class BufferManager implements AutoCloseable {
      * @return buffer frame with specified page loaded
      */
     Frame fetchPageFrame(long pageNum) {
+        while (true) {
+            Frame frame = this.pageToFrame.get(pageNum);
+            if (frame != null && frame.pinIfLoaded(pageNum)) {
+                if (frame.prefetched) {
+                    frame.prefetched = false;
+                    this.numPrefetchHits.increment();
+                }
+                return frame;
+            }
+            frame = this.loadPageFrame(pageNum);
+            if (frame != null) {
+                return frame;
+            }
+            // the page was loaded by another thread, or the frame picked for eviction
+            // was pinned in the meantime; try again
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Loads a page into a free or evicted frame, and pins the frame.
+     *
+     * @param pageNum page number
+     * @return buffer frame with specified page loaded, or null if the page is already
+     * loaded or the page could not be loaded without waiting on a pinned frame
+     */
+    private Frame loadPageFrame(long pageNum) {
         this.managerLock.lock();
         Frame newFrame;
         Frame evictedFrame;
+        Frame flushingFrame;
         // figure out what frame to load data to, and update manager state
         try {
             if (!this.diskSpaceManager.pageAllocated(pageNum)) {
                 throw new PageException("page " + pageNum + " not allocated");
             }
             if (this.pageToFrame.containsKey(pageNum)) {
-                newFrame = this.frames[this.pageToFrame.get(pageNum)];
-                newFrame.pin();
-                return newFrame;
+                return null;
             }
+            flushingFrame = this.evictingPages.get(pageNum);
             // prioritize free frames over eviction
             if (this.firstFreeIndex < this.frames.length) {
                 evictedFrame = this.frames[this.firstFreeIndex];
+                evictedFrame.frameLock.lock();
                 evictedFrame.setUsed();
             } else {
                 evictedFrame = (Frame) evictionPolicy.evict(frames);
-                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
+                // another thread may have pinned the frame since it was picked (holding
+                // its lock); don't wait on it while holding the manager lock
+                if (!evictedFrame.frameLock.tryLock()) {
+                    return null;
+                }
+                if (evictedFrame.isPinned()) {
+                    evictedFrame.frameLock.unlock();
+                    return null;
+                }
+                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame);
+                this.evictingPages.put(evictedFrame.pageNum, evictedFrame);
                 evictionPolicy.cleanup(evictedFrame);
             }
             int frameIndex = evictedFrame.index;
             newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
             evictionPolicy.init(newFrame);
 
-            evictedFrame.frameLock.lock();
             newFrame.frameLock.lock();
 
-            this.pageToFrame.put(pageNum, frameIndex);
+            this.pageToFrame.put(pageNum, newFrame);
         } finally {
             this.managerLock.unlock();
         }
@@ -432,10 +933,16 @@ public class BufferManager implements AutoCloseable {
         try {
             evictedFrame.invalidate();
         } finally {
+            this.evictingPages.remove(evictedFrame.pageNum, evictedFrame);
             evictedFrame.frameLock.unlock();
         }
         // read new page into frame
         try {
+            if (flushingFrame != null) {
+                // wait for the frame the page was last evicted from to be flushed
+                flushingFrame.frameLock.lock();
+                flushingFrame.frameLock.unlock();
+            }
             newFrame.pageNum = pageNum;
             newFrame.pin();
             BufferManager.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
@@ -468,12 +975,7 @@ public class BufferManager implements AutoCloseable {
      */
     Frame fetchNewPageFrame(int partNum) {
         long pageNum = this.diskSpaceManager.allocPage(partNum);
-        this.managerLock.lock();
-        try {
-            return fetchPageFrame(pageNum);
-        } finally {
-            this.managerLock.unlock();
-        }
+        return fetchPageFrame(pageNum);
     }
 
     /**
@@ -488,6 +990,30 @@ public class BufferManager implements AutoCloseable {
         return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
     }
 
+    /**
+     * Fetches a buffer frame for a new page with a specific page number. Pins the buffer
+     * frame. Cannot be used outside the package.
+     *
+     * @param pageNum page number of the new page, which must not be allocated
+     * @return buffer frame for the new page
+     */
+    Frame fetchNewPageFrame(long pageNum) {
+        this.diskSpaceManager.allocPage(pageNum);
+        return fetchPageFrame(pageNum);
+    }
+
+    /**
+     * Fetches a new page with a specific page number, with a loaded and pinned buffer frame.
+     *
+     * @param parentContext parent lock context of the new page
+     * @param pageNum       page number of the new page, which must not be allocated
+     * @return the new page
+     */
+    public Page fetchNewPage(LockContext parentContext, long pageNum) {
+        Frame newFrame = this.fetchNewPageFrame(pageNum);
+        return this.frameToPage(parentContext, pageNum, newFrame);
+    }
+
     /**
      * Frees a page - evicts the page from cache, and tells the disk space manager
      * that the page is no longer needed. Page must be pinned before this call,
@@ -499,11 +1025,11 @@ public class BufferManager implements AutoCloseable {
         this.managerLock.lock();
         try {
             TransactionContext transaction = TransactionContext.getTransaction();
-            int frameIndex = this.pageToFrame.get(page.getPageNum());
+            Frame frame = this.pageToFrame.get(page.getPageNum());
+            int frameIndex = frame.index;
 
-            Frame frame = this.frames[frameIndex];
             if (transaction != null) page.flush();
-            this.pageToFrame.remove(page.getPageNum(), frameIndex);
+            this.pageToFrame.remove(page.getPageNum(), frame);
             evictionPolicy.cleanup(frame);
             frame.setFree();
 
@@ -527,11 +1053,16 @@ public class BufferManager implements AutoCloseable {
             for (int i = 0; i < frames.length; ++i) {
                 Frame frame = frames[i];
                 if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
-                    this.pageToFrame.remove(frame.getPageNum(), i);
-                    evictionPolicy.cleanup(frame);
-                    frame.flush();
-                    frame.setFree();
-                    frames[i] = new Frame(frame);
+                    frame.frameLock.lock();
+                    try {
+                        this.pageToFrame.remove(frame.getPageNum(), frame);
+                        evictionPolicy.cleanup(frame);
+                        frame.flush();
+                        frame.setFree();
+                        frames[i] = new Frame(frame);
+                    } finally {
+                        frame.frameLock.unlock();
+                    }
                 }
             }
 
@@ -549,10 +1080,11 @@ public class BufferManager implements AutoCloseable {
     public void evict(long pageNum) {
         managerLock.lock();
         try {
-            if (!pageToFrame.containsKey(pageNum)) {
+            Frame frame = pageToFrame.get(pageNum);
+            if (frame == null) {
                 return;
             }
-            evict(pageToFrame.get(pageNum));
+            evict(frame.index);
         } finally {
             managerLock.unlock();
         }
@@ -560,10 +1092,14 @@ public class BufferManager implements AutoCloseable {
 
     private void evict(int i) {
         Frame frame = frames[i];
-        frame.frameLock.lock();
+        // a frame's lock is held for as long as it is pinned, so there is nothing to evict
+        // if another thread holds it
+        if (!frame.frameLock.tryLock()) {
+            return;
+        }
         try {
             if (frame.isValid() && !frame.isPinned()) {
-                this.pageToFrame.remove(frame.pageNum, frame.index);
+                this.pageToFrame.remove(frame.pageNum, frame);
                 evictionPolicy.cleanup(frame);
 
                 frames[i] = new Frame(frame.contents, this.firstFreeIndex);
@@ -581,7 +1117,12 @@ public class BufferManager implements AutoCloseable {
      */
     public void evictAll() {
         for (int i = 0; i < frames.length; ++i) {
-            evict(i);
+            managerLock.lock();
+            try {
+                evict(i);
+            } finally {
+                managerLock.unlock();
+            }
         }
     }
 
@@ -611,7 +1152,7 @@ public class BufferManager implements AutoCloseable {
      * @return number of I/Os
      */
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.sum();
     }
 
     public static boolean logIOs;
@@ -626,7 +1167,7 @@ public class BufferManager implements AutoCloseable {
                 }
             }
         }
-        ++numIOs;
+        numIOs.increment();
     }
 
     /**
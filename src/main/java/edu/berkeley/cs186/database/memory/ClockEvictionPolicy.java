@@ -28,6 +28,7 @@ public class ClockEvictionPolicy implements EvictionPolicy {
      */
     @Override
     public void hit(BufferFrame frame) {
+        // a racy write is fine here: at worst a concurrent sweep of the arm misses the hit
         frame.tag = ACTIVE;
     }
 
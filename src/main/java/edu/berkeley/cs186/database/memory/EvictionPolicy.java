@@ -2,6 +2,10 @@ package edu.berkeley.cs186.database.memory;
 
 /**
  * Interface for eviction policies for the buffer manager.
+ *
+ * The buffer manager serializes calls to init, evict and cleanup, but hit is
+ * called by whichever thread reads or writes a frame, so it may run concurrently
+ * with itself and with the other methods.
  */
 public interface EvictionPolicy {
     /**
@@ -56,6 +56,56 @@ public class Page {
         return new PageBuffer();
     }
 
+    /**
+     * Gets a Buffer object over this page whose writes are not logged - should only be
+     * used by recovery, to apply changes that are already in the log.
+     *
+     * @return Buffer object over this page
+     */
+    public Buffer getUnloggedBuffer() {
+        return new PageBuffer(0, 0, false);
+    }
+
+    /**
+     * @return offset in the page of the start of the buffer returned by getBuffer()
+     */
+    protected int getDataOffset() {
+        return 0;
+    }
+
+    /**
+     * Inserts a record into a heap page, whose data (see getBuffer) starts with a bitmap
+     * of the used slots: sets bit entryNum of the bitmap, and writes the record at offset.
+     * This is logged as the insert of the record, rather than as updates of the bitmap
+     * and of the bytes of the record.
+     *
+     * @param entryNum slot of the record
+     * @param offset offset in the data of the record
+     * @param record bytes of the record
+     */
+    public void insertRecord(int entryNum, int offset, byte[] record) {
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
+        if (offset < 0 || frame.getEffectivePageSize() < getDataOffset() + offset + record.length) {
+            throw new PageException("insertRecord would go out of bounds");
+        }
+        this.frame.insertRecord((short) getDataOffset(), (short) entryNum, (short) (getDataOffset() + offset),
+                                record);
+    }
+
+    /**
+     * Deletes a record from a heap page (see insertRecord) by clearing bit entryNum of the
+     * bitmap. The bytes of the record are left on the page.
+     *
+     * @param entryNum slot of the record
+     */
+    public void deleteRecord(int entryNum) {
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
+        if (entryNum < 0 || frame.getEffectivePageSize() <= getDataOffset() + entryNum / 8) {
+            throw new PageException("deleteRecord would go out of bounds");
+        }
+        this.frame.deleteRecord((short) getDataOffset(), (short) entryNum);
+    }
+
     /**
      * Reads num bytes from offset position into buf.
      *
@@ -95,7 +145,7 @@ public class Page {
      * @param num the number of bytes to write
      * @param buf the source for the write
      */
-    private void writeBytes(int position, int num, byte[] buf) {
+    private void writeBytes(int position, int num, byte[] buf, boolean logged) {
         if (buf.length < num) {
             throw new PageException("num bytes to write is longer than buffer");
         }
@@ -108,7 +158,11 @@ public class Page {
             throw new PageException("writeBytes would go out of bounds");
         }
 
-        this.frame.writeBytes((short) position, (short) num, buf);
+        if (logged) {
+            this.frame.writeBytes((short) position, (short) num, buf);
+        } else {
+            this.frame.applyBytes((short) position, (short) num, buf);
+        }
     }
 
     /**
@@ -187,14 +241,17 @@ public class Page {
      */
     private class PageBuffer extends AbstractBuffer {
         private int offset;
+        // whether writes through this buffer are logged
+        private boolean logged;
 
         private PageBuffer() {
-            this(0, 0);
+            this(0, 0, true);
         }
 
-        private PageBuffer(int offset, int position) {
+        private PageBuffer(int offset, int position, boolean logged) {
             super(position);
             this.offset = offset;
+            this.logged = logged;
         }
 
         /**
@@ -225,7 +282,7 @@ public class Page {
         public Buffer put(byte[] src, int offset, int length) {
             // TODO(proj4_part2): Update the following line
             LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
-            Page.this.writeBytes(this.offset + offset, length, src);
+            Page.this.writeBytes(this.offset + offset, length, src, logged);
             return this;
         }
 
@@ -235,7 +292,7 @@ public class Page {
          */
         @Override
         public Buffer slice() {
-            return new PageBuffer(offset + position(), 0);
+            return new PageBuffer(offset + position(), 0, logged);
         }
 
         /**
@@ -244,7 +301,7 @@ public class Page {
          */
         @Override
         public Buffer duplicate() {
-            return new PageBuffer(offset, position());
+            return new PageBuffer(offset, position(), logged);
         }
     }
 }
@@ -0,0 +1,195 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Implementation of the 2Q eviction policy (Johnson and Shasha), which is resistant
+ * to sequential scans flushing out frequently used pages.
+ *
+ * Pages loaded for the first time go to a FIFO queue (A1in), and hits while they are
+ * in it are ignored (they are usually correlated references, like reading several
+ * records off of a page in a row). Pages evicted from A1in are remembered by page number
+ * only, in a bounded ghost queue (A1out). A page that is loaded again while it is still
+ * remembered has been referenced twice some time apart, and goes to an LRU queue (Am)
+ * instead. Frames are evicted from A1in as long as it holds more than its share of the
+ * buffer, so a long scan only ever cycles through A1in and leaves the pages in Am alone.
+ *
+ * Every operation moves frames between queues, so all of them are synchronized on
+ * the policy.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+    // Default fraction of the frames that A1in may hold before it is evicted from first.
+    public static final double DEFAULT_IN_FRACTION = 0.25;
+
+    // Default number of page numbers remembered in A1out, as a fraction of the frames.
+    public static final double DEFAULT_OUT_FRACTION = 0.5;
+
+    private double inFraction;
+    private double outFraction;
+
+    // FIFO queue of frames with pages loaded once, oldest first.
+    private Tag inHead;
+    private Tag inTail;
+    private int inSize;
+
+    // LRU queue of frames with pages loaded more than once, least recently used first.
+    private Tag mainHead;
+    private Tag mainTail;
+
+    // Page numbers of pages recently evicted from A1in, oldest first.
+    private Set<Long> outPages;
+
+    // Maximum size of outPages; only known once evict is called with the frames.
+    private int outCapacity;
+
+    // Position of a frame in one of the queues.
+    private static class Tag {
+        Tag prev = null;
+        Tag next = null;
+        BufferFrame cur = null;
+        boolean inMain = false;
+
+        @Override
+        public String toString() {
+            String scur = cur == null ? "null" : cur.toString();
+            return scur + (inMain ? " (Am)" : " (A1in)");
+        }
+    }
+
+    public TwoQueueEvictionPolicy() {
+        this(DEFAULT_IN_FRACTION, DEFAULT_OUT_FRACTION);
+    }
+
+    /**
+     * @param inFraction fraction of the frames that A1in may hold before it is evicted from first
+     * @param outFraction number of page numbers remembered in A1out, as a fraction of the frames
+     */
+    public TwoQueueEvictionPolicy(double inFraction, double outFraction) {
+        if (inFraction <= 0 || inFraction > 1 || outFraction < 0) {
+            throw new IllegalArgumentException("invalid 2Q queue sizes");
+        }
+        this.inFraction = inFraction;
+        this.outFraction = outFraction;
+        this.inHead = new Tag();
+        this.inTail = new Tag();
+        this.inHead.next = this.inTail;
+        this.inTail.prev = this.inHead;
+        this.mainHead = new Tag();
+        this.mainTail = new Tag();
+        this.mainHead.next = this.mainTail;
+        this.mainTail.prev = this.mainHead;
+        this.outPages = new LinkedHashSet<>();
+        this.outCapacity = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        Tag frameTag = new Tag();
+        frameTag.cur = frame;
+        frameTag.inMain = this.outPages.remove(frame.getPageNum());
+        if (frameTag.inMain) {
+            append(frameTag, this.mainTail);
+        } else {
+            append(frameTag, this.inTail);
+            ++this.inSize;
+        }
+        frame.tag = frameTag;
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        Tag frameTag = (Tag) frame.tag;
+        if (frameTag.inMain && frameTag.prev != frameTag) {
+            unlink(frameTag);
+            append(frameTag, this.mainTail);
+        }
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.outCapacity = (int) (frames.length * this.outFraction);
+        Tag first = this.inHead;
+        Tag second = this.mainHead;
+        if (this.inSize <= Math.max(1, (int) (frames.length * this.inFraction))) {
+            first = this.mainHead;
+            second = this.inHead;
+        }
+        BufferFrame evicted = firstUnpinned(first);
+        if (evicted == null) {
+            evicted = firstUnpinned(second);
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        return evicted;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        Tag frameTag = (Tag) frame.tag;
+        if (frameTag.prev == frameTag) {
+            return;
+        }
+        unlink(frameTag);
+        frameTag.prev = frameTag.next = frameTag;
+        if (!frameTag.inMain) {
+            --this.inSize;
+            this.outPages.add(frame.getPageNum());
+            Iterator<Long> iter = this.outPages.iterator();
+            while (this.outPages.size() > this.outCapacity) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return number of page numbers currently remembered in A1out
+     */
+    synchronized int getNumGhostPages() {
+        return this.outPages.size();
+    }
+
+    private static BufferFrame firstUnpinned(Tag head) {
+        for (Tag frameTag = head.next; frameTag.cur != null; frameTag = frameTag.next) {
+            if (!frameTag.cur.isPinned()) {
+                return frameTag.cur;
+            }
+        }
+        return null;
+    }
+
+    private static void append(Tag frameTag, Tag tail) {
+        frameTag.next = tail;
+        frameTag.prev = tail.prev;
+        tail.prev.next = frameTag;
+        tail.prev = frameTag;
+    }
+
+    private static void unlink(Tag frameTag) {
+        frameTag.prev.next = frameTag.next;
+        frameTag.next.prev = frameTag.prev;
+    }
+}
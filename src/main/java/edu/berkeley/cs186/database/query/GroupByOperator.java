@@ -1,18 +1,36 @@
 package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.HashFunc;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.query.disk.Run;
+import edu.berkeley.cs186.database.query.expr.Expression;
+import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.Histogram;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.*;
 
+/**
+ * Groups the records of its source by hashing. The aggregates of a query are
+ * computed by this operator as it groups the records (see aggregate), rather
+ * than by the ProjectOperator above it, so that only one record per group and
+ * the state of its aggregates are kept in memory.
+ *
+ * Groups are kept in an in-memory hash table of up to B-2 pages worth of
+ * records. Once the table is full, the records of groups that are not in it
+ * are spilled to B-1 partitions, which are then aggregated recursively, like
+ * the partitions of grace hash join.
+ */
 class GroupByOperator extends QueryOperator {
-    static final Record MARKER = new Record();
     private List<Integer> groupByColumnIndices;
     private List<String> groupByColumns;
     private TransactionContext transaction;
+    private int numBuffers;
 
     /**
      * Create a new GroupByOperator that pulls from source and groups by groupByColumn.
@@ -27,6 +45,7 @@ class GroupByOperator extends QueryOperator {
         super(OperatorType.GROUP_BY, source);
         Schema sourceSchema = this.getSource().getSchema();
         this.transaction = transaction;
+        this.numBuffers = transaction.getWorkMemSize();
         this.groupByColumns = new ArrayList<>();
         this.groupByColumnIndices = new ArrayList<>();
         for (String column: columns) {
@@ -44,9 +63,28 @@ class GroupByOperator extends QueryOperator {
         return true;
     }
 
+    /**
+     * @return an iterator over the first record of every group
+     */
     @Override
     public Iterator<Record> iterator() {
-        return new GroupByIterator();
+        return new GroupByIterator(null);
+    }
+
+    /**
+     * Computes expressions over every group. Aggregates in the expressions are
+     * computed over the records of the group, and other expressions, which may
+     * only refer to the group by columns, over the first record of the group.
+     * The expressions are not modified: each group gets its own copy of the
+     * expressions with aggregates.
+     *
+     * @param expressions expressions to compute, with their schema set to the
+     *                    schema of this operator
+     * @return an iterator over one record per group, with the values of the
+     * expressions
+     */
+    Iterator<Record> aggregate(List<Expression> expressions) {
+        return new GroupByIterator(expressions);
     }
 
     @Override
@@ -59,7 +97,7 @@ class GroupByOperator extends QueryOperator {
         String columns;
         if (this.groupByColumns.size() == 1) columns = groupByColumns.get(0);
         else columns = "(" + String.join(", ", groupByColumns) + ")";
-        return "Group By (cost=" + this.estimateIOCost() + ")" +
+        return "Group By (cost=" + this.getIOCost() + ")" +
                "\n  columns: " + columns;
     }
 
@@ -70,52 +108,159 @@ class GroupByOperator extends QueryOperator {
      */
     @Override
     public TableStats estimateStats() {
-        return this.getSource().estimateStats();
+        return this.getSource().getStats();
     }
 
     @Override
     public int estimateIOCost() {
-        int numBuffers = this.transaction.getWorkMemSize();
-        int N = getSource().estimateStats().getNumPages();
-        double pass0Runs = Math.ceil(N / (double)numBuffers);
-        double numPasses = 1 + Math.ceil(Math.log(pass0Runs) / Math.log(numBuffers - 1));
-        return (int) (2 * N * numPasses) + getSource().estimateIOCost();
+        // Without spilling, grouping is done as the source is read. Otherwise
+        // every record of a group that doesn't fit is written out and read
+        // back once per pass (usually one).
+        TableStats sourceStats = getSource().getStats();
+        int numRecords = sourceStats.getNumRecords();
+        long numGroups = 1;
+        for (int index: groupByColumnIndices) {
+            Histogram histogram = sourceStats.getHistograms().get(index);
+            int numDistinct = histogram.getNumDistinct();
+            numGroups *= numDistinct > 0 ? numDistinct : numRecords;
+            numGroups = Math.min(numGroups, numRecords);
+        }
+        int maxGroups = getMaxGroups();
+        if (numGroups <= maxGroups) {
+            return getSource().getIOCost();
+        }
+        int N = sourceStats.getNumPages();
+        double spilled = 1 - maxGroups / (double) numGroups;
+        return (int) (2 * N * spilled) + getSource().getIOCost();
+    }
+
+    /**
+     * @return the number of groups that fit in the in-memory hash table
+     */
+    private int getMaxGroups() {
+        Schema schema = getSource().getSchema();
+        int recordsPerPage = Table.computeNumRecordsPerPage(PageDirectory.EFFECTIVE_PAGE_SIZE, schema);
+        return Math.max(1, this.numBuffers - 2) * recordsPerPage;
+    }
+
+    /**
+     * @return the values of the group by columns of record
+     */
+    private Record getGroupKey(Record record) {
+        List<DataBox> values = new ArrayList<>(groupByColumnIndices.size());
+        for (int index: groupByColumnIndices) {
+            values.add(record.getValue(index));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * The first record of a group, and the expressions being computed over it.
+     */
+    private static class Group {
+        private Record first;
+        // copies of the expressions with aggregates, null for other expressions
+        private Expression[] aggregates;
+
+        private Group(Record first, List<Expression> expressions) {
+            this.first = first;
+            if (expressions != null) {
+                this.aggregates = new Expression[expressions.size()];
+                for (int i = 0; i < aggregates.length; i++) {
+                    Expression expression = expressions.get(i);
+                    if (expression.hasAgg()) {
+                        aggregates[i] = expression.copy();
+                        aggregates[i].reset();
+                    }
+                }
+            }
+        }
+
+        private void update(Record record) {
+            if (aggregates == null) return;
+            for (Expression aggregate: aggregates) {
+                if (aggregate != null) aggregate.update(record);
+            }
+        }
+
+        private Record evaluate(List<Expression> expressions) {
+            if (expressions == null) return first;
+            List<DataBox> values = new ArrayList<>(aggregates.length);
+            for (int i = 0; i < aggregates.length; i++) {
+                Expression expression = aggregates[i] != null ? aggregates[i] : expressions.get(i);
+                values.add(expression.evaluate(first));
+            }
+            return new Record(values);
+        }
     }
 
     /**
-     * An implementation of Iterator that provides an iterator interface for this operator.
-     * Returns a marker record between the records of different groups, e.g.
-     * [group 1 record] [group 1 record] [marker record] [group 2 record] ...
+     * An implementation of Iterator that provides an iterator interface for this
+     * operator. Each pass reads a source (the source operator on the first pass,
+     * a spilled partition after that) into the hash table, and spills the
+     * records of the groups that don't fit. Groups are returned a hash table
+     * at a time, and spilled partitions are only read once the groups before
+     * them have been returned.
      */
     private class GroupByIterator implements Iterator<Record> {
-        private Map<Record, String> hashGroupTempTables;
-        private int currCount;
-        private Iterator<String> tableNames;
-        private Iterator<Record> recordIterator;
-
-        private GroupByIterator() {
-            Iterator<Record> sourceIterator = GroupByOperator.this.getSource().iterator();
-            this.hashGroupTempTables = new HashMap<>();
-            this.currCount = 0;
-            this.recordIterator = null;
-            while (sourceIterator.hasNext()) {
-                Record record = sourceIterator.next();
-                List<DataBox> values = new ArrayList<>();
-                for (int index: groupByColumnIndices) {
-                    values.add(record.getValue(index));
+        private List<Expression> expressions;
+        private int maxGroups;
+        // the groups of the current pass
+        private Iterator<Group> groups;
+        // spilled partitions left to group, and the pass each is grouped in
+        private Deque<Pair<Run, Integer>> partitions = new ArrayDeque<>();
+
+        private GroupByIterator(List<Expression> expressions) {
+            this.expressions = expressions;
+            this.maxGroups = getMaxGroups();
+            this.groups = this.run(GroupByOperator.this.getSource(), 1);
+        }
+
+        /**
+         * Groups records into an in-memory hash table, and spills the records
+         * of groups that don't fit to partitions, to be grouped in later passes.
+         *
+         * @param records the records to group
+         * @param pass the current pass (used to pick a hash function)
+         * @return iterator over the groups that fit in memory
+         */
+        private Iterator<Group> run(Iterable<Record> records, int pass) {
+            if (pass > 5) throw new IllegalStateException("Reached the max number of passes");
+            Map<Record, Group> hashTable = new LinkedHashMap<>();
+            Run[] spilled = null;
+            for (Record record: records) {
+                Record key = getGroupKey(record);
+                Group group = hashTable.get(key);
+                if (group == null) {
+                    if (hashTable.size() >= this.maxGroups) {
+                        if (spilled == null) spilled = this.createPartitions();
+                        int partitionNum = HashFunc.hashRecord(key, pass) % spilled.length;
+                        if (partitionNum < 0) partitionNum += spilled.length;
+                        spilled[partitionNum].add(record);
+                        continue;
+                    }
+                    group = new Group(record, this.expressions);
+                    hashTable.put(key, group);
                 }
-                Record key = new Record(values);
-                String tableName;
-                if (this.hashGroupTempTables.containsKey(key)) {
-                    tableName = this.hashGroupTempTables.get(key);;
-                } else {
-                    tableName = GroupByOperator.this.transaction.createTempTable(
-                            GroupByOperator.this.getSource().getSchema());
-                    this.hashGroupTempTables.put(key, tableName);
+                group.update(record);
+            }
+            if (spilled != null) {
+                for (Run partition: spilled) {
+                    // empty partitions never create a temp table
+                    if (partition.getTableName() != null) {
+                        this.partitions.addLast(new Pair<>(partition, pass + 1));
+                    }
                 }
-                GroupByOperator.this.transaction.addRecord(tableName, record);
             }
-            this.tableNames = hashGroupTempTables.values().iterator();
+            return hashTable.values().iterator();
+        }
+
+        private Run[] createPartitions() {
+            Run[] spilled = new Run[Math.max(2, numBuffers - 1)];
+            for (int i = 0; i < spilled.length; i++) {
+                spilled[i] = new Run(transaction, GroupByOperator.this.getSource().getSchema());
+            }
+            return spilled;
         }
 
         /**
@@ -124,7 +269,11 @@ class GroupByOperator extends QueryOperator {
          */
         @Override
         public boolean hasNext() {
-            return this.tableNames.hasNext() || (this.recordIterator != null && this.recordIterator.hasNext());
+            while (!this.groups.hasNext() && !this.partitions.isEmpty()) {
+                Pair<Run, Integer> partition = this.partitions.removeFirst();
+                this.groups = this.run(partition.getFirst(), partition.getSecond());
+            }
+            return this.groups.hasNext();
         }
 
         /**
@@ -133,19 +282,8 @@ class GroupByOperator extends QueryOperator {
          */
         @Override
         public Record next() {
-            while (this.hasNext()) {
-                if (this.recordIterator != null && this.recordIterator.hasNext()) {
-                    return this.recordIterator.next();
-                } else if (this.tableNames.hasNext()) {
-                    String tableName = this.tableNames.next();
-                    Iterator<Record> prevIter = this.recordIterator;
-                    this.recordIterator = GroupByOperator.this.transaction.getRecordIterator(tableName);
-                    if (prevIter != null && ++this.currCount < this.hashGroupTempTables.size()) {
-                        return MARKER;
-                    }
-                }
-            }
-            throw new NoSuchElementException();
+            if (!this.hasNext()) throw new NoSuchElementException();
+            return this.groups.next().evaluate(this.expressions);
         }
     }
 }
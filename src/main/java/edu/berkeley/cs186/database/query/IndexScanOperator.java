@@ -53,7 +53,7 @@ class IndexScanOperator extends QueryOperator {
     public String str() {
         return String.format("Index Scan for %s%s%s on %s (cost=%d)",
             this.columnName, this.predicate.toSymbol(), this.value, this.tableName,
-            this.estimateIOCost());
+            this.getIOCost());
     }
 
     /**
@@ -65,6 +65,18 @@ class IndexScanOperator extends QueryOperator {
         return this.columnName;
     }
 
+    public String getTableName() {
+        return this.tableName;
+    }
+
+    public PredicateOperator getPredicate() {
+        return this.predicate;
+    }
+
+    public DataBox getValue() {
+        return this.value;
+    }
+
     @Override
     public TableStats estimateStats() {
         TableStats stats = this.transaction.getStats(this.tableName);
@@ -98,7 +110,7 @@ class IndexScanOperator extends QueryOperator {
 
     @Override
     public List<String> sortedBy() {
-        return Collections.singletonList(this.columnName);
+        return Collections.singletonList(this.getSchema().getFieldName(this.columnIndex));
     }
 
     /**
@@ -81,7 +81,7 @@ public abstract class JoinOperator extends QueryOperator {
     public String str() {
         return String.format("%s on %s=%s (cost=%d)",
                 this.joinType, this.leftColumnName, this.rightColumnName,
-                this.estimateIOCost());
+                this.getIOCost());
     }
 
     @Override
@@ -103,8 +103,8 @@ public abstract class JoinOperator extends QueryOperator {
      */
     @Override
     public TableStats estimateStats() {
-        TableStats leftStats = this.leftSource.estimateStats();
-        TableStats rightStats = this.rightSource.estimateStats();
+        TableStats leftStats = this.leftSource.getStats();
+        TableStats rightStats = this.rightSource.getStats();
         return leftStats.copyWithJoin(this.leftColumnIndex,
                 rightStats,
                 this.rightColumnIndex);
@@ -131,6 +131,13 @@ public abstract class JoinOperator extends QueryOperator {
         return this.transaction;
     }
 
+    /**
+     * @return the type of this join
+     */
+    public JoinType getJoinType() {
+        return this.joinType;
+    }
+
     /**
      * @return the name of the left column being joined on
      */
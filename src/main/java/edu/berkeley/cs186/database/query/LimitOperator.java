@@ -35,12 +35,12 @@ public class LimitOperator extends QueryOperator {
 
     @Override
     public String str() {
-        return "Limit (cost=" + this.estimateIOCost() + ")";
+        return "Limit (cost=" + this.getIOCost() + ")";
     }
 
     @Override
     public TableStats estimateStats() {
-        return this.source.estimateStats();
+        return this.source.getStats();
     }
 
     @Override
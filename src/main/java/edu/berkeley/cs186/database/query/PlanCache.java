@@ -0,0 +1,159 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TransactionContext;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of the join trees chosen by the optimizer (see
+ * QueryPlan.JoinTree), so that a query that is planned again skips the search
+ * over join orders, join types and access methods.
+ *
+ * The operators of a plan belong to the transaction that planned them (they
+ * hold its TransactionContext, and materialize into its temporary tables), so
+ * it is the choices behind the operators that are cached: QueryPlan.plan builds
+ * fresh operators from them in the planning transaction.
+ *
+ * Cached plans are invalidated by invalidate(), which should be called on any
+ * change to the schema or indices of the database, and again when the
+ * transaction that made it commits or aborts (plans it cached in between see
+ * the change, which other transactions only see if it commits), and when the
+ * number of records in one of their tables has drifted by more than MAX_DRIFT
+ * from when they were planned.
+ */
+public class PlanCache {
+    // relative change in the number of records of a table that invalidates
+    // the plans over it
+    static final double MAX_DRIFT = 0.5;
+
+    private final int capacity;
+    // key -> cached plan, least recently used first
+    private final LinkedHashMap<String, Entry> entries;
+    // incremented on every invalidate(), so that plans searched for before an
+    // invalidation aren't cached after it
+    private long version = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private static class Entry {
+        private QueryPlan.JoinTree tree;
+        // number of records of each table of the tree when it was planned
+        private Map<String, Integer> numRecords;
+
+        private Entry(QueryPlan.JoinTree tree, Map<String, Integer> numRecords) {
+            this.tree = tree;
+            this.numRecords = numRecords;
+        }
+    }
+
+    /**
+     * @param capacity the maximum number of plans to keep
+     */
+    public PlanCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PlanCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up the plan cached under key, dropping it if the statistics of its
+     * tables (as seen by transaction) have drifted since it was planned.
+     *
+     * Reading the statistics of a table may wait for a lock on it, so they are
+     * read without holding the monitor of the cache, which would otherwise
+     * hold up every other planner (and every invalidate()) behind that lock,
+     * out of sight of the deadlock detector.
+     *
+     * @return the cached join tree, or null if there isn't a valid one
+     */
+    QueryPlan.JoinTree get(String key, TransactionContext transaction) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        boolean drifted = entry != null && hasDrifted(entry, transaction);
+        synchronized (this) {
+            // the entry may have been dropped or replaced while its tables
+            // were checked
+            if (entry != null && this.entries.get(key) != entry) {
+                entry = null;
+            } else if (drifted) {
+                this.entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.tree;
+        }
+    }
+
+    /**
+     * Caches tree under key, unless the cache was invalidated since version.
+     * The statistics of the tables of tree are read before taking the monitor
+     * of the cache, like in get.
+     */
+    void put(String key, QueryPlan.JoinTree tree, TransactionContext transaction, long version) {
+        Map<String, Integer> numRecords = new HashMap<>();
+        for (String table: tree.getTables()) {
+            numRecords.put(table, transaction.getStats(table).getNumRecords());
+        }
+        synchronized (this) {
+            if (version != this.version) return;
+            this.entries.put(key, new Entry(tree, numRecords));
+        }
+    }
+
+    private static boolean hasDrifted(Entry entry, TransactionContext transaction) {
+        for (Map.Entry<String, Integer> table: entry.numRecords.entrySet()) {
+            int then = table.getValue();
+            int now = transaction.getStats(table.getKey()).getNumRecords();
+            if (Math.abs(now - then) > MAX_DRIFT * Math.max(then, 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops every cached plan.
+     */
+    public synchronized void invalidate() {
+        this.entries.clear();
+        this.version++;
+    }
+
+    /**
+     * @return the current version of the cache, to pass to put
+     */
+    synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return the number of cached plans
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of lookups that found a valid plan
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of lookups that didn't find a valid plan
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -99,21 +100,150 @@ public class ProjectOperator extends QueryOperator {
         return new ProjectIterator();
     }
 
+    /**
+     * Projects every batch of the source. Output columns that just name a
+     * column of the source share its values, and other expressions are
+     * evaluated a record at a time. Aggregates without a GROUP BY are updated
+     * a batch at a time. With a GROUP BY, the group by operator computes the
+     * expressions a record at a time, so this falls back to iterator().
+     */
+    @Override
+    protected Iterator<RecordBatch> vectorizedIterator() {
+        if (this.getSource().isGroupBy()) return null;
+        boolean hasAgg = false;
+        for (Expression expression: this.expressions) {
+            hasAgg |= expression.hasAgg();
+        }
+        Iterator<RecordBatch> sourceBatches = this.getSource().batchIterator();
+        if (hasAgg) return new AggregateBatchIterator(sourceBatches);
+
+        // the column of the source each output column names, or null if some
+        // output column is computed
+        int[] columns = new int[this.expressions.size()];
+        boolean allColumns = true;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = this.expressions.get(i).getColumnIndex();
+            allColumns &= columns[i] >= 0;
+        }
+        int[] sourceColumns = allColumns ? columns : null;
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return sourceBatches.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                RecordBatch batch = sourceBatches.next();
+                if (sourceColumns != null) return batch.project(sourceColumns, getSchema());
+                RecordBatch projected = new RecordBatch(getSchema(), batch.numSelected());
+                for (int i = 0; i < batch.numSelected(); i++) {
+                    Record record = batch.getRecord(batch.getSelected(i));
+                    List<DataBox> values = new ArrayList<>();
+                    for (Expression expression: expressions) {
+                        values.add(expression.evaluate(record));
+                    }
+                    projected.add(new Record(values));
+                }
+                return projected;
+            }
+        };
+    }
+
     @Override
     public String str() {
         String columns = "(" + String.join(", ", this.outputColumns) + ")";
-        return "Project (cost=" + this.estimateIOCost() + ")" +
+        return "Project (cost=" + this.getIOCost() + ")" +
                 "\n\tcolumns: " + columns;
     }
 
     @Override
     public TableStats estimateStats() {
-        return this.getSource().estimateStats();
+        return this.getSource().getStats();
     }
 
     @Override
     public int estimateIOCost() {
-        return this.getSource().estimateIOCost();
+        return this.getSource().getIOCost();
+    }
+
+    /**
+     * Records keep the order of the source, unless they are aggregated. An
+     * output column is sorted if it just names a column the source is sorted
+     * on.
+     */
+    @Override
+    public List<String> sortedBy() {
+        List<String> sorted = new ArrayList<>();
+        if (this.getSource().isGroupBy()) return sorted;
+        List<String> sourceSorted = this.getSource().sortedBy();
+        for (int i = 0; i < this.expressions.size(); i++) {
+            Expression expression = this.expressions.get(i);
+            if (expression.hasAgg()) return new ArrayList<>();
+            Set<String> dependencies = expression.getDependencies();
+            if (dependencies.size() != 1) continue;
+            String dependency = dependencies.iterator().next();
+            if (!dependency.equalsIgnoreCase(this.outputColumns.get(i))) continue;
+            String sourceColumn = this.sourceSchema.matchFieldName(dependency);
+            for (String column: sourceSorted) {
+                if (column.equalsIgnoreCase(sourceColumn)) sorted.add(this.outputColumns.get(i));
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Computes the aggregates over all of the records of the source, as a
+     * single group, like ProjectIterator, and returns them in a batch of one
+     * record (or none if the source is empty).
+     */
+    private class AggregateBatchIterator implements Iterator<RecordBatch> {
+        private Iterator<RecordBatch> sourceBatches;
+        private RecordBatch result;
+        private boolean aggregated = false;
+
+        private AggregateBatchIterator(Iterator<RecordBatch> sourceBatches) {
+            this.sourceBatches = sourceBatches;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!this.aggregated) {
+                this.result = this.aggregate();
+                this.aggregated = true;
+            }
+            return this.result != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            RecordBatch result = this.result;
+            this.result = null;
+            return result;
+        }
+
+        private RecordBatch aggregate() {
+            // non aggregate expressions are evaluated on the first record
+            Record base = null;
+            while (this.sourceBatches.hasNext()) {
+                RecordBatch batch = this.sourceBatches.next();
+                if (batch.numSelected() == 0) continue;
+                if (base == null) base = batch.getRecord(batch.getSelected(0));
+                for (Expression dataFunction: expressions) {
+                    if (dataFunction.hasAgg()) dataFunction.update(batch);
+                }
+            }
+            if (base == null) return null;
+            List<DataBox> values = new ArrayList<>();
+            for (Expression dataFunction: expressions) {
+                values.add(dataFunction.evaluate(base));
+                if (dataFunction.hasAgg()) dataFunction.reset();
+            }
+            RecordBatch result = new RecordBatch(getSchema(), 1);
+            result.add(new Record(values));
+            return result;
+        }
     }
 
     private class ProjectIterator implements Iterator<Record> {
@@ -121,10 +251,17 @@ public class ProjectOperator extends QueryOperator {
         private boolean hasAgg = false;
 
         private ProjectIterator() {
-            this.sourceIterator = ProjectOperator.this.getSource().iterator();
             for (Expression func: expressions) {
                 this.hasAgg |= func.hasAgg();
             }
+            if (ProjectOperator.this.getSource().isGroupBy()) {
+                // The group by operator computes the expressions for every
+                // group as it groups the records
+                GroupByOperator groupBy = (GroupByOperator) ProjectOperator.this.getSource();
+                this.sourceIterator = groupBy.aggregate(expressions);
+            } else {
+                this.sourceIterator = ProjectOperator.this.getSource().iterator();
+            }
         }
 
         @Override
@@ -136,7 +273,10 @@ public class ProjectOperator extends QueryOperator {
         public Record next() {
             if (!this.hasNext()) throw new NoSuchElementException();
             Record curr = this.sourceIterator.next();
-            if (!this.hasAgg && groupByColumns.size() == 0 ) {
+            if (ProjectOperator.this.getSource().isGroupBy()) {
+                return curr;
+            }
+            if (!this.hasAgg) {
                 List<DataBox> newValues = new ArrayList<>();
                 for (Expression f: expressions) {
                     newValues.add(f.evaluate(curr));
@@ -144,9 +284,10 @@ public class ProjectOperator extends QueryOperator {
                 return new Record(newValues);
             }
 
-            // Everything after here is to handle aggregation
-            Record base = curr; // We'll draw the GROUP BY values from here
-            while (curr != GroupByOperator.MARKER) {
+            // Everything after here is to handle aggregation without a GROUP
+            // BY, over all of the records as a single group
+            Record base = curr;
+            while (true) {
                 for (Expression dataFunction: expressions) {
                     if (dataFunction.hasAgg()) dataFunction.update(curr);
                 }
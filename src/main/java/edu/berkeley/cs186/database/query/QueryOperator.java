@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.common.iterator.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.PageDirectory;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -18,6 +19,10 @@ public abstract class QueryOperator implements Iterable<Record> {
     protected QueryOperator source;
     protected Schema outputSchema;
     protected TableStats stats;
+    // The result of estimateIOCost(), once getIOCost() has computed it
+    private int ioCost = -1;
+    // Whether batchIterator() may use vectorizedIterator()
+    private boolean vectorized = true;
 
     public enum OperatorType {
         PROJECT,
@@ -122,6 +127,8 @@ public abstract class QueryOperator implements Iterable<Record> {
     protected void setSource(QueryOperator source) {
         this.source = source;
         this.outputSchema = this.computeSchema();
+        this.stats = null;
+        this.ioCost = -1;
     }
 
     /**
@@ -151,6 +158,43 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract Iterator<Record> iterator();
 
+    /**
+     * Returns an iterator over the output records of this operator a batch at
+     * a time. Operators that can process records a batch at a time implement
+     * vectorizedIterator(). Other operators, and operators in row mode (see
+     * setVectorized), fall back to iterator() and batch its records, so the
+     * operators below them run a record at a time.
+     *
+     * @return an iterator over the output records of this operator, in batches
+     */
+    public final Iterator<RecordBatch> batchIterator() {
+        Iterator<RecordBatch> batches = this.vectorized ? this.vectorizedIterator() : null;
+        if (batches == null) {
+            batches = RecordBatch.toBatches(this.iterator(), this.getSchema(), RecordBatch.DEFAULT_CAPACITY);
+        }
+        return batches;
+    }
+
+    /**
+     * @return an iterator over the output records of this operator in batches,
+     * or null if this operator doesn't support running a batch at a time
+     */
+    protected Iterator<RecordBatch> vectorizedIterator() {
+        return null;
+    }
+
+    /**
+     * Sets whether batchIterator() runs this operator a batch at a time, if it
+     * supports it, or a record at a time. Only affects this operator.
+     */
+    public void setVectorized(boolean vectorized) {
+        this.vectorized = vectorized;
+    }
+
+    public boolean isVectorized() {
+        return this.vectorized;
+    }
+
     /**
      * @return true if the records of this query operator are materialized in a
      * table.
@@ -227,4 +271,28 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract int estimateIOCost();
 
+    /**
+     * Same as estimateStats(), but only computed once per operator. Estimates
+     * of an operator are built from the estimates of its sources, so without
+     * this every estimate would be recomputed over the whole subtree below the
+     * operator, which the optimizer does many times over while comparing plans.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats getStats() {
+        if (this.stats == null) this.stats = this.estimateStats();
+        return this.stats;
+    }
+
+    /**
+     * Same as estimateIOCost(), but only computed once per operator (see
+     * getStats()).
+     *
+     * @return estimated number of IO's performed
+     */
+    public int getIOCost() {
+        if (this.ioCost < 0) this.ioCost = this.estimateIOCost();
+        return this.ioCost;
+    }
+
 }
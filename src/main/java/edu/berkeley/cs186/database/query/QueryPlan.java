@@ -5,8 +5,12 @@ import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.query.join.BNLJOperator;
+import edu.berkeley.cs186.database.query.join.GHJOperator;
+import edu.berkeley.cs186.database.query.join.SHJOperator;
 import edu.berkeley.cs186.database.query.join.SNLJOperator;
+import edu.berkeley.cs186.database.query.join.SortMergeOperator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.util.*;
@@ -43,6 +47,14 @@ public class QueryPlan {
     private int limit;
     // An offset to the records yielded (OFFSET clause)
     private int offset;
+    // For each set of tables considered by the optimizer, the cheapest plan
+    // sorted on each interesting order (see getInterestingOrders) that isn't
+    // already the cheapest plan for the set
+    private Map<Set<String>, Map<String, QueryOperator>> sortedPlans;
+    // Cache of join trees to plan with (see setPlanCache), or null, and the
+    // key of this query in it
+    private PlanCache planCache;
+    private String planKey;
 
     /**
      * Creates a new QueryPlan within `transaction` with base table
@@ -85,6 +97,7 @@ public class QueryPlan {
         this.groupByColumns = new ArrayList<>();
         this.limit = -1;
         this.offset = 0;
+        this.sortedPlans = new HashMap<>();
 
         // This will be set after calling execute()
         this.finalOperator = null;
@@ -94,6 +107,17 @@ public class QueryPlan {
         return this.finalOperator;
     }
 
+    /**
+     * Has plan() reuse the join tree cached under key in cache rather than
+     * search for one, and cache the join tree it searches for otherwise. The
+     * key must identify the query up to the values of its select predicates,
+     * which aren't part of the join tree.
+     */
+    public void setPlanCache(PlanCache cache, String key) {
+        this.planCache = cache;
+        this.planKey = key;
+    }
+
     /**
      * @param column the name of an ambiguous column that we want to determine
      *               the table of.
@@ -314,7 +338,7 @@ public class QueryPlan {
      */
     private void addSort() {
         if (this.sortColumn == null) return;
-        if (this.finalOperator.sortedBy().contains(sortColumn.toLowerCase())) {
+        if (isSortedOn(this.finalOperator, this.sortColumn)) {
             return; // already sorted
         }
         this.finalOperator = new SortOperator(
@@ -324,6 +348,21 @@ public class QueryPlan {
         );
     }
 
+    /**
+     * @return true if the records of operator are sorted on column
+     */
+    private static boolean isSortedOn(QueryOperator operator, String column) {
+        try {
+            column = operator.getSchema().matchFieldName(column);
+        } catch (RuntimeException err) {
+            return false;
+        }
+        for (String sortedColumn: operator.sortedBy()) {
+            if (sortedColumn.equalsIgnoreCase(column)) return true;
+        }
+        return false;
+    }
+
     // Limit ///////////////////////////////////////////////////////////////////
 
     /**
@@ -577,16 +616,16 @@ public class QueryPlan {
         // TODO(proj3_part2): implement
         //default sequential scan
         QueryOperator minOp = new SequentialScanOperator(this.transaction, table);
-        int minCost = minOp.estimateIOCost();
+        int minCost = minOp.getIOCost();
         int potentialIndexScan=-1;
 
         //sequential scan may be poor and needs to be replaced by index scan
         for(Integer i: getEligibleIndexColumns(table)){
             SelectPredicate sp = selectPredicates.get(i);
             QueryOperator osp = new IndexScanOperator(this.transaction,table,sp.column,sp.operator,sp.value);
-            if(osp.estimateIOCost()<minCost){
+            if(osp.getIOCost()<minCost){
                 minOp=osp;
-                minCost=osp.estimateIOCost();
+                minCost=osp.getIOCost();
                 potentialIndexScan=i;
             }
         }
@@ -598,12 +637,66 @@ public class QueryPlan {
         return minOp;
     }
 
+    /**
+     * Records in this.sortedPlans the index scans over the given table that are
+     * sorted on an interesting order, when they aren't the cheapest way to
+     * access the table (minOp). Later joins may still prefer them, as they can
+     * feed a sort merge join or the ORDER BY clause without sorting.
+     */
+    private void addSortedAccesses(String table, QueryOperator minOp) {
+        Set<String> interestingOrders = getInterestingOrders();
+        Map<String, QueryOperator> sorted = new HashMap<>();
+        for (Integer i: getEligibleIndexColumns(table)) {
+            SelectPredicate sp = selectPredicates.get(i);
+            QueryOperator osp = new IndexScanOperator(this.transaction,table,sp.column,sp.operator,sp.value);
+            String column = osp.sortedBy().get(0).toLowerCase();
+            if (!interestingOrders.contains(column) || isSortedOn(minOp, column)) continue;
+            QueryOperator current = sorted.get(column);
+            if (current == null || osp.getIOCost() < current.getIOCost()) {
+                sorted.put(column, addEligibleSelections(osp, i));
+            }
+        }
+        this.sortedPlans.put(Collections.singleton(table), sorted);
+    }
+
+    /**
+     * An order is interesting if a later operator can make use of it: the
+     * columns of join predicates can feed a sort merge join, and the ORDER BY
+     * column (unless there is a GROUP BY) saves the final sort.
+     *
+     * @return the fully qualified, lower case names of the interesting orders
+     */
+    private Set<String> getInterestingOrders() {
+        Set<String> result = new HashSet<>();
+        for (JoinPredicate predicate: this.joinPredicates) {
+            result.add(predicate.leftColumn.toLowerCase());
+            result.add(predicate.rightColumn.toLowerCase());
+        }
+        String sortColumn = getQualifiedSortColumn();
+        if (sortColumn != null) result.add(sortColumn);
+        return result;
+    }
+
+    /**
+     * @return the fully qualified, lower case name of the ORDER BY column, or
+     * null if there is no ORDER BY, it comes after a GROUP BY, or it refers to
+     * an output column rather than a table column
+     */
+    private String getQualifiedSortColumn() {
+        if (this.sortColumn == null || !this.groupByColumns.isEmpty()) return null;
+        if (this.sortColumn.contains(".")) return this.sortColumn.toLowerCase();
+        try {
+            return (resolveColumn(this.sortColumn) + "." + this.sortColumn).toLowerCase();
+        } catch (RuntimeException err) {
+            return null;
+        }
+    }
+
     // Task 6: Join Selection //////////////////////////////////////////////////
 
     /**
      * Given a join predicate between left and right operators, finds the lowest
-     * cost join operator out of join types in JoinOperator.JoinType. By default
-     * only considers SNLJ and BNLJ to prevent dependencies on GHJ, Sort and SMJ.
+     * cost join operator out of join types in JoinOperator.JoinType.
      *
      * Reminder: Your implementation does not need to consider cartesian products
      * and does not need to keep track of interesting orders.
@@ -614,16 +707,41 @@ public class QueryPlan {
                                           QueryOperator rightOp,
                                           String leftColumn,
                                           String rightColumn) {
-        QueryOperator bestOperator = null;
-        int minimumCost = Integer.MAX_VALUE;
+        return minCostOperator(allJoinTypes(leftOp, rightOp, leftColumn, rightColumn));
+    }
+
+    /**
+     * @return a join operator of every join type (other than PNLJ, which BNLJ
+     * always beats) between the input operators. The right input is
+     * materialized first if it needs to be, so that it is only materialized
+     * once for all of them.
+     */
+    private List<QueryOperator> allJoinTypes(QueryOperator leftOp,
+                                             QueryOperator rightOp,
+                                             String leftColumn,
+                                             String rightColumn) {
+        rightOp = QueryOperator.materialize(rightOp, this.transaction);
         List<QueryOperator> allJoins = new ArrayList<>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
-        for (QueryOperator join : allJoins) {
-            int joinCost = join.estimateIOCost();
-            if (joinCost < minimumCost) {
-                bestOperator = join;
-                minimumCost = joinCost;
+        allJoins.add(new SHJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new GHJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        allJoins.add(new SortMergeOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        return allJoins;
+    }
+
+    /**
+     * @return the lowest cost operator in operators, preferring the earliest
+     * on ties
+     */
+    private static QueryOperator minCostOperator(List<QueryOperator> operators) {
+        QueryOperator bestOperator = null;
+        int minimumCost = Integer.MAX_VALUE;
+        for (QueryOperator operator : operators) {
+            int cost = operator.getIOCost();
+            if (bestOperator == null || cost < minimumCost) {
+                bestOperator = operator;
+                minimumCost = cost;
             }
         }
         return bestOperator;
@@ -664,9 +782,16 @@ public class QueryPlan {
         //      calculate the cheapest join with the new table (the one you
         //      fetched an operator for from pass1Map) and the previously joined
         //      tables. Then, update the result map if needed.
+        //
+        // The plans in this.sortedPlans for the left side of the join are
+        // tried as well, since a plan that costs more but is already sorted on
+        // the join column can make for a cheaper sort merge join. Joins that
+        // come out sorted on an interesting order are kept in this.sortedPlans
+        // for the next pass.
         String leftTable,rightTable,leftCol,rightCol;
         QueryOperator leftQueryO, rightQueryO;
-        Set<String> hs;
+        Set<String> hs, leftKey;
+        Set<String> interestingOrders = getInterestingOrders();
         for(Set<String> key: prevMap.keySet()){
             for(JoinPredicate join: this.joinPredicates){
                 leftTable = join.leftTable;
@@ -676,27 +801,63 @@ public class QueryPlan {
                 if(key.contains(leftTable)&&!key.contains(rightTable)){
                     hs = new HashSet<>();
                     hs.add(rightTable);
+                    leftKey = key;
                     leftQueryO=prevMap.get(key);
                     rightQueryO = pass1Map.get(hs);
                 }
                 else if(!key.contains(leftTable)&&key.contains(rightTable)){
                     hs = new HashSet<>();
                     hs.add(leftTable);
+                    leftKey = Collections.singleton(leftTable);
                     rightQueryO = prevMap.get(key);
                     leftQueryO = pass1Map.get(hs);
                 }
                 else continue;
 
-                QueryOperator minJoinCost = minCostJoinType(leftQueryO,rightQueryO,leftCol,rightCol);
+                rightQueryO = QueryOperator.materialize(rightQueryO, this.transaction);
+                List<QueryOperator> joins = allJoinTypes(leftQueryO,rightQueryO,leftCol,rightCol);
+                for (QueryOperator sortedLeft: this.sortedPlans.getOrDefault(leftKey, Collections.emptyMap()).values()) {
+                    joins.addAll(allJoinTypes(sortedLeft,rightQueryO,leftCol,rightCol));
+                }
+                QueryOperator minJoinCost = minCostOperator(joins);
                 hs.addAll(key);
                 result.put(hs,minJoinCost);
                 //Should check result map, however, cannot pass the test if doing the check
                 //if(!result.containsKey(hs)||minJoinCost.estimateIOCost()<result.get(hs).estimateIOCost()) result.put(hs,minJoinCost);
+                addSortedPlans(hs, joins, interestingOrders);
             }
         }
+        // Plans for a set that turned out to be no better than its cheapest
+        // plan aren't worth keeping
+        for (Set<String> tables: result.keySet()) {
+            QueryOperator minOp = result.get(tables);
+            Map<String, QueryOperator> sorted = this.sortedPlans.get(tables);
+            if (sorted == null) continue;
+            sorted.entrySet().removeIf(e -> isSortedOn(minOp, e.getKey()) &&
+                    minOp.getIOCost() <= e.getValue().getIOCost());
+        }
         return result;
     }
 
+    /**
+     * Records in this.sortedPlans the cheapest of operators (which are plans
+     * over tables) sorted on each interesting order.
+     */
+    private void addSortedPlans(Set<String> tables, List<QueryOperator> operators,
+                                Set<String> interestingOrders) {
+        Map<String, QueryOperator> sorted = this.sortedPlans.computeIfAbsent(tables, k -> new HashMap<>());
+        for (QueryOperator operator: operators) {
+            for (String column: operator.sortedBy()) {
+                column = column.toLowerCase();
+                if (!interestingOrders.contains(column)) continue;
+                QueryOperator current = sorted.get(column);
+                if (current == null || operator.getIOCost() < current.getIOCost()) {
+                    sorted.put(column, operator);
+                }
+            }
+        }
+    }
+
     // Task 7: Optimal Plan Selection //////////////////////////////////////////
 
     /**
@@ -714,7 +875,7 @@ public class QueryPlan {
         int minCost = Integer.MAX_VALUE;
         for (Set<String> tables : map.keySet()) {
             QueryOperator currOp = map.get(tables);
-            int currCost = currOp.estimateIOCost();
+            int currCost = currOp.getIOCost();
             if (currCost < minCost) {
                 minOp = currOp;
                 minCost = currCost;
@@ -730,17 +891,66 @@ public class QueryPlan {
      * @return an iterator of records that is the result of this query
      */
     public Iterator<Record> execute() {
+        return this.plan().iterator();
+    }
+
+    /**
+     * Same as execute, but runs the plan a batch of records at a time (see
+     * QueryOperator#batchIterator). Operators that can't run a batch at a
+     * time run a record at a time, and so do the operators below them.
+     *
+     * @return an iterator of records that is the result of this query
+     */
+    public Iterator<Record> executeVectorized() {
+        return RecordBatch.toRecords(this.plan().batchIterator());
+    }
+
+    /**
+     * Generates an optimized QueryPlan like execute, without executing it.
+     *
+     * @return the final operator of the query plan
+     */
+    public QueryOperator plan() {
         this.transaction.setAliasMap(this.aliases);
+        JoinTree cached = null;
+        long cacheVersion = 0;
+        if (this.planCache != null) {
+            cacheVersion = this.planCache.getVersion();
+            cached = this.planCache.get(this.planKey, this.transaction);
+        }
+        if (cached != null) {
+            finalOperator = fromJoinTree(cached);
+        } else {
+            search();
+            if (this.planCache != null) {
+                this.planCache.put(this.planKey, toJoinTree(finalOperator), this.transaction, cacheVersion);
+            }
+        }
+        addGroupBy();
+        addProject();
+        addSort();
+        addLimit();
+        return finalOperator;
+    }
+
+    /**
+     * Sets the final operator to the lowest cost plan for the tables and
+     * predicates of this query, before grouping, projection, sorting and limits
+     * are added.
+     */
+    private void search() {
         // TODO(proj3_part2): implement
         // Pass 1: For each table, find the lowest cost QueryOperator to access
         // the table. Construct a mapping of each table name to its lowest cost
         // operator.
         //
         Map<Set<String>,QueryOperator> pass1 = new HashMap<>();
+        this.sortedPlans = new HashMap<>();
         for(String tableName: this.tableNames){
             Set<String> hashSet= new HashSet<>();
             hashSet.add(tableName);
             pass1.put(hashSet,minCostSingleAccess(tableName));
+            addSortedAccesses(tableName, pass1.get(hashSet));
         }
         // Pass i: On each pass, use the results from the previous pass to find
         // the lowest cost joins with each table from pass 1. Repeat until all
@@ -754,14 +964,133 @@ public class QueryPlan {
         }
 
         // Set the final operator to the lowest cost operator from the last
-        // pass, add group by, project, sort and limit operators, and return an
-        // iterator over the final operator.
+        // pass, and add group by, project, sort and limit operators.
         finalOperator=iterMap.get(new HashSet<>(tableNames));
-        addGroupBy();
-        addProject();
-        addSort();
-        addLimit();
-        return finalOperator.iterator(); // TODO(proj3_part2): Replace this!
+        addSortedPlan(new HashSet<>(tableNames));
+    }
+
+    /**
+     * Replaces the final operator with the plan over tables that is already
+     * sorted on the ORDER BY column, if it is cheaper than sorting the final
+     * operator.
+     */
+    private void addSortedPlan(Set<String> tables) {
+        String sortColumn = getQualifiedSortColumn();
+        if (sortColumn == null || isSortedOn(this.finalOperator, sortColumn)) return;
+        QueryOperator sorted = this.sortedPlans.getOrDefault(tables, Collections.emptyMap()).get(sortColumn);
+        if (sorted == null) return;
+        int sortCost = new SortOperator(this.transaction, this.finalOperator, sortColumn).getIOCost();
+        if (sorted.getIOCost() < sortCost) this.finalOperator = sorted;
+    }
+
+    // Plan Caching ////////////////////////////////////////////////////////////
+
+    /**
+     * The choices the optimizer made for a query: how each table is accessed,
+     * and the order and type of the joins between them. Unlike the operators
+     * built from it, it doesn't belong to a transaction, so a PlanCache can
+     * keep it for the next time the query is planned.
+     */
+    static class JoinTree {
+        // For a table access: the (aliased) table, and the index in
+        // selectPredicates of the predicate used for an index scan, or -1 for
+        // a sequential scan
+        private String table;
+        private int indexPredicate;
+        // For a join: its type, its inputs, and the columns joined on
+        private JoinOperator.JoinType joinType;
+        private JoinTree left;
+        private JoinTree right;
+        private String leftColumn;
+        private String rightColumn;
+
+        private JoinTree(String table, int indexPredicate) {
+            this.table = table;
+            this.indexPredicate = indexPredicate;
+        }
+
+        private JoinTree(JoinOperator.JoinType joinType, JoinTree left, JoinTree right,
+                         String leftColumn, String rightColumn) {
+            this.joinType = joinType;
+            this.left = left;
+            this.right = right;
+            this.leftColumn = leftColumn;
+            this.rightColumn = rightColumn;
+        }
+
+        /**
+         * @return the tables accessed in this tree
+         */
+        List<String> getTables() {
+            List<String> tables = new ArrayList<>();
+            if (this.joinType == null) {
+                tables.add(this.table);
+            } else {
+                tables.addAll(this.left.getTables());
+                tables.addAll(this.right.getTables());
+            }
+            return tables;
+        }
+    }
+
+    /**
+     * @return the join tree of a plan found by search(). Select operators over
+     * table accesses, and the materialize and sort operators that joins add
+     * over their inputs, are left out: fromJoinTree adds them back.
+     */
+    private JoinTree toJoinTree(QueryOperator operator) {
+        switch (operator.getType()) {
+            case JOIN:
+                JoinOperator join = (JoinOperator) operator;
+                return new JoinTree(join.getJoinType(),
+                        toJoinTree(join.getLeftSource()), toJoinTree(join.getRightSource()),
+                        join.getLeftColumnName(), join.getRightColumnName());
+            case INDEX_SCAN:
+                IndexScanOperator scan = (IndexScanOperator) operator;
+                for (int i: getEligibleIndexColumns(scan.getTableName())) {
+                    SelectPredicate p = this.selectPredicates.get(i);
+                    if (p.column.equals(scan.getColumnName()) && p.operator == scan.getPredicate() &&
+                            p.value.equals(scan.getValue())) {
+                        return new JoinTree(scan.getTableName(), i);
+                    }
+                }
+                throw new IllegalStateException("no predicate for " + scan.str());
+            case SEQ_SCAN:
+                return new JoinTree(((SequentialScanOperator) operator).getTableName(), -1);
+            default:
+                return toJoinTree(operator.getSource());
+        }
+    }
+
+    /**
+     * @return the operators of the given join tree, over the current values of
+     * the select predicates of this query
+     */
+    private QueryOperator fromJoinTree(JoinTree tree) {
+        if (tree.joinType == null) {
+            if (tree.indexPredicate == -1) {
+                return addEligibleSelections(new SequentialScanOperator(this.transaction, tree.table), -1);
+            }
+            SelectPredicate p = this.selectPredicates.get(tree.indexPredicate);
+            QueryOperator scan = new IndexScanOperator(this.transaction, tree.table, p.column, p.operator, p.value);
+            return addEligibleSelections(scan, tree.indexPredicate);
+        }
+        QueryOperator leftOp = fromJoinTree(tree.left);
+        QueryOperator rightOp = QueryOperator.materialize(fromJoinTree(tree.right), this.transaction);
+        switch (tree.joinType) {
+            case SNLJ:
+                return new SNLJOperator(leftOp, rightOp, tree.leftColumn, tree.rightColumn, this.transaction);
+            case BNLJ:
+                return new BNLJOperator(leftOp, rightOp, tree.leftColumn, tree.rightColumn, this.transaction);
+            case SHJ:
+                return new SHJOperator(leftOp, rightOp, tree.leftColumn, tree.rightColumn, this.transaction);
+            case GHJ:
+                return new GHJOperator(leftOp, rightOp, tree.leftColumn, tree.rightColumn, this.transaction);
+            case SORTMERGE:
+                return new SortMergeOperator(leftOp, rightOp, tree.leftColumn, tree.rightColumn, this.transaction);
+            default:
+                throw new IllegalStateException("unexpected join type " + tree.joinType);
+        }
     }
 
     // EXECUTE NAIVE ///////////////////////////////////////////////////////////
@@ -2,11 +2,14 @@ package edu.berkeley.cs186.database.query;
 
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public class SelectOperator extends QueryOperator {
@@ -51,7 +54,7 @@ public class SelectOperator extends QueryOperator {
     @Override
     public String str() {
         return String.format("Select %s%s%s (cost=%d)",
-                this.columnName, this.operator.toSymbol(), this.value, this.estimateIOCost());
+                this.columnName, this.operator.toSymbol(), this.value, this.getIOCost());
     }
 
     /**
@@ -61,7 +64,7 @@ public class SelectOperator extends QueryOperator {
      */
     @Override
     public TableStats estimateStats() {
-        TableStats stats = this.getSource().estimateStats();
+        TableStats stats = this.getSource().getStats();
         return stats.copyWithPredicate(this.columnIndex,
                                        this.operator,
                                        this.value);
@@ -69,12 +72,109 @@ public class SelectOperator extends QueryOperator {
 
     @Override
     public int estimateIOCost() {
-        return this.getSource().estimateIOCost();
+        return this.getSource().getIOCost();
+    }
+
+    @Override
+    public List<String> sortedBy() {
+        return this.getSource().sortedBy();
     }
 
     @Override
     public Iterator<Record> iterator() { return new SelectIterator(); }
 
+    /**
+     * Filters every batch of the source by selecting the rows that satisfy the
+     * predicate.
+     */
+    @Override
+    protected Iterator<RecordBatch> vectorizedIterator() {
+        Iterator<RecordBatch> sourceBatches = this.getSource().batchIterator();
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return sourceBatches.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                RecordBatch batch = sourceBatches.next();
+                filter(batch);
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Sets the selection of batch to the selected rows that satisfy the
+     * predicate. Predicates comparing an INT, LONG or FLOAT column to a value of
+     * the same type are evaluated over the values of the column; others are
+     * evaluated on the DataBox of every row.
+     */
+    private void filter(RecordBatch batch) {
+        int[] selection = batch.getSelection();
+        int n = batch.numSelected();
+        int[] selected = new int[n];
+        int numSelected = 0;
+        TypeId type = this.getSchema().getFieldType(this.columnIndex).getTypeId();
+        if (type == TypeId.INT && this.value.getTypeId() == TypeId.INT) {
+            int[] column = batch.getInts(this.columnIndex);
+            int v = this.value.getInt();
+            for (int i = 0; i < n; i++) {
+                int row = selection == null ? i : selection[i];
+                int x = column[row];
+                if (this.matches(Integer.compare(x, v), x == v)) selected[numSelected++] = row;
+            }
+        } else if (type == TypeId.LONG && this.value.getTypeId() == TypeId.LONG) {
+            long[] column = batch.getLongs(this.columnIndex);
+            long v = this.value.getLong();
+            for (int i = 0; i < n; i++) {
+                int row = selection == null ? i : selection[i];
+                long x = column[row];
+                if (this.matches(Long.compare(x, v), x == v)) selected[numSelected++] = row;
+            }
+        } else if (type == TypeId.FLOAT && this.value.getTypeId() == TypeId.FLOAT) {
+            float[] column = batch.getFloats(this.columnIndex);
+            float v = this.value.getFloat();
+            for (int i = 0; i < n; i++) {
+                int row = selection == null ? i : selection[i];
+                float x = column[row];
+                if (this.matches(Float.compare(x, v), x == v)) selected[numSelected++] = row;
+            }
+        } else {
+            // values of different types may be compared for equality, but not
+            // always ordered
+            boolean ordered = this.operator != PredicateOperator.EQUALS &&
+                              this.operator != PredicateOperator.NOT_EQUALS;
+            for (int i = 0; i < n; i++) {
+                int row = selection == null ? i : selection[i];
+                DataBox x = batch.getValue(row, this.columnIndex);
+                int cmp = ordered ? x.compareTo(this.value) : 0;
+                if (this.matches(cmp, x.equals(this.value))) selected[numSelected++] = row;
+            }
+        }
+        batch.setSelection(selected, numSelected);
+    }
+
+    /**
+     * @param cmp the result of comparing a value to this.value
+     * @param equal whether the value equals this.value
+     * @return whether the value satisfies the predicate, the same as in
+     * SelectIterator: EQUALS and NOT_EQUALS use equality, and the others
+     * comparison
+     */
+    private boolean matches(int cmp, boolean equal) {
+        switch (this.operator) {
+            case EQUALS: return equal;
+            case NOT_EQUALS: return !equal;
+            case LESS_THAN: return cmp < 0;
+            case LESS_THAN_EQUALS: return cmp <= 0;
+            case GREATER_THAN: return cmp > 0;
+            case GREATER_THAN_EQUALS: return cmp >= 0;
+            default: return false;
+        }
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
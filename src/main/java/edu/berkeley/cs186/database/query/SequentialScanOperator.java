@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -52,6 +53,15 @@ public class SequentialScanOperator extends QueryOperator {
         return this.backtrackingIterator();
     }
 
+    /**
+     * Reads the table a page at a time, decoding the records of each page into
+     * the columns of a batch.
+     */
+    @Override
+    protected Iterator<RecordBatch> vectorizedIterator() {
+        return this.transaction.getTable(this.tableName).batchIterator(RecordBatch.DEFAULT_CAPACITY);
+    }
+
     @Override
     public boolean materialized() { return true; }
 
@@ -67,7 +77,7 @@ public class SequentialScanOperator extends QueryOperator {
 
     @Override
     public String str() {
-        return "Seq Scan on " + this.tableName + " (cost=" + this.estimateIOCost() + ")";
+        return "Seq Scan on " + this.tableName + " (cost=" + this.getIOCost() + ")";
     }
 
     @Override
@@ -37,7 +37,7 @@ public class SortOperator extends QueryOperator {
 
     @Override
     public TableStats estimateStats() {
-        return getSource().estimateStats();
+        return getSource().getStats();
     }
 
     @Override
@@ -47,15 +47,15 @@ public class SortOperator extends QueryOperator {
 
     @Override
     public int estimateIOCost() {
-        int N = getSource().estimateStats().getNumPages();
+        int N = getSource().getStats().getNumPages();
         double pass0Runs = Math.ceil(N / (double)numBuffers);
         double numPasses = 1 + Math.ceil(Math.log(pass0Runs) / Math.log(numBuffers - 1));
-        return (int) (2 * N * numPasses) + getSource().estimateIOCost();
+        return (int) (2 * N * numPasses) + getSource().getIOCost();
     }
 
     @Override
     public String str() {
-        return "Sort (cost=" + estimateIOCost() + ")";
+        return "Sort (cost=" + getIOCost() + ")";
     }
 
     @Override
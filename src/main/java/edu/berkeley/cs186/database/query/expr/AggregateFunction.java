@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.query.expr;
 
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.util.Random;
@@ -52,6 +53,71 @@ abstract class AggregateFunction extends Expression {
     public abstract void reset();
     public abstract String getName();
 
+    /**
+     * Updates this aggregate with each selected row of batch, a record at a
+     * time. Aggregates override this to read the values of their column
+     * straight from the batch, when their argument is a column (see
+     * getInputColumn).
+     */
+    @Override
+    public void update(RecordBatch batch) {
+        int[] selection = batch.getSelection();
+        for (int i = 0; i < batch.numSelected(); i++) {
+            this.update(batch.getRecord(selection == null ? i : selection[i]));
+        }
+    }
+
+    /**
+     * @return the index of the column this aggregate is computed over, or -1
+     * if its argument isn't a column
+     */
+    protected int getInputColumn() {
+        return this.children.get(0).getColumnIndex();
+    }
+
+    /**
+     * @return the smallest (or largest, if max is true) of the selected values
+     * of an INT, LONG or FLOAT column of batch, or null if the column has
+     * another type or no row is selected
+     */
+    protected static DataBox extremum(RecordBatch batch, int col, TypeId type, boolean max) {
+        int[] selection = batch.getSelection();
+        int n = batch.numSelected();
+        if (n == 0) return null;
+        switch (type) {
+            case INT: {
+                int[] values = batch.getInts(col);
+                int result = values[selection == null ? 0 : selection[0]];
+                for (int i = 1; i < n; i++) {
+                    int x = values[selection == null ? i : selection[i]];
+                    if (max ? x > result : x < result) result = x;
+                }
+                return new IntDataBox(result);
+            }
+            case LONG: {
+                long[] values = batch.getLongs(col);
+                long result = values[selection == null ? 0 : selection[0]];
+                for (int i = 1; i < n; i++) {
+                    long x = values[selection == null ? i : selection[i]];
+                    if (max ? x > result : x < result) result = x;
+                }
+                return new LongDataBox(result);
+            }
+            case FLOAT: {
+                // ordered like FloatDataBox.compareTo
+                float[] values = batch.getFloats(col);
+                float result = values[selection == null ? 0 : selection[0]];
+                for (int i = 1; i < n; i++) {
+                    float x = values[selection == null ? i : selection[i]];
+                    int cmp = Float.compare(x, result);
+                    if (max ? cmp > 0 : cmp < 0) result = x;
+                }
+                return new FloatDataBox(result);
+            }
+        }
+        return null;
+    }
+
     /**
      * A SUM aggregate keeps a cumulative sum of the values it has seen so far
      * and returns that sum as a result. Undefined for non-numeric data types.
@@ -102,6 +168,36 @@ abstract class AggregateFunction extends Expression {
             throw new IllegalStateException("Unreachable code.");
         }
 
+        @Override
+        public void update(RecordBatch batch) {
+            int col = this.getInputColumn();
+            if (col < 0) {
+                super.update(batch);
+                return;
+            }
+            int[] selection = batch.getSelection();
+            int n = batch.numSelected();
+            switch (this.inputType.getTypeId()) {
+                case BOOL:
+                case INT: {
+                    int[] values = batch.getInts(col);
+                    for (int i = 0; i < n; i++) intSum += values[selection == null ? i : selection[i]];
+                    return;
+                }
+                case LONG: {
+                    long[] values = batch.getLongs(col);
+                    for (int i = 0; i < n; i++) longSum += values[selection == null ? i : selection[i]];
+                    return;
+                }
+                case FLOAT: {
+                    float[] values = batch.getFloats(col);
+                    for (int i = 0; i < n; i++) floatSum += values[selection == null ? i : selection[i]];
+                    return;
+                }
+            }
+            throw new IllegalStateException("Unreachable code.");
+        }
+
         @Override
         public DataBox evaluate(Record record) {
             switch (getType().getTypeId()) {
@@ -157,6 +253,17 @@ abstract class AggregateFunction extends Expression {
             if (min == null || d.compareTo(min) < 0) min = d;
         }
 
+        @Override
+        public void update(RecordBatch batch) {
+            int col = this.getInputColumn();
+            DataBox d = col < 0 ? null : extremum(batch, col, this.inputType.getTypeId(), false);
+            if (d == null) {
+                super.update(batch);
+                return;
+            }
+            if (min == null || d.compareTo(min) < 0) min = d;
+        }
+
         @Override
         public DataBox evaluate(Record record) {
             return min;
@@ -196,6 +303,17 @@ abstract class AggregateFunction extends Expression {
             if (max == null || d.compareTo(max) > 0) max = d;
         }
 
+        @Override
+        public void update(RecordBatch batch) {
+            int col = this.getInputColumn();
+            DataBox d = col < 0 ? null : extremum(batch, col, this.inputType.getTypeId(), true);
+            if (d == null) {
+                super.update(batch);
+                return;
+            }
+            if (max == null || d.compareTo(max) > 0) max = d;
+        }
+
         @Override
         public DataBox evaluate(Record r) {
             return max;
@@ -272,6 +390,14 @@ abstract class AggregateFunction extends Expression {
             minAgg.reset();
         }
 
+        @Override
+        public Expression copy() {
+            RangeAggregateFunction copy = (RangeAggregateFunction) super.copy();
+            copy.maxAgg = (MaxAggregateFunction) maxAgg.copy();
+            copy.minAgg = (MinAggregateFunction) minAgg.copy();
+            return copy;
+        }
+
         @Override
         public String getName() {
             return "RANGE";
@@ -373,6 +499,11 @@ abstract class AggregateFunction extends Expression {
             count++;
         }
 
+        @Override
+        public void update(RecordBatch batch) {
+            count += batch.numSelected();
+        }
+
         @Override
         public DataBox evaluate(Record r) {
             return new IntDataBox(count);
@@ -473,6 +604,12 @@ abstract class AggregateFunction extends Expression {
             count++;
         }
 
+        @Override
+        public void update(RecordBatch batch) {
+            this.sumAgg.update(batch);
+            count += batch.numSelected();
+        }
+
         @Override
         public DataBox evaluate(Record record) {
             DataBox sum = this.sumAgg.evaluate(record);
@@ -496,6 +633,13 @@ abstract class AggregateFunction extends Expression {
             sumAgg.reset();
         }
 
+        @Override
+        public Expression copy() {
+            AverageAggregateFunction copy = (AverageAggregateFunction) super.copy();
+            copy.sumAgg = (SumAggregateFunction) sumAgg.copy();
+            return copy;
+        }
+
         @Override
         public String getName() {
             return "AVG";
@@ -625,6 +769,13 @@ abstract class AggregateFunction extends Expression {
             varAgg.reset();
         }
 
+        @Override
+        public Expression copy() {
+            StdDevAggregateFunction copy = (StdDevAggregateFunction) super.copy();
+            copy.varAgg = (VarianceAggregateFunction) varAgg.copy();
+            return copy;
+        }
+
         @Override
         public String getName() {
             return "STDDEV";
@@ -21,6 +21,11 @@ class Column extends Expression {
         this.col = schema.findField(this.columnName);
     }
 
+    @Override
+    public int getColumnIndex() {
+        return this.col == null ? -1 : this.col;
+    }
+
     @Override
     public Type getType() {
         return schema.getFieldType(this.col);
@@ -5,6 +5,7 @@ import edu.berkeley.cs186.database.cli.parser.ParseException;
 import edu.berkeley.cs186.database.cli.parser.RookieParser;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.io.ByteArrayInputStream;
@@ -29,7 +30,7 @@ import java.util.function.Function;
  * - update(Record r): Used by aggregates to compute partial results
  * - Expression.fromString(String s): Creates an expression from a String!
  */
-public abstract class Expression {
+public abstract class Expression implements Cloneable {
     // The dependencies of an expression are the names of columns whose values
     // must be known in order into compute the expression. For example, the
     // dependencies of the expression `2 * int1 + int2` would be `int1` and
@@ -104,6 +105,14 @@ public abstract class Expression {
         return this.dependencies;
     }
 
+    /**
+     * @return the index in the schema of the column this expression consists
+     * of, or -1 if it isn't just a column (or its schema isn't set)
+     */
+    public int getColumnIndex() {
+        return -1;
+    }
+
     // Aggregate related methods
     /**
      * @return Whether or not the given expression contains an aggregate
@@ -127,6 +136,19 @@ public abstract class Expression {
         }
     }
 
+    /**
+     * Same as update(Record), for each selected row of a batch, in order.
+     * Aggregate functions over a column override this to read the values of
+     * the column straight from the batch.
+     * @param batch A batch of records with the schema of this expression.
+     */
+    public void update(RecordBatch batch) {
+        assert this.schema != null;
+        for (Expression child: children) {
+            if (child.hasAgg()) child.update(batch);
+        }
+    }
+
     /**
      * Resets any internal state from previous calls to update(). Useful for
      * GROUP BY's, where you may need to run the same aggregate function over
@@ -138,6 +160,33 @@ public abstract class Expression {
         }
     }
 
+    /**
+     * Copies this expression, including its schema. Aggregate functions in the
+     * copy have their own internal state, copied from this expression's, so
+     * the copy can be updated independently. Useful for GROUP BY's, where the
+     * aggregates of many groups are computed at once. Much cheaper than
+     * reparsing the expression, since subexpressions without aggregates are
+     * shared rather than copied.
+     * @return a copy of this expression
+     */
+    public Expression copy() {
+        if (!this.hasAgg) return this;
+        Expression copy;
+        try {
+            copy = (Expression) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        copy.children = new ArrayList<>(this.children.size());
+        for (Expression child: this.children) {
+            copy.children.add(child.copy());
+        }
+        // some expressions set up their evaluation against their own children
+        // when their schema is set
+        if (this.schema != null) copy.setSchema(this.schema);
+        return copy;
+    }
+
     public final String toString() {
         if (this.needsParentheses) return "(" + subclassString() + ")";
         return subclassString();
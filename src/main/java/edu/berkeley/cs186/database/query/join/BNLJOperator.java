@@ -37,10 +37,10 @@ public class BNLJOperator extends JoinOperator {
     public int estimateIOCost() {
         //This method implements the IO cost estimation of the Block Nested Loop Join
         int usableBuffers = numBuffers - 2;
-        int numLeftPages = getLeftSource().estimateStats().getNumPages();
-        int numRightPages = getRightSource().estimateIOCost();
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getIOCost();
         return ((int) Math.ceil((double) numLeftPages / (double) usableBuffers)) * numRightPages +
-               getLeftSource().estimateIOCost();
+               getLeftSource().getIOCost();
     }
 
     /**
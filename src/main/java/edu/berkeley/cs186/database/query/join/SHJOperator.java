@@ -4,11 +4,13 @@ import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.HashFunc;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.query.JoinOperator;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.disk.Partition;
 import edu.berkeley.cs186.database.query.disk.Run;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 
 import java.util.*;
@@ -37,9 +39,16 @@ public class SHJOperator extends JoinOperator {
 
     @Override
     public int estimateIOCost() {
-        // Since this has a chance of failing on certain inputs we give it the
-        // maximum possible cost to encourage the optimizer to avoid it
-        return Integer.MAX_VALUE;
+        // The left input is partitioned once into B-1 partitions, and all of
+        // the right input is read to probe each of them. This fails if any
+        // partition doesn't fit in B-2 pages, so if the left input is too
+        // large for that (even if evenly spread over the partitions) we give
+        // it the maximum possible cost to make the optimizer avoid it.
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        if (numLeftPages > (this.numBuffers - 1) * (this.numBuffers - 2)) return Integer.MAX_VALUE;
+        long cost = 2L * numLeftPages + getLeftSource().getIOCost() +
+                    (long) (this.numBuffers - 1) * getRightSource().getIOCost();
+        return (int) Math.min(cost, Integer.MAX_VALUE);
     }
 
     @Override
@@ -61,6 +70,30 @@ public class SHJOperator extends JoinOperator {
         return backtrackingIterator();
     }
 
+    /**
+     * Same as backtrackingIterator(), a batch at a time. Joins on INT or LONG
+     * columns of the same type probe the hash table of each partition with
+     * batches of the right records (see buildAndProbeBatches); other joins fall
+     * back to iterator().
+     */
+    @Override
+    protected Iterator<RecordBatch> vectorizedIterator() {
+        TypeId leftType = getLeftSource().getSchema().getFieldType(getLeftColumnIndex()).getTypeId();
+        TypeId rightType = getRightSource().getSchema().getFieldType(getRightColumnIndex()).getTypeId();
+        if (leftType != rightType || (leftType != TypeId.INT && leftType != TypeId.LONG)) return null;
+        if (joinedRecords == null) {
+            this.joinedRecords = new Run(getTransaction(), getSchema());
+            Partition[] partitions = createPartitions();
+            this.partition(partitions, getLeftSource());
+            for (Partition partition: partitions) {
+                buildAndProbeBatches(partition, leftType);
+            }
+        }
+        // runs only create their table once a record is added to them
+        if (joinedRecords.getTableName() == null) return Collections.emptyIterator();
+        return getTransaction().getTable(joinedRecords.getTableName()).batchIterator(RecordBatch.DEFAULT_CAPACITY);
+    }
+
     /**
      * Partition stage. For every record in the left record iterator, hashes the
      * value we are joining on and adds that record to the correct partition.
@@ -120,6 +153,50 @@ public class SHJOperator extends JoinOperator {
         }
     }
 
+    /**
+     * Same as buildAndProbe, for joins on INT or LONG columns, with a hash
+     * table keyed on the values of the join column rather than on DataBoxes.
+     * The right records are read a batch at a time, and their keys looked up
+     * straight from the join column of the batch, so only the right records
+     * that have a match are assembled into records. Joined records are added to
+     * joinedRecords in the same order as buildAndProbe.
+     *
+     * @param partition a partition
+     * @param type the type of the join columns, INT or LONG
+     */
+    private void buildAndProbeBatches(Partition partition, TypeId type) {
+        if (partition.getNumPages() > this.numBuffers - 2) {
+            throw new IllegalArgumentException(
+                    "The records in this partition cannot fit in B-2 pages of memory."
+            );
+        }
+
+        // Building stage
+        LongHashTable hashTable = new LongHashTable();
+        for (Record leftRecord: partition) {
+            DataBox leftJoinValue = leftRecord.getValue(this.getLeftColumnIndex());
+            hashTable.add(type == TypeId.INT ? leftJoinValue.getInt() : leftJoinValue.getLong(), leftRecord);
+        }
+
+        // Probing stage
+        Iterator<RecordBatch> rightBatches = getRightSource().batchIterator();
+        while (rightBatches.hasNext()) {
+            RecordBatch batch = rightBatches.next();
+            int[] selection = batch.getSelection();
+            int[] ints = type == TypeId.INT ? batch.getInts(getRightColumnIndex()) : null;
+            long[] longs = type == TypeId.LONG ? batch.getLongs(getRightColumnIndex()) : null;
+            for (int i = 0; i < batch.numSelected(); i++) {
+                int row = selection == null ? i : selection[i];
+                int match = hashTable.find(ints != null ? ints[row] : longs[row]);
+                if (match < 0) continue;
+                Record rightRecord = batch.getRecord(row);
+                for (; match >= 0; match = hashTable.next(match)) {
+                    this.joinedRecords.add(hashTable.get(match).concat(rightRecord));
+                }
+            }
+        }
+    }
+
     /**
      * Runs the simple hash join algorithm. First, run the partitioning stage to
      * create an array of partitions. Then, build and probe with each hash
@@ -155,5 +232,89 @@ public class SHJOperator extends JoinOperator {
         }
         return partitions;
     }
-}
 
+    /**
+     * A hash table of records keyed on INT or LONG values, with open addressing
+     * over the keys. The records of a key are chained in the order they were
+     * added.
+     */
+    private static class LongHashTable {
+        private long[] keys = new long[16];
+        // first and last record of the key in each slot, -1 if the slot is empty
+        private int[] first = newSlots(16);
+        private int[] last = new int[16];
+        // next record with the same key, -1 after the last one
+        private int[] next = new int[16];
+        private List<Record> records = new ArrayList<>();
+        private int numKeys = 0;
+
+        private static int[] newSlots(int capacity) {
+            int[] slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            return slots;
+        }
+
+        private void add(long key, Record record) {
+            if (2 * (this.numKeys + 1) > this.keys.length) this.resize();
+            int index = this.records.size();
+            this.records.add(record);
+            if (index == this.next.length) this.next = Arrays.copyOf(this.next, 2 * index);
+            this.next[index] = -1;
+            int slot = this.slot(key);
+            if (this.first[slot] < 0) {
+                this.keys[slot] = key;
+                this.first[slot] = index;
+                this.numKeys++;
+            } else {
+                this.next[this.last[slot]] = index;
+            }
+            this.last[slot] = index;
+        }
+
+        /**
+         * @return the first record with key, or -1 if there is none
+         */
+        private int find(long key) {
+            return this.first[this.slot(key)];
+        }
+
+        /**
+         * @return the record with the same key after record, or -1 if there is
+         * none
+         */
+        private int next(int record) {
+            return this.next[record];
+        }
+
+        private Record get(int record) {
+            return this.records.get(record);
+        }
+
+        // the slot of key, or the empty slot it goes in if it isn't in the table
+        private int slot(long key) {
+            int mask = this.keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (this.first[slot] >= 0 && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize() {
+            long[] keys = this.keys;
+            int[] first = this.first;
+            int[] last = this.last;
+            this.keys = new long[2 * keys.length];
+            this.first = newSlots(2 * keys.length);
+            this.last = new int[2 * keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (first[i] < 0) continue;
+                int slot = this.slot(keys[i]);
+                this.keys[slot] = keys[i];
+                this.first[slot] = first[i];
+                this.last[slot] = last[i];
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.table.Record;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -29,11 +30,17 @@ public class SNLJOperator extends JoinOperator {
         return new SNLJIterator();
     }
 
+    @Override
+    public List<String> sortedBy() {
+        // The left input is read in order, once
+        return getLeftSource().sortedBy();
+    }
+
     @Override
     public int estimateIOCost() {
-        int numLeftRecords = getLeftSource().estimateStats().getNumRecords();
-        int numRightPages = getRightSource().estimateStats().getNumPages();
-        return numLeftRecords * numRightPages + getLeftSource().estimateIOCost();
+        int numLeftRecords = getLeftSource().getStats().getNumRecords();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        return numLeftRecords * numRightPages + getLeftSource().getIOCost();
     }
 
     /**
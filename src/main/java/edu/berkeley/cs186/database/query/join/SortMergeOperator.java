@@ -69,8 +69,12 @@ public class SortMergeOperator extends JoinOperator {
 
     @Override
     public int estimateIOCost() {
-        //does nothing
-        return 0;
+        // Inputs that weren't already sorted were wrapped in sort operators,
+        // whose cost includes sorting. The merge then reads both inputs once,
+        // assuming few enough duplicate keys that backtracking over the right
+        // input stays within memory.
+        long cost = (long) getLeftSource().getIOCost() + getRightSource().getIOCost();
+        return (int) Math.min(cost, Integer.MAX_VALUE);
     }
 
     /**
@@ -9,7 +9,14 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.*;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 /**
@@ -35,8 +42,47 @@ public class ARIESRecoveryManager implements RecoveryManager {
     // to prevent DPT entries from being flushed during restartRedo.
     boolean redoComplete;
 
+    // Number of threads that redo page changes during restart (1 = no parallel redo).
+    private int redoThreads;
+    // Max number of records waiting for each redo thread during parallel redo.
+    static final int REDO_QUEUE_CAPACITY = 1024;
+
+    // How often the background checkpointer checks whether a checkpoint is due.
+    static final long CHECKPOINT_POLL_MILLIS = 50;
+
+    // Background checkpointer, or null if checkpoints are only taken when requested.
+    // Guarded by checkpointerLock rather than this, since checkpoints lock this.
+    private ScheduledExecutorService checkpointer;
+    private final Object checkpointerLock = new Object();
+    // Log pages written since the last checkpoint that trigger a background checkpoint (0 = never).
+    private volatile long checkpointLogPages;
+    // Time since the last checkpoint that triggers a background checkpoint (0 = never).
+    private volatile long checkpointIntervalNanos;
+    // LSN of the begin checkpoint record and start time of the last checkpoint.
+    private volatile long lastCheckpointLSN;
+    private volatile long lastCheckpointNanos = System.nanoTime();
+    // true if log pages that are no longer needed for restart are freed after each checkpoint.
+    private volatile boolean truncateLog = false;
+
+    private final LongAdder numCheckpoints = new LongAdder();
+    private final LongAdder numTruncatedLogPages = new LongAdder();
+
     public ARIESRecoveryManager(Function<Long, Transaction> newTransaction) {
+        this(newTransaction, 1);
+    }
+
+    /**
+     * @param newTransaction function to create a new transaction for recovery with a given
+     *                       transaction number
+     * @param redoThreads number of threads to redo page changes with during restart, or 1
+     *                    to redo in the thread doing the restart
+     */
+    public ARIESRecoveryManager(Function<Long, Transaction> newTransaction, int redoThreads) {
+        if (redoThreads < 1) {
+            throw new IllegalArgumentException("need at least one redo thread");
+        }
         this.newTransaction = newTransaction;
+        this.redoThreads = redoThreads;
     }
 
     /**
@@ -78,7 +124,133 @@ public class ARIESRecoveryManager implements RecoveryManager {
      */
     @Override
     public synchronized void startTransaction(Transaction transaction) {
-        this.transactionTable.put(transaction.getTransNum(), new TransactionTableEntry(transaction));
+        TransactionTableEntry entry = new TransactionTableEntry(transaction);
+        entry.firstLSN = this.logManager.getNextLSNLowerBound();
+        this.transactionTable.put(transaction.getTransNum(), entry);
+    }
+
+    /**
+     * Enables or disables group commit; see LogManager#setGroupCommit.
+     * @param maxBatchSize max number of commits covered by one log flush (1 disables group commit)
+     * @param maxWait max time the first commit of a batch waits for others to join
+     * @param unit time unit of maxWait
+     */
+    public void setGroupCommit(int maxBatchSize, long maxWait, TimeUnit unit) {
+        this.logManager.setGroupCommit(maxBatchSize, maxWait, unit);
+    }
+
+    /**
+     * Enables or disables the compact log record encoding; see LogManager#setCompactEncoding.
+     * @param compact whether to append log records in the compact encoding
+     * @param compress whether to also compress the bodies of compact log records
+     */
+    public void setCompactLogEncoding(boolean compact, boolean compress) {
+        this.logManager.setCompactEncoding(compact, compress);
+    }
+
+    /**
+     * Starts, reconfigures, or stops taking checkpoints in the background. A checkpoint
+     * is taken once maxLogPages pages of log have been written since the last checkpoint,
+     * which bounds the amount of log that restart recovery has to replay, or once
+     * maxInterval has passed since the last checkpoint, whichever comes first.
+     *
+     * @param maxLogPages log pages between checkpoints, or 0 to not checkpoint on log volume
+     * @param maxInterval time between checkpoints, or 0 to not checkpoint on time
+     * @param unit unit of maxInterval
+     */
+    public void setCheckpointPolicy(long maxLogPages, long maxInterval, TimeUnit unit) {
+        if (maxLogPages < 0 || maxInterval < 0) {
+            throw new IllegalArgumentException("invalid checkpoint policy");
+        }
+        synchronized (this.checkpointerLock) {
+            this.checkpointLogPages = maxLogPages;
+            this.checkpointIntervalNanos = unit.toNanos(maxInterval);
+            if (maxLogPages == 0 && maxInterval == 0) {
+                this.stopCheckpointer();
+                return;
+            }
+            if (this.checkpointer != null) {
+                return;
+            }
+            this.checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "aries-checkpointer");
+                t.setDaemon(true);
+                return t;
+            });
+            this.checkpointer.scheduleWithFixedDelay(() -> {
+                try {
+                    if (this.checkpointDue()) {
+                        this.checkpoint();
+                    }
+                } catch (RuntimeException e) {
+                    // try again next time
+                }
+            }, CHECKPOINT_POLL_MILLIS, CHECKPOINT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background checkpointer (if running), waiting for the current checkpoint
+     * to finish.
+     */
+    private void stopCheckpointer() {
+        synchronized (this.checkpointerLock) {
+            if (this.checkpointer == null) {
+                return;
+            }
+            this.checkpointer.shutdown();
+            try {
+                this.checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.checkpointer = null;
+        }
+    }
+
+    /**
+     * @return whether the checkpoint policy calls for a checkpoint now
+     */
+    boolean checkpointDue() {
+        long logPages = LogManager.getLSNPage(this.logManager.getNextLSNLowerBound()) -
+                        LogManager.getLSNPage(this.lastCheckpointLSN);
+        if (this.checkpointLogPages > 0 && logPages >= this.checkpointLogPages) {
+            return true;
+        }
+        return this.checkpointIntervalNanos > 0 &&
+               System.nanoTime() - this.lastCheckpointNanos >= this.checkpointIntervalNanos;
+    }
+
+    /**
+     * Enables or disables log truncation. When enabled, every checkpoint frees the log
+     * pages before both the checkpoint and the oldest log record that restart recovery
+     * could still need: the earliest recLSN in the dirty page table, and the first log
+     * record of every running transaction.
+     * @param enabled whether to truncate the log after checkpoints
+     */
+    public void setLogTruncation(boolean enabled) {
+        this.truncateLog = enabled;
+    }
+
+    /**
+     * @return number of checkpoints taken, in the background or not
+     */
+    public long getNumCheckpoints() {
+        return this.numCheckpoints.sum();
+    }
+
+    /**
+     * @return number of log pages freed by log truncation
+     */
+    public long getNumTruncatedLogPages() {
+        return this.numTruncatedLogPages.sum();
+    }
+
+    /**
+     * @return batch size and latency statistics of commit log flushes
+     */
+    public LogManager.CommitStats getCommitStats() {
+        return this.logManager.getCommitStats();
     }
 
     /**
@@ -95,7 +267,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // TODO(proj5): implement
         TransactionTableEntry entry=transactionTable.get(transNum);
         long newLSN=this.logManager.appendToLog(new CommitTransactionLogRecord(transNum,entry.lastLSN));
-        this.logManager.flushToLSN(newLSN);
+        this.logManager.flushCommit(newLSN);
         entry.lastLSN=newLSN;
         entry.transaction.setStatus(Transaction.Status.COMMITTING);
         return newLSN;
@@ -145,6 +317,13 @@ public class ARIESRecoveryManager implements RecoveryManager {
         entry.transaction.setStatus(Transaction.Status.COMPLETE);
         return newLSN;
     }
+
+    @Override
+    public long getLogBytesWritten(long transNum) {
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        return entry == null ? 0L : entry.logBytesWritten;
+    }
+
     private long LSNRolledBackTo(long LSN){
         long ans=LSN;
         LogRecord logRecord=this.logManager.fetchLogRecord(LSN);
@@ -188,7 +367,8 @@ public class ARIESRecoveryManager implements RecoveryManager {
                 transactionEntry.lastLSN=lastRecordLSN;
                 CLR.redo(this,diskSpaceManager,bufferManager);
             }
-            currentLSN=logRecord.getPrevLSN().orElse(LSN);
+            // skip over changes already undone by an earlier partial rollback
+            currentLSN=logRecord.getUndoNextLSN().orElse(logRecord.getPrevLSN().orElse(LSN));
         }
     }
 
@@ -243,11 +423,87 @@ public class ARIESRecoveryManager implements RecoveryManager {
         TransactionTableEntry entry=transactionTable.get(transNum);
         long newLSN=this.logManager.appendToLog(new UpdatePageLogRecord(transNum,pageNum,entry.lastLSN,pageOffset,before,after));
         entry.lastLSN=newLSN;
+        entry.logBytesWritten += before.length + after.length;
         dirtyPageTable.putIfAbsent(pageNum,newLSN);
         entry.transaction.setStatus(Transaction.Status.RUNNING);
         return newLSN;
     }
 
+    /**
+     * @return whether `pageNum` was allocated by `transNum` since its latest savepoint
+     */
+    @Override
+    public boolean isNewPage(long transNum, long pageNum) {
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        return entry != null && entry.newPages.contains(pageNum);
+    }
+
+    /**
+     * Called instead of logPageWrite for a write to a page allocated by the transaction
+     * since its latest savepoint. Only the bytes after the write are logged.
+     *
+     * @param transNum transaction performing the write
+     * @param pageNum page number of page being written
+     * @param pageOffset offset into page where write begins
+     * @param after bytes starting at pageOffset after the write
+     * @return LSN of record written to log
+     */
+    @Override
+    public long logPageImage(long transNum, long pageNum, short pageOffset, byte[] after) {
+        assert (after.length <= BufferManager.EFFECTIVE_PAGE_SIZE);
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        long newLSN = logManager.appendToLog(new PageImageLogRecord(transNum, pageNum, entry.lastLSN, pageOffset,
+                                             after));
+        return logPageChange(entry, pageNum, newLSN, after.length);
+    }
+
+    /**
+     * Called when a record is inserted into a heap page.
+     *
+     * @param transNum transaction performing the insert
+     * @param pageNum page number of page being written
+     * @param bitmapOffset offset into page of the bitmap of used slots
+     * @param entryNum slot of the record
+     * @param offset offset into page of the record
+     * @param before bytes at offset before the insert, or an empty array if they were all zero
+     * @param record bytes of the record
+     * @return LSN of record written to log
+     */
+    @Override
+    public long logRecordInsert(long transNum, long pageNum, short bitmapOffset, short entryNum, short offset,
+                                byte[] before, byte[] record) {
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        long newLSN = logManager.appendToLog(new InsertRecordLogRecord(transNum, pageNum, entry.lastLSN,
+                                             bitmapOffset, entryNum, offset, before, record));
+        return logPageChange(entry, pageNum, newLSN, before.length + record.length);
+    }
+
+    /**
+     * Called when a record is deleted from a heap page.
+     *
+     * @param transNum transaction performing the delete
+     * @param pageNum page number of page being written
+     * @param bitmapOffset offset into page of the bitmap of used slots
+     * @param entryNum slot of the record
+     * @return LSN of record written to log
+     */
+    @Override
+    public long logRecordDelete(long transNum, long pageNum, short bitmapOffset, short entryNum) {
+        TransactionTableEntry entry = transactionTable.get(transNum);
+        long newLSN = logManager.appendToLog(new DeleteRecordLogRecord(transNum, pageNum, entry.lastLSN,
+                                             bitmapOffset, entryNum));
+        return logPageChange(entry, pageNum, newLSN, 0);
+    }
+
+    // Updates the transaction table and dirty page table for a change to a page logged at LSN.
+    private long logPageChange(TransactionTableEntry entry, long pageNum, long LSN, int numBytes) {
+        entry.lastLSN = LSN;
+        entry.logBytesWritten += numBytes;
+        dirtyPageTable.putIfAbsent(pageNum, LSN);
+        entry.transaction.setStatus(Transaction.Status.RUNNING);
+        return LSN;
+    }
+
     /**
      * Called when a new partition is allocated. A log flush is necessary,
      * since changes are visible on disk immediately after this returns.
@@ -335,6 +591,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
         transactionEntry.lastLSN = LSN;
+        transactionEntry.newPages.add(pageNum);
         // Flush log
         logManager.flushToLSN(LSN);
         return LSN;
@@ -366,6 +623,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = logManager.appendToLog(record);
         // Update lastLSN
         transactionEntry.lastLSN = LSN;
+        transactionEntry.newPages.remove(pageNum);
         dirtyPageTable.remove(pageNum);
         // Flush log
         logManager.flushToLSN(LSN);
@@ -421,6 +679,8 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long savepointLSN = transactionEntry.getSavepoint(name);
         // TODO(proj5): implement
         rollbackToLSN(transNum,savepointLSN);
+        // pages allocated since the savepoint were freed by the rollback
+        transactionEntry.newPages.clear();
     }
 
     /**
@@ -435,13 +695,18 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * figure out when to write an end checkpoint record.
      *
      * Finally, the master record should be rewritten with the LSN of the
-     * begin checkpoint record.
+     * begin checkpoint record. Before that happens, data partitions are synced,
+     * since pages that were written back (and dropped from the DPT) since the last
+     * checkpoint are not necessarily on disk yet.
      */
     @Override
     public synchronized void checkpoint() {
+        long startNanos = System.nanoTime();
         // Create begin checkpoint log record and write to log
         LogRecord beginRecord = new BeginCheckpointLogRecord();
         long beginLSN = logManager.appendToLog(beginRecord);
+        // Oldest log record needed to redo the pages in the recorded DPT
+        long minRecLSN = beginLSN;
 
         Map<Long, Long> chkptDPT = new HashMap<>();
         Map<Long, Pair<Transaction.Status, Long>> chkptTxnTable = new HashMap<>();
@@ -455,6 +720,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
                 chkptDPT.clear();
             }
             chkptDPT.put(entry.getKey(),entry.getValue());
+            minRecLSN = Math.min(minRecLSN, entry.getValue());
         }
 
         int txnSize=0;
@@ -471,12 +737,30 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // Last end checkpoint record
         LogRecord endRecord = new EndCheckpointLogRecord(chkptDPT, chkptTxnTable);
         logManager.appendToLog(endRecord);
+        // Data page writes are not forced to disk as they happen, so pages that were
+        // dropped from the DPT before it was recorded above may not be durable yet;
+        // force them before this checkpoint can become the restart point.
+        diskSpaceManager.sync();
         // Ensure checkpoint is fully flushed before updating the master record
         flushToLSN(endRecord.getLSN());
 
         // Update master record
         MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
         logManager.rewriteMasterRecord(masterRecord);
+        this.lastCheckpointLSN = beginLSN;
+        this.lastCheckpointNanos = startNanos;
+        this.numCheckpoints.increment();
+
+        if (this.truncateLog) {
+            // Restart recovery starts at this checkpoint, redoes changes from the earliest
+            // recLSN in the DPT, and undoes running transactions back to their first record.
+            // Transactions that started after the DPT was recorded are in the table now.
+            long truncateLSN = minRecLSN;
+            for (TransactionTableEntry entry : transactionTable.values()) {
+                truncateLSN = Math.min(truncateLSN, entry.firstLSN);
+            }
+            this.numTruncatedLogPages.add(logManager.truncate(truncateLSN));
+        }
     }
 
     /**
@@ -501,6 +785,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
     @Override
     public void close() {
+        this.stopCheckpointer();
         this.checkpoint();
         this.logManager.close();
     }
@@ -592,7 +877,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
             }
             if(logRecord.getPageNum().isPresent()){
                 long pageNum=logRecord.getPageNum().get();
-                if(logType.equals(LogType.UPDATE_PAGE)||logType.equals(LogType.UNDO_UPDATE_PAGE))
+                if(isPageUpdate(logType))
                     dirtyPage(pageNum,logLSN);
                 if(logType.equals(LogType.FREE_PAGE)||logType.equals(LogType.UNDO_ALLOC_PAGE)){
                     flushToLSN(logLSN);
@@ -643,6 +928,8 @@ public class ARIESRecoveryManager implements RecoveryManager {
         for(Map.Entry<Long, TransactionTableEntry> entry: transactionTable.entrySet()){
             Long transNum=entry.getKey();
             TransactionTableEntry tableEntry=entry.getValue();
+            // the transaction may have log records from before the checkpoint
+            tableEntry.firstLSN=0;
             Transaction transaction=tableEntry.transaction;
             Transaction.Status status=transaction.getStatus();
 
@@ -677,39 +964,184 @@ public class ARIESRecoveryManager implements RecoveryManager {
         for(Map.Entry<Long,Long> entry: dirtyPageTable.entrySet()){
             if(entry.getValue()<startLSN) startLSN=entry.getValue();
         }
+        // nothing was dirty at the time of the crash, so there is nothing to redo
+        if(startLSN==Long.MAX_VALUE) return;
+        if(redoThreads>1){
+            restartRedoParallel(startLSN);
+            return;
+        }
         Iterator<LogRecord> logRecordIterator=this.logManager.scanFrom(startLSN);
         while(logRecordIterator.hasNext()){
-            LogRecord logRecord=logRecordIterator.next();
-            LogType logType=logRecord.getType();
-            long logLSN=logRecord.getLSN();
-            boolean isRedoable=logRecord.isRedoable();
-            boolean partitionRelated=logType.equals(LogType.ALLOC_PART)||logType.equals(LogType.UNDO_ALLOC_PART)
-                    ||logType.equals(LogType.FREE_PART)||logType.equals(LogType.UNDO_FREE_PART);
-            boolean pageAllocated=logType.equals(LogType.ALLOC_PAGE)||logType.equals(LogType.UNDO_FREE_PAGE);
+            redoIfNeeded(logRecordIterator.next());
+        }
+    }
 
-            boolean pageModified=logType.equals(LogType.UPDATE_PAGE)||logType.equals(LogType.UNDO_UPDATE_PAGE)
-                    ||logType.equals(LogType.UNDO_ALLOC_PAGE)||logType.equals(LogType.FREE_PAGE);
+    /**
+     * Redoes a log record during the redo pass, if it needs to be redone (see restartRedo).
+     * @param logRecord log record to check and redo
+     */
+    private void redoIfNeeded(LogRecord logRecord) {
+        LogType logType=logRecord.getType();
+        long logLSN=logRecord.getLSN();
+        boolean isRedoable=logRecord.isRedoable();
+        boolean partitionRelated=isPartitionRecord(logType);
+        boolean pageAllocated=logType.equals(LogType.ALLOC_PAGE)||logType.equals(LogType.UNDO_FREE_PAGE);
 
-            if(pageModified){
-                long pageNum=logRecord.getPageNum().get();
-                if(!dirtyPageTable.containsKey(pageNum)) pageModified=false;
-                else if(logLSN<dirtyPageTable.get(pageNum)) pageModified=false;
-                else{
-                    long pageLSN;
-                    Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
-                    try {
-                        pageLSN=page.getPageLSN();
-                    } finally {
-                        page.unpin();
+        boolean pageModified=isPageUpdate(logType)
+                ||logType.equals(LogType.UNDO_ALLOC_PAGE)||logType.equals(LogType.FREE_PAGE);
+
+        if(pageModified){
+            long pageNum=logRecord.getPageNum().get();
+            Long recLSN=dirtyPageTable.get(pageNum);
+            if(recLSN==null) pageModified=false;
+            else if(logLSN<recLSN) pageModified=false;
+            else{
+                long pageLSN;
+                Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+                try {
+                    pageLSN=page.getPageLSN();
+                } finally {
+                    page.unpin();
+                }
+                if(pageLSN>=logLSN) pageModified=false;
+            }
+        }
+
+        if(isRedoable&&(partitionRelated||pageAllocated||pageModified))
+            logRecord.redo(this,diskSpaceManager,bufferManager);
+    }
+
+    // Whether records of logType change the contents of a page (and so dirty it).
+    private static boolean isPageUpdate(LogType logType) {
+        switch (logType) {
+        case UPDATE_PAGE:
+        case UNDO_UPDATE_PAGE:
+        case PAGE_IMAGE:
+        case INSERT_RECORD:
+        case DELETE_RECORD:
+        case UNDO_INSERT_RECORD:
+        case UNDO_DELETE_RECORD:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isPartitionRecord(LogType logType) {
+        return logType.equals(LogType.ALLOC_PART)||logType.equals(LogType.UNDO_ALLOC_PART)
+                ||logType.equals(LogType.FREE_PART)||logType.equals(LogType.UNDO_FREE_PART);
+    }
+
+    /**
+     * Redo pass with redoThreads threads. This thread scans the log from startLSN and hands
+     * each record for a page to the worker for that page, so that the records of any one page
+     * are redone in LSN order, while different pages are redone in parallel. Partition records
+     * are redone by this thread once all records before them have been redone, since
+     * the records that follow may depend on the partition (or its pages) being there or not.
+     * @param startLSN LSN to start redo at
+     */
+    private void restartRedoParallel(long startLSN) {
+        RedoWorker[] workers = new RedoWorker[redoThreads];
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = new RedoWorker(i);
+            workers[i].start();
+        }
+        try {
+            Iterator<LogRecord> logRecordIterator = this.logManager.scanFrom(startLSN);
+            while (logRecordIterator.hasNext()) {
+                LogRecord logRecord = logRecordIterator.next();
+                if (isPartitionRecord(logRecord.getType())) {
+                    CountDownLatch barrier = new CountDownLatch(workers.length);
+                    for (RedoWorker worker : workers) {
+                        worker.submit(barrier::countDown);
                     }
-                    if(pageLSN>=logLSN) pageModified=false;
+                    barrier.await();
+                    checkRedoWorkers(workers);
+                    redoIfNeeded(logRecord);
+                } else if (logRecord.getPageNum().isPresent()) {
+                    long pageNum = logRecord.getPageNum().get();
+                    workers[(int) Math.floorMod(pageNum, (long) workers.length)].submit(() -> redoIfNeeded(logRecord));
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during redo", e);
+        } finally {
+            for (RedoWorker worker : workers) {
+                worker.finish();
+            }
+        }
+        checkRedoWorkers(workers);
+    }
+
+    private static void checkRedoWorkers(RedoWorker[] workers) {
+        for (RedoWorker worker : workers) {
+            if (worker.error != null) {
+                throw worker.error;
+            }
+        }
+    }
 
-            if(isRedoable&&(partitionRelated||pageAllocated||pageModified))
-                logRecord.redo(this,diskSpaceManager,bufferManager);
+    /**
+     * Thread that runs the tasks handed to it during parallel redo, in order. The first
+     * error is kept to be rethrown by restartRedoParallel; since redo is idempotent, the
+     * worker simply keeps going after it.
+     */
+    private static class RedoWorker extends Thread {
+        private static final Runnable DONE = () -> {};
+
+        private final BlockingQueue<Runnable> tasks = new ArrayBlockingQueue<>(REDO_QUEUE_CAPACITY);
+        private volatile RuntimeException error;
+
+        private RedoWorker(int index) {
+            super("aries-redo-" + index);
+            setDaemon(true);
+        }
+
+        private void submit(Runnable task) throws InterruptedException {
+            tasks.put(task);
+        }
+
+        /**
+         * Waits for all of the submitted tasks to run, and stops the thread.
+         */
+        private void finish() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    tasks.put(DONE);
+                    join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
 
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = tasks.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (task == DONE) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -0,0 +1,329 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.PageException;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Compact encoding of log records, used by the log manager when enabled (see
+ * LogManager#setCompactEncoding). Almost every log record is serialized by toBytes as
+ *
+ *  - a 1-byte type, followed by
+ *  - a header of fixed-width fields: the transaction number, page number (or partition
+ *    number), prevLSN and undoNextLSN, for the ones the record has, followed by
+ *  - a body, which is everything else (offsets, before/after images, ...).
+ *
+ * The compact encoding of such a record is
+ *
+ *  - a 1-byte type, with the top bit set to tell it apart from a record in the usual
+ *    encoding, and the next bit set if the body is compressed, followed by
+ *  - a byte with a bit for each of the header fields the record has, followed by
+ *  - the header fields as varints: zigzag encoded numbers for the transaction, page
+ *    and partition numbers, and the distance back from the start of the log page of the
+ *    record for prevLSN and undoNextLSN (which is small when the transaction wrote
+ *    recently, and does not depend on where in the page the record ends up, so that the
+ *    size of a record is known before space is reserved for it),
+ *    followed by
+ *  - the length of the body as a varint, the length of the uncompressed body as a
+ *    varint if it is compressed, and the body.
+ *
+ * Bodies of at least COMPRESS_MIN_BYTES are compressed with a small LZ77 compressor when
+ * compression is enabled and that makes them shorter; page images are often mostly zeros,
+ * or repeat the fields of records. A record is only written in the compact encoding if
+ * that is shorter than toBytes, so a compact record always fits wherever the record would.
+ *
+ * Decoding rebuilds the bytes of the usual encoding and parses them with
+ * LogRecord#fromBytes, so log records themselves do not know about this encoding.
+ */
+final class CompactLogEncoding {
+    // set on the type byte of records in the compact encoding
+    private static final int COMPACT_FLAG = 0x80;
+    // set on the type byte of records whose body is compressed
+    private static final int COMPRESSED_FLAG = 0x40;
+    private static final int TYPE_MASK = 0x3F;
+
+    // bits of the header field byte
+    private static final int TRANS_NUM = 1;
+    private static final int PAGE_NUM = 2;
+    private static final int PART_NUM = 4;
+    private static final int PREV_LSN = 8;
+    private static final int UNDO_NEXT_LSN = 16;
+
+    // bodies shorter than this are never compressed
+    static final int COMPRESS_MIN_BYTES = 64;
+
+    // LZ77 parameters: matches are at least MIN_MATCH bytes, found through a hash table
+    // of the positions of the last occurrence of each HASH_BITS-bit hash of MIN_MATCH bytes
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+
+    private CompactLogEncoding() {}
+
+    /**
+     * Encodes a record compactly.
+     * @param record record to encode
+     * @param bytes record.toBytes()
+     * @param LSN LSN of the start of the log page that the record will be on
+     * @param compress whether to try to compress the body
+     * @return the compact encoding of the record, or bytes if that is not shorter
+     */
+    static byte[] encode(LogRecord record, byte[] bytes, long LSN, boolean compress) {
+        if ((bytes[0] & ~TYPE_MASK) != 0 || record.getType() == LogType.MASTER) {
+            // the master record is rewritten in place, so it always has the same size
+            return bytes;
+        }
+        int fields = 0;
+        Buffer header = ByteBuffer.wrap(new byte[1 + 4 * 8]).put(bytes[0]);
+        if (record.getTransNum().isPresent()) {
+            fields |= TRANS_NUM;
+            header.putLong(record.getTransNum().get());
+        }
+        if (record.getPageNum().isPresent()) {
+            fields |= PAGE_NUM;
+            header.putLong(record.getPageNum().get());
+        } else if (record.getPartNum().isPresent()) {
+            fields |= PART_NUM;
+            header.putInt(record.getPartNum().get());
+        }
+        if (record.getPrevLSN().isPresent()) {
+            fields |= PREV_LSN;
+            header.putLong(record.getPrevLSN().get());
+        }
+        if (record.getUndoNextLSN().isPresent()) {
+            fields |= UNDO_NEXT_LSN;
+            header.putLong(record.getUndoNextLSN().get());
+        }
+        int headerLength = header.position();
+        byte[] expected = new byte[headerLength];
+        header.position(0).get(expected);
+        if (headerLength > bytes.length ||
+                !Arrays.equals(expected, Arrays.copyOfRange(bytes, 0, headerLength))) {
+            // not laid out as a header followed by a body
+            return bytes;
+        }
+
+        byte[] body = Arrays.copyOfRange(bytes, headerLength, bytes.length);
+        byte[] compressed = null;
+        if (compress && body.length >= COMPRESS_MIN_BYTES) {
+            compressed = compress(body);
+            if (compressed != null && compressed.length + varintLength(body.length) >= body.length) {
+                // not worth storing the uncompressed length too
+                compressed = null;
+            }
+        }
+
+        Output out = new Output(bytes.length + 32);
+        out.put(bytes[0] | COMPACT_FLAG | (compressed == null ? 0 : COMPRESSED_FLAG));
+        out.put(fields);
+        if ((fields & TRANS_NUM) != 0) out.putZigzag(record.getTransNum().get());
+        if ((fields & PAGE_NUM) != 0) out.putZigzag(record.getPageNum().get());
+        if ((fields & PART_NUM) != 0) out.putZigzag(record.getPartNum().get());
+        long pageLSN = LSN - LogManager.getLSNIndex(LSN);
+        if ((fields & PREV_LSN) != 0) out.putZigzag(pageLSN - record.getPrevLSN().get());
+        if ((fields & UNDO_NEXT_LSN) != 0) out.putZigzag(pageLSN - record.getUndoNextLSN().get());
+        if (compressed == null) {
+            out.putVarint(body.length);
+            out.put(body, 0, body.length);
+        } else {
+            out.putVarint(compressed.length);
+            out.putVarint(body.length);
+            out.put(compressed, 0, compressed.length);
+        }
+        return out.length < bytes.length ? Arrays.copyOf(out.bytes, out.length) : bytes;
+    }
+
+    /**
+     * Reads a log record, in either the compact or the usual encoding, from the position
+     * of buf, and moves the position of buf past the record.
+     * @param buf buffer containing a serialized log record
+     * @param LSN LSN of the record
+     * @return the log record, or Optional.empty() if there is no record at the position
+     */
+    static Optional<LogRecord> read(Buffer buf, long LSN) {
+        int start = buf.position();
+        int type;
+        try {
+            type = buf.get() & 0xFF;
+        } catch (PageException e) {
+            return Optional.empty();
+        }
+        if ((type & COMPACT_FLAG) == 0) {
+            buf.position(start);
+            return LogRecord.fromBytes(buf);
+        }
+        int fields = buf.get();
+        long transNum = (fields & TRANS_NUM) != 0 ? getZigzag(buf) : 0;
+        long pageNum = (fields & PAGE_NUM) != 0 ? getZigzag(buf) : 0;
+        long partNum = (fields & PART_NUM) != 0 ? getZigzag(buf) : 0;
+        long pageLSN = LSN - LogManager.getLSNIndex(LSN);
+        long prevLSN = (fields & PREV_LSN) != 0 ? pageLSN - getZigzag(buf) : 0;
+        long undoNextLSN = (fields & UNDO_NEXT_LSN) != 0 ? pageLSN - getZigzag(buf) : 0;
+        byte[] body = new byte[(int) getVarint(buf)];
+        if ((type & COMPRESSED_FLAG) != 0) {
+            int length = (int) getVarint(buf);
+            buf.get(body);
+            body = decompress(body, length);
+        } else {
+            buf.get(body);
+        }
+
+        int headerLength = 1 + 8 * Integer.bitCount(fields & (TRANS_NUM | PAGE_NUM | PREV_LSN | UNDO_NEXT_LSN))
+                           + 4 * Integer.bitCount(fields & PART_NUM);
+        Buffer bytes = ByteBuffer.wrap(new byte[headerLength + body.length]).put((byte) (type & TYPE_MASK));
+        if ((fields & TRANS_NUM) != 0) bytes.putLong(transNum);
+        if ((fields & PAGE_NUM) != 0) bytes.putLong(pageNum);
+        if ((fields & PART_NUM) != 0) bytes.putInt((int) partNum);
+        if ((fields & PREV_LSN) != 0) bytes.putLong(prevLSN);
+        if ((fields & UNDO_NEXT_LSN) != 0) bytes.putLong(undoNextLSN);
+        bytes.put(body).position(0);
+        return LogRecord.fromBytes(bytes);
+    }
+
+    /**
+     * Compresses bytes with LZ77. The output is a sequence of tokens, each a varint
+     * followed by its operands: (n - 1) << 1 for a run of n literal bytes, followed by
+     * the bytes, or (n - MIN_MATCH) << 1 | 1 for a copy of n bytes starting some distance
+     * back in the output, followed by the distance as a varint. Copies may overlap the
+     * bytes they produce, so a run of a repeated byte is a single copy with distance 1.
+     * @param bytes bytes to compress
+     * @return compressed bytes, or null if they are not shorter than bytes
+     */
+    static byte[] compress(byte[] bytes) {
+        Output out = new Output(bytes.length + 16);
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int literalStart = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= bytes.length) {
+            int hash = hash(bytes, i);
+            int candidate = table[hash];
+            table[hash] = i;
+            if (candidate >= 0 && matches(bytes, candidate, i)) {
+                int length = MIN_MATCH;
+                while (i + length < bytes.length && bytes[candidate + length] == bytes[i + length]) {
+                    ++length;
+                }
+                putLiterals(out, bytes, literalStart, i);
+                out.putVarint((long) (length - MIN_MATCH) << 1 | 1);
+                out.putVarint(i - candidate);
+                i += length;
+                literalStart = i;
+                if (out.length >= bytes.length) {
+                    return null;
+                }
+            } else {
+                ++i;
+            }
+        }
+        putLiterals(out, bytes, literalStart, bytes.length);
+        return out.length < bytes.length ? Arrays.copyOf(out.bytes, out.length) : null;
+    }
+
+    /**
+     * Decompresses bytes compressed with compress.
+     * @param bytes compressed bytes
+     * @param length length of the uncompressed bytes
+     * @return uncompressed bytes
+     */
+    static byte[] decompress(byte[] bytes, int length) {
+        byte[] out = new byte[length];
+        Buffer in = ByteBuffer.wrap(bytes);
+        int pos = 0;
+        while (pos < length) {
+            long token = getVarint(in);
+            int n = (int) (token >>> 1);
+            if ((token & 1) == 0) {
+                in.get(out, pos, n + 1);
+                pos += n + 1;
+            } else {
+                int from = pos - (int) getVarint(in);
+                for (int end = pos + n + MIN_MATCH; pos < end; ++pos, ++from) {
+                    out[pos] = out[from];
+                }
+            }
+        }
+        return out;
+    }
+
+    private static void putLiterals(Output out, byte[] bytes, int start, int end) {
+        if (end > start) {
+            out.putVarint((long) (end - start - 1) << 1);
+            out.put(bytes, start, end - start);
+        }
+    }
+
+    private static int hash(byte[] bytes, int i) {
+        int x = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | bytes[i + 3] << 24;
+        return (x * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private static boolean matches(byte[] bytes, int candidate, int i) {
+        for (int j = 0; j < MIN_MATCH; ++j) {
+            if (bytes[candidate + j] != bytes[i + j]) return false;
+        }
+        return true;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            ++length;
+        }
+        return length;
+    }
+
+    private static long getVarint(Buffer buf) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static long getZigzag(Buffer buf) {
+        long value = getVarint(buf);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // growable output buffer
+    private static class Output {
+        private byte[] bytes;
+        private int length = 0;
+
+        private Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void put(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        private void put(byte[] src, int offset, int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+            }
+            System.arraycopy(src, offset, bytes, length, n);
+            length += n;
+        }
+
+        private void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        private void putZigzag(long value) {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+    }
+}
@@ -39,6 +39,11 @@ public class DummyRecoveryManager implements RecoveryManager {
         return 0L;
     }
 
+    @Override
+    public long getLogBytesWritten(long transNum) {
+        return 0L;
+    }
+
     @Override
     public void pageFlushHook(long pageLSN) {}
 
@@ -51,6 +56,27 @@ public class DummyRecoveryManager implements RecoveryManager {
         return 0L;
     }
 
+    @Override
+    public boolean isNewPage(long transNum, long pageNum) {
+        return false;
+    }
+
+    @Override
+    public long logPageImage(long transNum, long pageNum, short pageOffset, byte[] after) {
+        return 0L;
+    }
+
+    @Override
+    public long logRecordInsert(long transNum, long pageNum, short bitmapOffset, short entryNum, short offset,
+                                byte[] before, byte[] record) {
+        return 0L;
+    }
+
+    @Override
+    public long logRecordDelete(long transNum, long pageNum, short bitmapOffset, short entryNum) {
+        return 0L;
+    }
+
     @Override
     public long logAllocPart(long transNum, int partNum) {
         return 0L;
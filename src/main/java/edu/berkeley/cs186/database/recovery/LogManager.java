@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.recovery;
 
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.iterator.ConcatBacktrackingIterator;
@@ -13,11 +14,18 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The LogManager is responsible for interfacing with the log itself. The log is stored
- * on its own partition (partition 0). Since log pages are never deleted, the page number
- * is always increasing, so we assign LSNs as follow:
+ * on its own partition (partition 0). Log pages are allocated in order, and page numbers
+ * of truncated pages are never reused, so the page number is always increasing, and we
+ * assign LSNs as follow:
  * - page 1: [ LSN 10000, LSN 10040, LSN 10080, ...]
  * - page 2: [ LSN 20000, LSN 20030, LSN 20055, ...]
  * - page 3: [ LSN 30000, LSN 30047, LSN 30090, ...]
@@ -28,19 +36,72 @@ import java.util.*;
  * by an empty begin and end checkpoint record. The master record is the only record in the
  * entire log that may be rewritten.
  *
+ * Pages at the start of the log (other than page 0) that are no longer needed for restart
+ * recovery may be freed with truncate. Records on truncated pages can no longer be fetched
+ * or scanned, and iterating over the whole log skips from page 0 to the first page that
+ * has not been truncated.
+ *
  * The LogManager is also responsible for writing pageLSNs onto pages and flushing the log
  * when pages are flushed, and therefore has a few methods that must be called by the buffer
  * manager when pages are fetched and evicted (fetchPageHook, fetchNewPageHook, and pageEvictHook).
  * These must be called from the buffer manager to ensure that pageLSN is up to date, and
  * that flushedLSN >= any pageLSN on disk.
+ *
+ * Records are appended to the last page of the log, the log tail, which is kept in memory
+ * (in a LogBuffer) until it is sealed: appenders reserve space on it with an atomic
+ * fetch-and-add, and copy their records in parallel, without holding any lock. Only sealing
+ * the log tail (once it is full, or to flush it) and flushing pages are serialized, on the
+ * log manager itself. A full log tail is copied into its page in the buffer manager; a log
+ * tail sealed to flush it is written to disk directly, since flushToLSN may be called by
+ * the buffer manager in the middle of evicting a page, when loading a page is not safe. The
+ * page of the log tail is never loaded until it is sealed, so its frame never goes stale.
+ *
+ * Records are written in the compact encoding of CompactLogEncoding when it is enabled with
+ * setCompactEncoding. Records in either encoding can be read back at any time, so a log
+ * written with the compact encoding can be recovered with it disabled, and vice versa.
+ *
+ * Commits go through flushCommit, which supports group commit: when enabled, the first
+ * committer to arrive becomes the leader of a batch, waits up to a configurable amount of
+ * time for other committers to join (or until the batch is full), and then performs a single
+ * log flush covering every commit record in the batch. When disabled (the default), every
+ * commit flushes the log by itself.
  */
 public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     private BufferManager bufferManager;
+    // Sealed log pages that have not been flushed, in order.
     private Deque<Page> unflushedLogTail;
-    private Page logTail;
-    private Buffer logTailBuffer;
-    private boolean logTailPinned = false;
-    private long flushedLSN;
+    // The last page of the log, or null if the next record starts a new page.
+    private volatile LogBuffer logTail;
+    private volatile long flushedLSN;
+
+    // Page number of the last log page allocated; the next log page is allocated right after it.
+    private volatile long lastPageNum;
+    // Page number of the first log page after page 0 that has not been truncated.
+    private volatile long firstPageNum = 1;
+    // Held while truncating, so that truncation does not block appends.
+    private final Object truncateLock = new Object();
+
+    // Group commit settings. Group commit is disabled when the max batch size is 1.
+    private int groupCommitMaxBatchSize = 1;
+    private long groupCommitMaxWaitNanos = 0;
+
+    // Group commit state, protected by groupCommitLock. Committers that arrive
+    // while a batch is being flushed join the next batch (batchGeneration).
+    private final ReentrantLock groupCommitLock = new ReentrantLock();
+    private final Condition batchFull = groupCommitLock.newCondition();
+    private final Condition batchFlushed = groupCommitLock.newCondition();
+    private boolean batchLeaderActive = false;
+    private long batchGeneration = 0;
+    private int batchSize = 0;
+    private long batchMaxLSN = 0;
+
+    // Commit statistics
+    private final CommitStats commitStats = new CommitStats();
+
+    // Whether records are appended in the compact encoding, and whether their bodies
+    // (before and after images, ...) are compressed.
+    private volatile boolean compactEncoding = false;
+    private volatile boolean compressBodies = false;
 
     public static final int LOG_PARTITION = 0;
 
@@ -48,12 +109,115 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         this.bufferManager = bufferManager;
         this.unflushedLogTail = new ArrayDeque<>();
 
-        this.logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
-        this.unflushedLogTail.add(this.logTail);
-        this.logTailBuffer = this.logTail.getBuffer();
-        this.logTail.unpin();
+        this.lastPageNum = findLastPage();
+        this.logTail = newLogTail();
+
+        this.flushedLSN = maxLSN(this.logTail.pageNum - 1L);
+    }
+
+    /**
+     * Allocates the log page after the last one, to be the new log tail. Assumes that the
+     * log manager is locked (or being constructed).
+     * @return new log tail
+     */
+    private LogBuffer newLogTail() {
+        // allocated on disk only: the page is not loaded until the log tail is sealed
+        long pageNum = bufferManager.getDiskSpaceManager().allocPage(
+                DiskSpaceManager.getVirtualPageNum(LOG_PARTITION, (int) (lastPageNum + 1)));
+        lastPageNum = pageNum;
+        return new LogBuffer(pageNum);
+    }
+
+    /**
+     * Seals the log tail, and copies it into its page. Loading the page may evict a dirty
+     * page, which flushes the log first (see flushToLSN), possibly up to records on the log
+     * tail itself. Assumes that the log manager is locked, and must not be called by the
+     * buffer manager (through flushToLSN).
+     */
+    private void sealLogTail() {
+        LogBuffer tail = logTail;
+        tail.seal();
+        Page page = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), tail.pageNum);
+        try {
+            page.getBuffer().put(tail.contents);
+        } finally {
+            page.unpin();
+        }
+        unflushedLogTail.add(page);
+        logTail = null;
+    }
+
+    /**
+     * Called by appenders that found the log tail full (or sealed, or missing): seals the log
+     * tail if it is still the full one, and starts a new log tail if there is none.
+     * @param full log tail that the caller could not append to, or null
+     */
+    private synchronized void advanceLogTail(LogBuffer full) {
+        if (full != null && logTail == full) {
+            sealLogTail();
+        }
+        if (logTail == null) {
+            logTail = newLogTail();
+        }
+    }
+
+    /**
+     * Finds the last page of an existing log, and the first page that has not been
+     * truncated. Pages between the page of the last checkpoint (in the master record)
+     * and the end of the log are never truncated, so both ends are found by searching
+     * outwards from there, which reads O(log n) pages.
+     * @return page number of the last log page, or -1 if there is no log yet
+     */
+    private long findLastPage() {
+        if (!logPageExists(0)) {
+            return -1;
+        }
+        long checkpointPage = 0;
+        LogRecord record = fetchLogRecord(0);
+        if (record != null && record.getType() == LogType.MASTER) {
+            checkpointPage = getLSNPage(((MasterLogRecord) record).lastCheckpointLSN);
+        }
+        if (checkpointPage > 0 && logPageExists(checkpointPage)) {
+            // pages [firstPageNum, checkpointPage] exist, pages [1, firstPageNum) were truncated
+            long lo = 0;
+            long hi = checkpointPage;
+            while (hi - lo > 1) {
+                long mid = lo + (hi - lo) / 2;
+                if (logPageExists(mid)) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            firstPageNum = hi;
+        } else {
+            checkpointPage = 0;
+        }
+        long lo = checkpointPage;
+        long step = 1;
+        while (logPageExists(lo + step)) {
+            lo += step;
+            step *= 2;
+        }
+        long hi = lo + step;
+        while (hi - lo > 1) {
+            long mid = lo + (hi - lo) / 2;
+            if (logPageExists(mid)) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
 
-        this.flushedLSN = maxLSN(this.logTail.getPageNum() - 1L);
+    private boolean logPageExists(long pageNum) {
+        try {
+            bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), pageNum).unpin();
+            return true;
+        } catch (PageException e) {
+            return false;
+        }
     }
 
     /**
@@ -61,6 +225,10 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param record log record to replace first record with
      */
     public synchronized void rewriteMasterRecord(MasterLogRecord record) {
+        if (logTail != null && logTail.pageNum == LOG_PARTITION) {
+            // the rest of the log is still in memory; the master record is written to the page
+            sealLogTail();
+        }
         Page firstPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
         try {
             firstPage.getBuffer().put(record.toBytes());
@@ -71,36 +239,30 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     }
 
     /**
-     * Appends a log record to the log.
+     * Appends a log record to the log. Does not block other appenders, except when the log
+     * tail is full and a new log page has to be started.
      * @param record log record to append to the log
      * @return LSN of new log record
      */
-    public synchronized long appendToLog(LogRecord record) {
+    public long appendToLog(LogRecord record) {
         byte[] bytes = record.toBytes();
-        // loop in case accessing log tail requires flushing the log in order to evict dirty page to load log tail
-        do {
-            if (logTailBuffer == null || bytes.length > DiskSpaceManager.PAGE_SIZE - logTailBuffer.position()) {
-                logTailPinned = true;
-                logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
-                unflushedLogTail.add(logTail);
-                logTailBuffer = logTail.getBuffer();
-            } else {
-                logTailPinned = true;
-                logTail.pin();
-                if (logTailBuffer == null) {
-                    logTail.unpin();
-                }
+        while (true) {
+            LogBuffer tail = logTail;
+            if (tail == null) {
+                advanceLogTail(null);
+                continue;
             }
-        } while (logTailBuffer == null);
-        try {
-            int pos = logTailBuffer.position();
-            logTailBuffer.put(bytes);
-            long LSN = makeLSN(unflushedLogTail.getLast().getPageNum(), pos);
-            record.LSN = LSN;
-            return LSN;
-        } finally {
-            logTail.unpin();
-            logTailPinned = false;
+            byte[] encoded = bytes;
+            if (compactEncoding) {
+                encoded = CompactLogEncoding.encode(record, bytes, makeLSN(tail.pageNum, 0), compressBodies);
+            }
+            int index = tail.append(encoded);
+            if (index >= 0) {
+                long LSN = makeLSN(tail.pageNum, index);
+                record.LSN = LSN;
+                return LSN;
+            }
+            advanceLogTail(tail);
         }
     }
 
@@ -110,12 +272,20 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @return log record with the specified LSN
      */
     public LogRecord fetchLogRecord(long LSN) {
+        LogBuffer tail = logTail;
+        if (tail != null && tail.pageNum == getLSNPage(LSN)) {
+            // records are copied in before their LSN is returned by appendToLog
+            Optional<LogRecord> record = CompactLogEncoding.read(
+                    ByteBuffer.wrap(tail.contents).position(getLSNIndex(LSN)), LSN);
+            record.ifPresent((LogRecord e) -> e.setLSN(LSN));
+            return record.orElse(null);
+        }
         try {
             Page logPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(getLSNIndex(LSN));
-                Optional<LogRecord> record = LogRecord.fromBytes(buf);
+                Optional<LogRecord> record = CompactLogEncoding.read(buf, LSN);
                 record.ifPresent((LogRecord e) -> e.setLSN(LSN));
                 return record.orElse(null);
             } finally {
@@ -133,8 +303,18 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * @param LSN LSN up to which the log should be flushed
      */
     public synchronized void flushToLSN(long LSN) {
-        Iterator<Page> iter = unflushedLogTail.iterator();
         long pageNum = getLSNPage(LSN);
+        LogBuffer tail = logTail;
+        if (tail != null && tail.pageNum <= pageNum) {
+            // the page of the log tail is not loaded (or, if sealLogTail is loading it, has
+            // not been read yet), so the log tail is written directly
+            tail.seal();
+            bufferManager.writePageDirect(tail.pageNum, tail.contents);
+            if (logTail == tail) {
+                logTail = null;
+            }
+        }
+        Iterator<Page> iter = unflushedLogTail.iterator();
         while (iter.hasNext()) {
             Page page = iter.next();
             if (page.getPageNum() > pageNum) {
@@ -144,14 +324,164 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
             iter.remove();
         }
         flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
-        if (unflushedLogTail.size() == 0) {
-            if (!logTailPinned) {
-                logTail = null;
+    }
+
+    /**
+     * Frees the log pages (other than page 0, with the master record) that only hold records
+     * with LSNs less than the given LSN. Pages that have not been flushed are never freed.
+     * Records on freed pages can no longer be fetched or scanned. Does not block appends.
+     * @param LSN LSN of the first record that must be kept
+     * @return number of pages freed
+     */
+    public int truncate(long LSN) {
+        synchronized (truncateLock) {
+            long endPage = Math.min(getLSNPage(LSN), getLSNPage(flushedLSN));
+            long startPage = firstPageNum;
+            if (endPage <= startPage) {
+                return 0;
             }
-            logTailBuffer = null;
+            // move the start of the log first, so that scans skip the pages being freed
+            firstPageNum = endPage;
+            for (long pageNum = startPage; pageNum < endPage; ++pageNum) {
+                Page page = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), pageNum);
+                bufferManager.freePage(page);
+                page.unpin();
+            }
+            return (int) (endPage - startPage);
         }
     }
 
+    /**
+     * @return LSN of the start of the first log page after page 0 that has not been truncated
+     */
+    public long getFirstLSN() {
+        return makeLSN(firstPageNum, 0);
+    }
+
+    /**
+     * @return a lower bound on the LSN of any record appended from now on
+     */
+    public long getNextLSNLowerBound() {
+        return makeLSN(lastPageNum, 0);
+    }
+
+    /**
+     * Flushes the log up to and including the commit record at LSN. If group commit
+     * is enabled, the flush is shared with any other transactions committing at
+     * around the same time; this method returns once a flush covering LSN has completed.
+     * @param LSN LSN of the commit record
+     */
+    public void flushCommit(long LSN) {
+        long startTime = System.nanoTime();
+        if (groupCommitMaxBatchSize <= 1) {
+            flushToLSN(LSN);
+            commitStats.recordBatch(1);
+            commitStats.recordCommit(System.nanoTime() - startTime);
+            return;
+        }
+        groupCommitLock.lock();
+        try {
+            if (flushedLSN >= LSN) {
+                return;
+            }
+            long generation = batchGeneration;
+            ++batchSize;
+            batchMaxLSN = Math.max(batchMaxLSN, LSN);
+            if (batchSize >= groupCommitMaxBatchSize) {
+                batchFull.signal();
+            }
+            while (flushedLSN < LSN) {
+                if (batchLeaderActive) {
+                    batchFlushed.awaitUninterruptibly();
+                } else {
+                    leadBatch(startTime);
+                }
+            }
+            if (generation == batchGeneration) {
+                // our commit was covered by someone else's flush before our batch closed
+                --batchSize;
+            }
+        } finally {
+            commitStats.recordCommit(System.nanoTime() - startTime);
+            groupCommitLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the current batch to fill up (or for the max wait time to pass),
+     * then closes the batch and flushes the log for all of its commits. Assumes
+     * groupCommitLock is held, and releases it during the flush itself.
+     * @param startTime time (System.nanoTime) at which the leader started committing
+     */
+    private void leadBatch(long startTime) {
+        batchLeaderActive = true;
+        try {
+            long remaining = groupCommitMaxWaitNanos - (System.nanoTime() - startTime);
+            while (batchSize < groupCommitMaxBatchSize && remaining > 0) {
+                try {
+                    remaining = batchFull.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            int size = batchSize;
+            long LSN = batchMaxLSN;
+            ++batchGeneration;
+            batchSize = 0;
+            batchMaxLSN = 0;
+
+            groupCommitLock.unlock();
+            try {
+                flushToLSN(LSN);
+            } finally {
+                groupCommitLock.lock();
+            }
+            commitStats.recordBatch(size);
+        } finally {
+            batchLeaderActive = false;
+            batchFlushed.signalAll();
+        }
+    }
+
+    /**
+     * Configures group commit. A max batch size of 1 disables group commit, so that
+     * every commit flushes the log on its own.
+     * @param maxBatchSize max number of commits to cover with one log flush
+     * @param maxWait max time that the first commit of a batch waits for others to join
+     * @param unit time unit of maxWait
+     */
+    public void setGroupCommit(int maxBatchSize, long maxWait, TimeUnit unit) {
+        if (maxBatchSize < 1 || maxWait < 0) {
+            throw new IllegalArgumentException("invalid group commit settings");
+        }
+        groupCommitLock.lock();
+        try {
+            this.groupCommitMaxBatchSize = maxBatchSize;
+            this.groupCommitMaxWaitNanos = unit.toNanos(maxWait);
+        } finally {
+            groupCommitLock.unlock();
+        }
+    }
+
+    /**
+     * Configures the encoding of records appended from now on. Records already in the
+     * log keep their encoding, and can be read back either way.
+     * @param compact whether to append records in the compact encoding of CompactLogEncoding
+     * @param compress whether to also compress the bodies of records in the compact encoding
+     */
+    public void setCompactEncoding(boolean compact, boolean compress) {
+        this.compactEncoding = compact;
+        this.compressBodies = compact && compress;
+    }
+
+    /**
+     * @return statistics about commit flushes
+     */
+    public CommitStats getCommitStats() {
+        return commitStats;
+    }
+
     /**
      * @return flushedLSN
      */
@@ -216,61 +546,221 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
     @Override
     public synchronized void close() {
-        if (!this.unflushedLogTail.isEmpty()) {
-            this.flushToLSN(maxLSN(unflushedLogTail.getLast().getPageNum()));
+        if (logTail != null || !this.unflushedLogTail.isEmpty()) {
+            this.flushToLSN(maxLSN(lastPageNum));
+        }
+    }
+
+    /**
+     * In-memory contents of the log tail. Appenders reserve space with a fetch-and-add on
+     * reserved, and then copy their record in; writers counts the appenders between the two.
+     * Once sealed, reservations fail, and the contents no longer change once writers is 0.
+     */
+    private static class LogBuffer {
+        private final long pageNum;
+        private final byte[] contents = new byte[DiskSpaceManager.PAGE_SIZE];
+        private final AtomicInteger reserved = new AtomicInteger();
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private LogBuffer(long pageNum) {
+            this.pageNum = pageNum;
+        }
+
+        /**
+         * Appends bytes to the log tail.
+         * @param bytes bytes of a log record
+         * @return index of the bytes in the page, or -1 if they do not fit (or the log tail is sealed)
+         */
+        private int append(byte[] bytes) {
+            writers.incrementAndGet();
+            try {
+                int index = reserved.getAndAdd(bytes.length);
+                if (index < 0 || index > contents.length - bytes.length) {
+                    return -1;
+                }
+                System.arraycopy(bytes, 0, contents, index, bytes.length);
+                return index;
+            } finally {
+                writers.decrementAndGet();
+            }
+        }
+
+        /**
+         * Makes every later append fail, and waits for appends in progress to finish.
+         */
+        private void seal() {
+            reserved.getAndAdd(contents.length + 1);
+            awaitWriters();
+        }
+
+        /**
+         * @return a copy of the records appended so far
+         */
+        private byte[] snapshot() {
+            int end = Math.min(reserved.get(), contents.length);
+            // appends that reserved space before end have started, so are counted in writers
+            awaitWriters();
+            byte[] copy = new byte[contents.length];
+            System.arraycopy(contents, 0, copy, 0, end);
+            return copy;
+        }
+
+        private void awaitWriters() {
+            while (writers.get() != 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Statistics about commits that went through flushCommit: how many log flushes
+     * were done for commits (batches), how many commits each batch covered, and how
+     * long committers spent waiting for their commit record to be flushed.
+     */
+    public static class CommitStats {
+        private final LongAdder numCommits = new LongAdder();
+        private final LongAdder numBatches = new LongAdder();
+        private final LongAdder batchedCommits = new LongAdder();
+        private final LongAdder totalLatencyNanos = new LongAdder();
+        private final LongAccumulator maxBatchSize = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+        private void recordBatch(int size) {
+            numBatches.increment();
+            batchedCommits.add(size);
+            maxBatchSize.accumulate(size);
+        }
+
+        private void recordCommit(long latencyNanos) {
+            numCommits.increment();
+            totalLatencyNanos.add(latencyNanos);
+            maxLatencyNanos.accumulate(latencyNanos);
+        }
+
+        public long getNumCommits() {
+            return numCommits.sum();
+        }
+
+        public long getNumBatches() {
+            return numBatches.sum();
+        }
+
+        public double getAverageBatchSize() {
+            long batches = numBatches.sum();
+            return batches == 0 ? 0 : (double) batchedCommits.sum() / batches;
+        }
+
+        public int getMaxBatchSize() {
+            return (int) maxBatchSize.get();
+        }
+
+        public double getAverageCommitLatencyMicros() {
+            long commits = numCommits.sum();
+            return commits == 0 ? 0 : totalLatencyNanos.sum() / 1000.0 / commits;
+        }
+
+        public double getMaxCommitLatencyMicros() {
+            return maxLatencyNanos.get() / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("commits=%d, flushes=%d, avg batch=%.2f, max batch=%d, " +
+                                 "avg latency=%.1fus, max latency=%.1fus", getNumCommits(), getNumBatches(),
+                                 getAverageBatchSize(), getMaxBatchSize(), getAverageCommitLatencyMicros(),
+                                 getMaxCommitLatencyMicros());
         }
     }
 
     private class LogPageIterator extends IndexBacktrackingIterator<LogRecord> {
+        private long pageNum;
+        // the log page, or a copy of its contents if it was the log tail
         private Page logPage;
+        private byte[] contents;
         private int startIndex;
 
         private LogPageIterator(Page logPage, int startIndex) {
             super(DiskSpaceManager.PAGE_SIZE);
+            this.pageNum = logPage.getPageNum();
             this.logPage = logPage;
             this.startIndex = startIndex;
             this.logPage.unpin();
         }
 
+        private LogPageIterator(LogBuffer logTail, int startIndex) {
+            super(DiskSpaceManager.PAGE_SIZE);
+            this.pageNum = logTail.pageNum;
+            this.contents = logTail.snapshot();
+            this.startIndex = startIndex;
+        }
+
+        private Buffer pin() {
+            if (contents != null) {
+                return ByteBuffer.wrap(contents);
+            }
+            logPage.pin();
+            return logPage.getBuffer();
+        }
+
+        private void unpin() {
+            if (contents == null) {
+                logPage.unpin();
+            }
+        }
+
         @Override
         protected int getNextNonEmpty(int currentIndex) {
-            logPage.pin();
+            Buffer buf = pin();
             try {
-                Buffer buf = logPage.getBuffer();
                 if (currentIndex == -1) {
                     currentIndex = startIndex;
                     buf.position(currentIndex);
                 } else {
                     buf.position(currentIndex);
-                    LogRecord.fromBytes(buf);
+                    CompactLogEncoding.read(buf, makeLSN(pageNum, currentIndex));
                     currentIndex = buf.position();
                 }
 
-                if (LogRecord.fromBytes(buf).isPresent()) {
+                if (CompactLogEncoding.read(buf, makeLSN(pageNum, currentIndex)).isPresent()) {
                     return currentIndex;
                 } else {
                     return DiskSpaceManager.PAGE_SIZE;
                 }
             } finally {
-                logPage.unpin();
+                unpin();
             }
         }
 
         @Override
         protected LogRecord getValue(int index) {
-            logPage.pin();
+            Buffer buf = pin();
             try {
-                Buffer buf = logPage.getBuffer();
                 buf.position(index);
-                LogRecord record = LogRecord.fromBytes(buf).orElseThrow(NoSuchElementException::new);
-                record.setLSN(makeLSN(logPage.getPageNum(), index));
+                long LSN = makeLSN(pageNum, index);
+                LogRecord record = CompactLogEncoding.read(buf, LSN).orElseThrow(NoSuchElementException::new);
+                record.setLSN(LSN);
                 return record;
             } finally {
-                logPage.unpin();
+                unpin();
             }
         }
     }
 
+    /**
+     * Opens an iterator over the records of a log page.
+     * @param pageNum page number of the log page
+     * @param startIndex index of the first record to return
+     * @return iterator over the records of the page
+     * @throws PageException if the page does not exist
+     */
+    private LogPageIterator openLogPage(long pageNum, int startIndex) {
+        LogBuffer tail = logTail;
+        if (tail != null && tail.pageNum == pageNum) {
+            return new LogPageIterator(tail, startIndex);
+        }
+        return new LogPageIterator(bufferManager.fetchPage(new DummyLockContext(), pageNum), startIndex);
+    }
+
     private class LogPagesIterator implements BacktrackingIterator<BacktrackingIterable<LogRecord>> {
         private BacktrackingIterator<LogRecord> nextIter;
         private long nextIndex;
@@ -278,8 +768,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         private LogPagesIterator(long startLSN) {
             nextIndex = getLSNPage(startLSN);
             try {
-                Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
-                nextIter = new LogPageIterator(page, getLSNIndex(startLSN));
+                nextIter = openLogPage(nextIndex, getLSNIndex(startLSN));
             } catch (PageException e) {
                 nextIter = null;
             }
@@ -313,10 +802,9 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
                 nextIter = null;
                 do {
-                    ++nextIndex;
+                    nextIndex = Math.max(nextIndex + 1, firstPageNum);
                     try {
-                        Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
-                        nextIter = new LogPageIterator(page, 0);
+                        nextIter = openLogPage(nextIndex, 0);
                     } catch (PageException e) {
                         break;
                     }
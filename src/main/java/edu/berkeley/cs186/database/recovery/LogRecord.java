@@ -217,6 +217,16 @@ public abstract class LogRecord {
             return UndoAllocPartLogRecord.fromBytes(buf);
         case UNDO_FREE_PART:
             return UndoFreePartLogRecord.fromBytes(buf);
+        case PAGE_IMAGE:
+            return PageImageLogRecord.fromBytes(buf);
+        case INSERT_RECORD:
+            return InsertRecordLogRecord.fromBytes(buf);
+        case DELETE_RECORD:
+            return DeleteRecordLogRecord.fromBytes(buf);
+        case UNDO_INSERT_RECORD:
+            return UndoInsertRecordLogRecord.fromBytes(buf);
+        case UNDO_DELETE_RECORD:
+            return UndoDeleteRecordLogRecord.fromBytes(buf);
         default:
             throw new UnsupportedOperationException("bad log type");
         }
@@ -33,7 +33,17 @@ public enum LogType {
     // compensation log record for undoing a partition alloc
     UNDO_ALLOC_PART,
     // compensation log record for undoing a partition free
-    UNDO_FREE_PART;
+    UNDO_FREE_PART,
+    // log record for writing to a page allocated by the same transaction (redo only)
+    PAGE_IMAGE,
+    // log record for inserting a record into a heap page
+    INSERT_RECORD,
+    // log record for deleting a record from a heap page
+    DELETE_RECORD,
+    // compensation log record for undoing a record insert
+    UNDO_INSERT_RECORD,
+    // compensation log record for undoing a record delete
+    UNDO_DELETE_RECORD;
 
     private static LogType[] values = LogType.values();
 
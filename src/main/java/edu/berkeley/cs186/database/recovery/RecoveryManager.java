@@ -51,6 +51,13 @@ public interface RecoveryManager extends AutoCloseable {
      */
     long end(long transNum);
 
+    /**
+     * @param transNum transaction number
+     * @return number of bytes of page changes logged by the transaction so far (what
+     * rolling it back has to undo), or 0 if not tracked
+     */
+    long getLogBytesWritten(long transNum);
+
     /**
      * Called before a page is flushed from the buffer cache. This
      * method is never called on a log page.
@@ -81,6 +88,60 @@ public interface RecoveryManager extends AutoCloseable {
     long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
                       byte[] after);
 
+    /**
+     * @return whether `pageNum` was allocated by `transNum` since its latest savepoint,
+     * so that rolling back the transaction (or to any of its savepoints) frees the page,
+     * and writes to the page need not be undone.
+     */
+    boolean isNewPage(long transNum, long pageNum);
+
+    /**
+     * Called instead of logPageWrite when a write happens to a page for which isNewPage
+     * is true. Only the bytes after the write are logged, and the write is not undone
+     * on rollback.
+     *
+     * @param transNum transaction performing the write
+     * @param pageNum page number of page being written
+     * @param pageOffset offset into page where write begins
+     * @param after bytes starting at pageOffset after the write
+     * @return LSN of record written to log
+     */
+    long logPageImage(long transNum, long pageNum, short pageOffset, byte[] after);
+
+    /**
+     * Called when a record is inserted into a heap page: bit `entryNum` of the bitmap at
+     * `bitmapOffset` was set, and `record` written at `offset` over `before`. Undoing the
+     * insert clears the bit and writes `before` back.
+     *
+     * This method is never called on a log page.
+     *
+     * @param transNum transaction performing the insert
+     * @param pageNum page number of page being written
+     * @param bitmapOffset offset into page of the bitmap of used slots
+     * @param entryNum slot of the record
+     * @param offset offset into page of the record
+     * @param before bytes at offset before the insert, or an empty array if they were all zero
+     * @param record bytes of the record
+     * @return LSN of record written to log
+     */
+    long logRecordInsert(long transNum, long pageNum, short bitmapOffset, short entryNum, short offset,
+                         byte[] before, byte[] record);
+
+    /**
+     * Called when a record is deleted from a heap page: bit `entryNum` of the bitmap at
+     * `bitmapOffset` was cleared. The bytes of the record are left on the page, so
+     * undoing the delete only sets the bit again.
+     *
+     * This method is never called on a log page.
+     *
+     * @param transNum transaction performing the delete
+     * @param pageNum page number of page being written
+     * @param bitmapOffset offset into page of the bitmap of used slots
+     * @param entryNum slot of the record
+     * @return LSN of record written to log
+     */
+    long logRecordDelete(long transNum, long pageNum, short bitmapOffset, short entryNum);
+
     /**
      * Called when a new partition is allocated. A log flush is necessary,
      * since changes are visible on disk immediately after this returns.
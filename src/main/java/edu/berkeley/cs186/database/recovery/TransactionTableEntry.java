@@ -3,17 +3,27 @@ package edu.berkeley.cs186.database.recovery;
 import edu.berkeley.cs186.database.Transaction;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Set;
 
 class TransactionTableEntry {
     // Transaction object for the transaction.
     Transaction transaction;
     // lastLSN of transaction, or 0 if no log entries for the transaction exist.
     long lastLSN = 0;
+    // LSN that all log entries for the transaction are at or after, or 0 if unknown (e.g. for
+    // transactions found during restart, which may have log entries before the checkpoint).
+    long firstLSN = 0;
+    // Number of bytes of page changes (before and after images) logged by the transaction.
+    long logBytesWritten = 0;
     // map of transaction's savepoints
     private Map<String, Long> savepoints = new HashMap<>();
+    // pages allocated by the transaction since its latest savepoint, which rolling back
+    // frees, so that writes to them need not be undone
+    Set<Long> newPages = new HashSet<>();
 
     TransactionTableEntry(Transaction transaction) {
         this.transaction = transaction;
@@ -21,6 +31,7 @@ class TransactionTableEntry {
 
     void addSavepoint(String name) {
         savepoints.put(name, lastLSN);
+        newPages.clear();
     }
 
     long getSavepoint(String name) {
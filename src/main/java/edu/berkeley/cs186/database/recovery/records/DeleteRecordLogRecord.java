@@ -0,0 +1,137 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Bits;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Delete of a record from a heap page: clears the bit of the slot in the bitmap of used
+ * slots. The bytes of the record are left on the page, so undoing the delete only sets
+ * the bit again (if the slot was reused by the same transaction in the meantime, undoing
+ * that insert has already written the record back, see InsertRecordLogRecord).
+ */
+public class DeleteRecordLogRecord extends LogRecord {
+    private long transNum; // transaction that deleted the record
+    private long pageNum; // page that was updated
+    private long prevLSN; // previous log's LSN
+    public short bitmapOffset; // position of the bitmap of used slots
+    public short entryNum; // slot of the record
+
+    /**
+     * @param transNum transaction number of transaction that deleted the record
+     * @param pageNum the page that was updated
+     * @param prevLSN previous log's LSN
+     * @param bitmapOffset position of the bitmap of used slots
+     * @param entryNum slot of the record
+     */
+    public DeleteRecordLogRecord(long transNum, long pageNum, long prevLSN, short bitmapOffset,
+                                 short entryNum) {
+        super(LogType.DELETE_RECORD);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.bitmapOffset = bitmapOffset;
+        this.entryNum = entryNum;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public boolean isUndoable() { return true; }
+
+    @Override
+    public boolean isRedoable() { return true; }
+
+    @Override
+    public LogRecord undo(long lastLSN) {
+        return new UndoDeleteRecordLogRecord(transNum, pageNum, lastLSN, prevLSN, bitmapOffset, entryNum);
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Page page = bm.fetchPage(new DummyLockContext("_dummyDeleteRecordRecord"), pageNum);
+        try {
+            InsertRecordLogRecord.setBit(page, bitmapOffset, entryNum, Bits.Bit.ZERO);
+            page.setPageLSN(getLSN());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[29];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putShort(bitmapOffset)
+        .putShort(entryNum);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        short bitmapOffset = buf.getShort();
+        short entryNum = buf.getShort();
+        return Optional.of(new DeleteRecordLogRecord(transNum, pageNum, prevLSN, bitmapOffset, entryNum));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        DeleteRecordLogRecord that = (DeleteRecordLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               bitmapOffset == that.bitmapOffset &&
+               entryNum == that.entryNum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, bitmapOffset, entryNum);
+    }
+
+    @Override
+    public String toString() {
+        return "DeleteRecordLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", bitmapOffset=" + bitmapOffset +
+               ", entryNum=" + entryNum +
+               ", prevLSN=" + prevLSN +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
@@ -0,0 +1,181 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Bits;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Insert of a record into a heap page: sets the bit of the slot in the bitmap of used
+ * slots, and writes the record. Undoing the insert clears the bit, and writes back the
+ * bytes that were in the slot before (which may be a record deleted earlier by the same
+ * transaction, so that undoing the delete only has to set the bit again). If those bytes
+ * were all zero, as in a slot that was never used, they are logged as an empty array.
+ */
+public class InsertRecordLogRecord extends LogRecord {
+    private long transNum; // transaction that inserted the record
+    private long pageNum; // page that was updated
+    private long prevLSN; // previous log's LSN
+    public short bitmapOffset; // position of the bitmap of used slots
+    public short entryNum; // slot of the record
+    public short offset; // position of the record
+    public byte[] before; // bytes of the slot before the insert, or empty if all zero
+    public byte[] record; // bytes of the record
+
+    /**
+     * @param transNum transaction number of transaction that inserted the record
+     * @param pageNum the page that was updated
+     * @param prevLSN previous log's LSN
+     * @param bitmapOffset position of the bitmap of used slots
+     * @param entryNum slot of the record
+     * @param offset position of the record
+     * @param before bytes of the slot before the insert, or an empty array if all zero
+     * @param record bytes of the record
+     */
+    public InsertRecordLogRecord(long transNum, long pageNum, long prevLSN, short bitmapOffset,
+                                 short entryNum, short offset, byte[] before, byte[] record) {
+        super(LogType.INSERT_RECORD);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.bitmapOffset = bitmapOffset;
+        this.entryNum = entryNum;
+        this.offset = offset;
+        this.before = before;
+        this.record = record;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public boolean isUndoable() { return true; }
+
+    @Override
+    public boolean isRedoable() { return true; }
+
+    @Override
+    public LogRecord undo(long lastLSN) {
+        byte[] after = before.length == 0 ? new byte[record.length] : before;
+        return new UndoInsertRecordLogRecord(transNum, pageNum, lastLSN, prevLSN, bitmapOffset, entryNum, offset,
+                                             after);
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Page page = bm.fetchPage(new DummyLockContext("_dummyInsertRecordRecord"), pageNum);
+        try {
+            setBit(page, bitmapOffset, entryNum, Bits.Bit.ONE);
+            page.getUnloggedBuffer().position(offset).put(record);
+            page.setPageLSN(getLSN());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Sets bit entryNum of the bitmap at bitmapOffset of a pinned page, without logging.
+     */
+    static void setBit(Page page, short bitmapOffset, short entryNum, Bits.Bit bit) {
+        byte[] b = new byte[1];
+        page.getUnloggedBuffer().position(bitmapOffset + entryNum / 8).get(b);
+        Bits.setBit(b, entryNum % 8, bit);
+        page.getUnloggedBuffer().position(bitmapOffset + entryNum / 8).put(b);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[35 + before.length + record.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putShort(bitmapOffset)
+        .putShort(entryNum)
+        .putShort(offset)
+        .putShort((short) before.length)
+        .put(before)
+        .putShort((short) record.length)
+        .put(record);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        short bitmapOffset = buf.getShort();
+        short entryNum = buf.getShort();
+        short offset = buf.getShort();
+        byte[] before = new byte[buf.getShort()];
+        buf.get(before);
+        byte[] record = new byte[buf.getShort()];
+        buf.get(record);
+        return Optional.of(new InsertRecordLogRecord(transNum, pageNum, prevLSN, bitmapOffset, entryNum, offset,
+                           before, record));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        InsertRecordLogRecord that = (InsertRecordLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               bitmapOffset == that.bitmapOffset &&
+               entryNum == that.entryNum &&
+               offset == that.offset &&
+               Arrays.equals(before, that.before) &&
+               Arrays.equals(record, that.record);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, bitmapOffset, entryNum, offset);
+        result = 31 * result + Arrays.hashCode(before);
+        result = 31 * result + Arrays.hashCode(record);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "InsertRecordLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", bitmapOffset=" + bitmapOffset +
+               ", entryNum=" + entryNum +
+               ", offset=" + offset +
+               ", before=" + Arrays.toString(before) +
+               ", record=" + Arrays.toString(record) +
+               ", prevLSN=" + prevLSN +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
@@ -0,0 +1,131 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Write to a page that was allocated by the same transaction (since its latest savepoint).
+ * Rolling back the transaction frees the page, so the write is never undone, and only
+ * the bytes after the write are logged.
+ */
+public class PageImageLogRecord extends LogRecord {
+    private long transNum; // transaction that wrote the page
+    private long pageNum; // page that was written
+    private long prevLSN; // previous log's LSN
+    public short offset; // position of first written byte
+    public byte[] after; // new bytes (after write)
+
+    /**
+     * @param transNum transaction number of transaction that wrote the page
+     * @param pageNum the page that was written
+     * @param prevLSN previous log's LSN
+     * @param offset position of first written byte
+     * @param after new bytes (after write)
+     */
+    public PageImageLogRecord(long transNum, long pageNum, long prevLSN, short offset, byte[] after) {
+        super(LogType.PAGE_IMAGE);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.offset = offset;
+        this.after = after;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public boolean isRedoable() { return true; }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Page page = bm.fetchPage(new DummyLockContext("_dummyPageImageRecord"), pageNum);
+        try {
+            page.getUnloggedBuffer().position(offset).put(after);
+            page.setPageLSN(getLSN());
+        } finally {
+            page.unpin();
+        }
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[29 + after.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putShort(offset)
+        .putShort((short) after.length)
+        .put(after);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        short offset = buf.getShort();
+        byte[] after = new byte[buf.getShort()];
+        buf.get(after);
+        return Optional.of(new PageImageLogRecord(transNum, pageNum, prevLSN, offset, after));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        PageImageLogRecord that = (PageImageLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               offset == that.offset &&
+               prevLSN == that.prevLSN &&
+               Arrays.equals(after, that.after);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(super.hashCode(), transNum, pageNum, offset, prevLSN);
+        result = 31 * result + Arrays.hashCode(after);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PageImageLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", offset=" + offset +
+               ", after=" + Arrays.toString(after) +
+               ", prevLSN=" + prevLSN +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
@@ -0,0 +1,97 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the records of a CSV file, parsed according to a schema. Values
+ * are separated by commas (with no quoting), in the order of the columns of the
+ * schema, and blank lines are skipped. If the first line names the columns of the
+ * schema (either just the names, or the names followed by their types, as in the
+ * files in src/main/resources) it is skipped as well.
+ */
+public class CSVRecordIterator implements Iterator<Record>, Closeable {
+    private final BufferedReader reader;
+    private final Schema schema;
+    // the next record, or null if not read yet
+    private Record next = null;
+    // number of lines read so far
+    private int lineNum = 0;
+
+    public CSVRecordIterator(File file, Schema schema) throws IOException {
+        this(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)), schema);
+    }
+
+    public CSVRecordIterator(BufferedReader reader, Schema schema) {
+        this.reader = reader;
+        this.schema = schema;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        String line;
+        do {
+            line = readLine();
+            if (line == null) return false;
+        } while (line.trim().isEmpty() || (lineNum == 1 && isHeader(line)));
+
+        String[] values = line.split(",", -1);
+        if (values.length != schema.size()) {
+            throw new DatabaseException("line " + lineNum + " has " + values.length +
+                                        " values, expected " + schema.size());
+        }
+        List<DataBox> parsed = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            try {
+                parsed.add(DataBox.fromString(schema.getFieldType(i), values[i]));
+            } catch (NumberFormatException e) {
+                throw new DatabaseException("line " + lineNum + ": bad value for column " +
+                                            schema.getFieldName(i) + ": " + values[i]);
+            }
+        }
+        next = new Record(parsed);
+        return true;
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Record record = next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String readLine() {
+        try {
+            String line = reader.readLine();
+            if (line != null) ++lineNum;
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Whether `line` names the columns of the schema, in order.
+    private boolean isHeader(String line) {
+        String[] names = line.split(",", -1);
+        if (names.length != schema.size()) return false;
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim().split(" ", 2)[0];
+            if (!name.equalsIgnoreCase(schema.getFieldName(i))) return false;
+        }
+        return true;
+    }
+}
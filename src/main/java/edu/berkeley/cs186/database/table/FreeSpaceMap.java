@@ -0,0 +1,145 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.*;
+
+/**
+ * In-memory index of the free space of the data pages of a page directory, so that
+ * a page with enough room for a record is found without reading every header page.
+ *
+ * Data pages are identified by their entry: the index of their header page times the
+ * number of entries per header page, plus their slot in the header page. Entries are
+ * bucketed by free space class, each class covering an equal range of free space, and
+ * a request is served from the lowest class whose pages all have enough room (which
+ * packs records onto the fullest pages that fit them, like the first-fit scan of the
+ * header pages did for a table filled in order). Only when all those classes are
+ * empty is the class of the request itself searched. Each class keeps its pages
+ * ordered by free space, so that this search skips straight past the pages with too
+ * little room (e.g. the full pages of a table of fixed size records, which all land
+ * in the same class) instead of checking them one by one.
+ *
+ * The map is built from the header pages when a page directory is first loaded with
+ * it, and can be shared by the page directories later loaded for the same heap file
+ * (the database keeps one per table). It is only a hint: the header page entry that it
+ * points to is checked, and the map corrected if it was out of date (for instance,
+ * because a transaction that changed the free space of a page was rolled back).
+ */
+public class FreeSpaceMap {
+    // number of free space classes
+    static final int NUM_CLASSES = 32;
+
+    // largest amount of free space on a data page
+    private final int maxFreeSpace;
+
+    // free space class -> free space -> entries of data pages in the class with that
+    // much free space, in the order they were added
+    private final List<TreeMap<Integer, LinkedHashSet<Integer>>> classes = new ArrayList<>();
+
+    // entry -> free space of the data page
+    private final Map<Integer, Integer> freeSpace = new HashMap<>();
+
+    // entries of header page slots without a data page
+    private final TreeSet<Integer> unused = new TreeSet<>();
+
+    // whether the map was built from the header pages yet
+    private volatile boolean loaded = false;
+
+    public FreeSpaceMap() {
+        this(PageDirectory.EFFECTIVE_PAGE_SIZE);
+    }
+
+    FreeSpaceMap(int maxFreeSpace) {
+        this.maxFreeSpace = maxFreeSpace;
+        for (int i = 0; i < NUM_CLASSES; ++i) {
+            classes.add(new TreeMap<>());
+        }
+    }
+
+    private int classOf(int space) {
+        return (int) ((long) Math.min(Math.max(space, 0), maxFreeSpace) * NUM_CLASSES / (maxFreeSpace + 1));
+    }
+
+    private void addToClass(int entry, int space) {
+        classes.get(classOf(space)).computeIfAbsent(space, s -> new LinkedHashSet<>()).add(entry);
+    }
+
+    private void removeFromClass(int entry, int space) {
+        TreeMap<Integer, LinkedHashSet<Integer>> c = classes.get(classOf(space));
+        LinkedHashSet<Integer> entries = c.get(space);
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            c.remove(space);
+        }
+    }
+
+    /**
+     * Records that the data page of `entry` has `space` bytes free.
+     */
+    synchronized void update(int entry, int space) {
+        Integer old = freeSpace.put(entry, space);
+        if (old != null) {
+            removeFromClass(entry, old);
+        }
+        addToClass(entry, space);
+        unused.remove(entry);
+    }
+
+    /**
+     * Records that `entry` has no data page.
+     */
+    synchronized void remove(int entry) {
+        Integer old = freeSpace.remove(entry);
+        if (old != null) {
+            removeFromClass(entry, old);
+        }
+        unused.add(entry);
+    }
+
+    /**
+     * Forgets `entry`, whose header page no longer exists.
+     */
+    synchronized void discard(int entry) {
+        Integer old = freeSpace.remove(entry);
+        if (old != null) {
+            removeFromClass(entry, old);
+        }
+        unused.remove(entry);
+    }
+
+    /**
+     * @return an entry whose data page has at least `space` bytes free, or -1 if there
+     * is none
+     */
+    synchronized int find(int space) {
+        int c = classOf(space);
+        for (int i = c + 1; i < NUM_CLASSES; ++i) {
+            Map.Entry<Integer, LinkedHashSet<Integer>> fullest = classes.get(i).firstEntry();
+            if (fullest != null) {
+                return fullest.getValue().iterator().next();
+            }
+        }
+        Map.Entry<Integer, LinkedHashSet<Integer>> fits = classes.get(c).ceilingEntry(space);
+        return fits == null ? -1 : fits.getValue().iterator().next();
+    }
+
+    /**
+     * @return the lowest entry without a data page, or -1 if every entry has one
+     */
+    synchronized int findUnused() {
+        return unused.isEmpty() ? -1 : unused.first();
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void setLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * @return number of entries with a data page
+     */
+    synchronized int size() {
+        return freeSpace.size();
+    }
+}
@@ -14,8 +14,10 @@ import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * An implementation of a heap file, using a page directory. Assumes data pages are packed (but record
@@ -38,6 +40,9 @@ import java.util.Random;
  *
  * The page directory id is a randomly generated 32-bit integer used to help detect bugs (where we attempt
  * to write to a page that is not managed by the page directory).
+ *
+ * The free space of the data pages is also kept in memory in a FreeSpaceMap, so that finding a page with
+ * enough space does not take a scan of every header page.
  */
 public class PageDirectory implements BacktrackingIterable<Page> {
     // size of the header in header pages
@@ -64,6 +69,15 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // First header page
     private HeaderPage firstHeader;
 
+    // All header pages, in order
+    private final List<HeaderPage> headers = new CopyOnWriteArrayList<>();
+
+    // Free space of the data pages, by header page entry
+    private final FreeSpaceMap freeSpaceMap;
+
+    // whether header pages add their entries to the free space map when loaded
+    private final boolean loadFreeSpaceMap;
+
     // Size of metadata of an empty data page.
     private short emptyPageMetadataSize;
 
@@ -73,6 +87,9 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // page directory id
     private int pageDirectoryId;
 
+    // whether data pages are kept allocated when all their space is freed
+    private boolean retainEmptyPages = false;
+
     /**
      * Creates a new heap file, or loads existing file if one already
      * exists at partNum.
@@ -85,11 +102,26 @@ public class PageDirectory implements BacktrackingIterable<Page> {
      */
     public PageDirectory(BufferManager bufferManager, int partNum, long pageNum,
                          short emptyPageMetadataSize, LockContext lockContext) {
+        this(bufferManager, partNum, pageNum, emptyPageMetadataSize, lockContext, new FreeSpaceMap());
+    }
+
+    /**
+     * Creates a new heap file, or loads existing file if one already exists at partNum,
+     * using (and, the first time, building) the given free space map of the heap file.
+     */
+    public PageDirectory(BufferManager bufferManager, int partNum, long pageNum,
+                         short emptyPageMetadataSize, LockContext lockContext, FreeSpaceMap freeSpaceMap) {
         this.bufferManager = bufferManager;
         this.partNum = partNum;
         this.emptyPageMetadataSize = emptyPageMetadataSize;
         this.lockContext = lockContext;
+        this.freeSpaceMap = freeSpaceMap;
+        this.loadFreeSpaceMap = !freeSpaceMap.isLoaded();
         this.firstHeader = new HeaderPage(pageNum, 0, true);
+        freeSpaceMap.setLoaded();
+        // page locks are escalated based on the number of data pages, kept up
+        // to date as pages are allocated and freed
+        lockContext.setCapacity(getNumDataPages());
     }
 
     public short getEffectivePageSize() {
@@ -100,6 +132,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         this.emptyPageMetadataSize = emptyPageMetadataSize;
     }
 
+    /**
+     * Keeps data pages allocated when all their space is freed, instead of freeing
+     * them. Used when snapshot readers may still read records deleted from a page.
+     */
+    public void setRetainEmptyPages(boolean retainEmptyPages) {
+        this.retainEmptyPages = retainEmptyPages;
+    }
+
     public Page getPage(long pageNum) {
         return new DataPage(pageDirectoryId, this.bufferManager.fetchPage(lockContext, pageNum));
     }
@@ -112,12 +152,23 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             throw new IllegalArgumentException("requesting page with more space than the size of the page");
         }
 
-        Page page = this.firstHeader.loadPageWithSpace(requiredSpace);
-        LockContext pageContext = lockContext.childContext(page.getPageNum());
-        // TODO(proj4_part2): Update the following line
-        LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
-
-        return new DataPage(pageDirectoryId, page);
+        while (true) {
+            long pageNum = reservePageWithSpace(requiredSpace);
+            LockContext pageContext = lockContext.childContext(pageNum);
+            // the page is not pinned while waiting for the lock: the transaction holding
+            // the lock may need the page to roll back if it is aborted to break a deadlock
+            LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
+            Page page;
+            try {
+                page = bufferManager.fetchPage(lockContext, pageNum);
+            } catch (PageException e) {
+                // the page was freed after we reserved space on it: either it was allocated
+                // by the transaction we waited for and that transaction rolled back, or it
+                // was emptied by a delete
+                continue;
+            }
+            return new DataPage(pageDirectoryId, page);
+        }
     }
 
     public void updateFreeSpace(Page page, short newFreeSpace) {
@@ -137,13 +188,60 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             page.unpin();
         }
 
-        HeaderPage headerPage = firstHeader;
-        for (int i = 0; i < headerIndex; ++i) {
-            headerPage = headerPage.nextPage;
+        headers.get(headerIndex).updateSpace(page, offset, newFreeSpace);
+    }
+
+    // Reserves the required free space on a data page, and returns the page number.
+    // The free space map suggests a page, or an unused header page slot to allocate
+    // a new data page in, and only that header page is pinned (and so latched) to
+    // check the suggestion. No header page is pinned while fetching a data page:
+    // writers pin their data page before its header page to update the free space,
+    // so holding a header page while waiting for a data page could deadlock.
+    private long reservePageWithSpace(short requiredSpace) {
+        while (true) {
+            int entry = freeSpaceMap.find(requiredSpace);
+            if (entry == -1) {
+                entry = freeSpaceMap.findUnused();
+            }
+            if (entry == -1) {
+                addNewHeaderPage();
+                continue;
+            }
+            if (entry / HEADER_ENTRY_COUNT >= headers.size() && !loadNewHeaderPages(entry / HEADER_ENTRY_COUNT)) {
+                // the header page was added by a transaction that was rolled back
+                freeSpaceMap.discard(entry);
+                continue;
+            }
+            HeaderPage headerPage = headers.get(entry / HEADER_ENTRY_COUNT);
+            long pageNum = headerPage.reserveSpace((short) (entry % HEADER_ENTRY_COUNT), requiredSpace);
+            if (pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+                return pageNum;
+            }
+        }
+    }
+
+    // adds a new header page, unless another thread added one with unused slots already
+    private synchronized void addNewHeaderPage() {
+        if (freeSpaceMap.findUnused() == -1) {
+            headers.get(headers.size() - 1).addNewHeaderPage();
         }
-        headerPage.updateSpace(page, offset, newFreeSpace);
     }
 
+    // Loads the header pages added since this page directory was loaded (by another
+    // page directory sharing the free space map), and returns whether there are now
+    // more than `headerIndex` header pages.
+    private synchronized boolean loadNewHeaderPages(int headerIndex) {
+        if (headerIndex >= headers.size()) {
+            headers.get(headers.size() - 1).loadNextPage();
+        }
+        return headerIndex < headers.size();
+    }
+
+    /**
+     * Iterates over all data pages in the directory. This is a sequential scan, so the
+     * data pages after the current one are read ahead if the buffer manager has
+     * read-ahead enabled.
+     */
     @Override
     public BacktrackingIterator<Page> iterator() {
         return new ConcatBacktrackingIterator<>(new HeaderPageIterator());
@@ -163,6 +261,11 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         return partNum;
     }
 
+    // the free space map entry of slot `index` of header page `headerOffset`
+    private static int entry(int headerOffset, int index) {
+        return headerOffset * HEADER_ENTRY_COUNT + index;
+    }
+
     /**
      * Wrapper around page object to skip the header and verify that it belongs to this
      * page directory.
@@ -183,6 +286,11 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             return super.getBuffer().position(DATA_HEADER_SIZE).slice();
         }
 
+        @Override
+        protected int getDataOffset() {
+            return DATA_HEADER_SIZE;
+        }
+
         // get the full buffer (without skipping header) for internal use
         private Buffer getFullBuffer() {
             return super.getBuffer();
@@ -235,12 +343,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
      * Represents a single header page.
      */
     private class HeaderPage implements BacktrackingIterable<Page> {
-        private HeaderPage nextPage;
+        // written while this header page is pinned, but read without pinning it
+        private volatile HeaderPage nextPage;
         private Page page;
-        private short numDataPages;
+        private volatile short numDataPages;
         private int headerOffset;
 
         private HeaderPage(long pageNum, int headerOffset, boolean firstHeader) {
+            headers.add(this);
             this.page = bufferManager.fetchPage(lockContext, pageNum);
             // We do not lock header pages for the entirety of the transaction. Instead, we simply
             // use the buffer frame lock (from pinning) to ensure that one transaction writes at a time.
@@ -263,6 +373,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     DataPageEntry invalidPageEntry = new DataPageEntry();
                     for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
                         invalidPageEntry.toBytes(b);
+                        freeSpaceMap.remove(entry(headerOffset, i));
                     }
                     nextPageNum = -1L;
 
@@ -279,6 +390,11 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                         DataPageEntry dpe = DataPageEntry.fromBytes(pageBuffer);
                         if (dpe.isValid()) {
                             ++this.numDataPages;
+                            if (loadFreeSpaceMap) {
+                                freeSpaceMap.update(entry(headerOffset, i), dpe.freeSpace);
+                            }
+                        } else if (loadFreeSpaceMap) {
+                            freeSpaceMap.remove(entry(headerOffset, i));
                         }
                     }
                 }
@@ -293,71 +409,89 @@ public class PageDirectory implements BacktrackingIterable<Page> {
             }
         }
 
-        // add a new header page
+        // loads the header pages after this one, if any were added since it was loaded
+        private void loadNextPage() {
+            if (this.nextPage != null) {
+                this.nextPage.loadNextPage();
+                return;
+            }
+            long nextPageNum;
+            this.page.pin();
+            try {
+                nextPageNum = this.page.getBuffer().position(5).getLong();
+            } finally {
+                this.page.unpin();
+            }
+            if (nextPageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+                this.nextPage = new HeaderPage(nextPageNum, headerOffset + 1, false);
+            }
+        }
+
+        // add a new header page, or load the one added by another page directory of the
+        // heap file since this one was loaded
         private void addNewHeaderPage() {
             if (this.nextPage != null) {
                 this.nextPage.addNewHeaderPage();
                 return;
             }
-            Page page = bufferManager.fetchNewPage(lockContext, partNum);
             this.page.pin();
             try {
-                this.nextPage = new HeaderPage(page.getPageNum(), headerOffset + 1, false);
-                this.page.getBuffer().position(1).putLong(page.getPageNum());
+                long nextPageNum = this.page.getBuffer().position(5).getLong();
+                if (nextPageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+                    this.nextPage = new HeaderPage(nextPageNum, headerOffset + 1, false);
+                    return;
+                }
+                Page page = bufferManager.fetchNewPage(lockContext, partNum);
+                try {
+                    this.nextPage = new HeaderPage(page.getPageNum(), headerOffset + 1, false);
+                    this.page.getBuffer().position(5).putLong(page.getPageNum());
+                } finally {
+                    page.unpin();
+                }
             } finally {
                 this.page.unpin();
-                page.unpin();
             }
         }
 
-        // gets and loads a page with the required free space
-        private Page loadPageWithSpace(short requiredSpace) {
+        // Reserves the required free space on the data page in slot `index`, allocating
+        // the data page if the slot is unused, and returns the page number. Returns
+        // INVALID_PAGE_NUM (and corrects the free space map) if the page does not have
+        // enough space.
+        private long reserveSpace(short index, short requiredSpace) {
             this.page.pin();
             try {
                 Buffer b = this.page.getBuffer();
-                b.position(HEADER_HEADER_SIZE);
-
-                // if we have any data page managed by this header page with enough space, return it
-                short unusedSlot = -1;
-                for (short i = 0; i < HEADER_ENTRY_COUNT; ++i) {
-                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    if (!dpe.isValid()) {
-                        if (unusedSlot == -1) {
-                            unusedSlot = i;
-                        }
-                        continue;
-                    }
-                    if (dpe.freeSpace >= requiredSpace) {
-                        dpe.freeSpace -= requiredSpace;
-                        b.position(b.position() - DataPageEntry.SIZE);
-                        dpe.toBytes(b);
-
-                        return bufferManager.fetchPage(lockContext, dpe.pageNum);
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
+                DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
+
+                if (dpe.isValid()) {
+                    if (dpe.freeSpace < requiredSpace) {
+                        freeSpaceMap.update(entry(headerOffset, index), dpe.freeSpace);
+                        return DiskSpaceManager.INVALID_PAGE_NUM;
                     }
+                    dpe.freeSpace -= requiredSpace;
+                    dpe.toBytes(b);
+                    freeSpaceMap.update(entry(headerOffset, index), dpe.freeSpace);
+                    return dpe.pageNum;
                 }
 
-                // if we have any unused slot in this header page, allocate a new data page
-                if (unusedSlot != -1) {
-                    Page page = bufferManager.fetchNewPage(lockContext, partNum);
-                    DataPageEntry dpe = new DataPageEntry(page.getPageNum(),
-                                                          (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
-
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
+                // the slot is unused, allocate a new data page
+                Page page = bufferManager.fetchNewPage(lockContext, partNum);
+                try {
+                    dpe = new DataPageEntry(page.getPageNum(),
+                                            (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
                     dpe.toBytes(b);
 
-                    page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
+                    page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(index);
 
                     ++this.numDataPages;
-                    return page;
-                }
-
-                // if we have no next header page, make one
-                if (this.nextPage == null) {
-                    this.addNewHeaderPage();
+                    lockContext.adjustCapacity(1);
+                    freeSpaceMap.update(entry(headerOffset, index), dpe.freeSpace);
+                    return page.getPageNum();
+                } finally {
+                    page.unpin();
                 }
-
-                // no space on this header page, try next one
-                return this.nextPage.loadPageWithSpace(requiredSpace);
             } finally {
                 this.page.unpin();
             }
@@ -367,7 +501,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         private void updateSpace(Page dataPage, short index, short newFreeSpace) {
             this.page.pin();
             try {
-                if (newFreeSpace < EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize) {
+                if (newFreeSpace < EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize || retainEmptyPages) {
                     // write new free space to disk
                     Buffer b = this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
@@ -375,12 +509,16 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     dpe.freeSpace = newFreeSpace;
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     dpe.toBytes(b);
+                    freeSpaceMap.update(entry(headerOffset, index), newFreeSpace);
                 } else {
                     // the entire page is free; free it
                     Buffer b = this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     (new DataPageEntry()).toBytes(b);
                     bufferManager.freePage(dataPage);
+                    --this.numDataPages;
+                    lockContext.adjustCapacity(-1);
+                    freeSpaceMap.remove(entry(headerOffset, index));
                 }
             } finally {
                 this.page.unpin();
@@ -423,11 +561,25 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    readAhead(b, index);
                     return new DataPage(pageDirectoryId, bufferManager.fetchPage(lockContext, dpe.pageNum));
                 } finally {
                     HeaderPage.this.page.unpin();
                 }
             }
+
+            // asks the buffer manager to read ahead the data pages after the one at index,
+            // with b positioned at the entry after index
+            private void readAhead(Buffer b, int index) {
+                int numPages = bufferManager.getReadAhead();
+                for (int i = index + 1; i < HEADER_ENTRY_COUNT && numPages > 0; ++i) {
+                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    if (dpe.isValid()) {
+                        bufferManager.prefetch(dpe.pageNum);
+                        --numPages;
+                    }
+                }
+            }
         }
     }
 
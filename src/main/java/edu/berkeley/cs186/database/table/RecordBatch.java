@@ -0,0 +1,312 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A batch of records stored a column at a time, for operators that process
+ * records a batch at a time (see QueryOperator#batchIterator). The values of
+ * INT and BOOL columns are kept in int arrays (BOOLs as 0 or 1), the values of
+ * LONG columns in long arrays, and the values of FLOAT columns in float arrays,
+ * so that operators can run tight loops over a column without creating or
+ * unboxing a DataBox per value. Values of other types are kept as DataBoxes.
+ *
+ * Rows are filtered out of a batch without moving the rows that are left: the
+ * selection vector holds the positions of the selected rows, in order. Until a
+ * selection is set, every row of the batch is selected. Operators should only
+ * look at the selected rows, e.g.
+ *
+ *   int[] selection = batch.getSelection();
+ *   int[] values = batch.getInts(col);
+ *   for (int i = 0; i < batch.numSelected(); i++) {
+ *       int row = selection == null ? i : selection[i];
+ *       ... values[row] ...
+ *   }
+ *
+ * Batches are not modified once passed to the next operator, other than to set
+ * their selection, so the column arrays of a batch may be shared with other
+ * batches (see project).
+ */
+public class RecordBatch {
+    // The default number of records in a batch.
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // The schema of the records of the batch.
+    private Schema schema;
+
+    // The type of each column.
+    private TypeId[] types;
+
+    // The maximum number of rows of the batch.
+    private int capacity;
+
+    // The number of rows of the batch.
+    private int size;
+
+    // The column arrays: each column has an array in the one of these that
+    // matches its type, and null in the others.
+    private int[][] ints;
+    private long[][] longs;
+    private float[][] floats;
+    private DataBox[][] values;
+
+    // The positions of the selected rows, or null if all rows are selected.
+    private int[] selection;
+    private int numSelected;
+
+    /**
+     * Creates an empty batch of records of schema, with room for capacity rows.
+     */
+    public RecordBatch(Schema schema, int capacity) {
+        this(schema, capacity, schema.size());
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+                case BOOL:
+                case INT:
+                    ints[i] = new int[capacity];
+                    break;
+                case LONG:
+                    longs[i] = new long[capacity];
+                    break;
+                case FLOAT:
+                    floats[i] = new float[capacity];
+                    break;
+                default:
+                    values[i] = new DataBox[capacity];
+            }
+        }
+    }
+
+    private RecordBatch(Schema schema, int capacity, int numColumns) {
+        this.schema = schema;
+        this.capacity = capacity;
+        this.types = new TypeId[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            this.types[i] = schema.getFieldType(i).getTypeId();
+        }
+        this.ints = new int[numColumns][];
+        this.longs = new long[numColumns][];
+        this.floats = new float[numColumns][];
+        this.values = new DataBox[numColumns][];
+    }
+
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return the maximum number of rows of this batch
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return the number of rows of this batch, selected or not
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isFull() {
+        return this.size == this.capacity;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int numSelected() {
+        return this.selection == null ? this.size : this.numSelected;
+    }
+
+    /**
+     * @return the positions of the selected rows, in order, or null if every
+     * row is selected. Only the first numSelected() positions are used.
+     */
+    public int[] getSelection() {
+        return this.selection;
+    }
+
+    /**
+     * Selects the rows at the first numSelected positions of selection, which
+     * should be a subset of the rows selected so far, in order.
+     */
+    public void setSelection(int[] selection, int numSelected) {
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    /**
+     * @return the position of the i-th selected row
+     */
+    public int getSelected(int i) {
+        return this.selection == null ? i : this.selection[i];
+    }
+
+    /**
+     * @return the values of an INT or BOOL column
+     */
+    public int[] getInts(int column) {
+        return this.ints[column];
+    }
+
+    /**
+     * @return the values of a LONG column
+     */
+    public long[] getLongs(int column) {
+        return this.longs[column];
+    }
+
+    /**
+     * @return the values of a FLOAT column
+     */
+    public float[] getFloats(int column) {
+        return this.floats[column];
+    }
+
+    /**
+     * @return the values of a column that isn't an INT, BOOL, LONG or FLOAT
+     * column
+     */
+    public DataBox[] getValues(int column) {
+        return this.values[column];
+    }
+
+    /**
+     * @return the value of column in row
+     */
+    public DataBox getValue(int row, int column) {
+        switch (this.types[column]) {
+            case BOOL: return new BoolDataBox(this.ints[column][row] != 0);
+            case INT: return new IntDataBox(this.ints[column][row]);
+            case LONG: return new LongDataBox(this.longs[column][row]);
+            case FLOAT: return new FloatDataBox(this.floats[column][row]);
+            default: return this.values[column][row];
+        }
+    }
+
+    /**
+     * @return the record in row
+     */
+    public Record getRecord(int row) {
+        List<DataBox> values = new ArrayList<>(this.types.length);
+        for (int i = 0; i < this.types.length; i++) {
+            values.add(this.getValue(row, i));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Appends a record to this batch. The record must match the schema of the
+     * batch, and the batch must neither be full nor have a selection set.
+     */
+    public void add(Record record) {
+        int row = this.size++;
+        for (int i = 0; i < this.types.length; i++) {
+            DataBox value = record.getValue(i);
+            switch (this.types[i]) {
+                case BOOL: this.ints[i][row] = value.getBool() ? 1 : 0; break;
+                case INT: this.ints[i][row] = value.getInt(); break;
+                case LONG: this.longs[i][row] = value.getLong(); break;
+                case FLOAT: this.floats[i][row] = value.getFloat(); break;
+                default: this.values[i][row] = value;
+            }
+        }
+    }
+
+    /**
+     * Appends a record serialized in buf (see Record#toBytes) to this batch,
+     * without creating a DataBox for its INT, BOOL, LONG or FLOAT values. The
+     * batch must neither be full nor have a selection set.
+     */
+    public void add(Buffer buf) {
+        int row = this.size++;
+        for (int i = 0; i < this.types.length; i++) {
+            switch (this.types[i]) {
+                case BOOL: this.ints[i][row] = buf.get() == 1 ? 1 : 0; break;
+                case INT: this.ints[i][row] = buf.getInt(); break;
+                case LONG: this.longs[i][row] = buf.getLong(); break;
+                case FLOAT: this.floats[i][row] = buf.getFloat(); break;
+                default: this.values[i][row] = DataBox.fromBytes(buf, this.schema.getFieldType(i));
+            }
+        }
+    }
+
+    /**
+     * Returns a batch of the same rows as this one, with the given columns of
+     * this batch. The column arrays are shared, not copied.
+     *
+     * @param columns the columns of this batch to keep, in the order of schema
+     * @param schema the schema of the projected records
+     */
+    public RecordBatch project(int[] columns, Schema schema) {
+        RecordBatch batch = new RecordBatch(schema, this.capacity, columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            batch.ints[i] = this.ints[columns[i]];
+            batch.longs[i] = this.longs[columns[i]];
+            batch.floats[i] = this.floats[columns[i]];
+            batch.values[i] = this.values[columns[i]];
+        }
+        batch.size = this.size;
+        batch.selection = this.selection;
+        batch.numSelected = this.numSelected;
+        return batch;
+    }
+
+    /**
+     * @param records an iterator of records
+     * @param schema the schema of the records yielded from `records`
+     * @param capacity the maximum number of records per batch
+     * @return an iterator over the records of `records`, a batch at a time
+     */
+    public static Iterator<RecordBatch> toBatches(Iterator<Record> records, Schema schema, int capacity) {
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                RecordBatch batch = new RecordBatch(schema, capacity);
+                while (!batch.isFull() && records.hasNext()) {
+                    batch.add(records.next());
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * @param batches an iterator of batches
+     * @return an iterator over the selected records of the batches
+     */
+    public static Iterator<Record> toRecords(Iterator<RecordBatch> batches) {
+        return new Iterator<Record>() {
+            private RecordBatch batch;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (this.batch == null || this.next == this.batch.numSelected()) {
+                    if (!batches.hasNext()) return false;
+                    this.batch = batches.next();
+                    this.next = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Record next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                return this.batch.getRecord(this.batch.getSelected(this.next++));
+            }
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
@@ -14,9 +15,8 @@ import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * # Overview
@@ -89,6 +89,20 @@ import java.util.Map;
  * only supports locking at the page level, so in cases where tuple-level locks are
  * necessary even at the cost of an I/O per tuple, a full page record may be desirable),
  * and may be explicitly toggled on with the setFullPageRecords method.
+ *
+ * # Snapshot Reads
+ * A table given a VersionStore saves the previous version of every record it
+ * changes there, and transactions with a snapshot (see TransactionContext#getSnapshot)
+ * read the records as of their snapshot, without locking. Data pages of such a table
+ * are not freed when emptied, since snapshots may still read the records deleted
+ * from them.
+ *
+ * # Concurrency
+ * Record operations may be called from several threads at once. There is no
+ * table-wide latch: each operation reads and modifies a data page while holding it
+ * pinned, and a pinned page is latched by its buffer frame, so operations on
+ * different pages run in parallel. Isolation between transactions is still provided
+ * by the page locks.
  */
 public class Table implements BacktrackingIterable<Record> {
     // The name of the table.
@@ -112,6 +126,9 @@ public class Table implements BacktrackingIterable<Record> {
     // Statistics about the contents of the database.
     Map<String, TableStats> stats;
 
+    // Previous versions of records for snapshot reads, or null if not kept.
+    private VersionStore versions;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Load a table named `name` with schema `schema` from `pageDirectory`. `lockContext`
@@ -119,6 +136,15 @@ public class Table implements BacktrackingIterable<Record> {
      * new table will be created if none exists in the pageDirectory.
      */
     public Table(String name, Schema schema, PageDirectory pageDirectory, LockContext lockContext, Map<String, TableStats> stats) {
+        this(name, schema, pageDirectory, lockContext, stats, null);
+    }
+
+    /**
+     * Same as above, but saves the previous versions of changed records in
+     * `versions`, for transactions reading a snapshot.
+     */
+    public Table(String name, Schema schema, PageDirectory pageDirectory, LockContext lockContext,
+                 Map<String, TableStats> stats, VersionStore versions) {
         this.name = name;
         this.pageDirectory = pageDirectory;
         this.schema = schema;
@@ -131,6 +157,8 @@ public class Table implements BacktrackingIterable<Record> {
                                                * schema.getSizeInBytes()));
         this.stats = stats;
         if (!this.stats.containsKey(name)) this.stats.put(name, new TableStats(this.schema, this.numRecordsPerPage));
+        this.versions = versions;
+        if (versions != null) this.pageDirectory.setRetainEmptyPages(true);
     }
 
     public Table(String name, Schema schema, PageDirectory pageDirectory, LockContext lockContext) {
@@ -178,13 +206,6 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
-    private void writeBitMap(Page page, byte[] bitmap) {
-        if (bitmapSizeInBytes > 0) {
-            assert bitmap.length == bitmapSizeInBytes;
-            page.getBuffer().put(bitmap, 0, bitmapSizeInBytes);
-        }
-    }
-
     private static int computeBitmapSizeInBytes(int pageSize, Schema schema) {
         int recordsPerPage = computeNumRecordsPerPage(pageSize, schema);
         if (recordsPerPage == 1) return 0;
@@ -231,7 +252,7 @@ public class Table implements BacktrackingIterable<Record> {
         this.stats.get(name).refreshHistograms(buckets, this);
     }
 
-    private synchronized void insertRecord(Page page, int entryNum, Record record) {
+    private void insertRecord(Page page, int entryNum, Record record) {
         int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
         page.getBuffer().position(offset).put(record.toBytes(schema));
     }
@@ -244,59 +265,124 @@ public class Table implements BacktrackingIterable<Record> {
      * first free page has bitmap 0b11101000, then the record is inserted into
      * the page with index 3 and the bitmap is updated to 0b11111000.
      */
-    public synchronized RecordId addRecord(Record record) {
+    public RecordId addRecord(Record record) {
         record = schema.verify(record);
-        Page page = pageDirectory.getPageWithSpace(schema.getSizeInBytes());
-        try {
-            // Find the first empty slot in the bitmap.
-            // entry number of the first free slot and store it in entryNum; and (2) we
-            // count the total number of entries on this page.
-            byte[] bitmap = getBitMap(page);
-            int entryNum = 0;
-            for (; entryNum < numRecordsPerPage; ++entryNum) {
-                if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
-                    break;
+        while (true) {
+            Page page = pageDirectory.getPageWithSpace(schema.getSizeInBytes());
+            try {
+                // Find the first empty slot in the bitmap.
+                byte[] bitmap = getBitMap(page);
+                int entryNum = 0;
+                for (; entryNum < numRecordsPerPage; ++entryNum) {
+                    if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
+                        break;
+                    }
                 }
+                if (numRecordsPerPage == 1) {
+                    entryNum = 0;
+                }
+                if (entryNum == numRecordsPerPage) {
+                    // The free space of the page was reset by a delete after we reserved
+                    // space on it, and other inserts took the free slots; our reservation
+                    // still counts against the page, so we'll be given another one.
+                    continue;
+                }
+                RecordId rid = new RecordId(page.getPageNum(), (short) entryNum);
+                saveVersion(rid, null);
+
+                // Insert the record and update the bitmap.
+                if (bitmapSizeInBytes > 0) {
+                    // logged as one insert, not as two page writes
+                    page.insertRecord(entryNum, bitmapSizeInBytes + entryNum * schema.getSizeInBytes(),
+                                      record.toBytes(schema));
+                } else {
+                    insertRecord(page, entryNum, record);
+                }
+
+                // Update the metadata.
+                stats.get(name).addRecord(record);
+                return rid;
+            } finally {
+                page.unpin();
             }
-            if (numRecordsPerPage == 1) {
-                entryNum = 0;
-            }
-            assert (entryNum < numRecordsPerPage);
+        }
+    }
 
-            // Insert the record and update the bitmap.
-            insertRecord(page, entryNum, record);
-            Bits.setBit(bitmap, entryNum, Bits.Bit.ONE);
-            writeBitMap(page, bitmap);
+    /**
+     * Adds all of `records` to the table, calls `loaded` with each added record and
+     * its record id, in order, and returns the number of records added. Unlike
+     * addRecord, the table is locked X up front instead of each page, and records
+     * are only added to empty pages: each page is filled in memory and written at
+     * once, so that it is logged as a few large page writes rather than two small
+     * ones per record. The record count in stats is updated once at the end; the
+     * histograms are not refreshed.
+     */
+    public int bulkLoad(Iterator<Record> records, BiConsumer<Record, RecordId> loaded) {
+        // the whole table is written, so lock it once rather than every page
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.X);
 
-            // Update the metadata.
-            stats.get(name).addRecord(record);
-            return new RecordId(page.getPageNum(), (short) entryNum);
-        } finally {
-            page.unpin();
+        int numRecords = 0;
+        if (numRecordsPerPage == 1) {
+            // full page records; there is nothing to batch
+            while (records.hasNext()) {
+                Record record = schema.verify(records.next());
+                loaded.accept(record, addRecord(record));
+                ++numRecords;
+            }
+            return numRecords;
+        }
+
+        int recordSize = schema.getSizeInBytes();
+        short pageSpace = (short) (numRecordsPerPage * recordSize);
+        while (records.hasNext()) {
+            Page page = pageDirectory.getPageWithSpace(pageSpace);
+            try {
+                byte[] image = new byte[bitmapSizeInBytes + pageSpace];
+                int entryNum = 0;
+                for (; entryNum < numRecordsPerPage && records.hasNext(); ++entryNum) {
+                    Record record = schema.verify(records.next());
+                    RecordId rid = new RecordId(page.getPageNum(), (short) entryNum);
+                    saveVersion(rid, null);
+                    // the bitmap is at the start of the page
+                    Bits.setBit(image, entryNum, Bits.Bit.ONE);
+                    System.arraycopy(record.toBytes(schema), 0, image,
+                                     bitmapSizeInBytes + entryNum * recordSize, recordSize);
+                    loaded.accept(record, rid);
+                }
+                page.getBuffer().put(image, 0, image.length);
+                numRecords += entryNum;
+                if (entryNum < numRecordsPerPage) {
+                    pageDirectory.updateFreeSpace(page, (short) ((numRecordsPerPage - entryNum) * recordSize));
+                }
+            } finally {
+                page.unpin();
+            }
         }
+        stats.get(name).addRecords(numRecords);
+        return numRecords;
     }
 
     /**
      * Retrieves a record from the table, throwing an exception if no such record
-     * exists.
+     * exists. Transactions reading a snapshot get the record as of their snapshot.
      */
-    public synchronized Record getRecord(RecordId rid) {
+    public Record getRecord(RecordId rid) {
         validateRecordId(rid);
+        VersionStore.Snapshot snapshot = currentSnapshot();
         Page page = fetchPage(rid.getPageNum());
+        Record record;
         try {
-            byte[] bitmap = getBitMap(page);
-            if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
-                String msg = String.format("Record %s does not exist.", rid);
-                throw new DatabaseException(msg);
-            }
-
-            int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
-            Buffer buf = page.getBuffer();
-            buf.position(offset);
-            return Record.fromBytes(buf, schema);
+            record = readRecord(page, getBitMap(page), rid.getEntryNum());
         } finally {
             page.unpin();
         }
+        if (snapshot != null) {
+            record = versions.getVersion(snapshot, name, rid, record);
+        }
+        if (record == null) {
+            throw recordNotFound(rid);
+        }
+        return record;
     }
 
     /**
@@ -304,7 +390,7 @@ public class Table implements BacktrackingIterable<Record> {
      * record. stats is updated accordingly. An exception is thrown if rid does
      * not correspond to an existing record in the table.
      */
-    public synchronized Record updateRecord(RecordId rid, Record updated) {
+    public Record updateRecord(RecordId rid, Record updated) {
         validateRecordId(rid);
         // If we're updating a record we'll need exclusive access to the page
         // its on.
@@ -313,10 +399,13 @@ public class Table implements BacktrackingIterable<Record> {
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
 
         Record newRecord = schema.verify(updated);
-        Record oldRecord = getRecord(rid);
-
         Page page = fetchPage(rid.getPageNum());
         try {
+            Record oldRecord = readRecord(page, getBitMap(page), rid.getEntryNum());
+            if (oldRecord == null) {
+                throw recordNotFound(rid);
+            }
+            saveVersion(rid, oldRecord);
             insertRecord(page, rid.getEntryNum(), newRecord);
 
             this.stats.get(name).removeRecord(oldRecord);
@@ -332,7 +421,7 @@ public class Table implements BacktrackingIterable<Record> {
      * stats, freePageNums, and numRecords as necessary. An exception is thrown
      * if rid does not correspond to an existing record in the table.
      */
-    public synchronized Record deleteRecord(RecordId rid) {
+    public Record deleteRecord(RecordId rid) {
         validateRecordId(rid);
         LockContext pageContext = tableContext.childContext(rid.getPageNum());
 
@@ -341,11 +430,16 @@ public class Table implements BacktrackingIterable<Record> {
 
         Page page = fetchPage(rid.getPageNum());
         try {
-            Record record = getRecord(rid);
-
             byte[] bitmap = getBitMap(page);
-            Bits.setBit(bitmap, rid.getEntryNum(), Bits.Bit.ZERO);
-            writeBitMap(page, bitmap);
+            Record record = readRecord(page, bitmap, rid.getEntryNum());
+            if (record == null) {
+                throw recordNotFound(rid);
+            }
+            saveVersion(rid, record);
+
+            if (bitmapSizeInBytes > 0) {
+                page.deleteRecord(rid.getEntryNum());
+            }
 
             stats.get(name).removeRecord(record);
             int numRecords = numRecordsPerPage == 1 ? 0 : numRecordsOnPage(page);
@@ -371,6 +465,37 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    // the record in slot `entryNum` of a pinned page, or null if the slot is empty
+    private Record readRecord(Page page, byte[] bitmap, int entryNum) {
+        if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
+            return null;
+        }
+        int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
+        Buffer buf = page.getBuffer();
+        buf.position(offset);
+        return Record.fromBytes(buf, schema);
+    }
+
+    private static DatabaseException recordNotFound(RecordId rid) {
+        return new DatabaseException(String.format("Record %s does not exist.", rid));
+    }
+
+    // the snapshot the current transaction reads, or null if it reads the latest versions
+    private VersionStore.Snapshot currentSnapshot() {
+        if (versions == null) return null;
+        TransactionContext transaction = TransactionContext.getTransaction();
+        return transaction == null ? null : transaction.getSnapshot();
+    }
+
+    // saves the version of a record before the current transaction changes it
+    private void saveVersion(RecordId rid, Record before) {
+        if (versions == null) return;
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (transaction != null) {
+            versions.saveVersion(transaction.getTransNum(), name, rid, before);
+        }
+    }
+
     private int numRecordsOnPage(Page page) {
         byte[] bitmap = getBitMap(page);
         int numRecords = 0;
@@ -434,6 +559,19 @@ public class Table implements BacktrackingIterable<Record> {
         return new RecordIterator(ridIterator());
     }
 
+    /**
+     * @return an iterator over all the records in this table, in the same
+     * order as iterator(), a batch at a time. Each page is fetched once, and its
+     * records are decoded straight into the columns of a batch, rather than
+     * fetching the page again for every record. The records of a page are never
+     * split between batches, so batches hold up to max(batchSize, number of
+     * records per page) records.
+     */
+    public Iterator<RecordBatch> batchIterator(int batchSize) {
+        LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
+        return new BatchIterator(pageDirectory.iterator(), Math.max(batchSize, numRecordsPerPage));
+    }
+
     /**
      * RIDPageIterator is a BacktrackingIterator over the RecordIds of a single
      * page of the table.
@@ -449,6 +587,15 @@ public class Table implements BacktrackingIterable<Record> {
             super(numRecordsPerPage);
             this.page = page;
             this.bitmap = getBitMap(page);
+            VersionStore.Snapshot snapshot = currentSnapshot();
+            if (snapshot != null) {
+                // records changed since the snapshot was taken may have (dis)appeared
+                for (RecordId rid : versions.getVersionedRecordIds(name, page.getPageNum())) {
+                    Record current = readRecord(page, bitmap, rid.getEntryNum());
+                    Record record = versions.getVersion(snapshot, name, rid, current);
+                    Bits.setBit(bitmap, rid.getEntryNum(), record == null ? Bits.Bit.ZERO : Bits.Bit.ONE);
+                }
+            }
             page.unpin();
         }
 
@@ -520,6 +667,68 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Reads the pages of the table into batches of records, a page at a time.
+     */
+    private class BatchIterator implements Iterator<RecordBatch> {
+        private Iterator<Page> pages;
+        private int capacity;
+        private RecordBatch nextBatch;
+
+        private BatchIterator(Iterator<Page> pages, int capacity) {
+            this.pages = pages;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.nextBatch != null) return true;
+            RecordBatch batch = new RecordBatch(schema, this.capacity);
+            while (batch.capacity() - batch.size() >= numRecordsPerPage && this.pages.hasNext()) {
+                this.readPage(this.pages.next(), batch);
+            }
+            if (batch.size() > 0) this.nextBatch = batch;
+            return this.nextBatch != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            RecordBatch batch = this.nextBatch;
+            this.nextBatch = null;
+            return batch;
+        }
+
+        // appends the records of a pinned page to batch, and unpins it
+        private void readPage(Page page, RecordBatch batch) {
+            try {
+                byte[] bitmap = getBitMap(page);
+                // records changed since the snapshot was taken are read from
+                // their versions, like in RIDPageIterator and getRecord
+                Map<Integer, Record> versioned = new HashMap<>();
+                VersionStore.Snapshot snapshot = currentSnapshot();
+                if (snapshot != null) {
+                    for (RecordId rid : versions.getVersionedRecordIds(name, page.getPageNum())) {
+                        Record current = readRecord(page, bitmap, rid.getEntryNum());
+                        versioned.put((int) rid.getEntryNum(), versions.getVersion(snapshot, name, rid, current));
+                    }
+                }
+                Buffer buf = page.getBuffer();
+                for (int i = 0; i < numRecordsPerPage; ++i) {
+                    if (versioned.containsKey(i)) {
+                        Record record = versioned.get(i);
+                        if (record != null) batch.add(record);
+                    } else if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
+                        buf.position(bitmapSizeInBytes + (i * schema.getSizeInBytes()));
+                        batch.add(buf);
+                    }
+                }
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
     /**
      * Wraps an iterator of record ids to form an iterator over records.
      */
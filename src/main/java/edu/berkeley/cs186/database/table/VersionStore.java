@@ -0,0 +1,256 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps the previous versions of records changed by transactions, so that read-only
+ * transactions can read a consistent snapshot of the database without taking locks
+ * (multi-version concurrency control).
+ *
+ * Before a transaction first changes a record, the table saves the record as it was
+ * (or null, for a record that did not exist yet) at the head of the record's version
+ * chain, which is ordered from the newest change to the oldest. When the transaction
+ * commits, its versions are stamped with a commit timestamp. A snapshot sees the
+ * changes of exactly the transactions that committed before it started: to read a
+ * record, the current value on the page is undone by every change on the chain that
+ * the snapshot doesn't see, newest first, up to the first change that it does see.
+ *
+ * Versions are garbage collected once every active snapshot sees them: then the
+ * change they undo, and every older change of the record, is visible to all present
+ * and future snapshots.
+ *
+ * Writers must save the version of a record before changing the page it is on, and
+ * hold an X lock on the page until they commit or abort (and are rolled back), as
+ * with strict two-phase locking.
+ */
+public class VersionStore {
+    /**
+     * The state of the database that a read-only transaction reads: every change
+     * committed before the snapshot was taken.
+     */
+    public static class Snapshot {
+        private final long timestamp;
+
+        private Snapshot(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot@" + timestamp;
+        }
+    }
+
+    // A version of a record: the record as it was before `transNum` changed it.
+    private static class Version {
+        private final String tableName;
+        private final RecordId rid;
+        private final long transNum;
+        // null if the record did not exist
+        private final Record before;
+        // commit timestamp of the change, or 0 if not committed (yet)
+        private volatile long commitTimestamp = 0;
+        // version before this one, or null if there is none (or it was collected)
+        private volatile Version older;
+
+        private Version(String tableName, RecordId rid, long transNum, Record before, Version older) {
+            this.tableName = tableName;
+            this.rid = rid;
+            this.transNum = transNum;
+            this.before = before;
+            this.older = older;
+        }
+
+        private boolean visibleTo(Snapshot snapshot) {
+            long ts = commitTimestamp;
+            return ts != 0 && ts <= snapshot.timestamp;
+        }
+    }
+
+    // A committed transaction whose versions have not been collected yet.
+    private static class Commit {
+        private final long timestamp;
+        private final List<Version> versions;
+
+        private Commit(long timestamp, List<Version> versions) {
+            this.timestamp = timestamp;
+            this.versions = versions;
+        }
+    }
+
+    // table name -> record id -> newest version of the record
+    private final Map<String, ConcurrentNavigableMap<RecordId, Version>> chains = new ConcurrentHashMap<>();
+
+    // versions saved by transactions that have not committed or aborted yet
+    private final Map<Long, List<Version>> uncommitted = new ConcurrentHashMap<>();
+
+    // Everything below is guarded by `this`.
+
+    // timestamp of the last commit
+    private long clock = 0;
+    // timestamps of the active snapshots -> number of snapshots with that timestamp
+    private final TreeMap<Long, Integer> activeSnapshots = new TreeMap<>();
+    // committed transactions with versions that may still be needed, in commit order
+    private final Deque<Commit> commits = new ArrayDeque<>();
+
+    /**
+     * Takes a snapshot of the database for a read-only transaction. The snapshot
+     * must be released with endSnapshot when the transaction ends.
+     */
+    public synchronized Snapshot beginSnapshot() {
+        Snapshot snapshot = new Snapshot(clock);
+        activeSnapshots.merge(snapshot.timestamp, 1, Integer::sum);
+        return snapshot;
+    }
+
+    /**
+     * Releases a snapshot, and collects the versions no longer needed by any
+     * active snapshot.
+     */
+    public void endSnapshot(Snapshot snapshot) {
+        synchronized (this) {
+            activeSnapshots.computeIfPresent(snapshot.timestamp, (ts, n) -> n == 1 ? null : n - 1);
+        }
+        collectGarbage();
+    }
+
+    /**
+     * Saves the version of a record before transaction `transNum` changes it. Only
+     * the first change of a record by a transaction is saved.
+     *
+     * @param before the record before the change, or null if it did not exist
+     */
+    public void saveVersion(long transNum, String tableName, RecordId rid, Record before) {
+        ConcurrentNavigableMap<RecordId, Version> table =
+            chains.computeIfAbsent(tableName, name -> new ConcurrentSkipListMap<>());
+        table.compute(rid, (k, newest) -> {
+            if (newest != null && newest.transNum == transNum) {
+                return newest;
+            }
+            Version version = new Version(tableName, rid, transNum, before, newest);
+            uncommitted.computeIfAbsent(transNum, t -> new ArrayList<>()).add(version);
+            return version;
+        });
+    }
+
+    /**
+     * Makes the changes of transaction `transNum` visible to snapshots taken from
+     * now on. Must be called before the transaction releases its locks.
+     */
+    public void commit(long transNum) {
+        List<Version> versions = uncommitted.remove(transNum);
+        if (versions == null) {
+            return;
+        }
+        synchronized (this) {
+            long timestamp = ++clock;
+            for (Version version : versions) {
+                version.commitTimestamp = timestamp;
+            }
+            commits.addLast(new Commit(timestamp, versions));
+        }
+        collectGarbage();
+    }
+
+    /**
+     * Drops the versions saved by transaction `transNum`, which must have been
+     * rolled back already. Versions of the transaction that are not at the head of
+     * their chain are left in place: they are never visible, and undoing the change
+     * of an aborted transaction has no effect, so they are only collected later.
+     */
+    public void abort(long transNum) {
+        List<Version> versions = uncommitted.remove(transNum);
+        if (versions == null) {
+            return;
+        }
+        for (Version version : versions) {
+            ConcurrentNavigableMap<RecordId, Version> table = chains.get(version.tableName);
+            table.computeIfPresent(version.rid, (k, newest) -> newest == version ? version.older : newest);
+        }
+    }
+
+    /**
+     * Gets the version of a record that `snapshot` sees.
+     *
+     * @param current the record currently on the page, or null if there is none
+     * @return the record as of the snapshot, or null if it did not exist
+     */
+    public Record getVersion(Snapshot snapshot, String tableName, RecordId rid, Record current) {
+        ConcurrentNavigableMap<RecordId, Version> table = chains.get(tableName);
+        Version version = table == null ? null : table.get(rid);
+        Record record = current;
+        while (version != null && !version.visibleTo(snapshot)) {
+            record = version.before;
+            version = version.older;
+        }
+        return record;
+    }
+
+    /**
+     * @return ids of the records on page `pageNum` of a table that have versions
+     * saved, in order
+     */
+    public Collection<RecordId> getVersionedRecordIds(String tableName, long pageNum) {
+        ConcurrentNavigableMap<RecordId, Version> table = chains.get(tableName);
+        if (table == null) {
+            return Collections.emptyList();
+        }
+        return table.subMap(new RecordId(pageNum, (short) 0), true,
+                            new RecordId(pageNum, Short.MAX_VALUE), true).keySet();
+    }
+
+    /**
+     * @return number of versions saved (and not collected yet)
+     */
+    public int getNumVersions() {
+        int numVersions = 0;
+        for (ConcurrentNavigableMap<RecordId, Version> table : chains.values()) {
+            for (Version version : table.values()) {
+                for (; version != null; version = version.older) {
+                    ++numVersions;
+                }
+            }
+        }
+        return numVersions;
+    }
+
+    /**
+     * Drops the versions that every active snapshot sees.
+     */
+    private synchronized void collectGarbage() {
+        long oldest = activeSnapshots.isEmpty() ? clock : activeSnapshots.firstKey();
+        while (!commits.isEmpty() && commits.peekFirst().timestamp <= oldest) {
+            for (Version version : commits.pollFirst().versions) {
+                truncate(version, oldest);
+            }
+        }
+    }
+
+    // Drops the first version of the record of `version` that committed at or before
+    // `oldest`, and all versions older than it. Concurrent readers stop at that version
+    // or earlier, so they never notice.
+    private void truncate(Version version, long oldest) {
+        ConcurrentNavigableMap<RecordId, Version> table = chains.get(version.tableName);
+        table.compute(version.rid, (k, newest) -> {
+            Version newer = null;
+            for (Version v = newest; v != null; newer = v, v = v.older) {
+                long ts = v.commitTimestamp;
+                if (ts != 0 && ts <= oldest) {
+                    if (newer == null) {
+                        return null;
+                    }
+                    newer.older = null;
+                    break;
+                }
+            }
+            return newest;
+        });
+    }
+}
@@ -48,7 +48,7 @@ import java.util.List;
 public class TableStats {
     private Schema schema;
     private int numRecordsPerPage;
-    private int numRecords;
+    private volatile int numRecords;
     private List<Histogram> histograms;
 
     /** Construct a TableStats for an empty table with schema `schema`. */
@@ -72,11 +72,15 @@ public class TableStats {
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
-    public void addRecord(Record record) {
+    public synchronized void addRecord(Record record) {
         numRecords++;
     }
 
-    public void removeRecord(Record record) {
+    public synchronized void addRecords(int numRecords) {
+        this.numRecords += numRecords;
+    }
+
+    public synchronized void removeRecord(Record record) {
         numRecords = Math.max(numRecords - 1, 0);
     }
 
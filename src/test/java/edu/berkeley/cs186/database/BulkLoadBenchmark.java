@@ -0,0 +1,89 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the throughput of loading rows into a table with an index, with recovery
+ * enabled: once inserting the rows one at a time, once with
+ * Transaction::bulkLoad, and once with COPY from a CSV file. For each run the rows
+ * per second and the growth of the log partition are reported.
+ *
+ * Usage: BulkLoadBenchmark [rows] [buffer pages]
+ */
+public class BulkLoadBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int bufferPages = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        List<Record> rows = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; ++i) {
+            rows.add(new Record(i, "name" + i, i * 0.5f));
+        }
+        File csv = File.createTempFile("bulk-load-bench", ".csv");
+        try (PrintWriter out = new PrintWriter(csv)) {
+            out.println("id,name,score");
+            for (int i = 0; i < numRows; ++i) {
+                out.println(i + ",name" + i + "," + (i * 0.5f));
+            }
+        }
+
+        System.out.println("rows=" + numRows + ", buffer=" + bufferPages + " pages");
+        for (String mode : new String[] {"insert", "bulkLoad", "COPY"}) {
+            File dir = Files.createTempDirectory("bulk-load-bench").toFile();
+            Database db = new Database(dir.getAbsolutePath(), bufferPages, new DummyLockManager(),
+                                       new ClockEvictionPolicy(), true);
+            db.waitAllTransactions();
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(new Schema()
+                        .add("id", Type.intType())
+                        .add("name", Type.stringType(20))
+                        .add("score", Type.floatType()), "t");
+                t.createIndex("t", "id", false);
+            }
+
+            File log = new File(dir, "0");
+            long logged = log.length();
+            long start = System.nanoTime();
+            try (Transaction t = db.beginTransaction()) {
+                switch (mode) {
+                    case "insert":
+                        for (Record row : rows) {
+                            t.insert("t", row);
+                        }
+                        break;
+                    case "bulkLoad":
+                        t.bulkLoad("t", rows.iterator());
+                        break;
+                    default:
+                        t.copyFrom("t", csv.getAbsolutePath());
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            db.close();
+            logged = log.length() - logged;
+            System.out.printf("%-9s %10.0f rows/s, %6.2fs, log grew by %d KB%n",
+                              mode, numRows / elapsed, elapsed, logged / 1024);
+            deleteRecursively(dir);
+        }
+        csv.delete();
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        f.delete();
+    }
+}
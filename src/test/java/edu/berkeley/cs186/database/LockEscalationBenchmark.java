@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.concurrency.LoggingLockManager;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compares the work done by the lock manager with and without lock escalation, for
+ * transactions touching every page of a large table:
+ * - lookups: reads every record by record id, locking each page S
+ * - update: updates every record, which scans the table under S and then locks
+ *   each page X
+ * For each, reports the number of calls into the lock manager, the number of locks
+ * held by the transaction and entries in the lock table right before it commits,
+ * and the time taken.
+ *
+ * Usage: LockEscalationBenchmark [records] [max page locks]
+ */
+public class LockEscalationBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int maxPageLocks = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        System.out.println("records=" + numRecords);
+        for (boolean update : new boolean[] {false, true}) {
+            run(update, numRecords, 0);
+            run(update, numRecords, maxPageLocks);
+        }
+    }
+
+    private static void run(boolean update, int numRecords, int maxPageLocks) throws IOException {
+        File dir = Files.createTempDirectory("lock-escalation-bench").toFile();
+        LoggingLockManager lockManager = new LoggingLockManager();
+        Database db = new Database(dir.getAbsolutePath(), 256, lockManager);
+        db.setLockEscalation(maxPageLocks, 0);
+        Schema schema = new Schema()
+                .add("id", Type.intType())
+                .add("value", Type.intType());
+        List<RecordId> rids = new ArrayList<>();
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(schema, "t");
+            for (int i = 0; i < numRecords; ++i) {
+                t.insert("t", i, 0);
+            }
+            Iterator<RecordId> iter = t.getTransactionContext().getTable("t").ridIterator();
+            while (iter.hasNext()) {
+                rids.add(iter.next());
+            }
+            t.commit();
+        }
+        int numPages;
+        try (Transaction t = db.beginTransaction()) {
+            numPages = t.getTransactionContext().getNumDataPages("t");
+        }
+
+        int calls, locksHeld, entries;
+        long start = System.nanoTime();
+        try (Transaction t = db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            lockManager.startLog();
+            if (update) {
+                t.update("t", "value", (DataBox v) -> new IntDataBox(v.getInt() + 1));
+            } else {
+                for (RecordId rid : rids) {
+                    transaction.getRecord("t", rid);
+                }
+            }
+            lockManager.endLog();
+            calls = lockManager.log.size();
+            locksHeld = lockManager.getLocks(transaction).size();
+            entries = lockManager.getNumResourceEntries();
+            t.commit();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%-7s pages=%-5d escalation=%-5s %7d lock calls, %6d locks held, " +
+                          "%6d lock table entries, %8.1f ms%n",
+                          update ? "update" : "lookups", numPages,
+                          maxPageLocks > 0 ? Integer.toString(maxPageLocks) : "off",
+                          calls, locksHeld, entries, elapsed);
+
+        db.close();
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,71 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Measures how much log is written per row changed in a table. Rows are inserted
+ * into a new table one at a time, then deleted, then inserted again (into the pages
+ * freed by the deletes), each in its own transaction, and the growth of the log
+ * partition per row is reported for each step.
+ *
+ * Usage: LogVolumeBenchmark [rows] [index (true/false)] [buffer pages]
+ */
+public class LogVolumeBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        boolean index = args.length > 1 && Boolean.parseBoolean(args[1]);
+        int bufferPages = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+        File dir = Files.createTempDirectory("log-volume-bench").toFile();
+        Database db = new Database(dir.getAbsolutePath(), bufferPages, new DummyLockManager(),
+                                   new ClockEvictionPolicy(), true);
+        db.waitAllTransactions();
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(20))
+                    .add("score", Type.floatType()), "t");
+            if (index) {
+                t.createIndex("t", "id", false);
+            }
+        }
+
+        System.out.println("rows=" + numRows + ", index=" + index + ", buffer=" + bufferPages + " pages");
+        File log = new File(dir, "0");
+        for (String step : new String[] {"insert", "delete", "reinsert"}) {
+            long logged = log.length();
+            try (Transaction t = db.beginTransaction()) {
+                if (step.equals("delete")) {
+                    t.delete("t", "id", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(0));
+                } else {
+                    for (int i = 0; i < numRows; ++i) {
+                        t.insert("t", new Record(i, "name" + i, i * 0.5f));
+                    }
+                }
+            }
+            logged = log.length() - logged;
+            System.out.printf("%-9s log grew by %7d KB, %6.1f bytes/row%n",
+                              step, logged / 1024, (double) logged / numRows);
+        }
+        db.close();
+        deleteRecursively(dir);
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        f.delete();
+    }
+}
@@ -2,11 +2,16 @@ package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.cli.StatementCache;
 import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.Lock;
+import edu.berkeley.cs186.database.concurrency.LockManager;
+import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -19,10 +24,18 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -306,4 +319,232 @@ public class TestDatabase {
             assertFalse(iter.hasNext());
         }
     }
+
+    @Test
+    public void testBulkLoad() {
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10));
+            t1.createTable(s, "table1");
+            t1.insert("table1", 0, "zero");
+            t1.createIndex("table1", "id", false);
+
+            List<Record> records = new ArrayList<>();
+            for (int i = 1; i <= 1000; ++i) {
+                records.add(new Record(i, "r" + i));
+            }
+            assertEquals(1000, t1.bulkLoad("table1", records.iterator()));
+            assertEquals(1001, t1.getTransactionContext().getStats("table1").getNumRecords());
+            t1.commit();
+        }
+
+        try (Transaction t2 = db.beginTransaction()) {
+            Iterator<Record> iter = t2.query("table1").execute();
+            for (int i = 0; i <= 1000; ++i) {
+                assertEquals(i, iter.next().getValue(0).getInt());
+            }
+            assertFalse(iter.hasNext());
+
+            TransactionContext context = t2.getTransactionContext();
+            Iterator<Record> lookup = context.lookupKey("table1", "id", new IntDataBox(500));
+            assertEquals(new Record(500, "r500"), lookup.next());
+            assertFalse(lookup.hasNext());
+        }
+    }
+
+    @Test
+    public void testCopyFrom() throws IOException {
+        File csv = tempFolder.newFile("table1.csv");
+        try (PrintWriter out = new PrintWriter(csv)) {
+            out.println("id,name");
+            for (int i = 0; i < 100; ++i) {
+                out.println(i + ",r" + i);
+            }
+        }
+
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10));
+            t1.createTable(s, "table1");
+            t1.createIndex("table1", "name", false);
+            t1.execute("COPY table1 FROM '" + csv.getAbsolutePath() + "'");
+            t1.commit();
+        }
+
+        try (Transaction t2 = db.beginTransaction()) {
+            Iterator<Record> iter = t2.query("table1").execute();
+            for (int i = 0; i < 100; ++i) {
+                assertEquals(new Record(i, "r" + i), iter.next());
+            }
+            assertFalse(iter.hasNext());
+            assertEquals(new Record(42, "r42"),
+                         t2.getTransactionContext().lookupKey("table1", "name", new StringDataBox("r42", 10)).next());
+        }
+    }
+
+    @Test
+    public void testPreparedStatements() {
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10)), "table1");
+            for (int i = 0; i < 10; ++i) {
+                t.insert("table1", i, "r" + i);
+            }
+            t.execute("PREPARE byId AS SELECT * FROM table1 WHERE id = ?");
+            t.execute("PREPARE ins AS INSERT INTO table1 VALUES (?, ?)");
+
+            Iterator<Record> iter = t.execute("EXECUTE byId (3)").get().execute();
+            assertEquals(new Record(3, "r3"), iter.next());
+            assertFalse(iter.hasNext());
+
+            t.execute("EXECUTE ins (42, 'r42')");
+            iter = t.execute("EXECUTE byId (42)").get().execute();
+            assertEquals(new Record(42, "r42"), iter.next());
+            assertFalse(iter.hasNext());
+
+            try {
+                t.execute("EXECUTE byId (1, 2)");
+                fail();
+            } catch (DatabaseException e) {
+                /* do nothing */
+            }
+            try {
+                t.execute("SELECT * FROM table1 WHERE id = ?");
+                fail();
+            } catch (DatabaseException e) {
+                /* do nothing */
+            }
+        }
+    }
+
+    @Test
+    public void testStatementCache() {
+        StatementCache cache = db.getStatementCache();
+        assertEquals("SELECT * FROM t WHERE s = 'a  b'",
+                     StatementCache.normalize("  SELECT *\n  FROM t WHERE s = 'a  b' ; "));
+
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(new Schema()
+                    .add("id", Type.intType())
+                    .add("name", Type.stringType(10)), "table1");
+            for (int i = 0; i < 10; ++i) {
+                t.insert("table1", i, "r" + i);
+            }
+            long parseHits = cache.getHits();
+            long planHits = cache.getPlanCache().getHits();
+            long planMisses = cache.getPlanCache().getMisses();
+
+            // the same statement up to whitespace is only parsed and planned once
+            t.execute("SELECT * FROM table1 WHERE id = 1").get().execute();
+            Iterator<Record> iter = t.execute("SELECT *  FROM table1\nWHERE id = 1;").get().execute();
+            assertEquals(new Record(1, "r1"), iter.next());
+            assertFalse(iter.hasNext());
+            assertEquals(parseHits + 1, cache.getHits());
+            assertEquals(planMisses + 1, cache.getPlanCache().getMisses());
+            assertEquals(planHits + 1, cache.getPlanCache().getHits());
+
+            // DDL invalidates the cached plans
+            t.createIndex("table1", "id", false);
+            iter = t.execute("SELECT * FROM table1 WHERE id = 1").get().execute();
+            assertEquals(new Record(1, "r1"), iter.next());
+            assertEquals(planMisses + 2, cache.getPlanCache().getMisses());
+            t.execute("SELECT * FROM table1 WHERE id = 1").get().execute();
+            assertEquals(planHits + 2, cache.getPlanCache().getHits());
+
+            // and so does a large change in the size of a table
+            for (int i = 10; i < 20; ++i) {
+                t.insert("table1", i, "r" + i);
+            }
+            t.execute("SELECT * FROM table1 WHERE id = 1").get().execute();
+            assertEquals(planMisses + 3, cache.getPlanCache().getMisses());
+        }
+    }
+
+    @Test
+    public void testPlanCacheAfterRolledBackIndex() throws IOException {
+        Database db = new Database(tempFolder.newFolder("rollback").getAbsolutePath(), 32,
+                                   new LockManager(), new ClockEvictionPolicy(), true);
+        try {
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(new Schema().add("a", Type.intType()), "t");
+                for (int i = 0; i < 10; ++i) {
+                    t.insert("t", i);
+                }
+            }
+
+            // a plan cached after the transaction's own DDL uses the new index...
+            Transaction t1 = db.beginTransaction();
+            t1.createIndex("t", "a", false);
+            Iterator<Record> iter = t1.execute("SELECT * FROM t WHERE a = 5").get().execute();
+            assertEquals(new Record(5), iter.next());
+            assertEquals(1, db.getStatementCache().getPlanCache().size());
+            t1.rollback();
+            t1.close();
+
+            // ...so it is dropped when the index is rolled back
+            assertEquals(0, db.getStatementCache().getPlanCache().size());
+            try (Transaction t2 = db.beginTransaction()) {
+                iter = t2.execute("SELECT * FROM t WHERE a = 5").get().execute();
+                assertEquals(new Record(5), iter.next());
+                assertFalse(iter.hasNext());
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void testLockEscalationChangedAfterTableUsed() throws IOException {
+        LockManager lockManager = new LockManager();
+        Database db = new Database(tempFolder.newFolder("escalation").getAbsolutePath(), 32, lockManager);
+        try {
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 3000; ++i) {
+                records.add(new Record(i));
+            }
+            // one record id from each of the first three data pages
+            Map<Long, RecordId> rids = new LinkedHashMap<>();
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(new Schema().add("id", Type.intType()), "t");
+                t.bulkLoad("t", records.iterator());
+                Iterator<RecordId> iter = t.getTransactionContext().getTable("t").ridIterator();
+                while (iter.hasNext() && rids.size() < 3) {
+                    RecordId rid = iter.next();
+                    rids.putIfAbsent(rid.getPageNum(), rid);
+                }
+            }
+            assertEquals(3, rids.size());
+
+            // the table's lock context exists once the table is used, with escalation off
+            try (Transaction t = db.beginTransaction()) {
+                for (RecordId rid : rids.values()) {
+                    t.getTransactionContext().getRecord("t", rid);
+                }
+                assertEquals(3, numPageLocks(lockManager, t));
+            }
+
+            db.setLockEscalation(2, 0);
+            try (Transaction t = db.beginTransaction()) {
+                for (RecordId rid : rids.values()) {
+                    t.getTransactionContext().getRecord("t", rid);
+                }
+                assertTrue(numPageLocks(lockManager, t) <= 2);
+                assertEquals(LockType.S, lockManager.getLockType(t.getTransactionContext(),
+                        lockManager.databaseContext().childContext("t").getResourceName()));
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private static int numPageLocks(LockManager lockManager, Transaction t) {
+        int numPageLocks = 0;
+        for (Lock lock : lockManager.getLocks(t.getTransactionContext())) {
+            if (lock.name.toString().startsWith("database/t/")) ++numPageLocks;
+        }
+        return numPageLocks;
+    }
 }
@@ -281,6 +281,64 @@ public class TestDatabaseRecoveryIntegration {
         assertEquals(oldRecords, newRecords);
     }
 
+    @Test
+    public void testRollbackDeleteAndReinsert() {
+        /**
+         * Same as above, but deletes specific records and inserts other records,
+         * which reuse the slots of the deleted records, before rolling back.
+         */
+        List<Record> oldRecords = new ArrayList<>();
+        List<Record> newRecords = new ArrayList<>();
+
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = t.query("Students").execute();
+            while (records.hasNext()) oldRecords.add(records.next());
+
+            t.delete("Students", "gpa", PredicateOperator.GREATER_THAN_EQUALS, DataBox.fromObject(2.0));
+            for (Record record : oldRecords) {
+                t.insert("Students", -1, "reinserted", record.getValue(2).getString(), 1.0f);
+            }
+            t.rollback();
+        }
+
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = t.query("Students").execute();
+            while (records.hasNext()) newRecords.add(records.next());
+        }
+        assertEquals(oldRecords, newRecords);
+    }
+
+    @Test
+    public void testRollbackBulkLoad() {
+        /**
+         * Same as above, but bulk loads a copy of every record into Students,
+         * filling new pages, and then rolls back.
+         */
+        List<Record> oldRecords = new ArrayList<>();
+        List<Record> newRecords = new ArrayList<>();
+
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = t.query("Students").execute();
+            while (records.hasNext()) oldRecords.add(records.next());
+
+            assertEquals(oldRecords.size(), t.bulkLoad("Students", oldRecords.iterator()));
+            records = t.query("Students").execute();
+            int count = 0;
+            while (records.hasNext()) {
+                records.next();
+                ++count;
+            }
+            assertEquals(2 * oldRecords.size(), count);
+            t.rollback();
+        }
+
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> records = t.query("Students").execute();
+            while (records.hasNext()) newRecords.add(records.next());
+        }
+        assertEquals(oldRecords, newRecords);
+    }
+
     @Test
     public void testSavepointDropTable() {
         /**
@@ -428,6 +486,26 @@ public class TestDatabaseRecoveryIntegration {
         this.db.close();
     }
 
+    @Test
+    public void testRebootBulkLoad() {
+        // Creates a table, bulk loads it, commits, and then reboots
+        List<Record> loaded = new ArrayList<>();
+        for (int i = 0; i < 1024 * 5; i++) {
+            loaded.add(new Record(i));
+        }
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(new Schema().add("int", Type.intType()), "ints");
+            t1.bulkLoad("ints", loaded.iterator());
+        }
+        reloadDatabase(false);
+        try(Transaction t2 = db.beginTransaction()) {
+            List<Record> records = new ArrayList<>();
+            t2.query("ints").execute().forEachRemaining(records::add);
+            assertEquals(loaded, records);
+        }
+        this.db.close();
+    }
+
     @Test
     public void testRebootCreateAndDropTable() {
         // Creates tables, commits, and then reboots
@@ -0,0 +1,210 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.LoggingLockManager;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestDatabaseSnapshotReads {
+    private Database db;
+    private LoggingLockManager lockManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 seconds max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+            10000 * TimeoutScaling.factor)));
+
+    @Before
+    public void beforeEach() throws Exception {
+        lockManager = new LoggingLockManager();
+        db = new Database(tempFolder.newFolder("snapshotTest").getAbsolutePath(), 128, lockManager,
+                          new ClockEvictionPolicy(), true);
+        db.waitAllTransactions();
+        db.setSnapshotReads(true);
+        try (Transaction t = begin(false)) {
+            t.createTable(new Schema().add("id", Type.intType()).add("value", Type.intType()), "t");
+            for (int i = 0; i < 1000; ++i) {
+                t.insert("t", i, 0);
+            }
+        }
+    }
+
+    @After
+    public void afterEach() {
+        while (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        db.close();
+    }
+
+    // makes `t` the transaction running on this thread
+    private static void use(Transaction t) {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        TransactionContext.setTransaction(t.getTransactionContext());
+    }
+
+    // begins a transaction on this thread, switching from the running one (if any)
+    private Transaction begin(boolean readOnly) {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        return readOnly ? db.beginReadOnlyTransaction() : db.beginTransaction();
+    }
+
+    private static Map<Integer, Integer> read(Transaction t) {
+        use(t);
+        Map<Integer, Integer> values = new HashMap<>();
+        Iterator<Record> records = t.query("t").execute();
+        while (records.hasNext()) {
+            Record record = records.next();
+            values.put(record.getValue(0).getInt(), record.getValue(1).getInt());
+        }
+        return values;
+    }
+
+    private static Map<Integer, Integer> expected(int from, int to, int value) {
+        Map<Integer, Integer> values = new HashMap<>();
+        for (int i = from; i < to; ++i) {
+            values.put(i, value);
+        }
+        return values;
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterChanges() {
+        Transaction writer = begin(false);
+        writer.update("t", "value", (DataBox v) -> new IntDataBox(v.getInt() + 1));
+
+        // the writer holds X locks on every page, but the reader doesn't block
+        Transaction reader = begin(true);
+        assertEquals(expected(0, 1000, 0), read(reader));
+
+        use(writer);
+        writer.commit();
+        assertEquals(expected(0, 1000, 0), read(reader));
+        reader.commit();
+
+        Transaction later = begin(true);
+        assertEquals(expected(0, 1000, 1), read(later));
+        later.commit();
+    }
+
+    @Test
+    public void testSnapshotInsertDelete() {
+        Transaction reader = begin(true);
+        Transaction writer = begin(false);
+        use(writer);
+        // empties the table's pages, which are kept for the reader
+        writer.delete("t", "id", PredicateOperator.LESS_THAN, new IntDataBox(1000));
+        for (int i = 1000; i < 1010; ++i) {
+            writer.insert("t", i, 2);
+        }
+        writer.commit();
+
+        assertEquals(expected(0, 1000, 0), read(reader));
+        reader.commit();
+        assertEquals(0, db.getVersionStore().getNumVersions());
+
+        Transaction later = begin(true);
+        assertEquals(expected(1000, 1010, 2), read(later));
+        later.commit();
+    }
+
+    @Test
+    public void testSnapshotVectorizedRead() {
+        Transaction reader = begin(true);
+        Transaction writer = begin(false);
+        use(writer);
+        writer.delete("t", "id", PredicateOperator.LESS_THAN, new IntDataBox(300));
+        writer.update("t", "value", (DataBox v) -> new IntDataBox(3));
+        for (int i = 1000; i < 1010; ++i) {
+            writer.insert("t", i, 3);
+        }
+        writer.commit();
+
+        // batches read the snapshot the same as records
+        use(reader);
+        Map<Integer, Integer> values = new HashMap<>();
+        Iterator<Record> records = reader.query("t").executeVectorized();
+        while (records.hasNext()) {
+            Record record = records.next();
+            values.put(record.getValue(0).getInt(), record.getValue(1).getInt());
+        }
+        assertEquals(expected(0, 1000, 0), values);
+        reader.commit();
+    }
+
+    @Test
+    public void testSnapshotIgnoresRolledBackChanges() {
+        Transaction reader = begin(true);
+        Transaction writer = begin(false);
+        use(writer);
+        writer.update("t", "value", (DataBox v) -> new IntDataBox(5));
+        writer.insert("t", 1000, 5);
+        writer.rollback();
+        assertEquals(expected(0, 1000, 0), read(reader));
+        reader.commit();
+        assertEquals(0, db.getVersionStore().getNumVersions());
+    }
+
+    @Test
+    public void testSnapshotTakesNoLocks() {
+        Transaction reader = begin(true);
+        lockManager.startLog();
+        assertEquals(expected(0, 1000, 0), read(reader));
+        lockManager.endLog();
+        assertEquals(Collections.emptyList(), lockManager.log);
+        reader.commit();
+    }
+
+    @Test
+    public void testSnapshotIgnoresIndex() {
+        Transaction reader = begin(true);
+        Transaction writer = begin(false);
+        writer.delete("t", "id", PredicateOperator.EQUALS, new IntDataBox(3));
+        writer.insert("t", 1000, 0);
+        writer.commit();
+        // the index only has the latest version of each record
+        try (Transaction t = begin(false)) {
+            t.createIndex("t", "id", false);
+        }
+
+        use(reader);
+        TransactionContext context = reader.getTransactionContext();
+        assertFalse(context.indexExists("t", "id"));
+        Iterator<Record> records = context.lookupKey("t", "id", new IntDataBox(3));
+        assertEquals(new Record(3, 0), records.next());
+        assertFalse(records.hasNext());
+        assertFalse(context.contains("t", "id", new IntDataBox(1000)));
+        reader.commit();
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testReadOnly() {
+        try (Transaction reader = begin(true)) {
+            reader.insert("t", 1000, 0);
+        }
+    }
+}
@@ -107,4 +107,16 @@ public class TestStatementList {
         assertEquals(StatementType.SELECT, visitor.statementVisitors.get(0).getType());
         assertEquals(StatementType.EXPLAIN, visitor.statementVisitors.get(1).getType());
     }
+
+    @Test
+    public void testCopy() {
+        StatementListVisitor visitor = parse(
+                "COPY Students FROM 'students.csv'; copy Courses from '/tmp/courses.csv';"
+        );
+        assertEquals(2, visitor.statementVisitors.size());
+        assertEquals(StatementType.COPY, visitor.statementVisitors.get(0).getType());
+        CopyStatementVisitor copy = (CopyStatementVisitor) visitor.statementVisitors.get(1);
+        assertEquals("Courses", copy.tableName);
+        assertEquals("/tmp/courses.csv", copy.fileName);
+    }
 }
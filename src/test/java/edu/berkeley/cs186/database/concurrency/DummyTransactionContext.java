@@ -35,6 +35,14 @@ public class DummyTransactionContext extends TransactionContext {
         return this.tNum;
     }
 
+    @Override
+    public void deadlockAbort() {
+        // stands in for rolling back, which releases every lock held
+        for (Lock lock : lockManager.getLocks(this)) {
+            lockManager.release(this, lock.name);
+        }
+    }
+
     @Override
     public String createTempTable(Schema schema) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -87,6 +95,11 @@ public class DummyTransactionContext extends TransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public int bulkLoad(String tableName, Iterator<Record> records) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public int getWorkMemSize() {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -0,0 +1,85 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures lock manager throughput under contention, with an increasing number of
+ * client threads, for a lock table with a single shard (every request serializes
+ * on one latch, like the old manager-wide monitor) and with the default number of
+ * shards. Each thread runs its own transaction, which repeatedly locks and unlocks
+ * resources in one of two patterns:
+ * - disjoint: an X lock on a random table out of a set used only by that thread
+ * - hierarchical: IX(database), IX(table), X(page) on a random page of a random
+ *   table shared by all threads, so every transaction also goes through the
+ *   database's entry
+ *
+ * Usage: LockManagerBenchmark [max threads] [seconds per run]
+ */
+public class LockManagerBenchmark {
+    private static final int TABLES_PER_THREAD = 64;
+    private static final int SHARED_TABLES = 100;
+    private static final int PAGES_PER_TABLE = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+                         Math.max(4, Runtime.getRuntime().availableProcessors());
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        System.out.println("cores=" + Runtime.getRuntime().availableProcessors() + ", duration=" + seconds + "s");
+        for (boolean hierarchical : new boolean[] {false, true}) {
+            for (int shards : new int[] {1, LockManager.DEFAULT_NUM_SHARDS}) {
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    run(hierarchical, shards, threads, seconds);
+                }
+            }
+        }
+    }
+
+    private static void run(boolean hierarchical, int numShards, int numThreads,
+                            int seconds) throws InterruptedException {
+        LoggingLockManager lockManager = new LoggingLockManager(numShards);
+        ResourceName database = new ResourceName("database");
+        AtomicBoolean done = new AtomicBoolean(false);
+        LongAdder transactions = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            DummyTransactionContext transaction = new DummyTransactionContext(lockManager, i);
+            int threadIndex = i;
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!done.get()) {
+                    if (hierarchical) {
+                        ResourceName table = new ResourceName(database, "table" + random.nextInt(SHARED_TABLES));
+                        ResourceName page = new ResourceName(table, Integer.toString(random.nextInt(PAGES_PER_TABLE)));
+                        lockManager.acquire(transaction, database, LockType.IX);
+                        lockManager.acquire(transaction, table, LockType.IX);
+                        lockManager.acquire(transaction, page, LockType.X);
+                        lockManager.release(transaction, page);
+                        lockManager.release(transaction, table);
+                        lockManager.release(transaction, database);
+                    } else {
+                        ResourceName table = new ResourceName(database, "table" + threadIndex + "-" +
+                                                              random.nextInt(TABLES_PER_THREAD));
+                        lockManager.acquire(transaction, table, LockType.X);
+                        lockManager.release(transaction, table);
+                    }
+                    transactions.increment();
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        Thread.sleep(seconds * 1000L);
+        done.set(true);
+        for (Thread t : threads) t.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-12s shards=%3d, threads=%3d: %12.0f transactions/sec%n",
+                          hierarchical ? "hierarchical" : "disjoint", numShards, numThreads,
+                          transactions.sum() / elapsed);
+    }
+}
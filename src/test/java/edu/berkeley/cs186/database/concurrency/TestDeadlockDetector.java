@@ -0,0 +1,311 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj4Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+@Category({Proj4Tests.class})
+public class TestDeadlockDetector {
+    private LoggingLockManager lockman;
+    private TransactionContext[] transactions;
+    private ResourceName dbResource;
+    private ResourceName[] tables;
+
+    // 5 seconds per test
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                5000 * TimeoutScaling.factor)));
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        lockman = new LoggingLockManager();
+        transactions = new TransactionContext[8];
+        dbResource = new ResourceName("database");
+        tables = new ResourceName[transactions.length];
+        for (int i = 0; i < transactions.length; ++i) {
+            transactions[i] = new DummyTransactionContext(lockman, i);
+            tables[i] = new ResourceName(dbResource, "table" + i);
+        }
+    }
+
+    /**
+     * Has transaction `i` acquire an X lock on table `table` on thread `i`, setting
+     * `aborted` if it throws DeadlockException.
+     */
+    private void acquireX(DeterministicRunner runner, int i, int table, AtomicBoolean aborted) {
+        runner.run(i, () -> {
+            try {
+                lockman.acquire(transactions[i], tables[table], LockType.X);
+            } catch (DeadlockException e) {
+                aborted.set(true);
+            }
+        });
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFindCycle() {
+        Map<Long, Set<Long>> graph = new HashMap<>();
+        graph.put(0L, new HashSet<>(Arrays.asList(1L, 5L)));
+        graph.put(1L, new HashSet<>(Collections.singletonList(2L)));
+        graph.put(2L, new HashSet<>());
+        assertNull(DeadlockDetector.findCycle(graph));
+
+        graph.get(2L).add(3L);
+        graph.put(3L, new HashSet<>(Collections.singletonList(1L)));
+        List<Long> cycle = DeadlockDetector.findCycle(graph);
+        assertNotNull(cycle);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), new HashSet<>(cycle));
+        assertEquals(3, cycle.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNoDeadlock() {
+        DeterministicRunner runner = new DeterministicRunner(2);
+        DeadlockDetector detector = new DeadlockDetector(lockman, DeadlockDetector.VictimPolicy.YOUNGEST);
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        acquireX(runner, 0, 0, aborted);
+        acquireX(runner, 1, 0, aborted);
+        assertTrue(transactions[1].getBlocked());
+
+        assertEquals(Collections.emptyList(), detector.detect());
+        assertEquals(0, detector.getNumCycles());
+        assertTrue(transactions[1].getBlocked());
+
+        runner.run(0, () -> lockman.release(transactions[0], tables[0]));
+        assertFalse(transactions[1].getBlocked());
+        assertFalse(aborted.get());
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testYoungestVictim() {
+        DeterministicRunner runner = new DeterministicRunner(2);
+        DeadlockDetector detector = new DeadlockDetector(lockman, DeadlockDetector.VictimPolicy.YOUNGEST);
+        AtomicBoolean aborted0 = new AtomicBoolean(false);
+        AtomicBoolean aborted1 = new AtomicBoolean(false);
+        acquireX(runner, 0, 0, aborted0);
+        acquireX(runner, 1, 1, aborted1);
+        acquireX(runner, 0, 1, aborted0);
+        acquireX(runner, 1, 0, aborted1);
+        assertTrue(transactions[0].getBlocked());
+        assertTrue(transactions[1].getBlocked());
+
+        assertEquals(Collections.singletonList(1L), detector.detect());
+        runner.join(1);
+        assertEquals(1, detector.getNumCycles());
+        assertTrue(aborted1.get());
+        assertFalse(aborted0.get());
+
+        // transaction 1 gave up its lock, so transaction 0 gets it
+        assertFalse(transactions[0].getBlocked());
+        assertEquals(LockType.X, lockman.getLockType(transactions[0], tables[1]));
+        assertEquals(Collections.emptyList(), lockman.getLocks(transactions[1]));
+        assertEquals(Collections.emptyList(), detector.detect());
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFewestLocksVictim() {
+        DeterministicRunner runner = new DeterministicRunner(3);
+        DeadlockDetector detector = new DeadlockDetector(lockman, DeadlockDetector.VictimPolicy.FEWEST_LOCKS);
+        AtomicBoolean[] aborted = new AtomicBoolean[3];
+        for (int i = 0; i < 3; ++i) {
+            aborted[i] = new AtomicBoolean(false);
+        }
+        acquireX(runner, 0, 0, aborted[0]);
+        acquireX(runner, 1, 1, aborted[1]);
+        acquireX(runner, 1, 4, aborted[1]);
+        acquireX(runner, 2, 2, aborted[2]);
+        acquireX(runner, 2, 5, aborted[2]);
+        // 0 -> 1 -> 2 -> 0
+        acquireX(runner, 0, 1, aborted[0]);
+        acquireX(runner, 1, 2, aborted[1]);
+        acquireX(runner, 2, 0, aborted[2]);
+
+        assertEquals(Collections.singletonList(0L), detector.detect());
+        runner.join(0);
+        assertTrue(aborted[0].get());
+        assertEquals(LockType.X, lockman.getLockType(transactions[2], tables[0]));
+        assertTrue(transactions[1].getBlocked());
+        assertFalse(aborted[1].get());
+        assertFalse(aborted[2].get());
+
+        runner.run(2, () -> {
+            lockman.release(transactions[2], tables[2]);
+            lockman.release(transactions[2], tables[5]);
+            lockman.release(transactions[2], tables[0]);
+        });
+        assertFalse(transactions[1].getBlocked());
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLeastLogWrittenVictim() {
+        DeterministicRunner runner = new DeterministicRunner(2);
+        DeadlockDetector detector = new DeadlockDetector(lockman, DeadlockDetector.VictimPolicy.LEAST_LOG_WRITTEN,
+                transNum -> transNum == 0 ? 100 : 1000);
+        AtomicBoolean aborted0 = new AtomicBoolean(false);
+        AtomicBoolean aborted1 = new AtomicBoolean(false);
+        acquireX(runner, 0, 0, aborted0);
+        acquireX(runner, 1, 1, aborted1);
+        acquireX(runner, 0, 1, aborted0);
+        acquireX(runner, 1, 0, aborted1);
+
+        assertEquals(Collections.singletonList(0L), detector.detect());
+        runner.join(0);
+        assertTrue(aborted0.get());
+        assertFalse(transactions[1].getBlocked());
+        assertEquals(LockType.X, lockman.getLockType(transactions[1], tables[0]));
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDeadlockThroughQueue() {
+        /**
+         * Transaction 0 holds S(database), transaction 1 waits for X(database),
+         * and transaction 2 queues for S(database) behind it; transaction 0 then
+         * waits for X(table2), held by transaction 2. Transaction 2's S lock is
+         * compatible with transaction 0's, but it cannot be granted before
+         * transaction 1's request, so 0 -> 2 -> 1 -> 0 is a deadlock.
+         */
+        DeterministicRunner runner = new DeterministicRunner(3);
+        DeadlockDetector detector = new DeadlockDetector(lockman, DeadlockDetector.VictimPolicy.YOUNGEST);
+        AtomicBoolean aborted2 = new AtomicBoolean(false);
+        runner.run(0, () -> lockman.acquire(transactions[0], dbResource, LockType.S));
+        acquireX(runner, 2, 2, aborted2);
+        runner.run(1, () -> lockman.acquire(transactions[1], dbResource, LockType.X));
+        runner.run(2, () -> {
+            try {
+                lockman.acquire(transactions[2], dbResource, LockType.S);
+            } catch (DeadlockException e) {
+                aborted2.set(true);
+            }
+        });
+        runner.run(0, () -> lockman.acquire(transactions[0], tables[2], LockType.X));
+
+        assertEquals(Collections.singletonList(2L), detector.detect());
+        runner.join(2);
+        assertTrue(aborted2.get());
+        assertFalse(transactions[0].getBlocked());
+        assertEquals(LockType.X, lockman.getLockType(transactions[0], tables[2]));
+        assertTrue(transactions[1].getBlocked());
+
+        runner.run(0, () -> lockman.release(transactions[0], dbResource));
+        assertFalse(transactions[1].getBlocked());
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBackgroundDetection() {
+        DeterministicRunner runner = new DeterministicRunner(2);
+        DeadlockDetector detector = new DeadlockDetector(lockman, DeadlockDetector.VictimPolicy.YOUNGEST);
+        detector.start(10, TimeUnit.MILLISECONDS);
+        try {
+            AtomicBoolean aborted0 = new AtomicBoolean(false);
+            AtomicBoolean aborted1 = new AtomicBoolean(false);
+            acquireX(runner, 0, 0, aborted0);
+            acquireX(runner, 1, 1, aborted1);
+            acquireX(runner, 0, 1, aborted0);
+            acquireX(runner, 1, 0, aborted1);
+
+            runner.join(1);
+            assertTrue(aborted1.get());
+            assertEquals(1, detector.getNumCycles());
+            assertTrue(detector.getNumPasses() >= 1);
+        } finally {
+            detector.stop();
+        }
+        runner.joinAll();
+        assertEquals(2, lockman.getNumBlocked());
+        assertTrue(lockman.getBlockedTime(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDatabaseVictimRolledBack() throws Exception {
+        Database db = new Database(tempFolder.newFolder("deadlockTest").getAbsolutePath(), 128,
+                                   new LockManager(), new ClockEvictionPolicy(), true);
+        db.waitAllTransactions();
+        Schema schema = new Schema().add("id", Type.intType());
+        // set up the tables' pages in a committed transaction, so the inserts below only
+        // write to existing pages
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(schema, "a");
+            t.createTable(schema, "b");
+            t.insert("a", -1);
+            t.insert("b", -1);
+        }
+        db.setDeadlockDetection(10, TimeUnit.MILLISECONDS, DeadlockDetector.VictimPolicy.YOUNGEST);
+
+        // each transaction writes to one table, then tries to write to the other
+        DeterministicRunner runner = new DeterministicRunner(2);
+        Transaction[] ts = new Transaction[2];
+        AtomicBoolean[] aborted = {new AtomicBoolean(false), new AtomicBoolean(false)};
+        for (int i = 0; i < 2; ++i) {
+            int j = i;
+            runner.run(i, () -> {
+                ts[j] = db.beginTransaction();
+                ts[j].insert(j == 0 ? "a" : "b", j);
+            });
+        }
+        for (int i = 0; i < 2; ++i) {
+            int j = i;
+            runner.run(i, () -> {
+                try {
+                    ts[j].insert(j == 0 ? "b" : "a", j);
+                } catch (DeadlockException e) {
+                    aborted[j].set(true);
+                }
+            });
+        }
+        runner.join(1);
+        assertTrue(aborted[1].get());
+        assertEquals(Transaction.Status.COMPLETE, ts[1].getStatus());
+        runner.run(0, () -> ts[0].commit());
+        assertFalse(aborted[0].get());
+        runner.joinAll();
+        assertEquals(1, db.getDeadlockDetector().getNumCycles());
+
+        // transaction 1's insert into b was rolled back
+        try (Transaction t = db.beginTransaction()) {
+            List<Record> a = new ArrayList<>();
+            t.getTransactionContext().getRecordIterator("a").forEachRemaining(a::add);
+            List<Record> b = new ArrayList<>();
+            t.getTransactionContext().getRecordIterator("b").forEachRemaining(b::add);
+            assertEquals(Arrays.asList(new Record(-1), new Record(0)), a);
+            assertEquals(Arrays.asList(new Record(-1), new Record(0)), b);
+        }
+        db.close();
+    }
+}
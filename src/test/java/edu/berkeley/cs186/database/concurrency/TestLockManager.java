@@ -756,5 +756,90 @@ public class TestLockManager {
         runner.joinAll();
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testEmptyEntriesRemoved() {
+        DeterministicRunner runner = new DeterministicRunner(2);
+
+        TransactionContext t0 = transactions[0];
+        TransactionContext t1 = transactions[1];
+
+        runner.run(0, () -> lockman.acquire(t0, tables[0], LockType.X));
+        runner.run(1, () -> lockman.acquire(t1, tables[0], LockType.S));
+        assertEquals(1, lockman.getNumResourceEntries());
+
+        // t1's request is granted when t0 releases, so the entry stays
+        runner.run(0, () -> lockman.release(t0, tables[0]));
+        assertEquals(1, lockman.getNumResourceEntries());
+        assertFalse(t1.getBlocked());
+
+        // lookups do not create entries
+        assertEquals(LockType.NL, lockman.getLockType(t0, tables[1]));
+        assertEquals(1, lockman.getNumResourceEntries());
+
+        runner.run(1, () -> lockman.release(t1, tables[0]));
+        assertEquals(0, lockman.getNumResourceEntries());
+
+        runner.joinAll();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAcquireAndReleaseManyShards() {
+        /**
+         * Transaction 0 acquires S locks on 8 tables (in several shards of the lock table),
+         * and then replaces all of them with an S lock on the database
+         */
+        TransactionContext t0 = transactions[0];
+        for (ResourceName table : tables) {
+            lockman.acquire(t0, table, LockType.S);
+        }
+        lockman.acquireAndRelease(t0, dbResource, LockType.S, new ArrayList<>(Arrays.asList(tables)));
+
+        assertEquals(Collections.singletonList(new Lock(dbResource, LockType.S, 0L)), lockman.getLocks(t0));
+        assertEquals(1, lockman.getNumResourceEntries());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentTransactions() throws InterruptedException {
+        /**
+         * Each of 8 threads runs a transaction that repeatedly locks its own table and then
+         * a resource shared by all of them, so that some requests block and are granted by
+         * other threads.
+         */
+        LockManager lockManager = new LockManager(4);
+        ResourceName shared = new ResourceName(dbResource, "shared");
+        List<Thread> threads = new ArrayList<>();
+        Throwable[] error = new Throwable[1];
+        for (int i = 0; i < transactions.length; ++i) {
+            TransactionContext t = transactions[i];
+            ResourceName table = tables[i];
+            threads.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < 500; ++j) {
+                        lockManager.acquire(t, dbResource, LockType.IX);
+                        lockManager.acquire(t, table, LockType.S);
+                        lockManager.promote(t, table, LockType.X);
+                        lockManager.acquire(t, shared, LockType.X);
+                        lockManager.release(t, shared);
+                        lockManager.release(t, table);
+                        lockManager.release(t, dbResource);
+                    }
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        assertNull(error[0]);
+        for (TransactionContext t : transactions) {
+            assertEquals(Collections.emptyList(), lockManager.getLocks(t));
+        }
+        assertEquals(0, lockManager.getNumResourceEntries());
+    }
+
 }
 
@@ -278,5 +278,86 @@ public class TestLockUtil {
         assertEquals(Collections.emptyList(), lockManager.log);
     }
 
-}
+    @Test
+    @Category(PublicTests.class)
+    public void testAutoEscalateByCount() {
+        /**
+         * With at most 2 page locks allowed on table1, requesting S on a third
+         * page should escalate table1 to S instead, releasing the page locks.
+         */
+        tableContext.setAutoEscalation(2, 0);
+        lockManager.startLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[1], LockType.S);
+        LockUtil.ensureSufficientLockHeld(pageContexts[2], LockType.S);
+        lockManager.clearLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[3], LockType.S);
+        assertEquals(Collections.singletonList(
+                "acquire-and-release 0 database/table1 S [database/table1, database/table1/1, database/table1/2]"
+        ), lockManager.log);
+        lockManager.clearLog();
+
+        /**
+         * Further requests for S on pages are then covered by the table lock.
+         */
+        LockUtil.ensureSufficientLockHeld(pageContexts[4], LockType.S);
+        assertEquals(Collections.emptyList(), lockManager.log);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAutoEscalateByFraction() {
+        /**
+         * With locks on at most half of table1's 8 pages allowed, requesting X
+         * on a fifth page should escalate table1 to X.
+         */
+        tableContext.setCapacity(pageContexts.length);
+        tableContext.setAutoEscalation(0, 0.5);
+        lockManager.startLog();
+        for (int i = 0; i < 4; ++i) {
+            LockUtil.ensureSufficientLockHeld(pageContexts[i], LockType.X);
+        }
+        assertEquals(4, tableContext.getNumChildren(transaction));
+        lockManager.clearLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[4], LockType.X);
+        assertEquals(Collections.singletonList(
+                "acquire-and-release 0 database/table1 X [database/table1, database/table1/0, " +
+                "database/table1/1, database/table1/2, database/table1/3]"
+        ), lockManager.log);
+        assertEquals(LockType.X, tableContext.getExplicitLockType(transaction));
+        assertEquals(0, tableContext.getNumChildren(transaction));
+    }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testAutoEscalateMixed() {
+        /**
+         * Escalating with S and X page locks gives X on table1, which also
+         * covers the requested S lock.
+         */
+        tableContext.setAutoEscalation(2, 0);
+        lockManager.startLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[1], LockType.S);
+        LockUtil.ensureSufficientLockHeld(pageContexts[2], LockType.X);
+        lockManager.clearLog();
+        LockUtil.ensureSufficientLockHeld(pageContexts[3], LockType.S);
+        assertEquals(Collections.singletonList(
+                "acquire-and-release 0 database/table1 X [database/table1, database/table1/1, database/table1/2]"
+        ), lockManager.log);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNoAutoEscalation() {
+        /**
+         * Without escalation thresholds, every page keeps its own lock.
+         */
+        tableContext.setCapacity(pageContexts.length);
+        lockManager.startLog();
+        for (LockContext pageContext : pageContexts) {
+            LockUtil.ensureSufficientLockHeld(pageContext, LockType.S);
+        }
+        assertEquals(pageContexts.length + 2, lockManager.log.size());
+        assertEquals(pageContexts.length, tableContext.getNumChildren(transaction));
+    }
+
+}
@@ -0,0 +1,72 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/**
+ * Measures page write, sequential read and random read throughput of the file
+ * channel based (DiskSpaceManagerImpl) and memory mapped (MappedDiskSpaceManager)
+ * disk space managers.
+ *
+ * Usage: DiskThroughputBenchmark [pages] [read passes]
+ */
+public class DiskThroughputBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 16384;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.println("pages=" + numPages + " (" + (numPages * (long) DiskSpaceManager.PAGE_SIZE >> 20) +
+                           "M), read passes=" + passes);
+        run("file channel", numPages, passes, DiskSpaceManagerImpl::new);
+        run("memory mapped", numPages, passes, MappedDiskSpaceManager::new);
+    }
+
+    private static void run(String name, int numPages, int passes,
+                            BiFunction<String, DummyRecoveryManager, DiskSpaceManager> factory) throws IOException {
+        File dir = Files.createTempDirectory("disk-bench").toFile();
+        DiskSpaceManager diskSpaceManager = factory.apply(dir.getAbsolutePath(), new DummyRecoveryManager());
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[numPages];
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+            buf[0] = (byte) i;
+            diskSpaceManager.writePage(pageNums[i], buf);
+        }
+        diskSpaceManager.sync();
+        double writeRate = numPages / ((System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (int p = 0; p < passes; ++p) {
+            for (long pageNum : pageNums) {
+                diskSpaceManager.readPage(pageNum, buf);
+            }
+        }
+        double scanRate = (long) numPages * passes / ((System.nanoTime() - start) / 1e9);
+
+        Random random = new Random(186);
+        start = System.nanoTime();
+        for (int i = 0; i < numPages * passes; ++i) {
+            diskSpaceManager.readPage(pageNums[random.nextInt(numPages)], buf);
+        }
+        double randomRate = (long) numPages * passes / ((System.nanoTime() - start) / 1e9);
+
+        System.out.printf("%-15s write %10.0f pages/s   sequential read %10.0f pages/s   random read %10.0f pages/s%n",
+                          name, writeRate, scanRate, randomRate);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+}
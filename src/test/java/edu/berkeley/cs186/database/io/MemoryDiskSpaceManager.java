@@ -105,6 +105,9 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
         System.arraycopy(buf, 0, pages.get(page), 0, DiskSpaceManager.PAGE_SIZE);
     }
 
+    @Override
+    public void sync() {}
+
     @Override
     public boolean pageAllocated(long page) {
         return pages.containsKey(page);
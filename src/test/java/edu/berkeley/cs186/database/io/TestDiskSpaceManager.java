@@ -21,14 +21,14 @@ public class TestDiskSpaceManager {
     public TemporaryFolder tempFolder = new TemporaryFolder();
 
     private DiskSpaceManager diskSpaceManager;
-    private Path managerRoot;
+    Path managerRoot;
 
     @Before
     public void beforeEach() throws IOException {
         managerRoot = tempFolder.newFolder("dsm-test").toPath();
     }
 
-    private DiskSpaceManager getDiskSpaceManager() {
+    DiskSpaceManager getDiskSpaceManager() {
         return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
     }
 
@@ -298,5 +298,45 @@ public class TestDiskSpaceManager {
         diskSpaceManager.freePart(partNum2);
         diskSpaceManager.close();
     }
-}
 
+    @Test
+    public void testDataWritesDeferSync() {
+        DiskSpaceManagerImpl diskSpaceManager = (DiskSpaceManagerImpl) getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(1);
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        long syncs = diskSpaceManager.getNumSyncs();
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < 10; ++i) {
+            buf[i] = (byte) i;
+            diskSpaceManager.writePage(pageNum, buf);
+        }
+        // data partition writes wait for sync
+        assertEquals(syncs, diskSpaceManager.getNumSyncs());
+
+        diskSpaceManager.sync();
+        assertEquals(syncs + 1, diskSpaceManager.getNumSyncs());
+        // nothing left to sync
+        diskSpaceManager.sync();
+        assertEquals(syncs + 1, diskSpaceManager.getNumSyncs());
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testLogWritesSyncImmediately() {
+        DiskSpaceManagerImpl diskSpaceManager = (DiskSpaceManagerImpl) getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(0);
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        long syncs = diskSpaceManager.getNumSyncs();
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < 10; ++i) {
+            buf[i] = (byte) i;
+            diskSpaceManager.writePage(pageNum, buf);
+        }
+        assertEquals(syncs + 10, diskSpaceManager.getNumSyncs());
+
+        diskSpaceManager.close();
+    }
+}
@@ -0,0 +1,43 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all of the disk space manager tests against the memory mapped backend.
+ */
+public class TestMappedDiskSpaceManager extends TestDiskSpaceManager {
+    @Override
+    DiskSpaceManager getDiskSpaceManager() {
+        return new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    @Test
+    public void testReadWriteAcrossSegments() {
+        DiskSpaceManager diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        int numPages = (int) (2 * MappedPartitionHandle.SEGMENT_SIZE / DiskSpaceManager.PAGE_SIZE) + 1;
+        long[] pageNums = new long[numPages];
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+            buf[0] = (byte) i;
+            buf[buf.length - 1] = (byte) (i >> 8);
+            diskSpaceManager.writePage(pageNums[i], buf);
+        }
+        diskSpaceManager.close();
+
+        // read back through the file channel based implementation
+        diskSpaceManager = new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < numPages; ++i) {
+            diskSpaceManager.readPage(pageNums[i], readbuf);
+            assertEquals((byte) i, readbuf[0]);
+            assertEquals((byte) (i >> 8), readbuf[readbuf.length - 1]);
+        }
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+}
@@ -0,0 +1,92 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures buffer pool throughput with an increasing number of client threads.
+ * Each thread repeatedly pins a random page of the working set, reads a few
+ * bytes from it, and unpins it. With a working set that fits in the buffer pool
+ * every fetch is a hit, which should scale with the number of cores; with a
+ * larger working set some fetches miss and evict.
+ *
+ * Usage: BufferPoolBenchmark [max threads] [seconds per run] [buffer pages]
+ */
+public class BufferPoolBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+                         Math.max(4, Runtime.getRuntime().availableProcessors());
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int bufferPages = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+        System.out.println("cores=" + Runtime.getRuntime().availableProcessors() +
+                           ", buffer=" + bufferPages + " pages, duration=" + seconds + "s");
+        for (int workingSet : new int[] {bufferPages / 2, bufferPages * 2}) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                run(threads, seconds, bufferPages, workingSet);
+            }
+        }
+    }
+
+    private static void run(int numThreads, int seconds, int bufferPages,
+                            int workingSet) throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("buffer-pool-bench").toFile();
+        DummyRecoveryManager recoveryManager = new DummyRecoveryManager();
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, bufferPages,
+                new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[workingSet];
+        for (int i = 0; i < workingSet; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        // warm up the pool
+        for (long pageNum : pageNums) {
+            bufferManager.fetchPageFrame(pageNum).unpin();
+        }
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        LongAdder fetches = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            threads.add(new Thread(() -> {
+                byte[] buf = new byte[8];
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!done.get()) {
+                    BufferFrame frame = bufferManager.fetchPageFrame(pageNums[random.nextInt(pageNums.length)]);
+                    try {
+                        frame.readBytes((short) 0, (short) buf.length, buf);
+                    } finally {
+                        frame.unpin();
+                    }
+                    fetches.increment();
+                }
+            }));
+        }
+        long ios = bufferManager.getNumIOs();
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        Thread.sleep(seconds * 1000L);
+        done.set(true);
+        for (Thread t : threads) t.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("working set=%6d pages, threads=%3d: %12.0f fetches/sec, %8d I/Os%n",
+                          workingSet, numThreads, fetches.sum() / elapsed, bufferManager.getNumIOs() - ios);
+
+        bufferManager.close();
+        diskSpaceManager.close();
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+}
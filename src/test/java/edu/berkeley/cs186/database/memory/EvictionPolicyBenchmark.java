@@ -0,0 +1,103 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Replays page access traces through a buffer manager with each eviction policy,
+ * and reports the hit ratio of each. The traces mix skewed point lookups on a set
+ * of index pages with sequential scans over a table much larger than the buffer.
+ *
+ * Usage: EvictionPolicyBenchmark [buffer pages] [accesses per trace]
+ */
+public class EvictionPolicyBenchmark {
+    private static final int INDEX_PAGES = 400;
+    private static final int TABLE_PAGES = 4000;
+
+    public static void main(String[] args) {
+        int bufferPages = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int numAccesses = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        List<String> names = new ArrayList<>();
+        List<Supplier<EvictionPolicy>> policies = new ArrayList<>();
+        names.add("LRU");
+        policies.add(LRUEvictionPolicy::new);
+        names.add("Clock");
+        policies.add(ClockEvictionPolicy::new);
+        names.add("2Q");
+        policies.add(TwoQueueEvictionPolicy::new);
+
+        System.out.println("buffer=" + bufferPages + " pages, index=" + INDEX_PAGES + " pages, table=" +
+                           TABLE_PAGES + " pages, " + numAccesses + " accesses per trace");
+        System.out.printf("%-36s", "trace");
+        for (String name : names) {
+            System.out.printf("%10s", name);
+        }
+        System.out.println();
+        for (double scanFraction : new double[] {0.0, 0.25, 0.5, 0.9}) {
+            long[] trace = mixedTrace(numAccesses, scanFraction, new Random(186));
+            System.out.printf("%-36s", Math.round(scanFraction * 100) + "% scan / " +
+                              Math.round((1 - scanFraction) * 100) + "% lookup");
+            for (Supplier<EvictionPolicy> policy : policies) {
+                System.out.printf("%9.1f%%", 100 * replay(trace, bufferPages, policy.get()));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Generates a trace of page numbers (within a single partition, numbered from 0): index
+     * pages are picked with a skew towards the lower numbered pages (the upper levels of the
+     * tree and the hot keys), and scans read all of the table pages in order.
+     */
+    private static long[] mixedTrace(int numAccesses, double scanFraction, Random random) {
+        long[] trace = new long[numAccesses];
+        int scanPos = -1;
+        for (int i = 0; i < numAccesses; ++i) {
+            if (scanPos < 0 && random.nextDouble() < scanFraction / TABLE_PAGES * 2) {
+                scanPos = 0;
+            }
+            if (scanPos >= 0 && random.nextDouble() < scanFraction) {
+                trace[i] = INDEX_PAGES + scanPos;
+                scanPos = scanPos + 1 == TABLE_PAGES ? -1 : scanPos + 1;
+            } else {
+                trace[i] = (long) (INDEX_PAGES * Math.pow(random.nextDouble(), 3));
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * @return fraction of the accesses in the trace that did not need a read from disk
+     */
+    private static double replay(long[] trace, int bufferPages, EvictionPolicy policy) {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                bufferPages, policy);
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[INDEX_PAGES + TABLE_PAGES];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        byte[] buf = new byte[8];
+        long startIOs = bufferManager.getNumIOs();
+        for (long page : trace) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNums[(int) page]);
+            try {
+                frame.readBytes((short) 0, (short) buf.length, buf);
+            } finally {
+                frame.unpin();
+            }
+        }
+        long reads = bufferManager.getNumIOs() - startIOs;
+        bufferManager.close();
+        diskSpaceManager.close();
+        return 1.0 - (double) reads / trace.length;
+    }
+}
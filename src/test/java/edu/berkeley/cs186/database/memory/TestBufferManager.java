@@ -4,15 +4,25 @@ import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -21,11 +31,21 @@ public class TestBufferManager {
     private DiskSpaceManager diskSpaceManager;
     private BufferManager bufferManager;
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Before
     public void beforeEach() {
         diskSpaceManager = new MemoryDiskSpaceManager();
-        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 5,
-                                              new ClockEvictionPolicy());
+        bufferManager = newBufferManager(diskSpaceManager, 5);
+    }
+
+    /**
+     * Creates the buffer manager under test; overridden to test other buffer configurations.
+     */
+    protected BufferManager newBufferManager(DiskSpaceManager diskSpaceManager, int bufferSize) {
+        return new BufferManager(diskSpaceManager, new DummyRecoveryManager(), bufferSize,
+                                 new ClockEvictionPolicy());
     }
 
     @After
@@ -320,6 +340,164 @@ public class TestBufferManager {
         assertTrue(frame7.isValid());
     }
 
+    @Test
+    public void testConcurrentFetch() throws IOException, InterruptedException {
+        // MemoryDiskSpaceManager is not thread safe, so use a real one
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(
+                tempFolder.newFolder().getAbsolutePath(), new DummyRecoveryManager());
+        // every thread pins one frame at a time, so there are always unpinned frames to evict
+        BufferManager bufferManager = newBufferManager(diskSpaceManager, 8);
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[16];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        // each thread increments a counter on random pages; a frame is latched while
+        // pinned, so no increment may be lost across hits, misses and evictions
+        int numThreads = 4;
+        int numOps = 4000;
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                try {
+                    byte[] counter = new byte[4];
+                    for (int i = 0; i < numOps; ++i) {
+                        long pageNum = pageNums[random.nextInt(pageNums.length)];
+                        BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+                        try {
+                            assertEquals(pageNum, frame.getPageNum());
+                            frame.readBytes((short) 0, (short) 4, counter);
+                            ByteBuffer.wrap(counter).putInt(0, ByteBuffer.wrap(counter).getInt() + 1);
+                            frame.writeBytes((short) 0, (short) 4, counter);
+                        } finally {
+                            frame.unpin();
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+
+        bufferManager.evictAll();
+        int total = 0;
+        byte[] page = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (long pageNum : pageNums) {
+            diskSpaceManager.readPage(pageNum, page);
+            total += ByteBuffer.wrap(page).getInt(BufferManager.RESERVED_SPACE);
+        }
+        assertEquals(numThreads * numOps, total);
+
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testPrefetch() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+
+        // read-ahead is disabled by default
+        bufferManager.prefetch(pageNum1);
+        assertEquals(0, bufferManager.getNumPrefetches());
+
+        bufferManager.setReadAhead(1);
+        bufferManager.prefetch(pageNum1);
+        waitForPrefetches(bufferManager, 1);
+        long numIOs = bufferManager.getNumIOs();
+        bufferManager.fetchPageFrame(pageNum1).unpin();
+        assertEquals(numIOs, bufferManager.getNumIOs());
+        assertEquals(1, bufferManager.getNumPrefetchHits());
+
+        // already loaded, nothing to read ahead
+        bufferManager.prefetch(pageNum1);
+        bufferManager.prefetch(pageNum2);
+        waitForPrefetches(bufferManager, 2);
+        bufferManager.evictAll();
+        assertEquals(2, bufferManager.getNumPrefetches());
+        assertEquals(1, bufferManager.getNumPrefetchHits());
+        assertEquals(1, bufferManager.getNumPrefetchesWasted());
+    }
+
+    /**
+     * Waits until the buffer manager has read ahead a certain number of pages.
+     */
+    static void waitForPrefetches(BufferManager bufferManager, long numPrefetches) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bufferManager.getNumPrefetches() < numPrefetches) {
+            assertTrue("timed out waiting for read-ahead", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testCleanPages() {
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] data = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        BufferFrame[] frames = new BufferFrame[4];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum);
+            frames[i].writeBytes((short) 0, (short) 4, data);
+        }
+        for (int i = 1; i < frames.length; ++i) {
+            frames[i].unpin();
+        }
+
+        // 4 of 5 frames are dirty: writing back 2 pages gets 3/5 of the frames clean
+        assertEquals(2, bufferManager.cleanPages(0.6));
+        assertEquals(0, bufferManager.cleanPages(0.6));
+
+        // the pinned frame is never written back
+        assertEquals(1, bufferManager.cleanPages(1.0));
+        List<Long> dirtyPages = new ArrayList<>();
+        bufferManager.iterPageNums((pageNum, dirty) -> {
+            if (dirty) {
+                dirtyPages.add(pageNum);
+            }
+        });
+        assertEquals(Arrays.asList(frames[0].getPageNum()), dirtyPages);
+        assertEquals(3, bufferManager.getNumCleanerWrites());
+
+        byte[] page = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(frames[1].getPageNum(), page);
+        assertArrayEquals(data, Arrays.copyOfRange(page, BufferManager.RESERVED_SPACE,
+                          BufferManager.RESERVED_SPACE + 4));
+        frames[0].unpin();
+    }
+
+    @Test
+    public void testPageCleaner() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] data = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        for (int i = 0; i < 4; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 0, (short) 4, data);
+            frame.unpin();
+        }
+
+        bufferManager.setPageCleaner(1.0, 1, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bufferManager.getNumCleanerWrites() < 4) {
+            assertTrue("timed out waiting for page cleaner", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        bufferManager.setPageCleaner(0, 1, TimeUnit.MILLISECONDS);
+        bufferManager.iterPageNums((pageNum, dirty) -> assertFalse(dirty));
+    }
+
     @Test(expected = PageException.class)
     public void testMissingPart() {
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(0, 0));
@@ -32,7 +32,7 @@ public class TestEvictionPolicy {
 
         @Override
         long getPageNum() {
-            return 0;
+            return index;
         }
 
         @Override
@@ -47,6 +47,18 @@ public class TestEvictionPolicy {
         void writeBytes(short position, short num, byte[] buf) {
         }
 
+        @Override
+        void applyBytes(short position, short num, byte[] buf) {
+        }
+
+        @Override
+        void insertRecord(short bitmapOffset, short entryNum, short offset, byte[] record) {
+        }
+
+        @Override
+        void deleteRecord(short bitmapOffset, short entryNum) {
+        }
+
         @Override
         long getPageLSN() {
             return 0;
@@ -193,4 +205,62 @@ public class TestEvictionPolicy {
         assertEquals(frames[2], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[2], placeholderFrames[3]}));
         policy.cleanup(frames[2]);
     }
+
+    @Test
+    public void testTwoQueuePolicy() {
+        // 4 frames: A1in is evicted from first while it holds more than 1 frame,
+        // and A1out remembers 2 page numbers
+        EvictionPolicy policy = new TwoQueueEvictionPolicy(0.25, 0.5);
+        BufferFrame[] pool = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        policy.init(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+        policy.init(frames[2]); policy.hit(frames[2]);
+        policy.init(frames[3]); policy.hit(frames[3]);
+
+        // A1in is FIFO: hits while in A1in don't matter
+        policy.hit(frames[0]);
+        assertEquals(frames[0], policy.evict(pool));
+        policy.cleanup(frames[0]);
+        assertEquals(1, ((TwoQueueEvictionPolicy) policy).getNumGhostPages());
+
+        // page 0 is loaded again while remembered, so it goes to Am
+        policy.init(frames[0]); policy.hit(frames[0]);
+        frames[1].pin();
+        assertEquals(frames[2], policy.evict(pool));
+        policy.cleanup(frames[2]);
+        frames[1].unpin();
+
+        // a scan of new pages only cycles through A1in
+        for (int i = 4; i < 8; ++i) {
+            policy.init(frames[i]); policy.hit(frames[i]);
+            BufferFrame evicted = policy.evict(pool);
+            assertTrue(evicted != frames[0]);
+            policy.cleanup(evicted);
+        }
+        assertEquals(2, ((TwoQueueEvictionPolicy) policy).getNumGhostPages());
+
+        // page 4 is still remembered, so it goes to Am as well
+        policy.init(frames[4]); policy.hit(frames[4]);
+        policy.hit(frames[0]);
+        assertEquals(frames[6], policy.evict(pool));
+        policy.cleanup(frames[6]);
+
+        // A1in is down to its share, so Am is evicted from (least recently used first)
+        assertEquals(frames[4], policy.evict(pool));
+        policy.cleanup(frames[4]);
+        assertEquals(frames[0], policy.evict(pool));
+
+        // everything pinned
+        frames[0].pin();
+        frames[7].pin();
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(pool);
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        frames[0].unpin();
+        frames[7].unpin();
+        assertTrue(exceptionThrown);
+    }
 }
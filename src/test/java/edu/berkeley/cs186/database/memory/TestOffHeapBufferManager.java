@@ -0,0 +1,65 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all of the buffer manager tests with frames backed by direct (off-heap) memory.
+ */
+public class TestOffHeapBufferManager extends TestBufferManager {
+    @Override
+    protected BufferManager newBufferManager(DiskSpaceManager diskSpaceManager, int bufferSize) {
+        return new BufferManager(diskSpaceManager, new DummyRecoveryManager(), bufferSize,
+                                 new ClockEvictionPolicy(), true);
+    }
+
+    @Test
+    public void testOffHeap() {
+        BufferManager bufferManager = newBufferManager(new DiskSpaceManagerImpl(
+                tempFolder.getRoot().getAbsolutePath(), new DummyRecoveryManager()), 1);
+        assertTrue(bufferManager.isOffHeap());
+        bufferManager.close();
+    }
+
+    @Test
+    public void testReloadFromFile() throws IOException {
+        // goes through the direct buffer read/write path of the file backed disk space manager
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(
+                tempFolder.newFolder().getAbsolutePath(), new DummyRecoveryManager());
+        BufferManager bufferManager = newBufferManager(diskSpaceManager, 2);
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[4];
+
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum);
+        frame1.writeBytes((short) 4000, (short) 4, expected);
+        frame1.setPageLSN(1234L);
+        frame1.unpin();
+
+        bufferManager.evictAll();
+        assertFalse(frame1.isValid());
+
+        byte[] page = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(frame1.getPageNum(), page);
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(expected[i], page[BufferManager.RESERVED_SPACE + 4000 + i]);
+        }
+
+        frame1 = bufferManager.fetchPageFrame(frame1.getPageNum());
+        frame1.readBytes((short) 4000, (short) 4, actual);
+        assertEquals(1234L, frame1.getPageLSN());
+        frame1.unpin();
+
+        assertArrayEquals(expected, actual);
+
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+}
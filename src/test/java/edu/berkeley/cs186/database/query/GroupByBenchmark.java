@@ -0,0 +1,78 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Measures the time to run
+ *   SELECT g, COUNT(*), SUM(score), MAX(id) FROM t GROUP BY g
+ * over a table of (id, g, name, score) rows with an increasing number of
+ * distinct groups, with recovery enabled. The work memory is kept small, so
+ * that the larger group counts do not fit in memory.
+ *
+ * Usage: GroupByBenchmark [rows] [work mem pages]
+ */
+public class GroupByBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int workMem = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        System.out.println("rows=" + numRows + ", work mem=" + workMem + " pages");
+        for (int numGroups = 10; numGroups <= numRows; numGroups *= 10) {
+            File dir = Files.createTempDirectory("group-by-bench").toFile();
+            Database db = new Database(dir.getAbsolutePath(), 1024, new DummyLockManager(),
+                                       new ClockEvictionPolicy(), true);
+            db.setWorkMem(workMem);
+            db.waitAllTransactions();
+            List<Record> rows = new ArrayList<>(numRows);
+            for (int i = 0; i < numRows; ++i) {
+                rows.add(new Record(i, i % numGroups, "name" + i, i * 0.5f));
+            }
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(new Schema()
+                        .add("id", Type.intType())
+                        .add("g", Type.intType())
+                        .add("name", Type.stringType(20))
+                        .add("score", Type.floatType()), "t");
+                t.bulkLoad("t", rows.iterator());
+            }
+
+            long start = System.nanoTime();
+            int numResults = 0;
+            try (Transaction t = db.beginTransaction()) {
+                QueryPlan query = t.query("t");
+                query.groupBy("g");
+                query.project("g", "COUNT(*)", "SUM(score)", "MAX(id)");
+                Iterator<Record> results = query.execute();
+                while (results.hasNext()) {
+                    results.next();
+                    numResults++;
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e6;
+            System.out.printf("groups=%7d: %10.1f ms (%d results)%n", numGroups, elapsed, numResults);
+            db.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,83 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the time to plan (without executing)
+ *   SELECT * FROM t0 INNER JOIN t1 ON t0.id = t1.id INNER JOIN t2 ON t0.id = t2.id ...
+ * with an increasing number of joined tables of different sizes. The joins
+ * form a star around t0, so that planning doesn't have to materialize the
+ * result of any join.
+ *
+ * Usage: PlanningBenchmark [max tables] [repetitions]
+ */
+public class PlanningBenchmark {
+    public static void main(String[] args) throws IOException {
+        int maxTables = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File dir = Files.createTempDirectory("planning-bench").toFile();
+        Database db = new Database(dir.getAbsolutePath(), 1024, new DummyLockManager(),
+                                   new ClockEvictionPolicy(), false);
+        db.setWorkMem(8);
+        db.waitAllTransactions();
+        try (Transaction t = db.beginTransaction()) {
+            for (int i = 0; i < maxTables; ++i) {
+                String tableName = "t" + i;
+                t.createTable(new Schema()
+                        .add("id", Type.intType())
+                        .add("name", Type.stringType(20)), tableName);
+                List<Record> rows = new ArrayList<>();
+                for (int j = 0; j < 500 * (i + 1); ++j) {
+                    rows.add(new Record(j, "name" + j));
+                }
+                t.bulkLoad(tableName, rows.iterator());
+                t.getTransactionContext().getTable(tableName).buildStatistics(10);
+            }
+        }
+
+        System.out.println("repetitions=" + repetitions);
+        for (int numTables = 2; numTables <= maxTables; ++numTables) {
+            try (Transaction t = db.beginTransaction()) {
+                // warm up
+                plan(t, numTables);
+                long start = System.nanoTime();
+                for (int i = 0; i < repetitions; ++i) {
+                    plan(t, numTables);
+                }
+                double elapsed = (System.nanoTime() - start) / 1e6 / repetitions;
+                System.out.printf("tables=%2d: %10.2f ms per plan%n", numTables, elapsed);
+            }
+        }
+        db.close();
+        deleteRecursively(dir);
+    }
+
+    private static void plan(Transaction t, int numTables) {
+        QueryPlan query = t.query("t0");
+        for (int i = 1; i < numTables; ++i) {
+            query.join("t" + i, "t0.id", "t" + i + ".id");
+        }
+        query.plan();
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        f.delete();
+    }
+}
@@ -9,8 +9,11 @@ import edu.berkeley.cs186.database.categories.Proj3Part2Tests;
 import edu.berkeley.cs186.database.categories.Proj3Tests;
 import edu.berkeley.cs186.database.categories.PublicTests;
 import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.query.join.SHJOperator;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import org.junit.After;
 import org.junit.Before;
@@ -23,8 +26,12 @@ import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -141,4 +148,112 @@ public class TestBasicQuery {
         }
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupBySpills() {
+        this.db.setWorkMem(3); // B=3
+        try(Transaction transaction = db.beginTransaction()) {
+            // creates 1000 records in 500 groups, more than the 400 that fit
+            // in B-2 pages
+            int numGroups = 500;
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 2 * numGroups; ++i) {
+                records.add(new Record(false, i % numGroups, "!", (float) i));
+            }
+            transaction.bulkLoad("table", records.iterator());
+
+            // SELECT int, COUNT(*), SUM(float) + 1, MAX(int) * 2 FROM table GROUP BY int;
+            QueryPlan query = transaction.query("table");
+            query.groupBy("int");
+            query.project("int", "COUNT(*)", "SUM(float) + 1", "MAX(int) * 2");
+            Iterator<Record> queryOutput = query.execute();
+
+            Set<Integer> seen = new HashSet<>();
+            while (queryOutput.hasNext()) {
+                Record r = queryOutput.next();
+                int group = r.getValue(0).getInt();
+                assertTrue(seen.add(group));
+                assertEquals(new IntDataBox(2), r.getValue(1));
+                assertEquals(2 * group + numGroups + 1, r.getValue(2).getFloat(), 0.001);
+                assertEquals(new IntDataBox(2 * group), r.getValue(3));
+            }
+            assertEquals(numGroups, seen.size());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testVectorizedMatchesRowMode() {
+        try(Transaction transaction = db.beginTransaction()) {
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) {
+                records.add(new Record(i % 3 == 0, i % 100, "" + (char) ('a' + i % 7), i * 0.5f));
+            }
+            transaction.bulkLoad("table", records.iterator());
+
+            // SELECT string, int FROM table WHERE int < 50 AND float >= 100;
+            QueryPlan query = transaction.query("table");
+            query.select("int", PredicateOperator.LESS_THAN, 50);
+            query.select("float", PredicateOperator.GREATER_THAN_EQUALS, 100.0f);
+            query.project("string", "int");
+            List<Record> expected = toList(query.execute());
+            assertEquals(400, expected.size());
+            assertEquals(expected, toList(query.executeVectorized()));
+
+            // SELECT COUNT(*), SUM(int), MIN(float), MAX(float), AVG(int),
+            //        SUM(float) * 2, MAX(int + 1), FIRST(string)
+            // FROM table WHERE bool = true;
+            query = transaction.query("table");
+            query.select("bool", PredicateOperator.EQUALS, true);
+            query.project("COUNT(*)", "SUM(int)", "MIN(float)", "MAX(float)", "AVG(int)",
+                          "SUM(float) * 2", "MAX(int + 1)", "FIRST(string)");
+            expected = toList(query.execute());
+            assertEquals(1, expected.size());
+            assertEquals(new IntDataBox(334), expected.get(0).getValue(0));
+            assertEquals(expected, toList(query.executeVectorized()));
+
+            // aggregates over no records have no result
+            query = transaction.query("table");
+            query.select("int", PredicateOperator.GREATER_THAN, 100);
+            query.project("COUNT(*)");
+            assertFalse(query.execute().hasNext());
+            assertFalse(query.executeVectorized().hasNext());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testVectorizedHashJoin() {
+        this.db.setWorkMem(3); // B=3
+        try(Transaction transaction = db.beginTransaction()) {
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 40; ++i) {
+                records.add(new Record(false, i % 10, "!", (float) i));
+            }
+            transaction.bulkLoad("table", records.iterator());
+
+            // every left record matches 2 right records
+            QueryOperator left = new SequentialScanOperator(transaction.getTransactionContext(), "table");
+            QueryOperator right = new SelectOperator(
+                    new SequentialScanOperator(transaction.getTransactionContext(), "table"),
+                    "float", PredicateOperator.LESS_THAN, new FloatDataBox(20));
+            QueryOperator join = new SHJOperator(left, right, "int", "int", transaction.getTransactionContext());
+            List<Record> expected = toList(join.iterator());
+            assertEquals(40 * 2, expected.size());
+            // in row mode, batches are read from iterator()
+            join.setVectorized(false);
+            assertEquals(expected, toList(RecordBatch.toRecords(join.batchIterator())));
+
+            join = new SHJOperator(left, right, "int", "int", transaction.getTransactionContext());
+            assertEquals(expected, toList(RecordBatch.toRecords(join.batchIterator())));
+            // once joined, both iterators read the joined records
+            assertEquals(expected, toList(join.iterator()));
+        }
+    }
+
+    private static List<Record> toList(Iterator<Record> records) {
+        List<Record> list = new ArrayList<>();
+        records.forEachRemaining(list::add);
+        return list;
+    }
 }
@@ -10,6 +10,8 @@ import edu.berkeley.cs186.database.categories.Proj3Tests;
 import edu.berkeley.cs186.database.categories.PublicTests;
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.query.join.BNLJOperator;
+import edu.berkeley.cs186.database.query.join.GHJOperator;
+import edu.berkeley.cs186.database.query.join.SortMergeOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import org.junit.After;
@@ -181,6 +183,78 @@ public class TestOptimizationJoins {
         }
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testJoinTypeHash() {
+        try(Transaction transaction = this.db.beginTransaction()) {
+            loadTables(transaction, 12000);
+
+            // SELECT * FROM table1 INNER JOIN table2 ON table1.int = table2.int
+            // Both tables are 30 pages, so with B=5:
+            // - (table1 BNLJ table2), cost=330
+            // - (table1 GHJ table2), cost=300
+            // - (table1 SMJ table2), cost=420
+            QueryPlan query = transaction.query("table1");
+            query.join("table2", "table1.int", "table2.int");
+            Map<Set<String>, QueryOperator> pass1Map = new HashMap<>();
+            pass1Map.put(Collections.singleton("table1"), query.minCostSingleAccess("table1"));
+            pass1Map.put(Collections.singleton("table2"), query.minCostSingleAccess("table2"));
+
+            Map<Set<String>, QueryOperator> pass2Map = query.minCostJoins(pass1Map, pass1Map);
+            QueryOperator op12 = pass2Map.get(new HashSet<>(Arrays.asList("table1", "table2")));
+            assertTrue(op12 instanceof GHJOperator);
+            assertEquals(300, op12.estimateIOCost());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testJoinTypeSortedForOrderBy() {
+        this.db.setWorkMem(4); // B=4
+        try(Transaction transaction = this.db.beginTransaction()) {
+            loadTables(transaction, 2400);
+
+            // SELECT * FROM table1 INNER JOIN table2 ON table1.int = table2.int
+            // ORDER BY table1.int
+            // Both tables are 6 pages, so with B=4:
+            // - (table1 BNLJ table2), cost=24, and sorting its output costs 48
+            // - (table1 SMJ table2), cost=60, and is already sorted
+            QueryPlan query = transaction.query("table1");
+            query.join("table2", "table1.int", "table2.int");
+            query.sort("table1.int");
+            Map<Set<String>, QueryOperator> pass1Map = new HashMap<>();
+            pass1Map.put(Collections.singleton("table1"), query.minCostSingleAccess("table1"));
+            pass1Map.put(Collections.singleton("table2"), query.minCostSingleAccess("table2"));
+            QueryOperator op12 = query.minCostJoins(pass1Map, pass1Map).values().iterator().next();
+            assertTrue(op12 instanceof BNLJOperator);
+            assertEquals(24, op12.estimateIOCost());
+
+            Iterator<Record> records = query.execute();
+            QueryOperator finalOperator = query.getFinalOperator();
+            assertTrue(finalOperator instanceof SortMergeOperator);
+            assertEquals(60, finalOperator.estimateIOCost());
+
+            int count = 0;
+            while (records.hasNext()) {
+                assertEquals(count, records.next().getValue(1).getInt());
+                count++;
+            }
+            assertEquals(2400, count);
+        }
+    }
+
+    private void loadTables(Transaction transaction, int numRecords) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            records.add(new Record(false, i, "!", 0.0f));
+        }
+        transaction.bulkLoad("table1", records.iterator());
+        Collections.reverse(records);
+        transaction.bulkLoad("table2", records.iterator());
+        transaction.getTransactionContext().getTable("table1").buildStatistics(10);
+        transaction.getTransactionContext().getTable("table2").buildStatistics(10);
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testJoinTypeB() {
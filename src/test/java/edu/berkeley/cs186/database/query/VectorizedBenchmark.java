@@ -0,0 +1,137 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compares running queries a record at a time (QueryPlan.execute) and a batch
+ * at a time (QueryPlan.executeVectorized) over a table shaped like the
+ * lineitem table of TPC-H, with the scan, filter and aggregate queries
+ *   Q6:   SELECT SUM(extendedprice), COUNT(*) FROM lineitem
+ *         WHERE shipdate >= 365 AND shipdate < 730 AND discount >= 0.05
+ *               AND discount <= 0.07 AND quantity < 24
+ *   agg:  SELECT COUNT(*), SUM(quantity), MIN(extendedprice), MAX(extendedprice),
+ *                AVG(discount) FROM lineitem
+ *   proj: SELECT orderkey, extendedprice FROM lineitem WHERE quantity < 10
+ *   expr: SELECT SUM(extendedprice * (1 - discount)) FROM lineitem WHERE quantity < 24
+ * The last one evaluates its expression a record at a time in both modes.
+ * Times are the average over the repetitions, after one run to warm up.
+ *
+ * Usage: VectorizedBenchmark [rows] [repetitions]
+ */
+public class VectorizedBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File dir = Files.createTempDirectory("vectorized-bench").toFile();
+        Database db = new Database(dir.getAbsolutePath(), 8192, new DummyLockManager(),
+                                   new ClockEvictionPolicy(), false);
+        db.setWorkMem(64);
+        db.waitAllTransactions();
+        Random random = new Random(186);
+        List<Record> rows = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; ++i) {
+            rows.add(new Record(i / 4, random.nextInt(20000), 1 + random.nextInt(50),
+                                900 + random.nextInt(100000) / 100f, random.nextInt(11) / 100f,
+                                random.nextInt(7 * 365), "NRA".substring(i % 3, i % 3 + 1)));
+        }
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(new Schema()
+                    .add("orderkey", Type.intType())
+                    .add("partkey", Type.intType())
+                    .add("quantity", Type.intType())
+                    .add("extendedprice", Type.floatType())
+                    .add("discount", Type.floatType())
+                    .add("shipdate", Type.intType())
+                    .add("returnflag", Type.stringType(1)), "lineitem");
+            t.bulkLoad("lineitem", rows.iterator());
+        }
+
+        System.out.println("rows=" + numRows + ", repetitions=" + repetitions);
+        run(db, "Q6", repetitions, t -> {
+            QueryPlan query = t.query("lineitem");
+            query.select("shipdate", PredicateOperator.GREATER_THAN_EQUALS, 365);
+            query.select("shipdate", PredicateOperator.LESS_THAN, 730);
+            query.select("discount", PredicateOperator.GREATER_THAN_EQUALS, 0.05f);
+            query.select("discount", PredicateOperator.LESS_THAN_EQUALS, 0.07f);
+            query.select("quantity", PredicateOperator.LESS_THAN, 24);
+            query.project("SUM(extendedprice)", "COUNT(*)");
+            return query;
+        });
+        run(db, "agg", repetitions, t -> {
+            QueryPlan query = t.query("lineitem");
+            query.project("COUNT(*)", "SUM(quantity)", "MIN(extendedprice)", "MAX(extendedprice)",
+                          "AVG(discount)");
+            return query;
+        });
+        run(db, "proj", repetitions, t -> {
+            QueryPlan query = t.query("lineitem");
+            query.select("quantity", PredicateOperator.LESS_THAN, 10);
+            query.project("orderkey", "extendedprice");
+            return query;
+        });
+        run(db, "expr", repetitions, t -> {
+            QueryPlan query = t.query("lineitem");
+            query.select("quantity", PredicateOperator.LESS_THAN, 24);
+            query.project("SUM(extendedprice * (1 - discount))");
+            return query;
+        });
+        db.close();
+        deleteRecursively(dir);
+    }
+
+    private static void run(Database db, String name, int repetitions, Function<Transaction, QueryPlan> query) {
+        try (Transaction t = db.beginTransaction()) {
+            double rowTime = time(t, query, false, repetitions);
+            double batchTime = time(t, query, true, repetitions);
+            System.out.printf("%-5s rows: %9.1f ms, batches: %9.1f ms (%.2fx)%n",
+                              name, rowTime, batchTime, rowTime / batchTime);
+        }
+    }
+
+    private static double time(Transaction t, Function<Transaction, QueryPlan> query,
+                               boolean vectorized, int repetitions) {
+        int numResults = execute(query.apply(t), vectorized);
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; ++i) {
+            if (execute(query.apply(t), vectorized) != numResults) {
+                throw new IllegalStateException("different number of results");
+            }
+        }
+        return (System.nanoTime() - start) / 1e6 / repetitions;
+    }
+
+    private static int execute(QueryPlan query, boolean vectorized) {
+        Iterator<Record> results = vectorized ? query.executeVectorized() : query.execute();
+        int numResults = 0;
+        while (results.hasNext()) {
+            results.next();
+            numResults++;
+        }
+        return numResults;
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        f.delete();
+    }
+}
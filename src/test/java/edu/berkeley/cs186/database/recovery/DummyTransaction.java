@@ -108,6 +108,11 @@ class DummyTransaction extends Transaction {
     @Override
     public void insert(String tableName, Record values) {}
 
+    @Override
+    public int bulkLoad(String tableName, Iterator<Record> records) {
+        return 0;
+    }
+
     @Override
     public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {}
 
@@ -210,6 +215,11 @@ class DummyTransaction extends Transaction {
             return null;
         }
 
+        @Override
+        public int bulkLoad(String tableName, Iterator<Record> records) {
+            return 0;
+        }
+
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
             return null;
@@ -0,0 +1,76 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares commit throughput with and without group commit. Each committer
+ * thread repeatedly appends a commit record and waits for it to be flushed,
+ * against a real on-disk log partition (so every log flush is an fsync).
+ *
+ * Usage: GroupCommitBenchmark [threads] [seconds] [max batch size] [max wait (us)]
+ */
+public class GroupCommitBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : numThreads;
+        long maxWaitMicros = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+
+        System.out.println("threads=" + numThreads + ", duration=" + seconds + "s");
+        run("per-commit flush", numThreads, seconds, 1, 0);
+        run("group commit (batch<=" + maxBatchSize + ", wait<=" + maxWaitMicros + "us)",
+            numThreads, seconds, maxBatchSize, maxWaitMicros);
+    }
+
+    private static void run(String name, int numThreads, int seconds, int maxBatchSize,
+                            long maxWaitMicros) throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("group-commit-bench").toFile();
+        DummyRecoveryManager recoveryManager = new DummyRecoveryManager();
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+        diskSpaceManager.allocPart(0);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 1024,
+                new ClockEvictionPolicy());
+        LogManager logManager = new LogManager(bufferManager);
+        logManager.setGroupCommit(maxBatchSize, maxWaitMicros, TimeUnit.MICROSECONDS);
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicLong transNums = new AtomicLong(0);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            threads.add(new Thread(() -> {
+                while (!done.get()) {
+                    long LSN = logManager.appendToLog(new CommitTransactionLogRecord(transNums.incrementAndGet(), 0));
+                    logManager.flushCommit(LSN);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        Thread.sleep(seconds * 1000L);
+        done.set(true);
+        for (Thread t : threads) t.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        LogManager.CommitStats stats = logManager.getCommitStats();
+        System.out.printf("%-50s %10.0f commits/sec  (%s)%n", name, stats.getNumCommits() / elapsed, stats);
+
+        logManager.close();
+        bufferManager.close();
+        diskSpaceManager.close();
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,84 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures log append throughput with an increasing number of threads. Each thread
+ * repeatedly appends a small page update record, without waiting for it to be flushed,
+ * against a real on-disk log partition; the log is flushed (as a commit would) every
+ * 1000 records per thread.
+ *
+ * Usage: LogAppendBenchmark [max threads] [seconds] [record size]
+ */
+public class LogAppendBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+                         Math.max(8, Runtime.getRuntime().availableProcessors());
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int recordSize = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.println("cores=" + Runtime.getRuntime().availableProcessors() + ", duration=" + seconds +
+                           "s, record size=" + recordSize);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(threads, seconds, recordSize);
+        }
+    }
+
+    private static void run(int numThreads, int seconds, int recordSize) throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("log-append-bench").toFile();
+        DummyRecoveryManager recoveryManager = new DummyRecoveryManager();
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+        diskSpaceManager.allocPart(0);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 1024,
+                new ClockEvictionPolicy());
+        LogManager logManager = new LogManager(bufferManager);
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicLong numAppends = new AtomicLong(0);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            final long transNum = i + 1;
+            threads.add(new Thread(() -> {
+                byte[] before = new byte[recordSize / 2];
+                byte[] after = new byte[recordSize / 2];
+                long prevLSN = 0;
+                long n = 0;
+                while (!done.get()) {
+                    after[(int) (n % after.length)] = (byte) n;
+                    prevLSN = logManager.appendToLog(new UpdatePageLogRecord(transNum, 10000000001L + n % 100,
+                                                     prevLSN, (short) 0, before, after));
+                    if (++n % 1000 == 0) {
+                        logManager.flushToLSN(prevLSN);
+                    }
+                }
+                numAppends.addAndGet(n);
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        Thread.sleep(seconds * 1000L);
+        done.set(true);
+        for (Thread t : threads) t.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("threads=%3d: %10.0f appends/sec%n", numThreads, numAppends.get() / elapsed);
+
+        logManager.close();
+        bufferManager.close();
+        diskSpaceManager.close();
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,149 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures the size of the log and restart recovery time with the usual log record
+ * encoding, the compact encoding, and the compact encoding with compression. For each,
+ * builds a synthetic log of small committed transactions that never made it to disk:
+ * mostly record inserts and deletes and small page updates, some page images of new
+ * pages (which are mostly zeros), and the odd large page write. Then crashes, and
+ * restarts the crashed database.
+ *
+ * Usage: LogEncodingBenchmark [data pages] [transactions] [buffer pages]
+ */
+public class LogEncodingBenchmark {
+    // a table of (int, string(20), float) records, with a bitmap of 128 slots
+    private static final int RECORD_SIZE = 28;
+    private static final int BITMAP_SIZE = 16;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numTransactions = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int bufferPages = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+        System.out.println("pages=" + numPages + ", transactions=" + numTransactions +
+                           ", buffer=" + bufferPages + " pages");
+        String[] modes = {"standard", "compact", "compressed"};
+        for (int mode = 0; mode < modes.length; ++mode) {
+            File dir = Files.createTempDirectory("log-encoding-bench").toFile();
+            long start = System.nanoTime();
+            buildLog(dir, numPages, numTransactions, bufferPages, mode > 0, mode > 1);
+            long logged = System.nanoTime();
+            long logBytes = new File(dir, "0").length();
+
+            ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+            DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+            BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, bufferPages,
+                    new ClockEvictionPolicy());
+            recoveryManager.setManagers(diskSpaceManager, bufferManager);
+
+            long restart = System.nanoTime();
+            recoveryManager.restartAnalysis();
+            long analysisEnd = System.nanoTime();
+            recoveryManager.restartRedo();
+            long redoEnd = System.nanoTime();
+            System.out.printf("%-10s log %8d KB, logging %8.1f ms, analysis %8.1f ms, redo %8.1f ms%n",
+                              modes[mode], logBytes / 1024, (logged - start) / 1e6,
+                              (analysisEnd - restart) / 1e6, (redoEnd - analysisEnd) / 1e6);
+
+            bufferManager.close();
+            diskSpaceManager.close();
+            DummyTransaction.cleanupTransactions();
+            delete(dir);
+        }
+    }
+
+    private static void buildLog(File dir, int numPages, int numTransactions, int bufferPages,
+                                 boolean compact, boolean compress) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, bufferPages,
+                new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        int partNum = diskSpaceManager.allocPart();
+        for (int i = 0; i < numPages; ++i) {
+            diskSpaceManager.allocPage(partNum);
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        recoveryManager.setCompactLogEncoding(compact, compress);
+
+        LogManager logManager = recoveryManager.logManager;
+        Random random = new Random(186);
+        int id = 0;
+        for (long transNum = 1; transNum <= numTransactions; ++transNum) {
+            long prevLSN = 0;
+            for (int i = 0; i < 5; ++i) {
+                long pageNum = DiskSpaceManager.getVirtualPageNum(partNum, random.nextInt(numPages));
+                short entryNum = (short) random.nextInt(BITMAP_SIZE * 8);
+                short offset = (short) (BITMAP_SIZE + entryNum * RECORD_SIZE);
+                LogRecord record;
+                int kind = random.nextInt(100);
+                if (kind < 50) {
+                    record = new InsertRecordLogRecord(transNum, pageNum, prevLSN, (short) 0, entryNum, offset,
+                                                       new byte[0], record(id++, random));
+                } else if (kind < 70) {
+                    record = new DeleteRecordLogRecord(transNum, pageNum, prevLSN, (short) 0, entryNum);
+                } else if (kind < 95) {
+                    // an update of one field of a record
+                    byte[] before = new byte[4];
+                    byte[] after = new byte[4];
+                    random.nextBytes(before);
+                    random.nextBytes(after);
+                    record = new UpdatePageLogRecord(transNum, pageNum, prevLSN, (short) (offset + 24),
+                                                     before, after);
+                } else if (kind < 99) {
+                    // the first records written to a new page
+                    byte[] image = new byte[BITMAP_SIZE + 4 * RECORD_SIZE];
+                    image[0] = 0x0F;
+                    for (int j = 0; j < 4; ++j) {
+                        System.arraycopy(record(id++, random), 0, image, BITMAP_SIZE + j * RECORD_SIZE, RECORD_SIZE);
+                    }
+                    record = new PageImageLogRecord(transNum, pageNum, prevLSN, (short) 0, image);
+                } else {
+                    // a large write, such as a page of an index being split
+                    byte[] before = new byte[BufferManager.EFFECTIVE_PAGE_SIZE / 2 - 100];
+                    byte[] after = new byte[before.length];
+                    for (int j = 0; j + 8 <= after.length; j += 8) {
+                        ByteBuffer.wrap(before).position(j).putLong(id + j);
+                        ByteBuffer.wrap(after).position(j).putLong(id + j + 7);
+                    }
+                    record = new UpdatePageLogRecord(transNum, pageNum, prevLSN, (short) 0, before, after);
+                }
+                prevLSN = logManager.appendToLog(record);
+            }
+            prevLSN = logManager.appendToLog(new CommitTransactionLogRecord(transNum, prevLSN));
+            logManager.appendToLog(new EndTransactionLogRecord(transNum, prevLSN));
+        }
+
+        // crash: the log is on disk, none of the changes are
+        logManager.close();
+        bufferManager.close();
+        diskSpaceManager.close();
+        DummyTransaction.cleanupTransactions();
+    }
+
+    // the bytes of the record (id, "name<id>", score)
+    private static byte[] record(int id, Random random) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        byte[] name = ("name" + id).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer.wrap(bytes).putInt(id).put(name).position(24).putFloat(random.nextFloat());
+        return bytes;
+    }
+
+    private static void delete(File dir) {
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,103 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.EndTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Measures restart recovery time with an increasing number of redo threads. Builds
+ * a synthetic log of committed updates to random pages that never made it to disk
+ * (so every update has to be redone), crashes, and then restarts a copy of the crashed
+ * database for each number of redo threads. The buffer is smaller than the set of
+ * pages updated, so redo also has to read and write back pages as it goes.
+ *
+ * Usage: RestartBenchmark [data pages] [updates] [max redo threads] [buffer pages]
+ */
+public class RestartBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numUpdates = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) :
+                         Math.max(4, Runtime.getRuntime().availableProcessors());
+        int bufferPages = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        File crashed = Files.createTempDirectory("restart-bench").toFile();
+        buildLog(crashed, numPages, numUpdates, bufferPages);
+        System.out.println("cores=" + Runtime.getRuntime().availableProcessors() + ", pages=" + numPages +
+                           ", updates=" + numUpdates + ", buffer=" + bufferPages + " pages");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            File dir = Files.createTempDirectory("restart-bench").toFile();
+            for (File f : crashed.listFiles()) {
+                Files.copy(f.toPath(), new File(dir, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create, threads);
+            DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+            BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, bufferPages,
+                    new ClockEvictionPolicy());
+            recoveryManager.setManagers(diskSpaceManager, bufferManager);
+
+            long start = System.nanoTime();
+            recoveryManager.restartAnalysis();
+            long analysisEnd = System.nanoTime();
+            recoveryManager.restartRedo();
+            long redoEnd = System.nanoTime();
+            System.out.printf("redo threads=%3d: analysis %8.1f ms, redo %8.1f ms%n", threads,
+                              (analysisEnd - start) / 1e6, (redoEnd - analysisEnd) / 1e6);
+
+            bufferManager.close();
+            diskSpaceManager.close();
+            DummyTransaction.cleanupTransactions();
+            delete(dir);
+        }
+        delete(crashed);
+    }
+
+    private static void buildLog(File dir, int numPages, int numUpdates, int bufferPages) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, bufferPages,
+                new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        int partNum = diskSpaceManager.allocPart();
+        for (int i = 0; i < numPages; ++i) {
+            diskSpaceManager.allocPage(partNum);
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+
+        LogManager logManager = recoveryManager.logManager;
+        Random random = new Random(186);
+        byte[] before = new byte[100];
+        byte[] after = new byte[100];
+        long prevLSN = 0;
+        for (int i = 0; i < numUpdates; ++i) {
+            random.nextBytes(after);
+            long pageNum = DiskSpaceManager.getVirtualPageNum(partNum, random.nextInt(numPages));
+            short offset = (short) random.nextInt(BufferManager.EFFECTIVE_PAGE_SIZE - after.length);
+            prevLSN = logManager.appendToLog(new UpdatePageLogRecord(1L, pageNum, prevLSN, offset, before, after));
+        }
+        prevLSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, prevLSN));
+        logManager.appendToLog(new EndTransactionLogRecord(1L, prevLSN));
+
+        // crash: the log is on disk, none of the updates are
+        logManager.close();
+        bufferManager.close();
+        diskSpaceManager.close();
+        DummyTransaction.cleanupTransactions();
+    }
+
+    private static void delete(File dir) {
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+}
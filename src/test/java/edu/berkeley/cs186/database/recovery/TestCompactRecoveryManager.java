@@ -0,0 +1,37 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.categories.PublicTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Runs all of the recovery manager tests with log records appended in the compact
+ * encoding, with compression.
+ */
+public class TestCompactRecoveryManager extends TestRecoveryManager {
+    @Override
+    protected ARIESRecoveryManager loadRecoveryManager(String dir, int redoThreads) {
+        ARIESRecoveryManager recoveryManager = super.loadRecoveryManager(dir, redoThreads);
+        recoveryManager.setCompactLogEncoding(true, true);
+        return recoveryManager;
+    }
+
+    // The checkpoint tests below count on page writes filling up log pages, which
+    // compressed page writes of repeated bytes do not.
+
+    @Override
+    @Test
+    @Category(PublicTests.class)
+    public void testCheckpointTruncatesLog() {
+        recoveryManager.setCompactLogEncoding(true, false);
+        super.testCheckpointTruncatesLog();
+    }
+
+    @Override
+    @Test
+    @Category(PublicTests.class)
+    public void testBackgroundCheckpoint() throws InterruptedException {
+        recoveryManager.setCompactLogEncoding(true, false);
+        super.testBackgroundCheckpoint();
+    }
+}
@@ -8,16 +8,24 @@ import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.Page;
-import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import edu.berkeley.cs186.database.recovery.records.*;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @Category(SystemTests.class)
 public class TestLogManager {
@@ -130,4 +138,298 @@ public class TestLogManager {
         postIO = bufferManager.getNumIOs();
         assertEquals(0, postIO - prevIO);
     }
+
+    @Test
+    public void testTruncate() {
+        int recordsPerPage = DiskSpaceManager.PAGE_SIZE / 9;
+        for (int i = 0; i < recordsPerPage * 5; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.flushToLSN(49999);
+
+        // frees pages 1 and 2
+        assertEquals(2, logManager.truncate(30001));
+        assertEquals(0, logManager.truncate(30001));
+        assertEquals(30000, logManager.getFirstLSN());
+        assertNull(logManager.fetchLogRecord(10000));
+        assertEquals(new MasterLogRecord(recordsPerPage * 3), logManager.fetchLogRecord(30000));
+
+        Iterator<LogRecord> iter = logManager.iterator();
+        for (int i = 0; i < recordsPerPage; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        for (int i = recordsPerPage * 3; i < recordsPerPage * 5; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // page numbers of truncated pages are not reused
+        assertEquals(50000, logManager.appendToLog(new MasterLogRecord(0)));
+    }
+
+    @Test
+    public void testTruncateUnflushed() {
+        int recordsPerPage = DiskSpaceManager.PAGE_SIZE / 9;
+        for (int i = 0; i < recordsPerPage * 5; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.flushToLSN(20000);
+
+        // pages 3 and 4 have not been flushed, and page 2 is needed
+        assertEquals(1, logManager.truncate(49999));
+        assertEquals(20000, logManager.getFirstLSN());
+    }
+
+    @Test
+    public void testReopenTruncated() {
+        int recordsPerPage = DiskSpaceManager.PAGE_SIZE / 9;
+        for (int i = 0; i < recordsPerPage * 5; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.rewriteMasterRecord(new MasterLogRecord(30000));
+        logManager.flushToLSN(49999);
+        assertEquals(2, logManager.truncate(30000));
+        logManager.close();
+
+        // the end of the log is found from the last checkpoint in the master record
+        logManager = new LogManager(bufferManager);
+        assertEquals(30000, logManager.getFirstLSN());
+        assertEquals(50000, logManager.appendToLog(new MasterLogRecord(0)));
+        Iterator<LogRecord> iter = logManager.iterator();
+        assertEquals(new MasterLogRecord(30000), iter.next());
+        for (int i = 1; i < recordsPerPage; ++i) {
+            iter.next();
+        }
+        assertEquals(new MasterLogRecord(recordsPerPage * 3), iter.next());
+    }
+
+    @Test
+    public void testFlushCommitWithoutGroupCommit() {
+        for (int i = 0; i < 5; ++i) {
+            long LSN = logManager.appendToLog(new MasterLogRecord(i));
+            logManager.flushCommit(LSN);
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+        }
+        LogManager.CommitStats stats = logManager.getCommitStats();
+        assertEquals(5, stats.getNumCommits());
+        assertEquals(5, stats.getNumBatches());
+        assertEquals(1, stats.getMaxBatchSize());
+    }
+
+    @Test
+    public void testGroupCommitMaxWait() {
+        logManager.setGroupCommit(100, 1, TimeUnit.MILLISECONDS);
+        long LSN = logManager.appendToLog(new MasterLogRecord(0));
+        logManager.flushCommit(LSN);
+
+        assertTrue(logManager.getFlushedLSN() >= LSN);
+        assertEquals(1, logManager.getCommitStats().getNumBatches());
+        assertEquals(1, logManager.getCommitStats().getMaxBatchSize());
+    }
+
+    @Test
+    public void testGroupCommitBatch() throws InterruptedException {
+        int numCommitters = 4;
+        // long enough that the batch can only close by filling up
+        logManager.setGroupCommit(numCommitters, 30, TimeUnit.SECONDS);
+
+        long[] LSNs = new long[numCommitters];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numCommitters; ++i) {
+            final int index = i;
+            threads.add(new Thread(() -> {
+                LSNs[index] = logManager.appendToLog(new MasterLogRecord(index));
+                logManager.flushCommit(LSNs[index]);
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        for (long LSN : LSNs) {
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+        }
+        LogManager.CommitStats stats = logManager.getCommitStats();
+        assertEquals(numCommitters, stats.getNumCommits());
+        assertEquals(1, stats.getNumBatches());
+        assertEquals(numCommitters, stats.getMaxBatchSize());
+    }
+
+    @Test
+    public void testConcurrentAppend() throws InterruptedException {
+        int numThreads = 4;
+        int numRecords = 3000;
+        long[][] LSNs = new long[numThreads][numRecords];
+        logManager.appendToLog(new MasterLogRecord(0));
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; ++t) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                long prevLSN = 0;
+                for (int i = 0; i < numRecords; ++i) {
+                    prevLSN = logManager.appendToLog(concurrentTestRecord(thread, i, prevLSN));
+                    LSNs[thread][i] = prevLSN;
+                    if (i % 500 == 0) {
+                        // seal the log tail while others are appending to it
+                        logManager.flushToLSN(prevLSN);
+                        assertTrue(logManager.getFlushedLSN() >= prevLSN);
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        for (int t = 0; t < numThreads; ++t) {
+            long prevLSN = 0;
+            for (int i = 0; i < numRecords; ++i) {
+                assertTrue(LSNs[t][i] > prevLSN);
+                assertEquals(concurrentTestRecord(t, i, prevLSN), logManager.fetchLogRecord(LSNs[t][i]));
+                prevLSN = LSNs[t][i];
+            }
+        }
+        // every record is found by a scan, in order, and nothing else
+        int[] next = new int[numThreads];
+        long prevLSN = -1;
+        Iterator<LogRecord> iter = logManager.iterator();
+        assertEquals(new MasterLogRecord(0), iter.next());
+        while (iter.hasNext()) {
+            LogRecord record = iter.next();
+            int thread = (int) (long) record.getTransNum().get();
+            assertTrue(record.getLSN() > prevLSN);
+            assertEquals(LSNs[thread][next[thread]], record.getLSN());
+            ++next[thread];
+            prevLSN = record.getLSN();
+        }
+        for (int t = 0; t < numThreads; ++t) {
+            assertEquals(numRecords, next[t]);
+        }
+    }
+
+    // Record number i of thread t in testConcurrentAppend, with a size that depends on i.
+    private static LogRecord concurrentTestRecord(int thread, int i, long prevLSN) {
+        byte[] before = new byte[i % 97];
+        byte[] after = new byte[i % 97];
+        Arrays.fill(after, (byte) i);
+        return new UpdatePageLogRecord(thread, i, prevLSN, (short) 0, before, after);
+    }
+
+    // A few records of each kind of layout: with a partition number, with an undoNextLSN,
+    // with negative numbers, with bodies that do and do not compress, and without a header.
+    private static List<LogRecord> compactTestRecords() {
+        byte[] zeros = new byte[1000];
+        byte[] image = new byte[DiskSpaceManager.PAGE_SIZE / 2];
+        for (int i = 0; i < image.length; ++i) {
+            image[i] = (byte) (i % 7 == 0 ? i : 0);
+        }
+        byte[] random = new byte[200];
+        new java.util.Random(186).nextBytes(random);
+        return Arrays.asList(
+                new AllocPartLogRecord(1, 7, 0),
+                new AllocPageLogRecord(1, 30000000001L, 0),
+                new UpdatePageLogRecord(1, 30000000001L, 10, (short) 30, new byte[] {1, 2, 3}, new byte[] {4, 5, 6}),
+                new PageImageLogRecord(2, 30000000002L, -1, (short) 0, zeros),
+                new UndoUpdatePageLogRecord(1, 30000000001L, 20, 10, (short) 0, image),
+                new InsertRecordLogRecord(3, 40000000000L, 0, (short) 0, (short) 5, (short) 100,
+                                          new byte[0], random),
+                new DeleteRecordLogRecord(-3, 40000000000L, 0, (short) 0, (short) 5),
+                new UndoFreePartLogRecord(Long.MAX_VALUE, -7, Long.MIN_VALUE, Long.MAX_VALUE),
+                new BeginCheckpointLogRecord(),
+                new EndCheckpointLogRecord(Collections.singletonMap(30000000001L, 10L), Collections.emptyMap()),
+                new CommitTransactionLogRecord(1, 30),
+                new EndTransactionLogRecord(1, 40)
+        );
+    }
+
+    @Test
+    public void testCompactAppendFetchScan() {
+        for (boolean compress : new boolean[] {false, true}) {
+            cleanup();
+            setup();
+            logManager.setCompactEncoding(true, compress);
+            logManager.appendToLog(new MasterLogRecord(0));
+            List<Long> LSNs = new ArrayList<>();
+            List<LogRecord> expected = new ArrayList<>();
+            // enough records to span several log pages
+            for (int i = 0; i < 20; ++i) {
+                for (LogRecord record : compactTestRecords()) {
+                    LSNs.add(logManager.appendToLog(record));
+                    expected.add(record);
+                }
+            }
+            assertTrue(LSNs.get(LSNs.size() - 1) >= 30000);
+
+            for (int i = 0; i < LSNs.size(); ++i) {
+                LogRecord record = logManager.fetchLogRecord(LSNs.get(i));
+                assertEquals(expected.get(i), record);
+                assertEquals((long) LSNs.get(i), record.getLSN());
+            }
+            Iterator<LogRecord> iter = logManager.scanFrom(LSNs.get(0));
+            for (int i = 0; i < LSNs.size(); ++i) {
+                LogRecord record = iter.next();
+                assertEquals(expected.get(i), record);
+                assertEquals((long) LSNs.get(i), record.getLSN());
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testCompactEncodingIsSmaller() {
+        long prevLSN = 0;
+        for (LogRecord record : compactTestRecords()) {
+            byte[] bytes = record.toBytes();
+            byte[] compact = CompactLogEncoding.encode(record, bytes, prevLSN + 50, false);
+            byte[] compressed = CompactLogEncoding.encode(record, bytes, prevLSN + 50, true);
+            assertTrue(compact.length <= bytes.length);
+            assertTrue(compressed.length <= compact.length);
+            prevLSN += 50;
+        }
+
+        LogRecord update = new UpdatePageLogRecord(12, 30000000001L, 10000, (short) 30, new byte[] {1}, new byte[] {2});
+        assertTrue(CompactLogEncoding.encode(update, update.toBytes(), 10040, false).length < 20);
+        LogRecord image = new PageImageLogRecord(2, 30000000002L, 0, (short) 0, new byte[2000]);
+        assertTrue(CompactLogEncoding.encode(image, image.toBytes(), 40, true).length < 50);
+        // the master record is rewritten in place, so its size never changes
+        LogRecord master = new MasterLogRecord(1234);
+        assertArrayEquals(master.toBytes(), CompactLogEncoding.encode(master, master.toBytes(), 0, true));
+    }
+
+    @Test
+    public void testCompressRoundTrip() {
+        java.util.Random random = new java.util.Random(186);
+        for (int n : new int[] {0, 1, 4, 64, 1000, DiskSpaceManager.PAGE_SIZE}) {
+            byte[] bytes = new byte[n];
+            for (int i = 0; i < n; ++i) {
+                // runs of repeated bytes and repeated short sequences, with some noise
+                bytes[i] = (byte) (random.nextInt(10) == 0 ? random.nextInt() : i / 50 % 3 + i % 5);
+            }
+            byte[] compressed = CompactLogEncoding.compress(bytes);
+            if (compressed != null) {
+                assertTrue(compressed.length < n);
+                assertArrayEquals(bytes, CompactLogEncoding.decompress(compressed, n));
+            }
+        }
+        assertNull(CompactLogEncoding.compress(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    public void testMixedEncodings() {
+        List<Long> LSNs = new ArrayList<>();
+        List<LogRecord> expected = new ArrayList<>();
+        int i = 0;
+        for (LogRecord record : compactTestRecords()) {
+            logManager.setCompactEncoding(i % 2 == 0, i % 3 == 0);
+            LSNs.add(logManager.appendToLog(record));
+            expected.add(record);
+            ++i;
+        }
+        logManager.setCompactEncoding(false, false);
+
+        Iterator<LogRecord> iter = logManager.scanFrom(LSNs.get(0));
+        for (int j = 0; j < LSNs.size(); ++j) {
+            assertEquals(expected.get(j), logManager.fetchLogRecord(LSNs.get(j)));
+            assertEquals(expected.get(j), iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
 }
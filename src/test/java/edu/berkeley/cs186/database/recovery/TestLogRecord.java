@@ -98,6 +98,38 @@ public class TestLogRecord {
                        pageString));
     }
 
+    @Test
+    public void testPageImageSerialize() {
+        byte[] pageString = new String(new char[BufferManager.EFFECTIVE_PAGE_SIZE]).replace('\0',
+                'a').getBytes();
+        checkSerialize(new PageImageLogRecord(-98765L, -43210L, -12345L, (short) 1234, "zxcvb".getBytes()));
+        checkSerialize(new PageImageLogRecord(-98765L, -43210L, -12345L, (short) 0, pageString));
+    }
+
+    @Test
+    public void testInsertRecordSerialize() {
+        checkSerialize(new InsertRecordLogRecord(-98765L, -43210L, -12345L, (short) 10, (short) 3, (short) 1234,
+                       new byte[0], "zxcvb".getBytes()));
+        checkSerialize(new InsertRecordLogRecord(-98765L, -43210L, -12345L, (short) 10, (short) 3, (short) 1234,
+                       "asdfg".getBytes(), "zxcvb".getBytes()));
+    }
+
+    @Test
+    public void testDeleteRecordSerialize() {
+        checkSerialize(new DeleteRecordLogRecord(-98765L, -43210L, -12345L, (short) 10, (short) 3));
+    }
+
+    @Test
+    public void testUndoInsertRecordSerialize() {
+        checkSerialize(new UndoInsertRecordLogRecord(-98765L, -43210L, -12345L, -57812L, (short) 10, (short) 3,
+                       (short) 1234, "zxcvb".getBytes()));
+    }
+
+    @Test
+    public void testUndoDeleteRecordSerialize() {
+        checkSerialize(new UndoDeleteRecordLogRecord(-98765L, -43210L, -12345L, -57812L, (short) 10, (short) 3));
+    }
+
     @Test
     public void testBeginCheckpointSerialize() {
         checkSerialize(new BeginCheckpointLogRecord());
@@ -0,0 +1,14 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MappedDiskSpaceManager;
+
+/**
+ * Runs all of the recovery manager tests against the memory mapped disk backend.
+ */
+public class TestMappedRecoveryManager extends TestRecoveryManager {
+    @Override
+    protected DiskSpaceManager newDiskSpaceManager(String dir, RecoveryManager recoveryManager) {
+        return new MappedDiskSpaceManager(dir, recoveryManager);
+    }
+}
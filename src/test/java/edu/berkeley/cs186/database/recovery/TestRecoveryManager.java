@@ -6,10 +6,12 @@ import edu.berkeley.cs186.database.categories.HiddenTests;
 import edu.berkeley.cs186.database.categories.Proj5Tests;
 import edu.berkeley.cs186.database.categories.PublicTests;
 import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.*;
 import org.junit.After;
 import org.junit.Before;
@@ -23,6 +25,8 @@ import org.junit.rules.Timeout;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static junit.framework.TestCase.assertTrue;
@@ -31,7 +35,7 @@ import static org.junit.Assert.*;
 @Category({Proj5Tests.class})
 public class TestRecoveryManager {
     private String testDir;
-    private ARIESRecoveryManager recoveryManager;
+    protected ARIESRecoveryManager recoveryManager;
     private LogManager logManager;
     private DiskSpaceManager diskSpaceManager;
     private BufferManager bufferManager;
@@ -60,6 +64,13 @@ public class TestRecoveryManager {
         recoveryManager.close();
     }
 
+    /**
+     * @return disk space manager for the recovery manager to use
+     */
+    protected DiskSpaceManager newDiskSpaceManager(String dir, RecoveryManager recoveryManager) {
+        return new DiskSpaceManagerImpl(dir, recoveryManager);
+    }
+
     /**
      * Loads the recovery manager from disk.
      *
@@ -67,8 +78,19 @@ public class TestRecoveryManager {
      * @return recovery manager, loaded from disk
      */
     protected ARIESRecoveryManager loadRecoveryManager(String dir) {
-        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
-        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir, recoveryManager);
+        return loadRecoveryManager(dir, 1);
+    }
+
+    /**
+     * Loads the recovery manager from disk.
+     *
+     * @param dir testDir
+     * @param redoThreads number of threads to redo with
+     * @return recovery manager, loaded from disk
+     */
+    protected ARIESRecoveryManager loadRecoveryManager(String dir, int redoThreads) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create, redoThreads);
+        DiskSpaceManager diskSpaceManager = newDiskSpaceManager(dir, recoveryManager);
         BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
                 new LRUEvictionPolicy());
         boolean isLoaded = true;
@@ -453,6 +475,134 @@ public class TestRecoveryManager {
         assertTrue(clr.getUndoNextLSN().orElseThrow(NoSuchElementException::new) < LSN);
     }
 
+    /**
+     * Tests tracking of the pages a transaction allocated since its latest savepoint:
+     * pages count as new once allocated, until they are freed or a savepoint is set.
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testNewPages() {
+        Transaction transaction1 = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction1);
+        assertFalse(recoveryManager.isNewPage(1L, 10000000001L));
+
+        recoveryManager.logAllocPage(1L, 10000000001L);
+        recoveryManager.logAllocPage(1L, 10000000002L);
+        assertTrue(recoveryManager.isNewPage(1L, 10000000001L));
+        assertTrue(recoveryManager.isNewPage(1L, 10000000002L));
+        assertFalse(recoveryManager.isNewPage(2L, 10000000001L));
+
+        recoveryManager.logFreePage(1L, 10000000002L);
+        assertFalse(recoveryManager.isNewPage(1L, 10000000002L));
+
+        recoveryManager.savepoint(1L, "savepoint 1");
+        assertFalse(recoveryManager.isNewPage(1L, 10000000001L));
+
+        recoveryManager.logAllocPage(1L, 10000000003L);
+        assertTrue(recoveryManager.isNewPage(1L, 10000000003L));
+        recoveryManager.rollbackToSavepoint(1L, "savepoint 1");
+        assertFalse(recoveryManager.isNewPage(1L, 10000000003L));
+    }
+
+    /**
+     * Tests rollback of logical record inserts and deletes:
+     * 1. T1 inserts a record into slot 3 of a page, sets a savepoint, deletes the
+     *    record, and inserts another record into the same slot
+     * 2. T1 rolls back to the savepoint
+     *    Checks:
+     *      - The slot is used, and holds the first record again
+     * 3. T1 aborts
+     *    Checks:
+     *      - The slot is not used, and holds zeros again
+     *      - The log contains a CLR for each insert and delete
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testRecordInsertDeleteRollback() {
+        long pageNum = 10000000001L;
+        short bitmapOffset = 0;
+        short entryNum = 3;
+        short offset = 100;
+        byte[] first = new byte[] { (byte) 0xBA, (byte) 0xAD, (byte) 0xF0, (byte) 0x0D };
+        byte[] second = new byte[] { (byte) 0xDE, (byte) 0xCA, (byte) 0xFB, (byte) 0xAD };
+
+        Transaction transaction1 = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction1);
+        long LSN1 = recoveryManager.logRecordInsert(1L, pageNum, bitmapOffset, entryNum, offset, new byte[0],
+                    first);
+        logManager.fetchLogRecord(LSN1).redo(recoveryManager, diskSpaceManager, bufferManager);
+        assertEquals(LSN1, (long) dirtyPageTable.get(pageNum));
+        assertEquals(LSN1, transactionTable.get(1L).lastLSN);
+
+        recoveryManager.savepoint(1L, "savepoint 1");
+        long LSN2 = recoveryManager.logRecordDelete(1L, pageNum, bitmapOffset, entryNum);
+        logManager.fetchLogRecord(LSN2).redo(recoveryManager, diskSpaceManager, bufferManager);
+        assertArrayEquals(new byte[] {0}, readPage(pageNum, bitmapOffset, 1));
+        long LSN3 = recoveryManager.logRecordInsert(1L, pageNum, bitmapOffset, entryNum, offset, first, second);
+        logManager.fetchLogRecord(LSN3).redo(recoveryManager, diskSpaceManager, bufferManager);
+        assertArrayEquals(new byte[] {0x10}, readPage(pageNum, bitmapOffset, 1));
+        assertArrayEquals(second, readPage(pageNum, offset, second.length));
+
+        recoveryManager.rollbackToSavepoint(1L, "savepoint 1");
+        assertArrayEquals(new byte[] {0x10}, readPage(pageNum, bitmapOffset, 1));
+        assertArrayEquals(first, readPage(pageNum, offset, first.length));
+
+        recoveryManager.abort(1L);
+        recoveryManager.end(1L);
+        assertArrayEquals(new byte[] {0}, readPage(pageNum, bitmapOffset, 1));
+        assertArrayEquals(new byte[first.length], readPage(pageNum, offset, first.length));
+
+        Iterator<LogRecord> logs = logManager.scanFrom(LSN3);
+        logs.next(); // second insert
+        LogRecord clr = logs.next();
+        assertEquals(LogType.UNDO_INSERT_RECORD, clr.getType());
+        assertArrayEquals(first, ((UndoInsertRecordLogRecord) clr).after);
+        clr = logs.next();
+        assertEquals(LogType.UNDO_DELETE_RECORD, clr.getType());
+        assertEquals(Optional.of(LSN1), clr.getUndoNextLSN());
+        assertEquals(LogType.ABORT_TRANSACTION, logs.next().getType());
+        assertEquals(LogType.UNDO_INSERT_RECORD, logs.next().getType());
+        assertEquals(LogType.END_TRANSACTION, logs.next().getType());
+        assertFalse(logs.hasNext());
+    }
+
+    /**
+     * Tests restart with logical record and page image records:
+     * 1. T1 writes a page image and commits, T2 inserts a record, and the database
+     *    shuts down before either change reaches the page
+     * 2. Runs all three phases of recovery
+     *    Checks:
+     *      - The page image of T1 is redone
+     *      - The insert of T2 is redone and undone: its slot is not used, and
+     *        holds zeros again
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testRestartLogicalRecords() {
+        long pageNum = 10000000002L;
+        byte[] image = new byte[] { (byte) 0x01, (byte) 0x02, (byte) 0x03, (byte) 0x04, (byte) 0x05 };
+        byte[] record = new byte[] { (byte) 0xBA, (byte) 0xAD, (byte) 0xF0, (byte) 0x0D };
+
+        Transaction transaction1 = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction1);
+        Transaction transaction2 = DummyTransaction.create(2L);
+        recoveryManager.startTransaction(transaction2);
+        recoveryManager.logPageImage(1L, pageNum, (short) 0, image);
+        recoveryManager.commit(1L);
+        long LSN = recoveryManager.logRecordInsert(2L, pageNum, (short) 0, (short) 0, (short) 200, new byte[0],
+                   record);
+        logManager.flushToLSN(LSN);
+
+        shutdownRecoveryManager(recoveryManager);
+        recoveryManager = loadRecoveryManager(testDir);
+        recoveryManager.restart();
+
+        // the bit of slot 0 is the top bit of the first byte, which was set and cleared again
+        assertArrayEquals(image, readPage(pageNum, 0, image.length));
+        assertArrayEquals(new byte[record.length], readPage(pageNum, 200, record.length));
+        assertTrue(transactionTable.isEmpty());
+    }
+
     /**
      * Tests basic checkpoint:
      *  - T1 logs a write, checkpoints, logs 2 additional writes
@@ -976,6 +1126,68 @@ public class TestRecoveryManager {
         finishRedoChecks();
     }
 
+    /**
+     * Tests redo with multiple threads:
+     * 1. Sets up a log where T1 updates 8 pages 20 times each, then allocates a
+     *    partition and a page in it and updates that page, and commits.
+     * 2. Simulates db shutdown, and reloads with 4 redo threads.
+     * 3. Runs analysis and redo
+     *    Checks:
+     *      - Every page ends up with the last update to it
+     *      - Every record is redone once
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelRedo() {
+        // 1.
+        DummyTransaction.create(1L);
+        long prevLSN = 0L;
+        byte[] before = new byte[] { 0, 0 };
+        for (int round = 0; round < 20; ++round) {
+            for (int i = 1; i <= 8; ++i) {
+                byte[] after = new byte[] { (byte) round, (byte) i };
+                prevLSN = logManager.appendToLog(new UpdatePageLogRecord(1L,
+                        DiskSpaceManager.getVirtualPageNum(1, i), prevLSN, (short) 0, before, after));
+            }
+        }
+        long newPage = DiskSpaceManager.getVirtualPageNum(2, 0);
+        prevLSN = logManager.appendToLog(new AllocPartLogRecord(1L, 2, prevLSN));
+        prevLSN = logManager.appendToLog(new AllocPageLogRecord(1L, newPage, prevLSN));
+        prevLSN = logManager.appendToLog(new UpdatePageLogRecord(1L, newPage, prevLSN, (short) 0, before,
+                new byte[] { 7, 7 }));
+        prevLSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, prevLSN));
+        logManager.appendToLog(new EndTransactionLogRecord(1L, prevLSN));
+
+        // 2.
+        shutdownRecoveryManager(recoveryManager);
+        recoveryManager = loadRecoveryManager(testDir, 4);
+
+        // 3.
+        AtomicInteger numRedone = new AtomicInteger();
+        LogRecord.onRedoHandler(record -> numRedone.incrementAndGet());
+        recoveryManager.restartAnalysis();
+        recoveryManager.restartRedo();
+        assertEquals(8 * 20 + 3, numRedone.get());
+
+        byte[] contents = new byte[2];
+        for (int i = 1; i <= 8; ++i) {
+            Page page = bufferManager.fetchPage(new DummyLockContext(), DiskSpaceManager.getVirtualPageNum(1, i));
+            try {
+                page.getBuffer().get(contents);
+            } finally {
+                page.unpin();
+            }
+            assertArrayEquals(new byte[] { 19, (byte) i }, contents);
+        }
+        Page page = bufferManager.fetchPage(new DummyLockContext(), newPage);
+        try {
+            page.getBuffer().get(contents);
+        } finally {
+            page.unpin();
+        }
+        assertArrayEquals(new byte[] { 7, 7 }, contents);
+    }
+
     /**
      * Test undo phase of recovery:
      * 1. Sets up log - T1 makes 4 updates and then aborts.
@@ -1462,6 +1674,112 @@ public class TestRecoveryManager {
         assertEquals(Collections.singletonMap(10000000002L, LSN2), dirtyPageTable);
     }
 
+    /**
+     * Tests that checkpoints truncate the log when enabled:
+     * 1. T2 writes, T1 starts and writes, T2 writes more and ends, and T2's page is
+     *    written back. A checkpoint only frees log pages from before T1 started.
+     * 2. T1 ends and its page is written back. A checkpoint frees the log up to itself.
+     * 3. Restart recovery works on the truncated log, and new records are appended after it.
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testCheckpointTruncatesLog() {
+        recoveryManager.setLogTruncation(true);
+        byte[] before = new byte[1000];
+        byte[] after = new byte[1000];
+        Arrays.fill(after, (byte) 0x42);
+
+        // 1. about two page writes fit in each log page
+        Transaction transaction2 = DummyTransaction.create(2L);
+        recoveryManager.startTransaction(transaction2);
+        for (int i = 0; i < 6; ++i) {
+            recoveryManager.logPageWrite(2L, 10000000002L, (short) 0, before, after);
+        }
+        Transaction transaction1 = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction1);
+        long LSN1 = recoveryManager.logPageWrite(1L, 10000000001L, (short) 0, before, after);
+        for (int i = 0; i < 6; ++i) {
+            recoveryManager.logPageWrite(2L, 10000000002L, (short) 0, before, after);
+        }
+        recoveryManager.commit(2L);
+        recoveryManager.end(2L);
+        dirtyPageTable.remove(10000000002L); // as if the page was written back
+
+        recoveryManager.checkpoint();
+        assertTrue(recoveryManager.getNumTruncatedLogPages() > 0);
+        assertTrue(logManager.getFirstLSN() > 10000L);
+        assertTrue(logManager.getFirstLSN() <= transactionTable.get(1L).firstLSN);
+        assertEquals(LogType.UPDATE_PAGE, logManager.fetchLogRecord(LSN1).getType());
+
+        // 2.
+        recoveryManager.commit(1L);
+        recoveryManager.end(1L);
+        dirtyPageTable.remove(10000000001L);
+        long truncated = recoveryManager.getNumTruncatedLogPages();
+        recoveryManager.checkpoint();
+        assertTrue(recoveryManager.getNumTruncatedLogPages() > truncated);
+        assertNull(logManager.fetchLogRecord(LSN1));
+        long firstLSN = logManager.getFirstLSN();
+        // the scan skips from the records on page 0 to the first page that was kept
+        Iterator<LogRecord> logs = logManager.iterator();
+        LogRecord record = logs.next();
+        while (record.getLSN() < 10000L) {
+            record = logs.next();
+        }
+        assertEquals(firstLSN, record.getLSN());
+
+        // 3.
+        shutdownRecoveryManager(recoveryManager);
+        recoveryManager = loadRecoveryManager(testDir);
+        recoveryManager.restart();
+        assertEquals(firstLSN, logManager.getFirstLSN());
+        assertTrue(transactionTable.isEmpty());
+
+        Transaction transaction3 = DummyTransaction.create(3L);
+        recoveryManager.startTransaction(transaction3);
+        long LSN3 = recoveryManager.logPageWrite(3L, 10000000003L, (short) 0, before, after);
+        assertTrue(LSN3 > firstLSN);
+        assertEquals(LogType.UPDATE_PAGE, logManager.fetchLogRecord(LSN3).getType());
+    }
+
+    /**
+     * Tests that checkpoints are taken in the background once enough log has been
+     * written, and once enough time has passed.
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testBackgroundCheckpoint() throws InterruptedException {
+        byte[] before = new byte[1000];
+        byte[] after = new byte[1000];
+        long numCheckpoints = recoveryManager.getNumCheckpoints();
+
+        recoveryManager.setCheckpointPolicy(3, 0, TimeUnit.MILLISECONDS);
+        Thread.sleep(4 * ARIESRecoveryManager.CHECKPOINT_POLL_MILLIS);
+        assertEquals(numCheckpoints, recoveryManager.getNumCheckpoints());
+
+        Transaction transaction1 = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction1);
+        for (int i = 0; i < 8; ++i) {
+            recoveryManager.logPageWrite(1L, 10000000001L, (short) 0, before, after);
+        }
+        while (recoveryManager.getNumCheckpoints() == numCheckpoints) {
+            Thread.sleep(10);
+        }
+        LogRecord masterRecord = logManager.fetchLogRecord(0L);
+        assertTrue(((MasterLogRecord) masterRecord).lastCheckpointLSN > 30000L);
+
+        numCheckpoints = recoveryManager.getNumCheckpoints();
+        recoveryManager.setCheckpointPolicy(0, 1, TimeUnit.MILLISECONDS);
+        while (recoveryManager.getNumCheckpoints() < numCheckpoints + 2) {
+            Thread.sleep(10);
+        }
+
+        recoveryManager.setCheckpointPolicy(0, 0, TimeUnit.MILLISECONDS);
+        numCheckpoints = recoveryManager.getNumCheckpoints();
+        Thread.sleep(4 * ARIESRecoveryManager.CHECKPOINT_POLL_MILLIS);
+        assertEquals(numCheckpoints, recoveryManager.getNumCheckpoints());
+    }
+
     // Helpers /////////////////////////////////////////////////////////////////
 
     /**
@@ -1496,6 +1814,20 @@ public class TestRecoveryManager {
         });
     }
 
+    /**
+     * Helper to read `length` bytes at `offset` of a page.
+     */
+    private byte[] readPage(long pageNum, int offset, int length) {
+        byte[] bytes = new byte[length];
+        Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().position(offset).get(bytes);
+        } finally {
+            page.unpin();
+        }
+        return bytes;
+    }
+
     /**
      * Flushes everything to disk, but does not call RecoveryManager#shutdown.
      * Similar to pulling the plug on the database at a time when no changes are in
@@ -0,0 +1,65 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+/**
+ * Measures insert throughput as a table grows. Records are inserted into a single
+ * table, and the throughput of each batch is reported along with the size of the
+ * table; finding a page with free space should not get slower as the table grows.
+ * Every few batches, some records are deleted from the start of the table, so that
+ * there is free space to find in early pages too.
+ *
+ * Usage: InsertScalingBenchmark [records] [batch size] [buffer pages]
+ */
+public class InsertScalingBenchmark {
+    public static void main(String[] args) {
+        int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int bufferPages = args.length > 2 ? Integer.parseInt(args[2]) : 16384;
+
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(1);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                bufferPages, new ClockEvictionPolicy());
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+        PageDirectory pageDirectory;
+        try {
+            pageDirectory = new PageDirectory(bufferManager, 1, page.getPageNum(), (short) 0,
+                                              new DummyLockContext());
+        } finally {
+            page.unpin();
+        }
+        Schema schema = new Schema()
+                .add("id", Type.intType())
+                .add("value", Type.intType());
+        Table table = new Table("t", schema, pageDirectory, new DummyLockContext());
+        RecordId[] rids = new RecordId[numRecords];
+        Record record = new Record(0, 0);
+
+        System.out.println("records=" + numRecords + ", batch=" + batchSize + ", buffer=" + bufferPages + " pages");
+        int deleted = 0;
+        for (int inserted = 0; inserted < numRecords; ) {
+            int n = Math.min(batchSize, numRecords - inserted);
+            long start = System.nanoTime();
+            for (int i = 0; i < n; ++i, ++inserted) {
+                rids[inserted] = table.addRecord(record);
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("rows=%-9d pages=%-6d %10.0f inserts/s%n",
+                              inserted, table.getNumDataPages(), n / elapsed);
+
+            // free a few slots on every 8th page from the start of the table
+            for (int i = 0; i < 16 && deleted < inserted; ++i, deleted += table.getNumRecordsPerPage() * 8) {
+                table.deleteRecord(rids[deleted]);
+            }
+        }
+        bufferManager.close();
+    }
+}
@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of a single hot table with an increasing number of client
+ * threads. Each thread repeatedly either inserts a record or reads a random record
+ * that was loaded beforehand. Every run is done twice: once with each operation
+ * holding a table-wide latch (as when the record operations of Table were
+ * synchronized), and once relying on the latches of the pinned pages only. With
+ * a table larger than the buffer pool some reads miss, and without the table latch
+ * other threads keep working while a read waits for the disk.
+ *
+ * Usage: TableConcurrencyBenchmark [max threads] [seconds per run] [insert percent]
+ *        [records loaded] [buffer pages]
+ */
+public class TableConcurrencyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+                         Math.max(4, Runtime.getRuntime().availableProcessors());
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int insertPercent = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int numRecords = args.length > 3 ? Integer.parseInt(args[3]) : 50000;
+        int bufferPages = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+
+        System.out.println("cores=" + Runtime.getRuntime().availableProcessors() +
+                           ", records=" + numRecords + ", buffer=" + bufferPages + " pages, inserts=" +
+                           insertPercent + "%, duration=" + seconds + "s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            run(threads, seconds, insertPercent, numRecords, bufferPages, true);
+            run(threads, seconds, insertPercent, numRecords, bufferPages, false);
+        }
+    }
+
+    private static void run(int numThreads, int seconds, int insertPercent, int numRecords,
+                            int bufferPages, boolean tableLatch) throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("table-concurrency-bench").toFile();
+        DummyRecoveryManager recoveryManager = new DummyRecoveryManager();
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getAbsolutePath(), recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, bufferPages,
+                new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart();
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        PageDirectory pageDirectory;
+        try {
+            pageDirectory = new PageDirectory(bufferManager, partNum, page.getPageNum(), (short) 0,
+                                              new DummyLockContext());
+        } finally {
+            page.unpin();
+        }
+        Schema schema = new Schema()
+                .add("id", Type.intType())
+                .add("value", Type.stringType(60));
+        Table table = new Table("t", schema, pageDirectory, new DummyLockContext());
+        RecordId[] rids = new RecordId[numRecords];
+        for (int i = 0; i < numRecords; ++i) {
+            rids[i] = table.addRecord(new Record(i, "value"));
+        }
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        LongAdder inserts = new LongAdder();
+        LongAdder reads = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; ++i) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Record record = new Record(-1, "inserted");
+                while (!done.get()) {
+                    boolean insert = random.nextInt(100) < insertPercent;
+                    RecordId rid = rids[random.nextInt(rids.length)];
+                    if (tableLatch) {
+                        synchronized (table) {
+                            execute(table, insert, record, rid);
+                        }
+                    } else {
+                        execute(table, insert, record, rid);
+                    }
+                    (insert ? inserts : reads).increment();
+                }
+            }));
+        }
+        long ios = bufferManager.getNumIOs();
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        Thread.sleep(seconds * 1000L);
+        done.set(true);
+        for (Thread t : threads) t.join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        ios = bufferManager.getNumIOs() - ios;
+
+        long ops = inserts.sum() + reads.sum();
+        System.out.printf("threads=%-2d %-11s %10.0f ops/s (%8d inserts, %9d reads), %7d I/Os%n",
+                          numThreads, tableLatch ? "table latch" : "page latch", ops / elapsed,
+                          inserts.sum(), reads.sum(), ios);
+
+        bufferManager.close();
+        diskSpaceManager.close();
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    private static void execute(Table table, boolean insert, Record record, RecordId rid) {
+        if (insert) {
+            table.addRecord(record);
+        } else {
+            table.getRecord(rid);
+        }
+    }
+}
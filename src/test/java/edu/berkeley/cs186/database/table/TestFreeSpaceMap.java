@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestFreeSpaceMap {
+    private FreeSpaceMap map;
+
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (
+                2000 * TimeoutScaling.factor)));
+
+    @Before
+    public void setup() {
+        // classes of 100 bytes each
+        map = new FreeSpaceMap(FreeSpaceMap.NUM_CLASSES * 100 - 1);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(-1, map.find(1));
+        assertEquals(-1, map.findUnused());
+        map.remove(3);
+        map.remove(1);
+        assertEquals(1, map.findUnused());
+        assertEquals(-1, map.find(1));
+    }
+
+    @Test
+    public void testFindLowestSufficientClass() {
+        map.update(0, 1000);
+        map.update(1, 350);
+        map.update(2, 270);
+        map.update(3, 50);
+        // 350 is in the lowest class that has only pages with at least 250 bytes free
+        assertEquals(1, map.find(250));
+        // nothing in higher classes, so the class of the request is searched
+        assertEquals(0, map.find(1000));
+        assertEquals(-1, map.find(1100));
+        // a page in the class of the request is only used if there is no higher one
+        map.update(0, 20);
+        map.update(1, 20);
+        assertEquals(2, map.find(250));
+        assertEquals(-1, map.find(280));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        map.remove(0);
+        map.remove(1);
+        assertEquals(0, map.findUnused());
+        map.update(0, 500);
+        assertEquals(1, map.findUnused());
+        assertEquals(0, map.find(500));
+        map.update(0, 400);
+        assertEquals(-1, map.find(500));
+        assertEquals(1, map.size());
+
+        map.remove(0);
+        assertEquals(0, map.findUnused());
+        assertEquals(-1, map.find(1));
+        assertEquals(0, map.size());
+
+        map.discard(0);
+        assertEquals(1, map.findUnused());
+    }
+
+    @Test
+    public void testFindSkipsFullPages() {
+        // full pages of fixed size records all have the same little free space,
+        // which is in the class of the request
+        int numFullPages = 100000;
+        for (int i = 0; i < numFullPages; ++i) {
+            map.update(i, 30);
+        }
+        // every new page allocation first looks for a page with room; walking
+        // the full pages each time would take about 10^10 steps
+        for (int i = 0; i < numFullPages; ++i) {
+            assertEquals(-1, map.find(60));
+        }
+        map.update(numFullPages, 90);
+        assertEquals(numFullPages, map.find(60));
+        assertEquals(0, map.find(30));
+    }
+}
@@ -156,6 +156,64 @@ public class TestPageDirectory {
         assertEquals(p1, p2);
     }
 
+    @Test
+    public void testLockContextCapacity() {
+        Page headerPage = bufferManager.fetchNewPage(new DummyLockContext("_dummyPageDirectoryRecord"), 0);
+        headerPage.unpin();
+        DummyLockContext lockContext = new DummyLockContext();
+        PageDirectory pd1 = new PageDirectory(bufferManager, 0, headerPage.getPageNum(), (short) 10,
+                                              lockContext);
+        assertEquals(0, lockContext.capacity());
+
+        // the capacity follows the data pages as they're allocated and freed
+        short pageSize = (short) (pd1.getEffectivePageSize() - 10);
+        Page p1 = pd1.getPageWithSpace(pageSize);
+        p1.unpin();
+        Page p2 = pd1.getPageWithSpace(pageSize);
+        p2.unpin();
+        assertEquals(2, lockContext.capacity());
+        pd1.updateFreeSpace(p1, pageSize);
+        assertEquals(1, lockContext.capacity());
+
+        // and is set from the header pages when the page directory is loaded
+        DummyLockContext lockContext2 = new DummyLockContext();
+        new PageDirectory(bufferManager, 0, headerPage.getPageNum(), (short) 10, lockContext2);
+        assertEquals(1, lockContext2.capacity());
+    }
+
+    @Test
+    public void testSharedFreeSpaceMap() {
+        Page headerPage = bufferManager.fetchNewPage(new DummyLockContext("_dummyPageDirectoryRecord"), 0);
+        headerPage.unpin();
+        FreeSpaceMap freeSpaceMap = new FreeSpaceMap();
+        PageDirectory pd1 = new PageDirectory(bufferManager, 0, headerPage.getPageNum(), (short) 10,
+                                              new DummyLockContext(), freeSpaceMap);
+        PageDirectory pd2 = new PageDirectory(bufferManager, 0, headerPage.getPageNum(), (short) 10,
+                                              new DummyLockContext(), freeSpaceMap);
+
+        // fill more data pages than fit in one header page
+        short pageSize = (short) (pd1.getEffectivePageSize() - 10);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            Page page = pd1.getPageWithSpace(pageSize);
+            page.unpin();
+            pages.add(page);
+        }
+        Page last = pages.get(pages.size() - 1);
+        pd1.updateFreeSpace(last, (short) 100);
+
+        // pd2 finds the page through the map, and loads the header page added by pd1
+        Page page = pd2.getPageWithSpace((short) 100);
+        page.unpin();
+        assertEquals(last, page);
+
+        // a new page directory loaded with the map doesn't rebuild it
+        PageDirectory pd3 = new PageDirectory(bufferManager, 0, headerPage.getPageNum(), (short) 10,
+                                              new DummyLockContext(), freeSpaceMap);
+        assertEquals(500, pd3.getNumDataPages());
+        assertEquals(500, freeSpaceMap.size());
+    }
+
     @Test
     public void testUpdateFreeSpaceInvalid1() {
         createPageDirectory((short) 10);
@@ -215,6 +273,42 @@ public class TestPageDirectory {
         }
     }
 
+    @Test
+    public void testIteratorReadAhead() throws InterruptedException {
+        createPageDirectory((short) 0);
+        createPageDirectory((short) (pageDirectory.getEffectivePageSize() - 30));
+
+        int numRequests = 100;
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < numRequests; ++i) {
+            Page page = pageDirectory.getPageWithSpace((short) 13);
+            if (pages.size() == 0 || !pages.get(pages.size() - 1).equals(page)) {
+                pages.add(page);
+            }
+            page.unpin();
+        }
+        bufferManager.evictAll();
+        bufferManager.setReadAhead(4);
+
+        Iterator<Page> iter = pageDirectory.iterator();
+        for (int i = 0; i < pages.size(); ++i) {
+            assertTrue(iter.hasNext());
+            Page p = iter.next();
+            p.unpin();
+            assertEquals(pages.get(i), p);
+            if (i == 0) {
+                // fetching the first page reads ahead the next 4
+                long deadline = System.currentTimeMillis() + 10000;
+                while (bufferManager.getNumPrefetches() < 4) {
+                    assertTrue(System.currentTimeMillis() < deadline);
+                    Thread.sleep(1);
+                }
+            }
+        }
+        assertFalse(iter.hasNext());
+        assertTrue(bufferManager.getNumPrefetchHits() >= 4);
+    }
+
     @Test
     public void testIteratorWithDeletes() {
         createPageDirectory((short) 0);
@@ -19,9 +19,10 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -457,4 +458,54 @@ public class TestTable {
         checkSequentialRecords(1, numRecords, 2, iter);
         assertFalse(iter.hasNext());
     }
+
+    /**
+     * Inserts, reads, and deletes records from several threads at once, which share
+     * the table's pages.
+     */
+    @Test
+    public void testConcurrentRecordOperations() throws Exception {
+        int numThreads = 4;
+        int numRecords = table.getNumRecordsPerPage() * 2 + 42;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<List<RecordId>>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < numThreads; ++t) {
+                int base = t * numRecords;
+                futures.add(executor.submit(() -> {
+                    List<RecordId> rids = new ArrayList<>();
+                    for (int i = 0; i < numRecords; ++i) {
+                        rids.add(table.addRecord(createRecordWithAllTypes(base + i)));
+                    }
+                    for (int i = 0; i < numRecords; ++i) {
+                        assertEquals(createRecordWithAllTypes(base + i), table.getRecord(rids.get(i)));
+                        if (i % 2 == 0) {
+                            table.deleteRecord(rids.get(i));
+                        } else {
+                            table.updateRecord(rids.get(i), createRecordWithAllTypes(-(base + i)));
+                        }
+                    }
+                    return rids;
+                }));
+            }
+
+            Set<Integer> expected = new HashSet<>();
+            Set<RecordId> seen = new HashSet<>();
+            for (int t = 0; t < numThreads; ++t) {
+                List<RecordId> rids = futures.get(t).get();
+                for (int i = 1; i < numRecords; i += 2) {
+                    assertTrue(seen.add(rids.get(i)));
+                    expected.add(-(t * numRecords + i));
+                }
+            }
+            Set<Integer> actual = new HashSet<>();
+            for (Record record : table) {
+                actual.add(record.getValue(1).getInt());
+            }
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), table.getStats().getNumRecords());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestVersionStore {
+    private static final String TABLE = "t";
+
+    private VersionStore versions;
+    private RecordId rid;
+
+    @Before
+    public void setup() {
+        versions = new VersionStore();
+        rid = new RecordId(3, (short) 1);
+    }
+
+    @Test
+    public void testUncommittedChangeHidden() {
+        VersionStore.Snapshot snapshot = versions.beginSnapshot();
+        versions.saveVersion(1, TABLE, rid, new Record(1));
+        assertEquals(new Record(1), versions.getVersion(snapshot, TABLE, rid, new Record(2)));
+
+        // still hidden after committing, since the snapshot was taken before
+        versions.commit(1);
+        assertEquals(new Record(1), versions.getVersion(snapshot, TABLE, rid, new Record(2)));
+
+        VersionStore.Snapshot later = versions.beginSnapshot();
+        assertEquals(new Record(2), versions.getVersion(later, TABLE, rid, new Record(2)));
+        versions.endSnapshot(snapshot);
+        versions.endSnapshot(later);
+    }
+
+    @Test
+    public void testInsertAndDelete() {
+        VersionStore.Snapshot snapshot = versions.beginSnapshot();
+        RecordId inserted = new RecordId(3, (short) 2);
+        versions.saveVersion(1, TABLE, inserted, null);
+        versions.saveVersion(1, TABLE, rid, new Record(1));
+        versions.commit(1);
+
+        assertNull(versions.getVersion(snapshot, TABLE, inserted, new Record(5)));
+        assertEquals(new Record(1), versions.getVersion(snapshot, TABLE, rid, null));
+        assertEquals(Arrays.asList(rid, inserted),
+                     new ArrayList<>(versions.getVersionedRecordIds(TABLE, 3)));
+        assertEquals(Collections.emptyList(), new ArrayList<>(versions.getVersionedRecordIds(TABLE, 4)));
+        versions.endSnapshot(snapshot);
+    }
+
+    @Test
+    public void testChain() {
+        versions.saveVersion(1, TABLE, rid, new Record(1));
+        // only the first change of a transaction is kept
+        versions.saveVersion(1, TABLE, rid, new Record(2));
+        versions.commit(1);
+        VersionStore.Snapshot s1 = versions.beginSnapshot();
+        versions.saveVersion(2, TABLE, rid, new Record(3));
+        versions.commit(2);
+        VersionStore.Snapshot s2 = versions.beginSnapshot();
+        versions.saveVersion(3, TABLE, rid, new Record(4));
+
+        assertEquals(new Record(3), versions.getVersion(s1, TABLE, rid, new Record(5)));
+        assertEquals(new Record(4), versions.getVersion(s2, TABLE, rid, new Record(5)));
+        // no snapshot needed the version of transaction 1, so it was collected on commit
+        assertEquals(2, versions.getNumVersions());
+        versions.endSnapshot(s1);
+        versions.endSnapshot(s2);
+    }
+
+    @Test
+    public void testAbort() {
+        VersionStore.Snapshot snapshot = versions.beginSnapshot();
+        versions.saveVersion(1, TABLE, rid, new Record(1));
+        versions.abort(1);
+        assertEquals(0, versions.getNumVersions());
+        // after the rollback, the page has the record from before the change again
+        assertEquals(new Record(1), versions.getVersion(snapshot, TABLE, rid, new Record(1)));
+        versions.endSnapshot(snapshot);
+    }
+
+    @Test
+    public void testGarbageCollection() {
+        // without snapshots, versions are dropped as soon as their transaction commits
+        versions.saveVersion(1, TABLE, rid, new Record(1));
+        assertEquals(1, versions.getNumVersions());
+        versions.commit(1);
+        assertEquals(0, versions.getNumVersions());
+
+        // versions are kept until the oldest snapshot that needs them ends
+        VersionStore.Snapshot s1 = versions.beginSnapshot();
+        versions.saveVersion(2, TABLE, rid, new Record(2));
+        versions.commit(2);
+        VersionStore.Snapshot s2 = versions.beginSnapshot();
+        versions.saveVersion(3, TABLE, rid, new Record(3));
+        versions.commit(3);
+        assertEquals(2, versions.getNumVersions());
+
+        versions.endSnapshot(s2);
+        assertEquals(2, versions.getNumVersions());
+        versions.endSnapshot(s1);
+        assertEquals(0, versions.getNumVersions());
+    }
+}